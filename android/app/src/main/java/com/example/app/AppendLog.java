@@ -0,0 +1,133 @@
+package com.example.app;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of JSON records, one per line: 8 hex digits of CRC32, a space, the
+ * record. Each {@link #append} is a single write followed by one fsync, so callers batch
+ * records to amortise the sync. {@link #replay} stops at the first torn or corrupt line, so
+ * a failed append cuts its partial tail off again; if even that fails the log refuses any
+ * further append, since records written after the tear could never be replayed.
+ */
+final class AppendLog implements Closeable {
+
+    private static final String TAG = "AppendLog";
+
+    interface RecordHandler {
+        void onRecord(String record) throws Exception;
+    }
+
+    private final File file;
+    private FileOutputStream out;
+    private long bytes;
+    private int records;
+    private boolean poisoned;
+
+    AppendLog(File file) throws IOException {
+        this.file = file;
+        this.out = new FileOutputStream(file, true);
+        this.bytes = file.length();
+    }
+
+    File file() {
+        return file;
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Records appended through this instance (not counting what the file held before) */
+    synchronized int records() {
+        return records;
+    }
+
+    synchronized void append(List<String> batch) throws IOException {
+        if (poisoned) throw new IOException(file.getName() + " has a torn tail that could not be removed");
+        if (batch.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (String r : batch) {
+            sb.append(crcHex(r)).append(' ').append(r).append('\n');
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } catch (IOException e) {
+            try {
+                out.getChannel().truncate(bytes);
+                out.getFD().sync();
+            } catch (IOException t) {
+                poisoned = true;
+                Log.e(TAG, "Cannot cut the torn tail of " + file.getName() + ": " + t.getMessage());
+            }
+            throw e;
+        }
+        bytes += data.length;
+        records += batch.size();
+    }
+
+    /**
+     * Empties the log, e.g. once a snapshot covers everything in it. This also removes a
+     * torn tail, so the log takes appends again.
+     */
+    synchronized void truncate() throws IOException {
+        out.getChannel().truncate(0L);
+        out.getFD().sync();
+        bytes = 0L;
+        records = 0;
+        poisoned = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Closing " + file.getName() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Feeds every intact record of {@code file} to {@code handler}; returns how many were read.
+     */
+    static int replay(File file, RecordHandler handler) {
+        if (!file.isFile()) return 0;
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space != 8) break;
+                String record = line.substring(space + 1);
+                if (!line.substring(0, space).equals(crcHex(record))) {
+                    Log.w(TAG, "Torn record in " + file.getName() + " after " + count + " records");
+                    break;
+                }
+                handler.onRecord(record);
+                count++;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Replay of " + file.getName() + " stopped: " + e.getMessage());
+        }
+        return count;
+    }
+
+    private static String crcHex(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.app;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One openWrite/appendChunk/commit session of NativeUploader.
+ *
+ * Chunks arrive as base64 strings and are decoded straight from the String, a slice at a
+ * time, into a buffer that is reused for the whole session, then appended through a
+ * FileChannel, so memory stays at one slice no matter how large a chunk or the file gets.
+ * Decoder state carries over between chunks, so chunk boundaries need not fall on
+ * 4-character groups.
+ */
+final class ChunkedWrite {
+
+    private static final int[] DECODE = new int[128];
+    // Characters decoded per write; the buffer never grows past 3/4 of this
+    private static final int SLICE_CHARS = 1024 * 1024;
+
+    static {
+        java.util.Arrays.fill(DECODE, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+        // URL-safe variants decode to the same values
+        DECODE['-'] = 62;
+        DECODE['_'] = 63;
+    }
+
+    final String id;
+    final File partial;
+    final File target;
+    final String mimeType;
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private byte[] buffer = new byte[0];
+    private long bytesWritten;
+    // Pending bits of an incomplete 4-character group from the previous chunk
+    private int bits;
+    private int bitCount;
+    private boolean padded;
+    private boolean closed;
+    private volatile long lastUsedMs = SystemClock.uptimeMillis();
+
+    ChunkedWrite(String id, File partial, File target, String mimeType) throws IOException {
+        this.id = id;
+        this.partial = partial;
+        this.target = target;
+        this.mimeType = mimeType;
+        this.out = new FileOutputStream(partial);
+        this.channel = out.getChannel();
+    }
+
+    synchronized long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Milliseconds since the session was opened or last appended to */
+    long idleMs() {
+        return SystemClock.uptimeMillis() - lastUsedMs;
+    }
+
+    /**
+     * Decodes one base64 chunk and appends it. Returns the total bytes written so far.
+     */
+    synchronized long append(String base64) throws IOException {
+        if (closed) throw new IOException("Write session closed");
+        lastUsedMs = SystemClock.uptimeMillis();
+        int needed = (Math.min(base64.length(), SLICE_CHARS) * 3) / 4 + 3;
+        if (buffer.length < needed) {
+            buffer = new byte[needed];
+        }
+
+        for (int start = 0; start < base64.length(); start += SLICE_CHARS) {
+            int end = Math.min(base64.length(), start + SLICE_CHARS);
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                char c = base64.charAt(i);
+                if (c == '=') {
+                    padded = true;
+                    continue;
+                }
+                if (c == '\n' || c == '\r' || c == ' ' || c == '\t') continue;
+
+                int v = c < 128 ? DECODE[c] : -1;
+                if (v < 0 || padded) {
+                    throw new IOException("Invalid base64 at chunk offset " + i);
+                }
+                bits = (bits << 6) | v;
+                bitCount += 6;
+                if (bitCount >= 8) {
+                    bitCount -= 8;
+                    buffer[n++] = (byte) (bits >> bitCount);
+                    bits &= (1 << bitCount) - 1;
+                }
+            }
+
+            ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+            bytesWritten += n;
+        }
+        lastUsedMs = SystemClock.uptimeMillis();
+        return bytesWritten;
+    }
+
+    /**
+     * Flushes the data to disk and moves the partial over the target file.
+     */
+    synchronized void commit() throws IOException {
+        // A full group leaves no bits behind; 2 or 4 leftover bits are padding
+        if (bitCount >= 6) {
+            throw new IOException("Truncated base64 data");
+        }
+        if (closed) throw new IOException("Write session closed");
+        closed = true;
+        try {
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target.getAbsolutePath());
+        }
+        if (!partial.renameTo(target)) {
+            throw new IOException("Rename failed: " + target.getAbsolutePath());
+        }
+    }
+
+    synchronized void abort() {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        //noinspection ResultOfMethodCallIgnored
+        partial.delete();
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.app;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed store for staged uploads:
+ * HSC-SESSIONS/BLOBS/{sha256}/{name}
+ *
+ * Each distinct file content is kept once. Staging the same content again only adds a
+ * reference, and {@link #release} deletes the blob when the last reference goes away.
+ * A source index (uri + size + mtime + hash of the first 64KB) lets a re-import of a
+ * known file resolve without copying it at all.
+ */
+final class ContentStore {
+
+    private static final String TAG = "ContentStore";
+
+    static final String BLOBS_DIR = "BLOBS";
+    static final int HEAD_BYTES = 64 * 1024;
+
+    private static ContentStore instance;
+
+    private final File blobsDir;
+    private final File indexFile;
+    private final Map<String, Source> sources = new HashMap<>();
+    // digest -> reference count
+    private final Map<String, Integer> refs = new HashMap<>();
+
+    private static class Source {
+        final String digest;
+        final String head; // sha256 of the first HEAD_BYTES
+
+        Source(String digest, String head) {
+            this.digest = digest;
+            this.head = head;
+        }
+    }
+
+    static synchronized ContentStore get(File sessionsRoot) {
+        File blobsDir = new File(sessionsRoot, BLOBS_DIR);
+        if (instance == null || !instance.blobsDir.equals(blobsDir)) {
+            instance = new ContentStore(blobsDir);
+        }
+        return instance;
+    }
+
+    private ContentStore(File blobsDir) {
+        this.blobsDir = blobsDir;
+        this.indexFile = new File(blobsDir, "index.json");
+        //noinspection ResultOfMethodCallIgnored
+        blobsDir.mkdirs();
+        loadIndex();
+    }
+
+    static String sourceKey(String uri, long size, long lastModified) {
+        return uri + "|" + size + "|" + lastModified;
+    }
+
+    /**
+     * Returns the blob for a previously staged source, with one more reference taken,
+     * or null if the source is unknown, changed, or its blob is gone.
+     */
+    synchronized File reuse(String sourceKey, String headHash) {
+        Source known = sources.get(sourceKey);
+        if (known == null || !headHash.equals(known.head)) return null;
+
+        File blob = findBlob(known.digest);
+        if (blob == null) {
+            sources.remove(sourceKey);
+            return null;
+        }
+        addRef(known.digest);
+        saveIndex();
+        return blob;
+    }
+
+    /**
+     * Moves a fully written temp file into the store under its digest (or discards it if
+     * the content is already stored), records the source and takes a reference.
+     */
+    synchronized File commit(File temp, String digest, String name, String sourceKey, String headHash) throws IOException {
+        File blob = findBlob(digest);
+        if (blob != null) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } else {
+            File dir = new File(blobsDir, digest);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create blob directory: " + dir.getAbsolutePath());
+            }
+            blob = new File(dir, name);
+            if (!temp.renameTo(blob)) {
+                throw new IOException("Rename into blob store failed: " + blob.getAbsolutePath());
+            }
+        }
+
+        if (sourceKey != null) {
+            sources.put(sourceKey, new Source(digest, headHash));
+        }
+        addRef(digest);
+        saveIndex();
+        return blob;
+    }
+
+    boolean contains(File file) {
+        File parent = file.getParentFile();
+        return parent != null && blobsDir.equals(parent.getParentFile());
+    }
+
+    /**
+     * Drops one reference to a blob, deleting it with the last one.
+     * Returns false if the file is not in the store or doesn't exist.
+     */
+    synchronized boolean release(File blob) {
+        if (!contains(blob) || !blob.exists()) return false;
+        dropRef(blob);
+        saveIndex();
+        return true;
+    }
+
+    /**
+     * {@link #release} for many blobs with a single index write. Returns {blobs deleted
+     * because their last reference went away, bytes freed}.
+     */
+    synchronized long[] releaseAll(Iterable<File> blobs) {
+        long deleted = 0;
+        long bytes = 0;
+        boolean changed = false;
+        for (File blob : blobs) {
+            if (!contains(blob) || !blob.exists()) continue;
+            long size = blob.length();
+            if (dropRef(blob)) {
+                deleted++;
+                bytes += size;
+            }
+            changed = true;
+        }
+        if (changed) saveIndex();
+        return new long[] {deleted, bytes};
+    }
+
+    /**
+     * Deletes every blob whose digest is not in {@code keepDigests}, whatever its reference
+     * count, and forgets its sources. Blobs created or referenced within {@code minAgeMs}
+     * are left alone so an import that is still being handed to JS isn't collected. Returns
+     * {blobs removed, bytes freed}.
+     */
+    synchronized long[] retainOnly(Set<String> keepDigests, long minAgeMs, boolean dryRun) {
+        long removed = 0;
+        long bytes = 0;
+        File[] dirs = blobsDir.listFiles();
+        if (dirs == null) return new long[] {0, 0};
+
+        long cutoff = System.currentTimeMillis() - minAgeMs;
+        for (File dir : dirs) {
+            if (!dir.isDirectory() || keepDigests.contains(dir.getName())) continue;
+            if (dir.lastModified() > cutoff) continue;
+
+            long size = 0;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) size += f.length();
+            }
+            removed++;
+            bytes += size;
+            if (dryRun) continue;
+
+            String digest = dir.getName();
+            refs.remove(digest);
+            deleteBlobDir(dir);
+            forgetSources(digest);
+        }
+        if (removed > 0 && !dryRun) saveIndex();
+        return new long[] {removed, bytes};
+    }
+
+    static String digestOf(File blob) {
+        return blob.getParentFile().getName();
+    }
+
+    /** Returns true if this was the last reference and the blob was deleted */
+    private boolean dropRef(File blob) {
+        String digest = digestOf(blob);
+        int count = refs.containsKey(digest) ? refs.get(digest) - 1 : 0;
+        if (count > 0) {
+            refs.put(digest, count);
+        } else {
+            refs.remove(digest);
+            deleteBlobDir(blob.getParentFile());
+            forgetSources(digest);
+            return true;
+        }
+        return false;
+    }
+
+    private void forgetSources(String digest) {
+        for (Iterator<Source> it = sources.values().iterator(); it.hasNext(); ) {
+            if (digest.equals(it.next().digest)) it.remove();
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private File findBlob(String digest) {
+        if (digest == null || digest.isEmpty()) return null;
+        File[] files = new File(blobsDir, digest).listFiles();
+        if (files == null) return null;
+        for (File f : files) {
+            if (f.isFile()) return f;
+        }
+        return null;
+    }
+
+    private void addRef(String digest) {
+        Integer count = refs.get(digest);
+        refs.put(digest, count == null ? 1 : count + 1);
+        // retainOnly's age guard reads the directory mtime: a blob referenced just now must
+        // look new even if it was created long ago
+        //noinspection ResultOfMethodCallIgnored
+        new File(blobsDir, digest).setLastModified(System.currentTimeMillis());
+    }
+
+    private static void deleteBlobDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    private void loadIndex() {
+        if (!indexFile.exists()) return;
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            byte[] bytes = new byte[(int) indexFile.length()];
+            int off = 0;
+            int read;
+            while (off < bytes.length && (read = in.read(bytes, off, bytes.length - off)) != -1) {
+                off += read;
+            }
+            JSONObject root = new JSONObject(new String(bytes, 0, off, StandardCharsets.UTF_8));
+
+            JSONObject src = root.optJSONObject("sources");
+            if (src != null) {
+                for (Iterator<String> it = src.keys(); it.hasNext(); ) {
+                    String key = it.next();
+                    JSONObject value = src.optJSONObject(key);
+                    if (value != null) {
+                        sources.put(key, new Source(value.optString("digest"), value.optString("head")));
+                    }
+                }
+            }
+            JSONObject refCounts = root.optJSONObject("refs");
+            if (refCounts != null) {
+                for (Iterator<String> it = refCounts.keys(); it.hasNext(); ) {
+                    String digest = it.next();
+                    refs.put(digest, refCounts.optInt(digest, 1));
+                }
+            }
+        } catch (Exception e) {
+            // A lost index only costs dedup of future imports; blobs stay valid
+            Log.w(TAG, "Could not read blob index, starting empty: " + e.getMessage());
+        }
+    }
+
+    private void saveIndex() {
+        try {
+            JSONObject src = new JSONObject();
+            for (Map.Entry<String, Source> e : sources.entrySet()) {
+                JSONObject value = new JSONObject();
+                value.put("digest", e.getValue().digest);
+                value.put("head", e.getValue().head);
+                src.put(e.getKey(), value);
+            }
+            JSONObject refCounts = new JSONObject();
+            for (Map.Entry<String, Integer> e : refs.entrySet()) {
+                refCounts.put(e.getKey(), (int) e.getValue());
+            }
+            JSONObject root = new JSONObject();
+            root.put("sources", src);
+            root.put("refs", refCounts);
+
+            // Write-temp + rename so a crash never leaves a torn index
+            File tmp = new File(blobsDir, "index.json.tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(root.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            if (!tmp.renameTo(indexFile)) {
+                Log.w(TAG, "Could not replace blob index");
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not write blob index: " + e.getMessage());
+        }
+    }
+}
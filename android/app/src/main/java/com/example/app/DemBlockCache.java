@@ -0,0 +1,108 @@
+package com.example.app;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte-budgeted LRU of decoded DEM blocks (strips or tiles of a {@link DemRaster} as
+ * float elevations), shared by all DEM layers. Keys pack the raster id and block index.
+ * Only blocks under visible tiles are ever decoded, so this is what bounds the memory a
+ * multi-GB DEM costs.
+ */
+final class DemBlockCache {
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final DemBlockCache SHARED = new DemBlockCache(defaultMaxBytes());
+
+    private final LinkedHashMap<Long, float[]> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    DemBlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static DemBlockCache shared() {
+        return SHARED;
+    }
+
+    private static long defaultMaxBytes() {
+        return Math.min(48L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 12);
+    }
+
+    static long key(int rasterId, int blockIndex) {
+        return ((long) rasterId << 32) | (blockIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Largest block, in bytes of floats, that {@link #put} keeps; a bigger one would flush
+     * the cache. Rasters size their blocks to stay under this.
+     */
+    long maxBlockBytes() {
+        return maxBytes / 8;
+    }
+
+    synchronized float[] get(long key) {
+        float[] block = map.get(key);
+        if (block != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return block;
+    }
+
+    synchronized void put(long key, float[] block) {
+        if (4L * block.length > maxBlockBytes()) return;
+        long weight = weight(block);
+        float[] old = map.put(key, block);
+        if (old != null) bytes -= weight(old);
+        bytes += weight;
+        trim();
+    }
+
+    /** Drops the blocks of one raster, e.g. when its layer is removed */
+    synchronized void removeRaster(int rasterId) {
+        Iterator<Map.Entry<Long, float[]>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, float[]> e = it.next();
+            if ((int) (e.getKey() >>> 32) == rasterId) {
+                bytes -= weight(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    synchronized JSObject metrics() {
+        JSObject ret = new JSObject();
+        ret.put("blocks", map.size());
+        ret.put("bytes", bytes);
+        ret.put("maxBytes", maxBytes);
+        ret.put("hits", hits);
+        ret.put("misses", misses);
+        ret.put("evictions", evictions);
+        long lookups = hits + misses;
+        ret.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        return ret;
+    }
+
+    private static long weight(float[] block) {
+        return ENTRY_OVERHEAD + 4L * block.length;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, float[]>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= weight(it.next().getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+}
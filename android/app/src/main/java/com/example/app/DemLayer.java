@@ -0,0 +1,310 @@
+package com.example.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A DEM file (GeoTIFF/DETT or SRTM HGT) served as 256px web map tiles by the tile server:
+ * hillshade or grayscale PNGs, and Terrarium or Mapbox terrain-RGB for raster-dem sources.
+ *
+ * The file is memory-mapped and read by block through {@link DemRaster}; rendering a tile
+ * resamples only the blocks under it, from the coarsest level (overview) that still has at
+ * least the tile's resolution. Nothing is read up front besides the TIFF directory and a
+ * few blocks of the coarsest level for the elevation range.
+ */
+final class DemLayer implements Closeable {
+
+    static final int TILE_SIZE = 256;
+
+    private static final double MERCATOR_HALF = 20037508.342789244;
+    private static final double EARTH_CIRCUMFERENCE_M = 40075016.686;
+    private static final double MAX_LAT = 85.05112878;
+    // Blocks per axis of the coarsest level read for min/max
+    private static final int RANGE_BLOCKS = 8;
+
+    final String id;
+    final File file;
+    final String format;
+    // Part of every ETag, so a replaced file never validates
+    final String tag;
+    final double west;
+    final double south;
+    final double east;
+    final double north;
+    final float min;
+    final float max;
+
+    private final MappedFile mapped;
+    // Finest first
+    private final DemRaster[] levels;
+
+    private DemLayer(String id, File file, String format, MappedFile mapped, List<DemRaster> levels) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.format = format;
+        this.mapped = mapped;
+        this.levels = levels.toArray(new DemRaster[0]);
+        this.tag = Integer.toHexString(file.getAbsolutePath().hashCode()) + "-" + Long.toHexString(file.lastModified());
+
+        DemRaster base = this.levels[0];
+        DemRaster.Georef g = base.georef;
+        double x0 = g.originX;
+        double x1 = g.originX + g.resX * base.width;
+        double y0 = g.originY;
+        double y1 = g.originY + g.resY * base.height;
+        if (g.mercator) {
+            x0 = x0 / MERCATOR_HALF * 180;
+            x1 = x1 / MERCATOR_HALF * 180;
+            y0 = mercatorYToLat(y0);
+            y1 = mercatorYToLat(y1);
+        }
+        this.west = Math.max(-180, Math.min(x0, x1));
+        this.east = Math.min(180, Math.max(x0, x1));
+        this.south = Math.max(-MAX_LAT, Math.min(y0, y1));
+        this.north = Math.min(MAX_LAT, Math.max(y0, y1));
+
+        float[] range = sampleRange(this.levels[this.levels.length - 1]);
+        this.min = range[0];
+        this.max = range[1];
+    }
+
+    /** Opens {@code file} by extension: .hgt, else GeoTIFF (.tif, .tiff, .dett) */
+    static DemLayer open(String id, File file) throws IOException {
+        MappedFile mapped = new MappedFile(file);
+        try {
+            if (file.getName().toLowerCase(Locale.US).endsWith(".hgt")) {
+                List<DemRaster> levels = Collections.singletonList(HgtRaster.open(mapped));
+                return new DemLayer(id, file, "hgt", mapped, levels);
+            }
+            return new DemLayer(id, file, "geotiff", mapped, GeoTiffRaster.open(mapped));
+        } catch (IOException | RuntimeException e) {
+            mapped.close();
+            throw e;
+        }
+    }
+
+    JSObject describe() {
+        DemRaster base = levels[0];
+        JSObject ret = new JSObject();
+        ret.put("layerId", id);
+        ret.put("file", file.getAbsolutePath());
+        ret.put("format", format);
+        ret.put("width", base.width);
+        ret.put("height", base.height);
+        ret.put("overviews", levels.length - 1);
+        JSArray bounds = new JSArray();
+        bounds.put(west);
+        bounds.put(south);
+        bounds.put(east);
+        bounds.put(north);
+        ret.put("bounds", bounds);
+        ret.put("min", min);
+        ret.put("max", max);
+        ret.put("maxZoom", maxZoom());
+        return ret;
+    }
+
+    /** The zoom at which a tile pixel is about one DEM pixel */
+    int maxZoom() {
+        DemRaster.Georef g = levels[0].georef;
+        double degreesPerPixel = g.mercator ? Math.abs(g.resX) / MERCATOR_HALF * 180 : Math.abs(g.resX);
+        double z = Math.log(360.0 / (TILE_SIZE * degreesPerPixel)) / Math.log(2);
+        return (int) Math.max(0, Math.min(22, Math.ceil(z)));
+    }
+
+    /** Hillshade (Horn's method) as gray + alpha; null if the tile misses the DEM */
+    byte[] renderHillshade(int z, int x, int y, double azimuth, double altitude, double exaggeration) throws IOException {
+        float[] grid = elevations(z, x, y, 1);
+        if (grid == null) return null;
+        int n = TILE_SIZE + 2;
+        double world = TILE_SIZE * Math.pow(2, z);
+        double zenith = Math.toRadians(90 - altitude);
+        double azimuthMath = Math.toRadians((450 - azimuth) % 360);
+        double cosZenith = Math.cos(zenith);
+        double sinZenith = Math.sin(zenith);
+
+        byte[] pixels = new byte[TILE_SIZE * TILE_SIZE * 2];
+        for (int r = 0; r < TILE_SIZE; r++) {
+            double lat = pixelLat(y * TILE_SIZE + r + 0.5, world);
+            double cell = EARTH_CIRCUMFERENCE_M * Math.cos(Math.toRadians(lat)) / world;
+            for (int c = 0; c < TILE_SIZE; c++) {
+                int center = (r + 1) * n + c + 1;
+                float e = grid[center];
+                if (Float.isNaN(e)) continue;
+                // 3x3 window, a b c / d e f / g h i; missing neighbours take the centre
+                float a = or(grid[center - n - 1], e);
+                float b = or(grid[center - n], e);
+                float cc = or(grid[center - n + 1], e);
+                float d = or(grid[center - 1], e);
+                float f = or(grid[center + 1], e);
+                float g = or(grid[center + n - 1], e);
+                float h = or(grid[center + n], e);
+                float i = or(grid[center + n + 1], e);
+                double dzdx = ((cc + 2 * f + i) - (a + 2 * d + g)) / (8 * cell);
+                double dzdy = ((g + 2 * h + i) - (a + 2 * b + cc)) / (8 * cell);
+                double slope = Math.atan(exaggeration * Math.sqrt(dzdx * dzdx + dzdy * dzdy));
+                double aspect = Math.atan2(dzdy, -dzdx);
+                double shade = cosZenith * Math.cos(slope) + sinZenith * Math.sin(slope) * Math.cos(azimuthMath - aspect);
+                int p = (r * TILE_SIZE + c) * 2;
+                pixels[p] = (byte) Math.round(255 * Math.max(0, shade));
+                pixels[p + 1] = (byte) 255;
+            }
+        }
+        return PngEncoder.encode(TILE_SIZE, TILE_SIZE, PngEncoder.GRAY_ALPHA, pixels);
+    }
+
+    /** Elevation stretched over the layer's min..max, like the JS bitmap; null if the tile misses the DEM */
+    byte[] renderGrayscale(int z, int x, int y) throws IOException {
+        float[] grid = elevations(z, x, y, 0);
+        if (grid == null) return null;
+        float span = max - min;
+        byte[] pixels = new byte[TILE_SIZE * TILE_SIZE * 2];
+        for (int i = 0; i < grid.length; i++) {
+            float v = grid[i];
+            if (Float.isNaN(v)) continue;
+            int shade = Math.round((v - min) / span * 255);
+            pixels[i * 2] = (byte) Math.max(0, Math.min(255, shade));
+            pixels[i * 2 + 1] = (byte) 255;
+        }
+        return PngEncoder.encode(TILE_SIZE, TILE_SIZE, PngEncoder.GRAY_ALPHA, pixels);
+    }
+
+    /**
+     * Elevation packed into RGB for a raster-dem source: Terrarium (h + 32768 in R.G.B/256)
+     * or Mapbox (h = -10000 + RGB * 0.1). No data becomes sea level. Null if the tile
+     * misses the DEM.
+     */
+    byte[] renderTerrain(int z, int x, int y, boolean mapbox) throws IOException {
+        float[] grid = elevations(z, x, y, 0);
+        if (grid == null) return null;
+        byte[] pixels = new byte[TILE_SIZE * TILE_SIZE * 3];
+        for (int i = 0; i < grid.length; i++) {
+            float h = Float.isNaN(grid[i]) ? 0f : grid[i];
+            int p = i * 3;
+            if (mapbox) {
+                int v = (int) Math.max(0, Math.min(0xFFFFFF, Math.round((h + 10000.0) * 10)));
+                pixels[p] = (byte) (v >> 16);
+                pixels[p + 1] = (byte) (v >> 8);
+                pixels[p + 2] = (byte) v;
+            } else {
+                double v = Math.max(0, Math.min(65535.996, h + 32768.0));
+                int whole = (int) Math.floor(v);
+                pixels[p] = (byte) (whole >> 8);
+                pixels[p + 1] = (byte) whole;
+                pixels[p + 2] = (byte) (int) ((v - whole) * 256);
+            }
+        }
+        return PngEncoder.encode(TILE_SIZE, TILE_SIZE, PngEncoder.RGB, pixels);
+    }
+
+    /**
+     * Elevations at the pixel centres of tile z/x/y plus {@code border} pixels around it,
+     * row by row, NaN where there is no data. Null if the tile doesn't touch the DEM.
+     */
+    private float[] elevations(int z, int x, int y, int border) throws IOException {
+        double scale = Math.pow(2, z);
+        double tileWest = x / scale * 360 - 180;
+        double tileEast = (x + 1) / scale * 360 - 180;
+        double tileNorth = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / scale))));
+        double tileSouth = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (y + 1) / scale))));
+        if (tileEast <= west || tileWest >= east || tileNorth <= south || tileSouth >= north) return null;
+
+        double world = TILE_SIZE * scale;
+        DemRaster level = pickLevel(world);
+        DemRaster.Georef g = level.georef;
+        // A DEM pixel much smaller than a tile pixel: interpolating buys nothing
+        boolean interpolate = Math.abs(g.resX) * 2 > targetResolution(g, world);
+
+        int n = TILE_SIZE + 2 * border;
+        double[] fx = new double[n];
+        double[] fy = new double[n];
+        for (int i = 0; i < n; i++) {
+            double px = x * TILE_SIZE + i - border + 0.5;
+            double py = y * TILE_SIZE + i - border + 0.5;
+            if (g.mercator) {
+                fx[i] = ((2 * px / world - 1) * MERCATOR_HALF - g.originX) / g.resX;
+                fy[i] = ((1 - 2 * py / world) * MERCATOR_HALF - g.originY) / g.resY;
+            } else {
+                fx[i] = (px / world * 360 - 180 - g.originX) / g.resX;
+                fy[i] = (pixelLat(py, world) - g.originY) / g.resY;
+            }
+        }
+
+        float[] out = new float[n * n];
+        DemRaster.Sampler sampler = level.new Sampler();
+        for (int r = 0; r < n; r++) {
+            double sy = fy[r];
+            boolean rowInside = sy >= -1 && sy <= level.height + 1;
+            for (int c = 0; c < n; c++) {
+                double sx = fx[c];
+                if (!rowInside || sx < -1 || sx > level.width + 1) {
+                    out[r * n + c] = Float.NaN;
+                } else {
+                    out[r * n + c] = interpolate ? sampler.bilinear(sx, sy) : sampler.nearest(sx, sy);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Coarsest level whose pixels are still no larger than the tile's */
+    private DemRaster pickLevel(double world) {
+        for (int i = levels.length - 1; i > 0; i--) {
+            DemRaster.Georef g = levels[i].georef;
+            if (Math.abs(g.resX) <= targetResolution(g, world)) return levels[i];
+        }
+        return levels[0];
+    }
+
+    /** Size of a tile pixel in the raster's units */
+    private static double targetResolution(DemRaster.Georef g, double world) {
+        return g.mercator ? 2 * MERCATOR_HALF / world : 360 / world;
+    }
+
+    private static double pixelLat(double py, double world) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * py / world))));
+    }
+
+    private static double mercatorYToLat(double my) {
+        return Math.toDegrees(Math.atan(Math.sinh(my / MERCATOR_HALF * Math.PI)));
+    }
+
+    private static float or(float value, float fallback) {
+        return Float.isNaN(value) ? fallback : value;
+    }
+
+    /**
+     * {min, max} over up to 8x8 evenly spread blocks of {@code level}; {0, 1} if they hold no
+     * data. Bounded so that opening a multi-GB DEM without overviews stays quick.
+     */
+    private static float[] sampleRange(DemRaster level) throws IOException {
+        float lo = Float.POSITIVE_INFINITY;
+        float hi = Float.NEGATIVE_INFINITY;
+        int across = Math.min(level.blocksAcross, RANGE_BLOCKS);
+        int down = Math.min(level.blocksDown, RANGE_BLOCKS);
+        for (int j = 0; j < down; j++) {
+            for (int i = 0; i < across; i++) {
+                for (float v : level.block(i * level.blocksAcross / across, j * level.blocksDown / down)) {
+                    if (Float.isNaN(v)) continue;
+                    if (v < lo) lo = v;
+                    if (v > hi) hi = v;
+                }
+            }
+        }
+        if (lo > hi) return new float[] {0f, 1f};
+        return new float[] {lo, hi > lo ? hi : lo + 1};
+    }
+
+    @Override
+    public void close() {
+        mapped.close();
+        for (DemRaster level : levels) DemBlockCache.shared().removeRaster(level.id);
+    }
+}
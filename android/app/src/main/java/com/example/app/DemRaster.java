@@ -0,0 +1,125 @@
+package com.example.app;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One resolution level of an elevation grid, split into blocks (TIFF strips or tiles, or
+ * fixed squares for formats without blocks). Blocks are decoded on first use into float
+ * elevations, NaN for no data, and kept in the shared {@link DemBlockCache}.
+ *
+ * Georeferencing is an axis-aligned grid: the top-left corner of pixel (0, 0) is at
+ * (originX, originY) and pixels are resX by resY (resY usually negative), in degrees or,
+ * for Web Mercator rasters, metres.
+ */
+abstract class DemRaster {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    static final class Georef {
+        final double originX;
+        final double originY;
+        final double resX;
+        final double resY;
+        final boolean mercator;
+
+        Georef(double originX, double originY, double resX, double resY, boolean mercator) {
+            this.originX = originX;
+            this.originY = originY;
+            this.resX = resX;
+            this.resY = resY;
+            this.mercator = mercator;
+        }
+
+        /** Same extent at another pixel size, for overviews */
+        Georef scaled(double factorX, double factorY) {
+            return new Georef(originX, originY, resX * factorX, resY * factorY, mercator);
+        }
+    }
+
+    final int width;
+    final int height;
+    final int blockWidth;
+    final int blockHeight;
+    final int blocksAcross;
+    final int blocksDown;
+    final Georef georef;
+    final int id = NEXT_ID.incrementAndGet();
+
+    DemRaster(int width, int height, int blockWidth, int blockHeight, Georef georef) {
+        this.width = width;
+        this.height = height;
+        this.blockWidth = blockWidth;
+        this.blockHeight = blockHeight;
+        this.blocksAcross = (width + blockWidth - 1) / blockWidth;
+        this.blocksDown = (height + blockHeight - 1) / blockHeight;
+        this.georef = georef;
+    }
+
+    /**
+     * Decodes block (bx, by) into blockWidth * blockHeight elevations, row by row; pixels
+     * past the raster's edge and no-data pixels are NaN. Must be safe to call concurrently.
+     */
+    protected abstract float[] decodeBlock(int bx, int by) throws IOException;
+
+    final float[] block(int bx, int by) throws IOException {
+        long key = DemBlockCache.key(id, by * blocksAcross + bx);
+        DemBlockCache cache = DemBlockCache.shared();
+        float[] block = cache.get(key);
+        if (block == null) {
+            // Two requests may decode the same block at once; both results are identical
+            block = decodeBlock(bx, by);
+            cache.put(key, block);
+        }
+        return block;
+    }
+
+    /**
+     * Reads pixels for one tile render. Keeps the last block at hand, since neighbouring
+     * samples almost always fall into the same block. Not thread-safe; one per render.
+     */
+    final class Sampler {
+        private int lastIndex = -1;
+        private float[] last;
+
+        /** Elevation of pixel (col, row), NaN outside the raster or for no data */
+        float at(int col, int row) throws IOException {
+            if (col < 0 || row < 0 || col >= width || row >= height) return Float.NaN;
+            int bx = col / blockWidth;
+            int by = row / blockHeight;
+            int index = by * blocksAcross + bx;
+            if (index != lastIndex) {
+                last = block(bx, by);
+                lastIndex = index;
+            }
+            return last[(row - by * blockHeight) * blockWidth + (col - bx * blockWidth)];
+        }
+
+        /**
+         * Bilinear interpolation at pixel coordinates (fx, fy), where pixel centres sit at
+         * +0.5. Falls back to the nearest pixel next to no-data or the raster's edge.
+         */
+        float bilinear(double fx, double fy) throws IOException {
+            double gx = fx - 0.5;
+            double gy = fy - 0.5;
+            int c0 = (int) Math.floor(gx);
+            int r0 = (int) Math.floor(gy);
+            float a = at(c0, r0);
+            float b = at(c0 + 1, r0);
+            float c = at(c0, r0 + 1);
+            float d = at(c0 + 1, r0 + 1);
+            if (Float.isNaN(a) || Float.isNaN(b) || Float.isNaN(c) || Float.isNaN(d)) {
+                return nearest(fx, fy);
+            }
+            float tx = (float) (gx - c0);
+            float ty = (float) (gy - r0);
+            float top = a + (b - a) * tx;
+            float bottom = c + (d - c) * tx;
+            return top + (bottom - top) * ty;
+        }
+
+        float nearest(double fx, double fy) throws IOException {
+            return at((int) Math.floor(fx), (int) Math.floor(fy));
+        }
+    }
+}
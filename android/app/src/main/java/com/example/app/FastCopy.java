@@ -0,0 +1,96 @@
+package com.example.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Copy loops used for staging: a channel fast path for file-backed sources and the
+ * plain buffered stream loop as fallback. Both hash the data they copy.
+ */
+final class FastCopy {
+
+    interface Progress {
+        void onCopied(long totalCopied);
+    }
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    // Mapping window for hashing; the kernel moves the same range with transferTo
+    private static final long CHANNEL_CHUNK = 64L * 1024 * 1024;
+
+    private FastCopy() {}
+
+    /**
+     * Copies the whole source channel with {@link FileChannel#transferTo}, which the platform
+     * turns into sendfile/copy_file_range so the bytes never enter the Java heap. Each window is
+     * hashed from a read-only mapping of the source first, which also warms the page cache the
+     * transfer then reads from.
+     */
+    static long channelCopy(FileChannel in, FileChannel out, MessageDigest digest, Progress progress) throws IOException {
+        return channelCopy(in, out, 0L, digest, progress);
+    }
+
+    /**
+     * Like {@link #channelCopy(FileChannel, FileChannel, MessageDigest, Progress)} but starting at
+     * source offset {@code from}, for resuming a copy whose first bytes are already in {@code out}.
+     * Returns the source position reached, i.e. the total length copied including {@code from}.
+     */
+    static long channelCopy(FileChannel in, FileChannel out, long from, MessageDigest digest,
+                            Progress progress) throws IOException {
+        long size = in.size();
+        long pos = from;
+        while (pos < size) {
+            long n = Math.min(CHANNEL_CHUNK, size - pos);
+            if (digest != null) {
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, pos, n);
+                digest.update(window);
+            }
+
+            long done = 0L;
+            while (done < n) {
+                long t = in.transferTo(pos + done, n - done, out);
+                if (t <= 0) throw new IOException("transferTo made no progress at " + (pos + done));
+                done += t;
+            }
+            pos += n;
+            if (progress != null) progress.onCopied(pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Buffered read/write loop for sources without a usable file descriptor (pipes, network
+     * providers). Returns bytes copied; progress reports {@code alreadyCopied} + bytes so far.
+     */
+    static long streamCopy(InputStream in, OutputStream out, byte[] buf, MessageDigest digest,
+                           long alreadyCopied, Progress progress) throws IOException {
+        long copied = 0L;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            if (digest != null) digest.update(buf, 0, read);
+            out.write(buf, 0, read);
+            copied += read;
+            if (progress != null) progress.onCopied(alreadyCopied + copied);
+        }
+        return copied;
+    }
+
+    /**
+     * Positional read of up to {@code len} bytes from the start of the channel,
+     * leaving its position untouched.
+     */
+    static int readHead(FileChannel in, byte[] buf, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        long pos = 0L;
+        while (bb.hasRemaining()) {
+            int read = in.read(bb, pos);
+            if (read == -1) break;
+            pos += read;
+        }
+        return bb.position();
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.app;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte-budgeted LRU of the small files of the tile folder (style.json, glyph ranges), so
+ * the dozens of glyph requests of a map start are served from RAM with an ETag instead of
+ * one file read each.
+ *
+ * An entry is only used while the file's mtime and length still match, which costs a stat
+ * per request. On top of that, FileObservers on the watched directories drop entries as
+ * soon as their file is written, moved or deleted, which also catches a rewrite that keeps
+ * mtime and length. Contents are stored gzip-compressed where that helps ({@link TileGzip}).
+ */
+final class FolderFileCache {
+
+    private static final String TAG = "FolderFileCache";
+
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int MAX_WATCHED_DIRS = 64;
+    private static final int WATCH_MASK = FileObserver.CLOSE_WRITE | FileObserver.MODIFY
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.DELETE
+        | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    static final class Entry {
+        final byte[] data;
+        final boolean gzip;
+        final long lastModified;
+        final long length;
+        final String etag;
+
+        Entry(byte[] data, long lastModified, long length, String etag) {
+            this.data = data;
+            this.gzip = TileGzip.isGzip(data);
+            this.lastModified = lastModified;
+            this.length = length;
+            this.etag = etag;
+        }
+
+        int weight() {
+            return ENTRY_OVERHEAD + data.length;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(64, 0.75f, true);
+    // Observers must stay referenced, or they stop when collected
+    private final Map<String, FileObserver> observers = new HashMap<>();
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    FolderFileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The contents of {@code file}, from RAM if unchanged since they were read. Returns null
+     * if the file doesn't exist or can't be read. {@code tag} goes into the ETag, so the
+     * same path under two folders never validates.
+     */
+    Entry get(File file, String tag) {
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (this) {
+            Entry e = map.get(key);
+            if (e != null && e.lastModified == lastModified && e.length == length) {
+                hits++;
+                return e;
+            }
+            misses++;
+        }
+
+        // Read outside the lock; a racing read of the same file just stores it twice
+        byte[] bytes = TileServer.readFile(file);
+        if (bytes == null) return null;
+        String etag = "\"" + tag + "-" + Long.toHexString(bytes.length) + "-" + Long.toHexString(lastModified) + "\"";
+        Entry entry = new Entry(TileGzip.compressIfSmaller(bytes), lastModified, bytes.length, etag);
+        put(key, entry);
+        return entry;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if (entry.weight() > maxBytes / 4) return;
+        Entry old = map.put(key, entry);
+        if (old != null) bytes -= old.weight();
+        bytes += entry.weight();
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().weight();
+            it.remove();
+        }
+    }
+
+    /** Drops {@code path}, or everything under it if it is a directory */
+    synchronized void invalidate(String path) {
+        String prefix = path + File.separator;
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().equals(path) || e.getKey().startsWith(prefix)) {
+                bytes -= e.getValue().weight();
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        map.clear();
+        bytes = 0L;
+    }
+
+    /**
+     * Starts watching {@code dir} (not recursively) if it isn't watched already. Cheap to
+     * call per request.
+     */
+    void watch(File dir) {
+        String path = dir.getAbsolutePath();
+        synchronized (observers) {
+            if (observers.containsKey(path) || observers.size() >= MAX_WATCHED_DIRS || !dir.isDirectory()) return;
+            FileObserver observer = new FileObserver(path, WATCH_MASK) {
+                @Override
+                public void onEvent(int event, String name) {
+                    if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0 || name == null) {
+                        invalidate(path);
+                    } else {
+                        invalidate(path + File.separator + name);
+                    }
+                }
+            };
+            observer.startWatching();
+            observers.put(path, observer);
+        }
+        Log.d(TAG, "Watching " + path);
+    }
+
+    /** Stops all observers and drops everything, e.g. when the folder changes */
+    void reset() {
+        synchronized (observers) {
+            for (FileObserver observer : observers.values()) observer.stopWatching();
+            observers.clear();
+        }
+        clear();
+    }
+
+    synchronized JSObject metrics() {
+        JSObject ret = new JSObject();
+        ret.put("entries", map.size());
+        ret.put("bytes", bytes);
+        ret.put("maxBytes", maxBytes);
+        ret.put("hits", hits);
+        ret.put("misses", misses);
+        ret.put("invalidations", invalidations);
+        synchronized (observers) {
+            ret.put("watchedDirs", observers.size());
+        }
+        return ret;
+    }
+}
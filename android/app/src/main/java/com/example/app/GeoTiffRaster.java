@@ -0,0 +1,709 @@
+package com.example.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A GeoTIFF (classic or BigTIFF, .tif/.tiff/.dett) read straight from a {@link MappedFile}:
+ * only the directory is parsed up front, and a strip or tile is decompressed when a map
+ * tile first needs it. Reduced-resolution IFDs (overviews, as in a Cloud Optimized GeoTIFF)
+ * become extra levels, so zoomed-out tiles don't have to touch the full-resolution data.
+ *
+ * Supported: band 1 of 8/16/32/64-bit integer or float samples, chunky or planar, no / LZW /
+ * Deflate / PackBits compression with predictor 1, 2 or 3, georeferenced in geographic
+ * coordinates or Web Mercator by ModelPixelScale + ModelTiepoint or ModelTransformation.
+ * GDAL_NODATA marks no-data pixels. Uncompressed strips are read in row windows, so a file
+ * stored as one huge strip still decodes in small blocks; compressed strips and tiles whose
+ * decoded size wouldn't fit the block cache are rejected.
+ */
+final class GeoTiffRaster extends DemRaster {
+
+    // Baseline and GeoTIFF tags
+    private static final int NEW_SUBFILE_TYPE = 254;
+    private static final int IMAGE_WIDTH = 256;
+    private static final int IMAGE_LENGTH = 257;
+    private static final int BITS_PER_SAMPLE = 258;
+    private static final int COMPRESSION = 259;
+    private static final int STRIP_OFFSETS = 273;
+    private static final int SAMPLES_PER_PIXEL = 277;
+    private static final int ROWS_PER_STRIP = 278;
+    private static final int STRIP_BYTE_COUNTS = 279;
+    private static final int PLANAR_CONFIGURATION = 284;
+    private static final int PREDICTOR = 317;
+    private static final int TILE_WIDTH = 322;
+    private static final int TILE_LENGTH = 323;
+    private static final int TILE_OFFSETS = 324;
+    private static final int TILE_BYTE_COUNTS = 325;
+    private static final int SAMPLE_FORMAT = 339;
+    private static final int MODEL_PIXEL_SCALE = 33550;
+    private static final int MODEL_TIEPOINT = 33922;
+    private static final int MODEL_TRANSFORMATION = 34264;
+    private static final int GEO_KEY_DIRECTORY = 34735;
+    private static final int GDAL_NODATA = 42113;
+
+    // GeoKeys
+    private static final int GT_MODEL_TYPE = 1024;
+    private static final int GT_RASTER_TYPE = 1025;
+    private static final int PROJECTED_CS_TYPE = 3072;
+    private static final int MODEL_TYPE_PROJECTED = 1;
+    private static final int MODEL_TYPE_GEOGRAPHIC = 2;
+    private static final int RASTER_PIXEL_IS_POINT = 2;
+
+    private static final int COMPRESSION_NONE = 1;
+    private static final int COMPRESSION_LZW = 5;
+    private static final int COMPRESSION_DEFLATE = 8;
+    private static final int COMPRESSION_PACKBITS = 32773;
+    private static final int COMPRESSION_DEFLATE_OLD = 32946;
+
+    private static final int MAX_IFDS = 64;
+    /** Decoded size of one row window of an uncompressed strip */
+    private static final int WINDOW_BYTES = 1024 * 1024;
+
+    /** One image file directory, reduced to what decoding needs */
+    private static final class Ifd {
+        long subfileType;
+        int width;
+        int height;
+        int bitsPerSample;
+        int samplesPerPixel = 1;
+        int sampleFormat = 1;
+        int compression = COMPRESSION_NONE;
+        int predictor = 1;
+        int planar = 1;
+        int rowsPerStrip;
+        int tileWidth;
+        int tileHeight;
+        long[] offsets;
+        long[] byteCounts;
+        double[] pixelScale;
+        double[] tiepoint;
+        double[] transformation;
+        long[] geoKeys;
+        String noData;
+    }
+
+    private final MappedFile mapped;
+    private final ByteOrder order;
+    private final Ifd ifd;
+    private final float noData;
+    /** Blocks are row windows cut from strips rather than whole strips */
+    private final boolean windowed;
+
+    private GeoTiffRaster(MappedFile mapped, ByteOrder order, Ifd ifd, Georef georef, float noData) {
+        super(ifd.width, ifd.height,
+            ifd.tileWidth > 0 ? ifd.tileWidth : ifd.width,
+            ifd.tileWidth > 0 ? ifd.tileHeight : blockRows(ifd),
+            georef);
+        this.mapped = mapped;
+        this.order = order;
+        this.ifd = ifd;
+        this.noData = noData;
+        this.windowed = ifd.tileWidth <= 0 && blockHeight != ifd.rowsPerStrip;
+    }
+
+    /**
+     * Rows per block of a stripped image. An uncompressed strip can be read at any row, so a
+     * big one (e.g. the whole image, when RowsPerStrip is missing) is cut into windows of
+     * about {@link #WINDOW_BYTES}; compressed strips are decoded whole.
+     */
+    private static int blockRows(Ifd ifd) {
+        if (ifd.compression != COMPRESSION_NONE) return ifd.rowsPerStrip;
+        long window = Math.max(1, WINDOW_BYTES / (4L * ifd.width));
+        return (int) Math.min(ifd.rowsPerStrip, window);
+    }
+
+    /**
+     * The full-resolution image of {@code mapped} followed by its overviews, finest first.
+     * {@code mapped} stays open as long as the rasters are used; the caller closes it.
+     */
+    static List<DemRaster> open(MappedFile mapped) throws IOException {
+        if (mapped.size() < 16) throw new IOException("Not a TIFF file");
+        ByteBuffer header = mapped.slice(0, 16);
+        ByteOrder order;
+        if (header.get(0) == 'I' && header.get(1) == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (header.get(0) == 'M' && header.get(1) == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new IOException("Not a TIFF file");
+        }
+        header.order(order);
+        int version = header.getShort(2) & 0xFFFF;
+        boolean bigTiff = version == 43;
+        if (version != 42 && !bigTiff) throw new IOException("Unknown TIFF version " + version);
+        Reader reader = new Reader(mapped, order, bigTiff);
+
+        List<Ifd> ifds = new ArrayList<>();
+        long next = bigTiff ? header.getLong(8) : header.getInt(4) & 0xFFFFFFFFL;
+        while (next != 0 && ifds.size() < MAX_IFDS) {
+            long[] nextOut = new long[1];
+            ifds.add(reader.readIfd(next, nextOut));
+            next = nextOut[0];
+        }
+        if (ifds.isEmpty()) throw new IOException("TIFF has no images");
+
+        Ifd main = ifds.get(0);
+        checkDecodable(main);
+        Georef georef = georef(main);
+        float noData = parseNoData(main.noData);
+
+        List<DemRaster> levels = new ArrayList<>();
+        levels.add(new GeoTiffRaster(mapped, order, main, georef, noData));
+        for (int i = 1; i < ifds.size(); i++) {
+            Ifd ov = ifds.get(i);
+            // Reduced-resolution images only; masks and other pages are skipped
+            if ((ov.subfileType & 1) == 0 || (ov.subfileType & 4) != 0) continue;
+            if (ov.bitsPerSample != main.bitsPerSample || ov.sampleFormat != main.sampleFormat) continue;
+            try {
+                checkDecodable(ov);
+            } catch (IOException e) {
+                continue;
+            }
+            Georef scaled = georef.scaled((double) main.width / ov.width, (double) main.height / ov.height);
+            levels.add(new GeoTiffRaster(mapped, order, ov, scaled, noData));
+        }
+        levels.sort((a, b) -> Integer.compare(b.width, a.width));
+        return levels;
+    }
+
+    private static void checkDecodable(Ifd ifd) throws IOException {
+        if (ifd.width <= 0 || ifd.height <= 0) throw new IOException("TIFF image has no size");
+        if (ifd.offsets == null || ifd.byteCounts == null || ifd.offsets.length != ifd.byteCounts.length) {
+            throw new IOException("TIFF image has no strip or tile offsets");
+        }
+        switch (ifd.compression) {
+            case COMPRESSION_NONE:
+            case COMPRESSION_LZW:
+            case COMPRESSION_DEFLATE:
+            case COMPRESSION_DEFLATE_OLD:
+            case COMPRESSION_PACKBITS:
+                break;
+            default:
+                throw new IOException("Unsupported TIFF compression " + ifd.compression);
+        }
+        boolean bitsOk = ifd.sampleFormat == 3
+            ? ifd.bitsPerSample == 32 || ifd.bitsPerSample == 64
+            : ifd.bitsPerSample == 8 || ifd.bitsPerSample == 16 || ifd.bitsPerSample == 32
+                || (ifd.sampleFormat == 2 && ifd.bitsPerSample == 64);
+        if (!bitsOk || ifd.sampleFormat < 1 || ifd.sampleFormat > 3) {
+            throw new IOException("Unsupported TIFF samples: " + ifd.bitsPerSample + "-bit format " + ifd.sampleFormat);
+        }
+        if (ifd.predictor < 1 || ifd.predictor > 3) throw new IOException("Unsupported TIFF predictor " + ifd.predictor);
+        if (ifd.tileWidth > 0) {
+            if (ifd.tileHeight <= 0) throw new IOException("TIFF tile length missing");
+        } else {
+            if (ifd.rowsPerStrip <= 0 || ifd.rowsPerStrip > ifd.height) ifd.rowsPerStrip = ifd.height;
+        }
+        int blocksNeeded = ifd.tileWidth > 0
+            ? ((ifd.width + ifd.tileWidth - 1) / ifd.tileWidth) * ((ifd.height + ifd.tileHeight - 1) / ifd.tileHeight)
+            : (ifd.height + ifd.rowsPerStrip - 1) / ifd.rowsPerStrip;
+        if (ifd.offsets.length < blocksNeeded) throw new IOException("TIFF has too few strips or tiles");
+
+        // A block the cache can't hold would be decoded again for every map tile
+        long blockBytes = ifd.tileWidth > 0
+            ? 4L * ifd.tileWidth * ifd.tileHeight
+            : 4L * ifd.width * (ifd.compression == COMPRESSION_NONE ? 1 : ifd.rowsPerStrip);
+        if (blockBytes > DemBlockCache.shared().maxBlockBytes()) {
+            throw new IOException("TIFF " + (ifd.tileWidth > 0 ? "tiles" : "strips") + " of "
+                + (blockBytes >> 20) + " MB decoded are too large to read natively; rewrite the file tiled");
+        }
+    }
+
+    private static Georef georef(Ifd ifd) throws IOException {
+        double originX;
+        double originY;
+        double resX;
+        double resY;
+        if (ifd.transformation != null && ifd.transformation.length >= 16) {
+            double[] m = ifd.transformation;
+            if (m[1] != 0 || m[4] != 0) throw new IOException("Rotated GeoTIFFs are not supported");
+            resX = m[0];
+            resY = m[5];
+            originX = m[3];
+            originY = m[7];
+        } else if (ifd.pixelScale != null && ifd.pixelScale.length >= 2
+                && ifd.tiepoint != null && ifd.tiepoint.length >= 6) {
+            resX = ifd.pixelScale[0];
+            resY = -ifd.pixelScale[1];
+            originX = ifd.tiepoint[3] - ifd.tiepoint[0] * resX;
+            originY = ifd.tiepoint[4] - ifd.tiepoint[1] * resY;
+        } else {
+            throw new IOException("GeoTIFF has no georeferencing");
+        }
+        if (resX == 0 || resY == 0 || Double.isNaN(resX) || Double.isNaN(resY)) {
+            throw new IOException("GeoTIFF has a zero pixel size");
+        }
+
+        if (geoKey(ifd, GT_RASTER_TYPE, 1) == RASTER_PIXEL_IS_POINT) {
+            // Tiepoint is the centre of the pixel; the grid here is by corners
+            originX -= resX / 2;
+            originY -= resY / 2;
+        }
+
+        long modelType = geoKey(ifd, GT_MODEL_TYPE, 0);
+        boolean mercator = false;
+        if (modelType == MODEL_TYPE_PROJECTED) {
+            long code = geoKey(ifd, PROJECTED_CS_TYPE, 0);
+            mercator = code == 3857 || code == 3785 || code == 900913 || code == 102100 || code == 102113;
+            if (!mercator) {
+                throw new IOException("Projection EPSG:" + code + " is not supported natively");
+            }
+        } else if (modelType != MODEL_TYPE_GEOGRAPHIC) {
+            // No GeoKeys: accept what looks like degrees
+            double right = originX + resX * ifd.width;
+            double bottom = originY + resY * ifd.height;
+            if (Math.abs(originX) > 360 || Math.abs(right) > 360 || Math.abs(originY) > 90.5 || Math.abs(bottom) > 90.5) {
+                throw new IOException("GeoTIFF has no usable coordinate system");
+            }
+        }
+        return new Georef(originX, originY, resX, resY, mercator);
+    }
+
+    private static long geoKey(Ifd ifd, int key, long fallback) {
+        long[] k = ifd.geoKeys;
+        if (k == null || k.length < 4) return fallback;
+        int count = (int) k[3];
+        for (int i = 0; i < count && 4 + i * 4 + 3 < k.length; i++) {
+            int base = 4 + i * 4;
+            // Only inline SHORT values (location 0) are needed here
+            if (k[base] == key && k[base + 1] == 0) return k[base + 3];
+        }
+        return fallback;
+    }
+
+    private static float parseNoData(String value) {
+        if (value == null) return Float.NaN;
+        String v = value.trim();
+        if (v.isEmpty() || v.equalsIgnoreCase("nan")) return Float.NaN;
+        try {
+            return (float) Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    @Override
+    protected float[] decodeBlock(int bx, int by) throws IOException {
+        if (windowed) return decodeWindow(by);
+        float[] out = new float[blockWidth * blockHeight];
+        Arrays.fill(out, Float.NaN);
+
+        // With planar data the first plane's blocks come first, so the index is the same
+        int index = by * blocksAcross + bx;
+        long offset = ifd.offsets[index];
+        long byteCount = ifd.byteCounts[index];
+        // Sparse files leave empty blocks out
+        if (byteCount == 0 || offset == 0) return out;
+        if (byteCount > Integer.MAX_VALUE) throw new IOException("TIFF block too large");
+
+        int spp = ifd.planar == 1 ? ifd.samplesPerPixel : 1;
+        int bytesPerSample = ifd.bitsPerSample / 8;
+        int rowBytes = blockWidth * spp * bytesPerSample;
+        int rows = ifd.tileWidth > 0 ? blockHeight : Math.min(blockHeight, height - by * blockHeight);
+
+        byte[] raw = new byte[(int) byteCount];
+        mapped.slice(offset, raw.length).get(raw);
+        byte[] data = decompress(raw, rowBytes * rows);
+        // A short block (truncated file) leaves its missing rows as no data
+        rows = Math.min(rows, data.length / rowBytes);
+
+        ByteOrder dataOrder = order;
+        if (ifd.predictor == 2) {
+            undoHorizontalPredictor(data, rows, rowBytes, spp, bytesPerSample);
+        } else if (ifd.predictor == 3) {
+            data = undoFloatingPointPredictor(data, rows, rowBytes, spp, bytesPerSample);
+            dataOrder = ByteOrder.BIG_ENDIAN;
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(data).order(dataOrder);
+        int cols = Math.min(blockWidth, width - bx * blockWidth);
+        toFloats(buf, rows, rowBytes, spp * bytesPerSample, cols, out, 0);
+        return out;
+    }
+
+    /**
+     * Rows by * blockHeight onwards of an uncompressed stripped image, read row by row from
+     * the mapping; a window may span strips. Rows of sparse or truncated strips stay NaN.
+     */
+    private float[] decodeWindow(int by) throws IOException {
+        float[] out = new float[blockWidth * blockHeight];
+        Arrays.fill(out, Float.NaN);
+
+        int spp = ifd.planar == 1 ? ifd.samplesPerPixel : 1;
+        int bytesPerSample = ifd.bitsPerSample / 8;
+        int rowBytes = width * spp * bytesPerSample;
+        int first = by * blockHeight;
+        int rows = Math.min(blockHeight, height - first);
+        byte[] row = new byte[rowBytes];
+        for (int r = 0; r < rows; r++) {
+            int y = first + r;
+            int strip = y / ifd.rowsPerStrip;
+            long within = (long) (y - strip * ifd.rowsPerStrip) * rowBytes;
+            long offset = ifd.offsets[strip];
+            if (offset == 0 || within + rowBytes > ifd.byteCounts[strip]) continue;
+            mapped.slice(offset + within, rowBytes).get(row);
+
+            byte[] data = row;
+            ByteOrder dataOrder = order;
+            if (ifd.predictor == 2) {
+                undoHorizontalPredictor(row, 1, rowBytes, spp, bytesPerSample);
+            } else if (ifd.predictor == 3) {
+                data = undoFloatingPointPredictor(row, 1, rowBytes, spp, bytesPerSample);
+                dataOrder = ByteOrder.BIG_ENDIAN;
+            }
+            toFloats(ByteBuffer.wrap(data).order(dataOrder), 1, rowBytes, spp * bytesPerSample, width, out, r * blockWidth);
+        }
+        return out;
+    }
+
+    /** Band 1 of {@code rows} decoded rows into {@code out} from {@code outStart}, skipping no data */
+    private void toFloats(ByteBuffer buf, int rows, int rowBytes, int pixelBytes, int cols, float[] out, int outStart) {
+        for (int r = 0; r < rows; r++) {
+            int rowStart = r * rowBytes;
+            int outRow = outStart + r * blockWidth;
+            for (int c = 0; c < cols; c++) {
+                float v = sample(buf, rowStart + c * pixelBytes);
+                if (v != noData && !Float.isInfinite(v)) out[outRow + c] = v;
+            }
+        }
+    }
+
+    private float sample(ByteBuffer buf, int pos) {
+        switch (ifd.sampleFormat) {
+            case 3:
+                return ifd.bitsPerSample == 32 ? buf.getFloat(pos) : (float) buf.getDouble(pos);
+            case 2:
+                switch (ifd.bitsPerSample) {
+                    case 8: return buf.get(pos);
+                    case 16: return buf.getShort(pos);
+                    case 32: return buf.getInt(pos);
+                    default: return buf.getLong(pos);
+                }
+            default:
+                switch (ifd.bitsPerSample) {
+                    case 8: return buf.get(pos) & 0xFF;
+                    case 16: return buf.getShort(pos) & 0xFFFF;
+                    default: return buf.getInt(pos) & 0xFFFFFFFFL;
+                }
+        }
+    }
+
+    private byte[] decompress(byte[] raw, int expected) throws IOException {
+        switch (ifd.compression) {
+            case COMPRESSION_NONE:
+                return raw;
+            case COMPRESSION_LZW:
+                return lzw(raw, expected);
+            case COMPRESSION_PACKBITS:
+                return packBits(raw, expected);
+            default:
+                return inflate(raw, expected);
+        }
+    }
+
+    /** Predictor 2: each sample is stored as the difference to the one on its left */
+    private void undoHorizontalPredictor(byte[] data, int rows, int rowBytes, int spp, int bytesPerSample) {
+        ByteBuffer buf = ByteBuffer.wrap(data).order(order);
+        int samples = rowBytes / bytesPerSample;
+        for (int r = 0; r < rows; r++) {
+            int base = r * rowBytes;
+            for (int i = spp; i < samples; i++) {
+                int pos = base + i * bytesPerSample;
+                int prev = pos - spp * bytesPerSample;
+                switch (bytesPerSample) {
+                    case 1:
+                        data[pos] += data[prev];
+                        break;
+                    case 2:
+                        buf.putShort(pos, (short) (buf.getShort(pos) + buf.getShort(prev)));
+                        break;
+                    case 4:
+                        buf.putInt(pos, buf.getInt(pos) + buf.getInt(prev));
+                        break;
+                    default:
+                        buf.putLong(pos, buf.getLong(pos) + buf.getLong(prev));
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Predictor 3: each row holds the bytes of its floats split into planes, most
+     * significant first, byte-wise differenced. Returns big-endian floats.
+     */
+    private static byte[] undoFloatingPointPredictor(byte[] data, int rows, int rowBytes, int spp, int bytesPerSample) {
+        byte[] out = new byte[data.length];
+        int samples = rowBytes / bytesPerSample;
+        for (int r = 0; r < rows; r++) {
+            int base = r * rowBytes;
+            for (int i = base + spp; i < base + rowBytes; i++) data[i] += data[i - spp];
+            for (int s = 0; s < samples; s++) {
+                for (int b = 0; b < bytesPerSample; b++) {
+                    out[base + s * bytesPerSample + b] = data[base + b * samples + s];
+                }
+            }
+        }
+        return out;
+    }
+
+    private static byte[] inflate(byte[] raw, int expected) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(raw);
+            byte[] out = new byte[expected];
+            int n = 0;
+            while (n < expected && !inflater.finished()) {
+                int read = inflater.inflate(out, n, expected - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            return n == expected ? out : Arrays.copyOf(out, n);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt Deflate block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] packBits(byte[] raw, int expected) {
+        byte[] out = new byte[expected];
+        int n = 0;
+        int i = 0;
+        while (i < raw.length && n < expected) {
+            int header = raw[i++];
+            if (header >= 0) {
+                int count = Math.min(header + 1, Math.min(expected - n, raw.length - i));
+                System.arraycopy(raw, i, out, n, count);
+                i += header + 1;
+                n += count;
+            } else if (header != -128 && i < raw.length) {
+                int count = Math.min(1 - header, expected - n);
+                Arrays.fill(out, n, n + count, raw[i++]);
+                n += count;
+            }
+        }
+        return n == expected ? out : Arrays.copyOf(out, n);
+    }
+
+    /** TIFF flavour of LZW: MSB-first codes of 9 to 12 bits, widened one code early */
+    private static byte[] lzw(byte[] in, int expected) {
+        final int clear = 256;
+        final int eoi = 257;
+        int[] prefix = new int[4096];
+        byte[] suffix = new byte[4096];
+        byte[] first = new byte[4096];
+        int[] length = new int[4096];
+        for (int i = 0; i < 256; i++) {
+            suffix[i] = (byte) i;
+            first[i] = (byte) i;
+            length[i] = 1;
+        }
+
+        byte[] out = new byte[expected];
+        int n = 0;
+        long bitPos = 0;
+        long totalBits = (long) in.length * 8;
+        int codeLen = 9;
+        int next = 258;
+        int old = -1;
+        while (n < expected && bitPos + codeLen <= totalBits) {
+            int p = (int) (bitPos >>> 3);
+            int window = ((in[p] & 0xFF) << 16)
+                | ((p + 1 < in.length ? in[p + 1] & 0xFF : 0) << 8)
+                | (p + 2 < in.length ? in[p + 2] & 0xFF : 0);
+            int code = (window >>> (24 - (int) (bitPos & 7) - codeLen)) & ((1 << codeLen) - 1);
+            bitPos += codeLen;
+
+            if (code == eoi) break;
+            if (code == clear) {
+                codeLen = 9;
+                next = 258;
+                old = -1;
+                continue;
+            }
+            if (old == -1) {
+                if (code >= 256) break;
+                out[n++] = (byte) code;
+                old = code;
+                continue;
+            }
+            if (code > next || next >= 4096) break;
+            if (code == next) {
+                // The code being defined right now: old's string plus its own first byte
+                add(prefix, suffix, first, length, next, old, first[old]);
+            } else {
+                add(prefix, suffix, first, length, next, old, first[code]);
+            }
+            next++;
+
+            int len = length[code];
+            int end = Math.min(n + len, expected);
+            int c = code;
+            for (int pos = n + len - 1; pos >= n; pos--) {
+                if (pos < end) out[pos] = suffix[c];
+                c = prefix[c];
+            }
+            n = end;
+            old = code;
+            if (next >= (1 << codeLen) - 1 && codeLen < 12) codeLen++;
+        }
+        return n == expected ? out : Arrays.copyOf(out, n);
+    }
+
+    private static void add(int[] prefix, byte[] suffix, byte[] first, int[] length,
+                            int code, int prev, byte last) {
+        prefix[code] = prev;
+        suffix[code] = last;
+        first[code] = first[prev];
+        length[code] = length[prev] + 1;
+    }
+
+    /** Reads IFDs and tag values of a classic or BigTIFF file */
+    private static final class Reader {
+        private final MappedFile mapped;
+        private final ByteOrder order;
+        private final boolean bigTiff;
+
+        Reader(MappedFile mapped, ByteOrder order, boolean bigTiff) {
+            this.mapped = mapped;
+            this.order = order;
+            this.bigTiff = bigTiff;
+        }
+
+        Ifd readIfd(long offset, long[] nextOut) throws IOException {
+            int countBytes = bigTiff ? 8 : 2;
+            int entryBytes = bigTiff ? 20 : 12;
+            ByteBuffer head = mapped.slice(offset, countBytes).order(order);
+            long count = bigTiff ? head.getLong(0) : head.getShort(0) & 0xFFFF;
+            if (count <= 0 || count > 4096) throw new IOException("Corrupt TIFF directory");
+            ByteBuffer entries = mapped.slice(offset + countBytes, (int) count * entryBytes + (bigTiff ? 8 : 4)).order(order);
+
+            Ifd ifd = new Ifd();
+            for (int i = 0; i < count; i++) {
+                int e = i * entryBytes;
+                int tag = entries.getShort(e) & 0xFFFF;
+                int type = entries.getShort(e + 2) & 0xFFFF;
+                long n = bigTiff ? entries.getLong(e + 4) : entries.getInt(e + 4) & 0xFFFFFFFFL;
+                int size = typeSize(type);
+                if (size == 0 || n <= 0) continue;
+                long bytes = n * size;
+                int inline = bigTiff ? 8 : 4;
+                int valuePos = e + (bigTiff ? 12 : 8);
+                long dataOffset = bigTiff ? entries.getLong(valuePos) : entries.getInt(valuePos) & 0xFFFFFFFFL;
+                if (bytes > Integer.MAX_VALUE || (bytes > inline && dataOffset + bytes > mapped.size())) {
+                    throw new IOException("Corrupt TIFF tag " + tag);
+                }
+                ByteBuffer value;
+                if (bytes <= inline) {
+                    ByteBuffer dup = entries.duplicate();
+                    dup.position(valuePos);
+                    dup.limit(valuePos + (int) bytes);
+                    value = dup.slice().order(order);
+                } else {
+                    value = mapped.slice(dataOffset, (int) bytes).order(order);
+                }
+                apply(ifd, tag, type, (int) n, value);
+            }
+            int nextPos = (int) count * entryBytes;
+            nextOut[0] = bigTiff ? entries.getLong(nextPos) : entries.getInt(nextPos) & 0xFFFFFFFFL;
+            return ifd;
+        }
+
+        private static void apply(Ifd ifd, int tag, int type, int n, ByteBuffer value) {
+            switch (tag) {
+                case NEW_SUBFILE_TYPE: ifd.subfileType = longs(type, n, value)[0]; break;
+                case IMAGE_WIDTH: ifd.width = (int) longs(type, n, value)[0]; break;
+                case IMAGE_LENGTH: ifd.height = (int) longs(type, n, value)[0]; break;
+                case BITS_PER_SAMPLE: ifd.bitsPerSample = (int) longs(type, n, value)[0]; break;
+                case COMPRESSION: ifd.compression = (int) longs(type, n, value)[0]; break;
+                case SAMPLES_PER_PIXEL: ifd.samplesPerPixel = (int) longs(type, n, value)[0]; break;
+                case ROWS_PER_STRIP: ifd.rowsPerStrip = (int) Math.min(Integer.MAX_VALUE, longs(type, n, value)[0]); break;
+                case PLANAR_CONFIGURATION: ifd.planar = (int) longs(type, n, value)[0]; break;
+                case PREDICTOR: ifd.predictor = (int) longs(type, n, value)[0]; break;
+                case TILE_WIDTH: ifd.tileWidth = (int) longs(type, n, value)[0]; break;
+                case TILE_LENGTH: ifd.tileHeight = (int) longs(type, n, value)[0]; break;
+                case SAMPLE_FORMAT: ifd.sampleFormat = (int) longs(type, n, value)[0]; break;
+                case STRIP_OFFSETS:
+                case TILE_OFFSETS:
+                    ifd.offsets = longs(type, n, value);
+                    break;
+                case STRIP_BYTE_COUNTS:
+                case TILE_BYTE_COUNTS:
+                    ifd.byteCounts = longs(type, n, value);
+                    break;
+                case MODEL_PIXEL_SCALE: ifd.pixelScale = doubles(type, n, value); break;
+                case MODEL_TIEPOINT: ifd.tiepoint = doubles(type, n, value); break;
+                case MODEL_TRANSFORMATION: ifd.transformation = doubles(type, n, value); break;
+                case GEO_KEY_DIRECTORY: ifd.geoKeys = longs(type, n, value); break;
+                case GDAL_NODATA: ifd.noData = ascii(n, value); break;
+                default: break;
+            }
+        }
+
+        private static int typeSize(int type) {
+            switch (type) {
+                case 1: case 2: case 6: case 7: return 1;
+                case 3: case 8: return 2;
+                case 4: case 9: case 11: case 13: return 4;
+                case 5: case 10: case 12: case 16: case 17: case 18: return 8;
+                default: return 0;
+            }
+        }
+
+        private static long[] longs(int type, int n, ByteBuffer v) {
+            long[] out = new long[n];
+            if (type == 5 || type == 10 || type == 11 || type == 12) {
+                double[] d = doubles(type, n, v);
+                for (int i = 0; i < n; i++) out[i] = (long) d[i];
+                return out;
+            }
+            for (int i = 0; i < n; i++) {
+                switch (type) {
+                    case 1: case 7: out[i] = v.get(i) & 0xFF; break;
+                    case 6: out[i] = v.get(i); break;
+                    case 3: out[i] = v.getShort(i * 2) & 0xFFFF; break;
+                    case 8: out[i] = v.getShort(i * 2); break;
+                    case 4: case 13: out[i] = v.getInt(i * 4) & 0xFFFFFFFFL; break;
+                    case 9: out[i] = v.getInt(i * 4); break;
+                    case 16: case 17: case 18: out[i] = v.getLong(i * 8); break;
+                }
+            }
+            return out;
+        }
+
+        private static double[] doubles(int type, int n, ByteBuffer v) {
+            double[] out = new double[n];
+            if (type != 5 && type != 10 && type != 11 && type != 12) {
+                long[] l = longs(type, n, v);
+                for (int i = 0; i < n; i++) out[i] = l[i];
+                return out;
+            }
+            for (int i = 0; i < n; i++) {
+                switch (type) {
+                    case 11: out[i] = v.getFloat(i * 4); break;
+                    case 12: out[i] = v.getDouble(i * 8); break;
+                    case 5: out[i] = (v.getInt(i * 8) & 0xFFFFFFFFL) / (double) Math.max(1L, v.getInt(i * 8 + 4) & 0xFFFFFFFFL); break;
+                    case 10: out[i] = v.getInt(i * 8) / (double) (v.getInt(i * 8 + 4) == 0 ? 1 : v.getInt(i * 8 + 4)); break;
+                }
+            }
+            return out;
+        }
+
+        private static String ascii(int n, ByteBuffer v) {
+            StringBuilder sb = new StringBuilder(n);
+            for (int i = 0; i < n; i++) {
+                byte b = v.get(i);
+                if (b == 0) break;
+                sb.append((char) (b & 0xFF));
+            }
+            return sb.toString();
+        }
+    }
+}
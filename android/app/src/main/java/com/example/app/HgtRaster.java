@@ -0,0 +1,69 @@
+package com.example.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SRTM .hgt tile: a square grid of big-endian int16 elevations covering the one degree
+ * cell named by the file (N37E012.hgt), rows north to south. Samples sit on the cell's
+ * edges, so the grid overlaps its neighbours by one row and column.
+ */
+final class HgtRaster extends DemRaster {
+
+    private static final int BLOCK = 256;
+    private static final short NO_DATA = -32768;
+    private static final Pattern CELL = Pattern.compile("([NS])(\\d{1,2})([EW])(\\d{1,3})");
+
+    private final MappedFile mapped;
+    private final int size;
+
+    private HgtRaster(MappedFile mapped, int size, Georef georef) {
+        super(size, size, BLOCK, BLOCK, georef);
+        this.mapped = mapped;
+        this.size = size;
+    }
+
+    /** {@code mapped} stays open as long as the raster is used; the caller closes it */
+    static HgtRaster open(MappedFile mapped) throws IOException {
+        long samples = mapped.size() / 2;
+        int size = (int) Math.round(Math.sqrt(samples));
+        if (size < 2 || (long) size * size * 2 != mapped.size()) {
+            throw new IOException("Invalid HGT file size: " + mapped.size() + " bytes");
+        }
+        Matcher m = CELL.matcher(mapped.file().getName().toUpperCase(Locale.US));
+        if (!m.find()) {
+            throw new IOException("HGT file name must name its cell, e.g. N37E012.hgt");
+        }
+        int lat = Integer.parseInt(m.group(2)) * (m.group(1).equals("N") ? 1 : -1);
+        int lon = Integer.parseInt(m.group(4)) * (m.group(3).equals("E") ? 1 : -1);
+
+        // Sample centres are on whole degrees: shift the grid by half a pixel
+        double res = 1.0 / (size - 1);
+        Georef georef = new Georef(lon - res / 2, lat + 1 + res / 2, res, -res, false);
+        return new HgtRaster(mapped, size, georef);
+    }
+
+    @Override
+    protected float[] decodeBlock(int bx, int by) throws IOException {
+        float[] out = new float[BLOCK * BLOCK];
+        Arrays.fill(out, Float.NaN);
+        int col0 = bx * BLOCK;
+        int cols = Math.min(BLOCK, size - col0);
+        int rows = Math.min(BLOCK, size - by * BLOCK);
+        for (int r = 0; r < rows; r++) {
+            long offset = ((long) (by * BLOCK + r) * size + col0) * 2;
+            ByteBuffer row = mapped.slice(offset, cols * 2).order(ByteOrder.BIG_ENDIAN);
+            for (int c = 0; c < cols; c++) {
+                short v = row.getShort(c * 2);
+                // Voids, plus the odd garbage value in older SRTM releases
+                if (v != NO_DATA && v >= -1000 && v <= 9000) out[r * BLOCK + c] = v;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.app;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reader for MBTiles (https://github.com/mapbox/mbtiles-spec): a SQLite database with a
+ * tiles(zoom_level, tile_column, tile_row, tile_data) table, rows in TMS order. Lookups go
+ * through the table's (z, x, y) index, so they are a B-tree seek rather than a directory
+ * walk. SQLiteDatabase pools connections, so concurrent reads are fine.
+ */
+final class MBTilesArchive implements TileArchive {
+
+    private static final String TILE_QUERY =
+        "SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?";
+
+    private final File file;
+    private final SQLiteDatabase db;
+    private final JSObject metadata = new JSObject();
+
+    MBTilesArchive(File file) throws IOException {
+        this.file = file;
+        try {
+            this.db = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null,
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot open " + file.getName() + ": " + e.getMessage());
+        }
+
+        try (Cursor c = db.rawQuery("SELECT name, value FROM metadata", null)) {
+            while (c.moveToNext()) {
+                String name = c.getString(0);
+                // "json" holds the vector layer list, which can be large and isn't needed here
+                if (name != null && !name.equals("json")) metadata.put(name, c.getString(1));
+            }
+        } catch (RuntimeException e) {
+            db.close();
+            throw new IOException("Not an MBTiles file: " + file.getName());
+        }
+    }
+
+    @Override
+    public byte[] getTile(int z, int x, int y) throws IOException {
+        if (z < 0 || z > 30) return null;
+        long tmsY = (1L << z) - 1 - y;
+        String[] args = { Integer.toString(z), Integer.toString(x), Long.toString(tmsY) };
+        try (Cursor c = db.rawQuery(TILE_QUERY, args)) {
+            return c.moveToFirst() ? c.getBlob(0) : null;
+        } catch (RuntimeException e) {
+            throw new IOException("MBTiles read failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public JSObject describe() {
+        JSObject ret = new JSObject();
+        ret.put("format", "mbtiles");
+        ret.put("file", file.getAbsolutePath());
+        ret.put("metadata", metadata);
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        // Reads still in flight hold their own reference; the database closes after them
+        db.close();
+    }
+}
@@ -26,8 +26,11 @@ public class MainActivity extends BridgeActivity {
         registerPlugin(UdpPlugin.class);
         registerPlugin(NativeUploaderPlugin.class);
         registerPlugin(ZipFolderPlugin.class);
+        registerPlugin(SessionStorePlugin.class);
+        registerPlugin(ManifestStorePlugin.class);
         registerPlugin(MemberActionPlugin.class);
         registerPlugin(OfflineTileServerPlugin.class);
+        registerPlugin(TileCachePlugin.class);
         registerPlugin(ScreenshotPlugin.class);
 
         super.onCreate(savedInstanceState);
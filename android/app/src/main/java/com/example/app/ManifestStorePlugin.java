@@ -0,0 +1,585 @@
+package com.example.app;
+
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Session manifest kept in memory and indexed by layerId and path.
+ *
+ * The stored manifest (HSC-SESSIONS/manifest.json, same file and format the JS store wrote) is
+ * read once; the working ("temp") manifest and the untracked staged files are journaled to
+ * manifest.journal in batches, one fsync per call, and snapshotted to manifest.snapshot.json
+ * every {@link #SNAPSHOT_RECORDS} records. finalizeSave writes manifest.json with
+ * write-temp + fsync + rename, so a crash leaves either the old or the new manifest.
+ *
+ * Deletions are decided here but executed by the caller (NativeUploader.deleteFile), which
+ * knows about shared blobs; they are returned as deletePaths.
+ */
+@CapacitorPlugin(name = "ManifestStore")
+public class ManifestStorePlugin extends Plugin {
+
+    private static final String TAG = "ManifestStore";
+
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String JOURNAL_FILE = "manifest.journal";
+    private static final String SNAPSHOT_FILE = "manifest.snapshot.json";
+    // Written by the JS store before this service existed; folded in on first load
+    private static final String LEGACY_UNTRACKED_FILE = "untracked.json";
+
+    private static final int SNAPSHOT_RECORDS = 200;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    // All state below is guarded by `this`
+    private File dir;
+    private AppendLog journal;
+    private final LinkedHashMap<String, JSONObject> stored = new LinkedHashMap<>();
+    private final LinkedHashMap<String, JSONObject> temp = new LinkedHashMap<>();
+    // path or absolutePath -> layerId, over temp and stored entries
+    private final Map<String, String> tempByPath = new HashMap<>();
+    private final Map<String, String> storedByPath = new HashMap<>();
+    // layerId -> absolutePath of staged files not yet covered by a saved manifest
+    private final LinkedHashMap<String, String> untracked = new LinkedHashMap<>();
+
+    @Override
+    public void load() {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                open();
+            } catch (Exception e) {
+                Log.e(TAG, "Manifest load failed: " + e.getMessage(), e);
+            } finally {
+                loaded.countDown();
+            }
+        });
+    }
+
+    /**
+     * ops: [{op: "upsert", entry}, {op: "setColor", layerId, color},
+     *       {op: "markStagedDelete", layerId}, {op: "remove", layerId}]
+     * Resolves with the resulting temp entries of the touched layers (null if removed) and
+     * deletePaths: staged files that were dropped and should be deleted now.
+     */
+    @PluginMethod
+    public void apply(PluginCall call) {
+        JSArray ops = call.getArray("ops");
+        if (ops == null || ops.length() == 0) {
+            call.reject("ops is required");
+            return;
+        }
+
+        runJournaled(call, () -> {
+            List<String> records = new ArrayList<>();
+            JSArray deletePaths = new JSArray();
+            JSObject entries = new JSObject();
+            for (int i = 0; i < ops.length(); i++) {
+                JSONObject op = ops.getJSONObject(i);
+                String layerId = applyOp(op, records, deletePaths);
+                if (layerId != null) {
+                    JSONObject e = temp.get(layerId);
+                    entries.put(layerId, e != null ? e : JSONObject.NULL);
+                }
+            }
+            commit(records);
+
+            JSObject ret = new JSObject();
+            ret.put("entries", entries);
+            ret.put("deletePaths", deletePaths);
+            return ret;
+        });
+    }
+
+    @PluginMethod
+    public void getTemp(PluginCall call) {
+        run(call, () -> entriesResult(temp));
+    }
+
+    @PluginMethod
+    public void getStored(PluginCall call) {
+        run(call, () -> entriesResult(stored));
+    }
+
+    /**
+     * Looks up one entry by {layerId} or {path} (logical or absolute), in the temp manifest
+     * first, then the stored one.
+     */
+    @PluginMethod
+    public void getEntry(PluginCall call) {
+        String layerId = call.getString("layerId");
+        String path = call.getString("path");
+        run(call, () -> {
+            JSONObject tempEntry = null;
+            JSONObject storedEntry = null;
+            if (layerId != null) {
+                tempEntry = temp.get(layerId);
+                storedEntry = stored.get(layerId);
+            } else if (path != null) {
+                String t = tempByPath.get(path);
+                String s = storedByPath.get(path);
+                tempEntry = t != null ? temp.get(t) : null;
+                storedEntry = s != null ? stored.get(s) : null;
+            }
+            JSObject ret = new JSObject();
+            ret.put("temp", tempEntry != null ? tempEntry : JSONObject.NULL);
+            ret.put("stored", storedEntry != null ? storedEntry : JSONObject.NULL);
+            return ret;
+        });
+    }
+
+    /**
+     * Makes the temp manifest the stored one: staged_delete entries are dropped, staged become
+     * saved, entries are sorted by size, and manifest.json is replaced atomically. deletePaths
+     * lists the staged_delete files and saved files no longer in the session.
+     *
+     * Each path is one reference to release: a layer's file is listed once however many of
+     * the two manifests hold it. The same path can still appear twice when two layers share
+     * a deduplicated blob, since each of them holds its own reference.
+     */
+    @PluginMethod
+    public void finalizeSave(PluginCall call) {
+        runJournaled(call, () -> {
+            JSArray deletePaths = new JSArray();
+            List<JSONObject> next = new ArrayList<>();
+            for (JSONObject e : temp.values()) {
+                String status = e.optString("status");
+                if ("staged_delete".equals(status)) {
+                    deletePaths.put(e.optString("absolutePath"));
+                    continue;
+                }
+                JSONObject copy = new JSONObject(e.toString());
+                if ("staged".equals(status)) copy.put("status", "saved");
+                next.add(copy);
+            }
+
+            for (Map.Entry<String, JSONObject> e : stored.entrySet()) {
+                if (!"saved".equals(e.getValue().optString("status"))) continue;
+                String path = e.getValue().optString("absolutePath");
+                JSONObject tempEntry = temp.get(e.getKey());
+                // A temp entry with the same file is the same reference, already handled
+                // above; one with another file replaced it, so the stored file goes
+                if (tempEntry == null || !path.equals(tempEntry.optString("absolutePath"))) {
+                    deletePaths.put(path);
+                }
+            }
+
+            Collections.sort(next, (a, b) -> Double.compare(a.optDouble("size", 0), b.optDouble("size", 0)));
+
+            JSONArray arr = new JSONArray();
+            for (JSONObject e : next) {
+                arr.put(e);
+            }
+            writeAtomically(new File(dir, MANIFEST_FILE), arr.toString(2));
+
+            stored.clear();
+            storedByPath.clear();
+            for (JSONObject e : next) {
+                putIndexed(stored, storedByPath, e);
+            }
+            // Everything staged is now owned by the saved manifest
+            untracked.clear();
+            snapshot();
+
+            JSObject ret = new JSObject();
+            ret.put("entries", arr);
+            ret.put("deletePaths", deletePaths);
+            return ret;
+        });
+    }
+
+    /**
+     * Replaces the temp manifest with the saved entries of the stored manifest.
+     */
+    @PluginMethod
+    public void restore(PluginCall call) {
+        runJournaled(call, () -> {
+            List<String> records = new ArrayList<>();
+            records.add("{\"t\":\"reset\"}");
+            temp.clear();
+            tempByPath.clear();
+            for (JSONObject e : stored.values()) {
+                if (!"saved".equals(e.optString("status"))) continue;
+                JSONObject copy = new JSONObject(e.toString());
+                putIndexed(temp, tempByPath, copy);
+                records.add(putRecord(copy));
+            }
+            commit(records);
+            return entriesResult(temp);
+        });
+    }
+
+    @PluginMethod
+    public void getUntracked(PluginCall call) {
+        run(call, () -> {
+            JSArray files = new JSArray();
+            for (Map.Entry<String, String> e : untracked.entrySet()) {
+                JSObject f = new JSObject();
+                f.put("layerId", e.getKey());
+                f.put("absolutePath", e.getValue());
+                files.put(f);
+            }
+            JSObject ret = new JSObject();
+            ret.put("files", files);
+            return ret;
+        });
+    }
+
+    @PluginMethod
+    public void clearUntracked(PluginCall call) {
+        runJournaled(call, () -> {
+            untracked.clear();
+            snapshot();
+            return new JSObject();
+        });
+    }
+
+    private interface Action {
+        JSObject run() throws Exception;
+    }
+
+    private void run(PluginCall call, Action action) {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                loaded.await();
+                JSObject ret;
+                synchronized (this) {
+                    if (journal == null) throw new IllegalStateException("Manifest store unavailable");
+                    ret = action.run();
+                }
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Manifest operation failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * {@link #run} for actions that change temp or untracked: if the action fails, e.g. its
+     * journal append, memory is put back to match what the journal holds.
+     */
+    private void runJournaled(PluginCall call, Action action) {
+        run(call, () -> {
+            LinkedHashMap<String, JSONObject> tempBefore = new LinkedHashMap<>(temp);
+            Map<String, String> tempByPathBefore = new HashMap<>(tempByPath);
+            LinkedHashMap<String, String> untrackedBefore = new LinkedHashMap<>(untracked);
+            try {
+                return action.run();
+            } catch (Exception e) {
+                temp.clear();
+                temp.putAll(tempBefore);
+                tempByPath.clear();
+                tempByPath.putAll(tempByPathBefore);
+                untracked.clear();
+                untracked.putAll(untrackedBefore);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Applies one op to the in-memory state, adding the journal records it implies.
+     * Returns the layerId whose temp entry the caller should report, or null.
+     */
+    private String applyOp(JSONObject op, List<String> records, JSArray deletePaths) throws Exception {
+        String kind = op.optString("op");
+        switch (kind) {
+            case "upsert": {
+                JSONObject entry = op.getJSONObject("entry");
+                upsert(entry, records);
+                return entry.optString("layerId");
+            }
+            case "setColor": {
+                String layerId = op.optString("layerId");
+                Object color = op.opt("color");
+                JSONObject entry = temp.get(layerId);
+                if (entry != null) {
+                    JSONObject copy = new JSONObject(entry.toString());
+                    copy.put("color", color);
+                    upsert(copy, records);
+                } else if (stored.containsKey(layerId)) {
+                    JSONObject copy = new JSONObject(stored.get(layerId).toString());
+                    copy.put("color", color);
+                    upsert(copy, records);
+                }
+                return layerId;
+            }
+            case "markStagedDelete": {
+                String layerId = op.optString("layerId");
+                markStagedDelete(layerId, records, deletePaths);
+                return layerId;
+            }
+            case "remove": {
+                String layerId = op.optString("layerId");
+                removeTemp(layerId, records);
+                return layerId;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown manifest op: " + kind);
+        }
+    }
+
+    private void upsert(JSONObject entry, List<String> records) {
+        String layerId = entry.optString("layerId");
+        JSONObject previous = temp.get(layerId);
+        boolean wasStaged = previous != null && "staged".equals(previous.optString("status"));
+        String status = entry.optString("status");
+
+        if (previous != null) unindex(tempByPath, previous);
+        putIndexed(temp, tempByPath, entry);
+        records.add(putRecord(entry));
+
+        if ("staged".equals(status) && !wasStaged && !untracked.containsKey(layerId)) {
+            String path = entry.optString("absolutePath");
+            untracked.put(layerId, path);
+            records.add("{\"t\":\"track\",\"id\":" + JSONObject.quote(layerId) + ",\"p\":" + JSONObject.quote(path) + "}");
+        } else if ("saved".equals(status) && wasStaged) {
+            untrack(layerId, records);
+        }
+    }
+
+    private void markStagedDelete(String layerId, List<String> records, JSArray deletePaths) throws Exception {
+        JSONObject storedEntry = stored.get(layerId);
+        boolean savedInStored = storedEntry != null && "saved".equals(storedEntry.optString("status"));
+        JSONObject entry = temp.get(layerId);
+
+        // A saved layer is never deleted right away, only marked until the next save
+        if (savedInStored || (entry != null && "saved".equals(entry.optString("status")))) {
+            JSONObject copy = new JSONObject((entry != null ? entry : storedEntry).toString());
+            copy.put("status", "staged_delete");
+            upsert(copy, records);
+            return;
+        }
+        if (entry != null && "staged".equals(entry.optString("status"))) {
+            deletePaths.put(entry.optString("absolutePath"));
+            untrack(layerId, records);
+            removeTemp(layerId, records);
+        }
+    }
+
+    private void removeTemp(String layerId, List<String> records) {
+        JSONObject previous = temp.remove(layerId);
+        if (previous == null) return;
+        unindex(tempByPath, previous);
+        records.add("{\"t\":\"del\",\"id\":" + JSONObject.quote(layerId) + "}");
+    }
+
+    private void untrack(String layerId, List<String> records) {
+        if (untracked.remove(layerId) != null) {
+            records.add("{\"t\":\"untrack\",\"id\":" + JSONObject.quote(layerId) + "}");
+        }
+    }
+
+    private static String putRecord(JSONObject entry) {
+        return "{\"t\":\"put\",\"e\":" + entry.toString() + "}";
+    }
+
+    private void commit(List<String> records) throws Exception {
+        journal.append(records);
+        if (journal.records() >= SNAPSHOT_RECORDS) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Writes temp + untracked atomically, then empties the journal it now covers.
+     */
+    private void snapshot() throws Exception {
+        JSONArray entries = new JSONArray();
+        for (JSONObject e : temp.values()) {
+            entries.put(e);
+        }
+        JSONObject untrackedJson = new JSONObject();
+        for (Map.Entry<String, String> e : untracked.entrySet()) {
+            untrackedJson.put(e.getKey(), e.getValue());
+        }
+        JSONObject root = new JSONObject();
+        root.put("temp", entries);
+        root.put("untracked", untrackedJson);
+        writeAtomically(new File(dir, SNAPSHOT_FILE), root.toString());
+        // A crash before this point replays records the snapshot already holds, which is harmless
+        journal.truncate();
+    }
+
+    private void open() throws Exception {
+        File docs = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        File base = new File(docs, "HSC-SESSIONS");
+        //noinspection ResultOfMethodCallIgnored
+        base.mkdirs();
+
+        synchronized (this) {
+            dir = base;
+
+            String manifest = readText(new File(dir, MANIFEST_FILE));
+            if (manifest != null) {
+                try {
+                    JSONArray arr = new JSONArray(manifest);
+                    for (int i = 0; i < arr.length(); i++) {
+                        JSONObject e = arr.optJSONObject(i);
+                        if (e != null) putIndexed(stored, storedByPath, e);
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Unreadable manifest.json, starting empty: " + e.getMessage());
+                }
+            }
+
+            // The previous session's temp manifest only matters for its untracked files:
+            // the temp manifest itself starts empty every session
+            String snapshotText = readText(new File(dir, SNAPSHOT_FILE));
+            if (snapshotText != null) {
+                try {
+                    JSONObject u = new JSONObject(snapshotText).optJSONObject("untracked");
+                    if (u != null) {
+                        for (java.util.Iterator<String> it = u.keys(); it.hasNext(); ) {
+                            String id = it.next();
+                            untracked.put(id, u.optString(id));
+                        }
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Unreadable manifest snapshot: " + e.getMessage());
+                }
+            }
+            File journalFile = new File(dir, JOURNAL_FILE);
+            int replayed = AppendLog.replay(journalFile, this::replayRecord);
+
+            File legacy = new File(dir, LEGACY_UNTRACKED_FILE);
+            String legacyText = readText(legacy);
+            if (legacyText != null) {
+                try {
+                    JSONArray files = new JSONObject(legacyText).optJSONArray("files");
+                    for (int i = 0; files != null && i < files.length(); i++) {
+                        JSONObject f = files.optJSONObject(i);
+                        if (f != null) untracked.put(f.optString("layerId"), f.optString("absolutePath"));
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Unreadable untracked.json: " + e.getMessage());
+                }
+            }
+
+            journal = new AppendLog(journalFile);
+            temp.clear();
+            tempByPath.clear();
+            snapshot();
+            if (legacyText != null) {
+                //noinspection ResultOfMethodCallIgnored
+                legacy.delete();
+            }
+            Log.d(TAG, "Loaded " + stored.size() + " saved entries, " + untracked.size()
+                + " untracked files, replayed " + replayed + " journal records");
+        }
+    }
+
+    private void replayRecord(String record) throws Exception {
+        JSONObject r = new JSONObject(record);
+        switch (r.optString("t")) {
+            case "put": {
+                JSONObject e = r.getJSONObject("e");
+                JSONObject previous = temp.get(e.optString("layerId"));
+                if (previous != null) unindex(tempByPath, previous);
+                putIndexed(temp, tempByPath, e);
+                break;
+            }
+            case "del": {
+                JSONObject previous = temp.remove(r.optString("id"));
+                if (previous != null) unindex(tempByPath, previous);
+                break;
+            }
+            case "reset":
+                temp.clear();
+                tempByPath.clear();
+                break;
+            case "track":
+                untracked.put(r.optString("id"), r.optString("p"));
+                break;
+            case "untrack":
+                untracked.remove(r.optString("id"));
+                break;
+            default:
+                Log.w(TAG, "Skipping unknown journal record " + r.optString("t"));
+        }
+    }
+
+    private static void putIndexed(Map<String, JSONObject> byId, Map<String, String> byPath, JSONObject e) {
+        String layerId = e.optString("layerId");
+        byId.put(layerId, e);
+        String path = e.optString("path", "");
+        String absolutePath = e.optString("absolutePath", "");
+        if (!path.isEmpty()) byPath.put(path, layerId);
+        if (!absolutePath.isEmpty()) byPath.put(absolutePath, layerId);
+    }
+
+    private static void unindex(Map<String, String> byPath, JSONObject e) {
+        String layerId = e.optString("layerId");
+        byPath.remove(e.optString("path", ""), layerId);
+        byPath.remove(e.optString("absolutePath", ""), layerId);
+    }
+
+    private static JSObject entriesResult(Map<String, JSONObject> entries) {
+        JSArray arr = new JSArray();
+        for (JSONObject e : entries.values()) {
+            arr.put(e);
+        }
+        JSObject ret = new JSObject();
+        ret.put("entries", arr);
+        return ret;
+    }
+
+    private static void writeAtomically(File target, String text) throws IOException {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Cannot replace " + target.getName());
+        }
+    }
+
+    private static String readText(File file) {
+        if (!file.isFile()) return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int off = 0;
+            int read;
+            while (off < bytes.length && (read = in.read(bytes, off, bytes.length - off)) != -1) {
+                off += read;
+            }
+            return new String(bytes, 0, off, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void resolveOnMain(PluginCall call, JSObject ret) {
+        main.post(() -> call.resolve(ret));
+    }
+
+    private void rejectOnMain(PluginCall call, String msg) {
+        main.post(() -> call.reject(msg));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only file mapped in 1GB segments (a single MappedByteBuffer can't exceed 2GB).
+ * {@link #slice} returns a view into the mapping, so reads are zero-copy; only a range
+ * that straddles two segments falls back to a positional read into a heap buffer.
+ * Slices stay valid after {@link #close}: the mapping lives until it is garbage collected.
+ */
+final class MappedFile implements Closeable {
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    MappedFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            this.channel = raf.getChannel();
+            this.size = channel.size();
+            int count = (int) ((size + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_BYTES;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_BYTES, size - start));
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File file() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * A read-only view of {@code length} bytes at {@code offset}, positioned at 0.
+     */
+    ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IOException("Range " + offset + "+" + length + " outside " + file.getName());
+        }
+        int seg = (int) (offset / SEGMENT_BYTES);
+        long within = offset - seg * SEGMENT_BYTES;
+        if (seg < segments.length && within + length <= segments[seg].capacity()) {
+            ByteBuffer b = segments[seg].duplicate();
+            b.position((int) within);
+            b.limit((int) within + length);
+            return b.slice().asReadOnlyBuffer();
+        }
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, offset + b.position()) < 0) throw new IOException("Unexpected end of " + file.getName());
+        }
+        b.flip();
+        return b.asReadOnlyBuffer();
+    }
+
+    byte[] read(long offset, int length) throws IOException {
+        byte[] out = new byte[length];
+        slice(offset, length).get(out);
+        return out;
+    }
+
+    @Override
+    public void close() {
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.example.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cuts a descendant tile out of a Mapbox Vector Tile (https://github.com/mapbox/vector-tile-spec):
+ * geometry is scaled up by 2^dz, shifted to the child's corner and clipped to the child's
+ * extent plus a small buffer, so lines and polygon edges run cleanly across tile seams.
+ *
+ * Everything except geometry (layer names, keys, values, feature ids and tags, unknown
+ * fields) is copied through byte for byte. Features that end up empty are dropped, and so
+ * are layers left without features.
+ */
+final class MvtSlicer {
+
+    // Tile and layer fields
+    private static final int TILE_LAYERS = 3;
+    private static final int LAYER_FEATURES = 2;
+    private static final int LAYER_EXTENT = 5;
+    private static final int FEATURE_TYPE = 3;
+    private static final int FEATURE_GEOMETRY = 4;
+
+    private static final int TYPE_POINT = 1;
+    private static final int TYPE_LINESTRING = 2;
+    private static final int TYPE_POLYGON = 3;
+
+    private static final int CMD_MOVE_TO = 1;
+    private static final int CMD_LINE_TO = 2;
+    private static final int CMD_CLOSE_PATH = 7;
+
+    // Clip buffer as a fraction of the extent (64 units of 4096, as most tile generators use)
+    private static final int BUFFER_DIVISOR = 64;
+
+    private static final int DEFAULT_EXTENT = 4096;
+
+    private MvtSlicer() {}
+
+    /**
+     * The tile {@code dz} levels below {@code tile}, at column {@code dx} and row {@code dy}
+     * within it (0 .. 2^dz - 1). {@code tile} must not be compressed.
+     */
+    static byte[] slice(byte[] tile, int dz, int dx, int dy) throws IOException {
+        if (dz < 0 || dz > 20) throw new IOException("Unsupported overzoom depth " + dz);
+        ProtoWriter out = new ProtoWriter(tile.length);
+        ProtoReader in = new ProtoReader(tile, 0, tile.length);
+        while (in.hasNext()) {
+            int start = in.pos;
+            int tag = in.readTag();
+            if (tag >>> 3 == TILE_LAYERS && (tag & 7) == 2) {
+                int[] layer = in.readBytesRange();
+                byte[] sliced = sliceLayer(tile, layer[0], layer[1], dz, dx, dy);
+                if (sliced != null) out.writeBytes(TILE_LAYERS, sliced, 0, sliced.length);
+            } else {
+                in.skip(tag);
+                out.writeRaw(tile, start, in.pos - start);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sliceLayer(byte[] buf, int from, int to, int dz, int dx, int dy) throws IOException {
+        // The extent may come after the features, so find it first
+        int extent = DEFAULT_EXTENT;
+        ProtoReader scan = new ProtoReader(buf, from, to);
+        while (scan.hasNext()) {
+            int tag = scan.readTag();
+            if (tag >>> 3 == LAYER_EXTENT && (tag & 7) == 0) {
+                extent = (int) scan.readVarint();
+            } else {
+                scan.skip(tag);
+            }
+        }
+        if (extent <= 0) throw new IOException("Invalid layer extent " + extent);
+
+        Clip clip = new Clip(extent, dz, dx, dy);
+        ProtoWriter out = new ProtoWriter(to - from);
+        int features = 0;
+        ProtoReader in = new ProtoReader(buf, from, to);
+        while (in.hasNext()) {
+            int start = in.pos;
+            int tag = in.readTag();
+            if (tag >>> 3 == LAYER_FEATURES && (tag & 7) == 2) {
+                int[] feature = in.readBytesRange();
+                byte[] sliced = sliceFeature(buf, feature[0], feature[1], clip);
+                if (sliced != null) {
+                    out.writeBytes(LAYER_FEATURES, sliced, 0, sliced.length);
+                    features++;
+                }
+            } else {
+                in.skip(tag);
+                out.writeRaw(buf, start, in.pos - start);
+            }
+        }
+        return features > 0 ? out.toByteArray() : null;
+    }
+
+    private static byte[] sliceFeature(byte[] buf, int from, int to, Clip clip) throws IOException {
+        int type = 0;
+        int[] geometry = null;
+        ProtoReader scan = new ProtoReader(buf, from, to);
+        while (scan.hasNext()) {
+            int tag = scan.readTag();
+            if (tag >>> 3 == FEATURE_TYPE && (tag & 7) == 0) {
+                type = (int) scan.readVarint();
+            } else if (tag >>> 3 == FEATURE_GEOMETRY && (tag & 7) == 2) {
+                geometry = scan.readPackedInts();
+            } else {
+                scan.skip(tag);
+            }
+        }
+        if (geometry == null || type < TYPE_POINT || type > TYPE_POLYGON) return null;
+
+        List<long[]> parts = decode(geometry, type, clip);
+        List<long[]> clipped = new ArrayList<>();
+        if (type == TYPE_POINT) {
+            long[] pts = parts.isEmpty() ? new long[0] : parts.get(0);
+            long[] kept = new long[pts.length];
+            int n = 0;
+            for (int i = 0; i < pts.length; i += 2) {
+                if (clip.inside(pts[i], pts[i + 1])) {
+                    kept[n++] = pts[i];
+                    kept[n++] = pts[i + 1];
+                }
+            }
+            if (n > 0) clipped.add(Arrays.copyOf(kept, n));
+        } else if (type == TYPE_LINESTRING) {
+            for (long[] line : parts) clip.clipLine(line, clipped);
+        } else {
+            boolean exteriorKept = false;
+            for (long[] ring : parts) {
+                long area = signedArea2(ring);
+                if (area == 0) continue;
+                boolean exterior = area > 0;
+                // Holes go with the exterior ring before them
+                if (!exterior && !exteriorKept) continue;
+                long[] out = dedupe(clip.clipRing(ring), true);
+                boolean keep = out.length >= 6 && signedArea2(out) != 0;
+                if (exterior) exteriorKept = keep;
+                if (keep) clipped.add(out);
+            }
+        }
+        if (clipped.isEmpty()) return null;
+
+        ProtoWriter out = new ProtoWriter(to - from);
+        ProtoReader in = new ProtoReader(buf, from, to);
+        while (in.hasNext()) {
+            int start = in.pos;
+            int tag = in.readTag();
+            in.skip(tag);
+            if (tag >>> 3 != FEATURE_GEOMETRY) out.writeRaw(buf, start, in.pos - start);
+        }
+        out.writePackedInts(FEATURE_GEOMETRY, encode(clipped, type));
+        return out.toByteArray();
+    }
+
+    /**
+     * Geometry commands to absolute coordinates in child space, one {x0, y0, x1, y1, ...}
+     * array per part (all points of a multipoint are one part).
+     */
+    private static List<long[]> decode(int[] g, int type, Clip clip) throws IOException {
+        List<long[]> parts = new ArrayList<>();
+        long[] current = new long[16];
+        int n = 0;
+        long x = 0;
+        long y = 0;
+        int i = 0;
+        while (i < g.length) {
+            int cmd = g[i] & 7;
+            int count = g[i] >>> 3;
+            i++;
+            if (cmd == CMD_CLOSE_PATH) continue;
+            if (cmd != CMD_MOVE_TO && cmd != CMD_LINE_TO) throw new IOException("Bad geometry command " + cmd);
+            if (i + 2L * count > g.length) throw new IOException("Truncated geometry");
+            for (int k = 0; k < count; k++) {
+                x += zigzag(g[i++]);
+                y += zigzag(g[i++]);
+                if (cmd == CMD_MOVE_TO && type != TYPE_POINT && n > 0) {
+                    parts.add(Arrays.copyOf(current, n));
+                    n = 0;
+                }
+                if (n + 2 > current.length) current = Arrays.copyOf(current, current.length * 2);
+                current[n++] = clip.toChildX(x);
+                current[n++] = clip.toChildY(y);
+            }
+        }
+        if (n > 0) parts.add(Arrays.copyOf(current, n));
+        return parts;
+    }
+
+    private static int[] encode(List<long[]> parts, int type) {
+        int size = 0;
+        for (long[] p : parts) size += p.length + 3;
+        int[] out = new int[size];
+        int n = 0;
+        long x = 0;
+        long y = 0;
+        if (type == TYPE_POINT) {
+            long[] pts = parts.get(0);
+            out[n++] = command(CMD_MOVE_TO, pts.length / 2);
+            for (int i = 0; i < pts.length; i += 2) {
+                out[n++] = unzig(pts[i] - x);
+                out[n++] = unzig(pts[i + 1] - y);
+                x = pts[i];
+                y = pts[i + 1];
+            }
+            return Arrays.copyOf(out, n);
+        }
+        for (long[] p : parts) {
+            out[n++] = command(CMD_MOVE_TO, 1);
+            out[n++] = unzig(p[0] - x);
+            out[n++] = unzig(p[1] - y);
+            x = p[0];
+            y = p[1];
+            out[n++] = command(CMD_LINE_TO, p.length / 2 - 1);
+            for (int i = 2; i < p.length; i += 2) {
+                out[n++] = unzig(p[i] - x);
+                out[n++] = unzig(p[i + 1] - y);
+                x = p[i];
+                y = p[i + 1];
+            }
+            if (type == TYPE_POLYGON) out[n++] = command(CMD_CLOSE_PATH, 1);
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Twice the signed area (positive: exterior ring, clockwise on screen) */
+    private static long signedArea2(long[] ring) {
+        long sum = 0;
+        int n = ring.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            sum += ring[i] * ring[j + 1] - ring[j] * ring[i + 1];
+        }
+        return sum;
+    }
+
+    /** Drops repeated points (and, for rings, a last point equal to the first) */
+    private static long[] dedupe(long[] pts, boolean ring) {
+        long[] out = new long[pts.length];
+        int n = 0;
+        for (int i = 0; i < pts.length; i += 2) {
+            if (n > 0 && out[n - 2] == pts[i] && out[n - 1] == pts[i + 1]) continue;
+            out[n++] = pts[i];
+            out[n++] = pts[i + 1];
+        }
+        if (ring && n >= 4 && out[0] == out[n - 2] && out[1] == out[n - 1]) n -= 2;
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long zigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int unzig(long v) {
+        return (int) ((v << 1) ^ (v >> 63));
+    }
+
+    private static int command(int id, int count) {
+        return (id & 7) | (count << 3);
+    }
+
+    /** Parent-to-child transform and the clip box in child coordinates */
+    private static final class Clip {
+        final long scale;
+        final long offsetX;
+        final long offsetY;
+        final long lo;
+        final long hi;
+
+        Clip(int extent, int dz, int dx, int dy) {
+            this.scale = 1L << dz;
+            this.offsetX = (long) dx * extent;
+            this.offsetY = (long) dy * extent;
+            long buffer = Math.max(1, extent / BUFFER_DIVISOR);
+            this.lo = -buffer;
+            this.hi = extent + buffer;
+        }
+
+        long toChildX(long x) {
+            return x * scale - offsetX;
+        }
+
+        long toChildY(long y) {
+            return y * scale - offsetY;
+        }
+
+        boolean inside(long x, long y) {
+            return x >= lo && x <= hi && y >= lo && y <= hi;
+        }
+
+        /** Liang-Barsky per segment; consecutive visible segments are joined into one line */
+        void clipLine(long[] line, List<long[]> out) {
+            long[] current = new long[line.length + 4];
+            int n = 0;
+            double[] seg = new double[4];
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                if (!clipSegment(line[i], line[i + 1], line[i + 2], line[i + 3], seg)) {
+                    n = flushLine(current, n, out);
+                    continue;
+                }
+                long ax = Math.round(seg[0]);
+                long ay = Math.round(seg[1]);
+                long bx = Math.round(seg[2]);
+                long by = Math.round(seg[3]);
+                if (n > 0 && (current[n - 2] != ax || current[n - 1] != ay)) n = flushLine(current, n, out);
+                if (n + 4 > current.length) current = Arrays.copyOf(current, current.length * 2);
+                if (n == 0) {
+                    current[n++] = ax;
+                    current[n++] = ay;
+                }
+                current[n++] = bx;
+                current[n++] = by;
+            }
+            flushLine(current, n, out);
+        }
+
+        private static int flushLine(long[] current, int n, List<long[]> out) {
+            long[] line = dedupe(Arrays.copyOf(current, n), false);
+            if (line.length >= 4) out.add(line);
+            return 0;
+        }
+
+        private boolean clipSegment(double x0, double y0, double x1, double y1, double[] out) {
+            double t0 = 0;
+            double t1 = 1;
+            double dx = x1 - x0;
+            double dy = y1 - y0;
+            double[] p = {-dx, dx, -dy, dy};
+            double[] q = {x0 - lo, hi - x0, y0 - lo, hi - y0};
+            for (int i = 0; i < 4; i++) {
+                if (p[i] == 0) {
+                    if (q[i] < 0) return false;
+                } else {
+                    double r = q[i] / p[i];
+                    if (p[i] < 0) {
+                        if (r > t1) return false;
+                        if (r > t0) t0 = r;
+                    } else {
+                        if (r < t0) return false;
+                        if (r < t1) t1 = r;
+                    }
+                }
+            }
+            out[0] = x0 + t0 * dx;
+            out[1] = y0 + t0 * dy;
+            out[2] = x0 + t1 * dx;
+            out[3] = y0 + t1 * dy;
+            return true;
+        }
+
+        /** Sutherland-Hodgman against the four box edges; keeps the ring's orientation */
+        long[] clipRing(long[] ring) {
+            long[] pts = ring;
+            for (int edge = 0; edge < 4 && pts.length > 0; edge++) {
+                long[] next = new long[pts.length * 2 + 4];
+                int n = 0;
+                int count = pts.length / 2;
+                for (int i = 0; i < count; i++) {
+                    long cx = pts[2 * i];
+                    long cy = pts[2 * i + 1];
+                    long px = pts[2 * ((i + count - 1) % count)];
+                    long py = pts[2 * ((i + count - 1) % count) + 1];
+                    boolean cIn = insideEdge(edge, cx, cy);
+                    boolean pIn = insideEdge(edge, px, py);
+                    if (cIn != pIn) {
+                        long[] hit = intersect(edge, px, py, cx, cy);
+                        next[n++] = hit[0];
+                        next[n++] = hit[1];
+                    }
+                    if (cIn) {
+                        next[n++] = cx;
+                        next[n++] = cy;
+                    }
+                }
+                pts = Arrays.copyOf(next, n);
+            }
+            return pts;
+        }
+
+        private boolean insideEdge(int edge, long x, long y) {
+            switch (edge) {
+                case 0: return x >= lo;
+                case 1: return x <= hi;
+                case 2: return y >= lo;
+                default: return y <= hi;
+            }
+        }
+
+        private long[] intersect(int edge, long x0, long y0, long x1, long y1) {
+            double t;
+            if (edge < 2) {
+                long bound = edge == 0 ? lo : hi;
+                t = (double) (bound - x0) / (x1 - x0);
+                return new long[] {bound, Math.round(y0 + t * (y1 - y0))};
+            }
+            long bound = edge == 2 ? lo : hi;
+            t = (double) (bound - y0) / (y1 - y0);
+            return new long[] {Math.round(x0 + t * (x1 - x0)), bound};
+        }
+    }
+
+    /** Just enough protobuf to walk tiles: varints, length-delimited fields and skipping */
+    private static final class ProtoReader {
+        final byte[] buf;
+        final int end;
+        int pos;
+
+        ProtoReader(byte[] buf, int from, int to) {
+            this.buf = buf;
+            this.pos = from;
+            this.end = to;
+        }
+
+        boolean hasNext() {
+            return pos < end;
+        }
+
+        int readTag() throws IOException {
+            return (int) readVarint();
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= end) throw new IOException("Truncated vector tile");
+                int b = buf[pos++] & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint in vector tile");
+        }
+
+        /** {from, to} of a length-delimited field's payload */
+        int[] readBytesRange() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > end - pos) throw new IOException("Truncated vector tile");
+            int from = pos;
+            pos += (int) length;
+            return new int[] {from, pos};
+        }
+
+        int[] readPackedInts() throws IOException {
+            int[] range = readBytesRange();
+            ProtoReader in = new ProtoReader(buf, range[0], range[1]);
+            int[] out = new int[Math.max(4, (range[1] - range[0]) / 2)];
+            int n = 0;
+            while (in.hasNext()) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = (int) in.readVarint();
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 7) {
+                case 0: readVarint(); break;
+                case 1: advance(8); break;
+                case 2: readBytesRange(); break;
+                case 5: advance(4); break;
+                default: throw new IOException("Unsupported wire type " + (tag & 7));
+            }
+        }
+
+        private void advance(int n) throws IOException {
+            if (n > end - pos) throw new IOException("Truncated vector tile");
+            pos += n;
+        }
+    }
+
+    private static final class ProtoWriter {
+        private final ByteArrayOutputStream out;
+
+        ProtoWriter(int sizeHint) {
+            out = new ByteArrayOutputStream(Math.max(64, sizeHint));
+        }
+
+        void writeRaw(byte[] buf, int from, int length) {
+            out.write(buf, from, length);
+        }
+
+        void writeBytes(int field, byte[] buf, int from, int length) {
+            writeVarint((long) field << 3 | 2);
+            writeVarint(length);
+            out.write(buf, from, length);
+        }
+
+        void writePackedInts(int field, int[] values) {
+            ProtoWriter packed = new ProtoWriter(values.length * 2);
+            for (int v : values) packed.writeVarint(v & 0xFFFFFFFFL);
+            byte[] bytes = packed.toByteArray();
+            writeBytes(field, bytes, 0, bytes.length);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
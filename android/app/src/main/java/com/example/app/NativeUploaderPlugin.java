@@ -8,8 +8,11 @@ import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.os.SystemClock;
+import android.provider.DocumentsContract;
 import android.provider.OpenableColumns;
+import android.util.Log;
 
 import androidx.activity.result.ActivityResult; // ✅ this is the one you need
 
@@ -22,21 +25,91 @@ import com.getcapacitor.annotation.ActivityCallback;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @CapacitorPlugin(name = "NativeUploader")
 public class NativeUploaderPlugin extends Plugin {
 
-    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private static final String TAG = "NativeUploader";
+
+    // Concurrent copies per pickAndStageMany call; the shared I/O pool bounds the total
+    private static final int DEFAULT_STAGING_CONCURRENCY = 3;
+    private static final int MAX_STAGING_CONCURRENCY = 4;
+
+    // Parallel provider queries per pickAndStageMany call, before copying starts
+    private static final int METADATA_CONCURRENCY = 4;
+
+    // Interrupted copies are checkpointed at least this often
+    private static final long CHECKPOINT_BYTES = 64L * 1024 * 1024;
+
+    // gc() leaves files younger than this alone unless told otherwise
+    private static final long GC_MIN_AGE_MS = 60_000L;
+
+    // Resumable partial names currently being written
+    private static final Set<String> activePartials = ConcurrentHashMap.newKeySet();
+
+    // Open openWrite/appendChunk/commit sessions by writeId
+    private final Map<String, ChunkedWrite> writes = new ConcurrentHashMap<>();
+
+    // A session without an append for this long was abandoned (JS reload, crashed caller)
+    private static final long WRITE_IDLE_TIMEOUT_MS = 10 * 60_000L;
+    private static final long WRITE_REAP_INTERVAL_MS = 60_000L;
+
     private final Handler main = new Handler(Looper.getMainLooper());
+    private final Runnable reapWrites = this::reapIdleWrites;
+
+    @Override
+    public void load() {
+        // Partials from copies that can't be resumed would otherwise pile up forever
+        PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+            File filesDir = new File(sessionsRoot(), "FILES");
+            int swept = StagingCheckpoint.sweep(filesDir);
+            if (swept > 0) Log.d(TAG, "Swept " + swept + " orphaned staging files");
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        main.removeCallbacks(reapWrites);
+        for (String writeId : writes.keySet()) {
+            ChunkedWrite write = writes.remove(writeId);
+            if (write != null) write.abort();
+        }
+    }
+
+    /** Aborts idle openWrite sessions; reschedules itself while any are open */
+    private void reapIdleWrites() {
+        PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+            for (Map.Entry<String, ChunkedWrite> e : writes.entrySet()) {
+                ChunkedWrite write = e.getValue();
+                if (write.idleMs() > WRITE_IDLE_TIMEOUT_MS && writes.remove(e.getKey(), write)) {
+                    write.abort();
+                    Log.w(TAG, "Aborted write " + e.getKey() + " after " + write.idleMs() + "ms idle");
+                }
+            }
+            if (!writes.isEmpty()) {
+                main.removeCallbacks(reapWrites);
+                main.postDelayed(reapWrites, WRITE_REAP_INTERVAL_MS);
+            }
+        });
+    }
 
     @PluginMethod
     public void pickAndStageMany(PluginCall call) {
@@ -50,22 +123,40 @@ public class NativeUploaderPlugin extends Plugin {
         startActivityForResult(call, intent, "onPickedFiles");
     }
 
+    /**
+     * Deletes one file by absolutePath, or by logicalPath ("DOCUMENTS/HSC-SESSIONS/...") as
+     * returned by staging and saveExtractedFile. Blobs only drop a reference.
+     */
     @PluginMethod
     public void deleteFile(PluginCall call) {
-        String absolutePath = call.getString("absolutePath");
-        if (absolutePath == null || absolutePath.isEmpty()) {
-            call.reject("absolutePath is required");
+        String path = call.getString("absolutePath");
+        String logicalPath = call.getString("logicalPath");
+        if ((path == null || path.isEmpty()) && (logicalPath == null || logicalPath.isEmpty())) {
+            call.reject("absolutePath or logicalPath is required");
             return;
         }
 
-        ioExecutor.execute(() -> {
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
             try {
+                String absolutePath = path != null && !path.isEmpty() ? path : resolveLogicalPath(logicalPath);
+                if (absolutePath == null) {
+                    rejectOnMain(call, "Not a session path: " + logicalPath);
+                    return;
+                }
                 File file = new File(absolutePath);
                 if (!file.exists()) {
                     rejectOnMain(call, "File does not exist: " + absolutePath);
                     return;
                 }
 
+                // Staged blobs are shared: only drop this reference
+                ContentStore store = ContentStore.get(sessionsRoot());
+                if (store.contains(file)) {
+                    store.release(file);
+                    resolveOnMain(call, new JSObject());
+                    return;
+                }
+
                 boolean deleted = file.delete();
                 if (deleted) {
                     resolveOnMain(call, new JSObject());
@@ -78,6 +169,138 @@ public class NativeUploaderPlugin extends Plugin {
         });
     }
 
+    /**
+     * Deletes many files in one call. Blobs only drop a reference (one index write for the
+     * whole batch); everything else is deleted outright. Never rejects for individual files:
+     * they are reported in {deleted, released, missing, failed: [{path, error}], bytesFreed}.
+     */
+    @PluginMethod
+    public void deleteMany(PluginCall call) {
+        JSArray paths = call.getArray("paths");
+        if (paths == null) {
+            call.reject("paths is required");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            try {
+                ContentStore store = ContentStore.get(sessionsRoot());
+                List<File> blobs = new ArrayList<>();
+                Set<String> seen = new HashSet<>();
+                JSArray failed = new JSArray();
+                int deleted = 0;
+                int missing = 0;
+                long bytesFreed = 0;
+
+                for (int i = 0; i < paths.length(); i++) {
+                    String path = paths.optString(i, null);
+                    if (path == null || path.isEmpty() || !seen.add(path)) continue;
+
+                    File file = new File(path);
+                    if (!file.exists()) {
+                        missing++;
+                    } else if (store.contains(file)) {
+                        blobs.add(file);
+                    } else {
+                        long size = file.length();
+                        if (file.delete()) {
+                            deleted++;
+                            bytesFreed += size;
+                        } else {
+                            JSObject f = new JSObject();
+                            f.put("path", path);
+                            f.put("error", "Failed to delete file");
+                            failed.put(f);
+                        }
+                    }
+                }
+
+                // Only blobs whose last reference goes actually free space
+                long[] released = store.releaseAll(blobs);
+                bytesFreed += released[1];
+
+                JSObject ret = new JSObject();
+                ret.put("deleted", deleted);
+                ret.put("released", blobs.size());
+                ret.put("blobsDeleted", released[0]);
+                ret.put("missing", missing);
+                ret.put("failed", failed);
+                ret.put("bytesFreed", bytesFreed);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Delete failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Removes everything under HSC-SESSIONS/FILES and BLOBS that is not in keepPaths, in one
+     * pass. Partials, checkpoints and files younger than minAgeMs (default 60s) are skipped
+     * so in-flight staging and writes survive. With dryRun nothing is deleted, only counted.
+     */
+    @PluginMethod
+    public void gc(PluginCall call) {
+        JSArray keepPaths = call.getArray("keepPaths");
+        if (keepPaths == null) {
+            call.reject("keepPaths is required");
+            return;
+        }
+        long minAgeMs = Math.max(0L, call.getLong("minAgeMs", GC_MIN_AGE_MS));
+        boolean dryRun = Boolean.TRUE.equals(call.getBoolean("dryRun", false));
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+            try {
+                File root = sessionsRoot();
+                ContentStore store = ContentStore.get(root);
+
+                Set<String> keep = new HashSet<>();
+                Set<String> keepDigests = new HashSet<>();
+                for (int i = 0; i < keepPaths.length(); i++) {
+                    String path = keepPaths.optString(i, null);
+                    if (path == null || path.isEmpty()) continue;
+                    File file = new File(path);
+                    keep.add(file.getAbsolutePath());
+                    if (store.contains(file)) keepDigests.add(ContentStore.digestOf(file));
+                }
+
+                long cutoff = System.currentTimeMillis() - minAgeMs;
+                int filesRemoved = 0;
+                int skipped = 0;
+                long bytesFreed = 0;
+                File[] files = new File(root, "FILES").listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        if (!f.isFile() || keep.contains(f.getAbsolutePath())) continue;
+                        String name = f.getName();
+                        if (name.endsWith(".partial") || name.endsWith(".ckpt")
+                                || name.endsWith(".tmp") || f.lastModified() > cutoff) {
+                            skipped++;
+                            continue;
+                        }
+                        long size = f.length();
+                        if (dryRun || f.delete()) {
+                            filesRemoved++;
+                            bytesFreed += size;
+                        }
+                    }
+                }
+
+                long[] blobs = store.retainOnly(keepDigests, minAgeMs, dryRun);
+                bytesFreed += blobs[1];
+
+                JSObject ret = new JSObject();
+                ret.put("filesRemoved", filesRemoved);
+                ret.put("blobsRemoved", blobs[0]);
+                ret.put("skipped", skipped);
+                ret.put("bytesFreed", bytesFreed);
+                ret.put("dryRun", dryRun);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "GC failed: " + e.getMessage());
+            }
+        });
+    }
+
     @PluginMethod
     public void saveExtractedFile(PluginCall call) {
         String base64Data = call.getString("base64Data");
@@ -92,7 +315,7 @@ public class NativeUploaderPlugin extends Plugin {
             return;
         }
 
-        ioExecutor.execute(() -> {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
             try {
                 // Use the same directory as pickAndStageMany
                 File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
@@ -104,11 +327,15 @@ public class NativeUploaderPlugin extends Plugin {
 
                 File finalFile = new File(destDir, fileName);
 
-                // Decode base64 and write to file
-                byte[] fileData = android.util.Base64.decode(base64Data, android.util.Base64.DEFAULT);
-                try (FileOutputStream out = new FileOutputStream(finalFile)) {
-                    out.write(fileData);
-                    out.flush();
+                // Decode slice by slice straight into the file instead of materialising the whole byte[]
+                ChunkedWrite write = new ChunkedWrite(UUID.randomUUID().toString(),
+                    new File(destDir, finalFile.getName() + ".partial"), finalFile, null);
+                try {
+                    write.append(base64Data);
+                    write.commit();
+                } catch (Exception e) {
+                    write.abort();
+                    throw e;
                 }
 
                 String mimeType = call.getString("mimeType");
@@ -127,6 +354,151 @@ public class NativeUploaderPlugin extends Plugin {
         });
     }
 
+    /**
+     * Chunked alternative to saveExtractedFile for large files: openWrite, then appendChunk
+     * with consecutive base64 slices, then commit (or abort). Only one chunk is ever held in
+     * memory on either side of the bridge. Sessions idle for WRITE_IDLE_TIMEOUT_MS are
+     * aborted, and appends to them reject with UNKNOWN_WRITE.
+     */
+    @PluginMethod
+    public void openWrite(PluginCall call) {
+        String fileName = call.getString("fileName");
+        if (fileName == null || fileName.isEmpty()) {
+            call.reject("fileName is required");
+            return;
+        }
+        if (!fileName.equals(new File(fileName).getName()) || fileName.equals("..")) {
+            call.reject("fileName must not contain a path");
+            return;
+        }
+        String mimeType = call.getString("mimeType");
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                File destDir = new File(sessionsRoot(), "FILES");
+                //noinspection ResultOfMethodCallIgnored
+                destDir.mkdirs();
+
+                String writeId = UUID.randomUUID().toString();
+                // No checkpoint is written for these, so load() sweeps them if never committed
+                File partial = new File(destDir, "write_" + writeId + ".partial");
+                writes.put(writeId, new ChunkedWrite(writeId, partial, new File(destDir, fileName),
+                    mimeType != null ? mimeType : "application/octet-stream"));
+                main.removeCallbacks(reapWrites);
+                main.postDelayed(reapWrites, WRITE_REAP_INTERVAL_MS);
+
+                JSObject ret = new JSObject();
+                ret.put("writeId", writeId);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Open failed: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void appendChunk(PluginCall call) {
+        String writeId = call.getString("writeId");
+        String base64Data = call.getString("base64Data");
+        ChunkedWrite write = writeId != null ? writes.get(writeId) : null;
+        if (write == null) {
+            call.reject("UNKNOWN_WRITE");
+            return;
+        }
+        if (base64Data == null) {
+            call.reject("base64Data is required");
+            return;
+        }
+        // Optional: the byte offset the caller expects this chunk to start at
+        Long offset = call.getLong("offset");
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                long total;
+                synchronized (write) {
+                    if (offset != null && offset != write.bytesWritten()) {
+                        rejectOnMain(call, "OUT_OF_ORDER");
+                        return;
+                    }
+                    total = write.append(base64Data);
+                }
+                JSObject ret = new JSObject();
+                ret.put("bytesWritten", total);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                writes.remove(writeId);
+                write.abort();
+                rejectOnMain(call, "Append failed: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void commit(PluginCall call) {
+        String writeId = call.getString("writeId");
+        ChunkedWrite write = writeId != null ? writes.remove(writeId) : null;
+        if (write == null) {
+            call.reject("UNKNOWN_WRITE");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                write.commit();
+
+                JSObject result = new JSObject();
+                result.put("absolutePath", write.target.getAbsolutePath());
+                result.put("logicalPath", "DOCUMENTS/HSC-SESSIONS/FILES/" + write.target.getName());
+                result.put("size", write.target.length());
+                result.put("mimeType", write.mimeType);
+                resolveOnMain(call, result);
+            } catch (Exception e) {
+                write.abort();
+                rejectOnMain(call, "Commit failed: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void abort(PluginCall call) {
+        String writeId = call.getString("writeId");
+        ChunkedWrite write = writeId != null ? writes.remove(writeId) : null;
+        if (write == null) {
+            call.resolve();
+            return;
+        }
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            write.abort();
+            resolveOnMain(call, new JSObject());
+        });
+    }
+
+    /**
+     * Diagnostic: times stream vs channel staging copies on the staging volume.
+     * Options: sizesMb (default 100, 500, 1024, 4096).
+     */
+    @PluginMethod
+    public void benchmarkStaging(PluginCall call) {
+        long[] sizesMb = StagingBenchmark.DEFAULT_SIZES_MB;
+        JSArray requested = call.getArray("sizesMb");
+        if (requested != null && requested.length() > 0) {
+            sizesMb = new long[requested.length()];
+            for (int i = 0; i < requested.length(); i++) {
+                sizesMb[i] = Long.parseLong(requested.optString(i, "0"));
+            }
+        }
+
+        final long[] sizes = sizesMb;
+        PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+            try {
+                File scratch = new File(sessionsRoot().getParentFile(), "HSC-BENCH");
+                resolveOnMain(call, StagingBenchmark.run(scratch, sizes));
+            } catch (Exception e) {
+                rejectOnMain(call, "Benchmark failed: " + e.getMessage());
+            }
+        });
+    }
+
     // ✅ correct signature for Capacitor v3+
     @ActivityCallback
     private void onPickedFiles(PluginCall call, ActivityResult result) {
@@ -143,13 +515,12 @@ public class NativeUploaderPlugin extends Plugin {
             return;
         }
 
-        int maxFiles = 2;
+        int maxFiles = Integer.MAX_VALUE;
         try {
             Integer mf = call.getInt("maxFiles");
             if (mf != null) maxFiles = mf;
         } catch (Exception ignored) {}
         if (maxFiles < 1) maxFiles = 1;
-        if (maxFiles > 2) maxFiles = 2;
 
         List<Uri> uris = new ArrayList<>();
         ClipData clipData = data.getClipData();
@@ -169,9 +540,17 @@ public class NativeUploaderPlugin extends Plugin {
             return;
         }
 
+        int concurrency = DEFAULT_STAGING_CONCURRENCY;
+        try {
+            Integer c = call.getInt("concurrency");
+            if (c != null) concurrency = c;
+        } catch (Exception ignored) {}
+        concurrency = Math.max(1, Math.min(concurrency, Math.min(MAX_STAGING_CONCURRENCY, uris.size())));
+
         final List<Uri> finalUris = uris;
+        final int workers = concurrency;
 
-        ioExecutor.execute(() -> {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
             try {
                 // Use external files directory with documents subdirectory (accessible via file manager)
                 File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
@@ -181,85 +560,380 @@ public class NativeUploaderPlugin extends Plugin {
                 //noinspection ResultOfMethodCallIgnored
                 destDir.mkdirs();
 
-                JSArray results = new JSArray();
-                long stamp = System.currentTimeMillis();
+                StagingBatch batch = new StagingBatch(call, finalUris, destDir, ContentStore.get(sessionsRoot()));
+                batch.start(workers);
+            } catch (Exception e) {
+                rejectOnMain(call, "Stage failed: " + e.getMessage());
+            }
+        });
+    }
 
-                for (int idx = 0; idx < finalUris.size(); idx++) {
-                    Uri uri = finalUris.get(idx);
+    /**
+     * One pickAndStageMany call: files are copied concurrently by a few workers,
+     * each file reported through "fileStaged" as soon as it is done.
+     */
+    private class StagingBatch {
+        final PluginCall call;
+        final List<Uri> uris;
+        final File destDir;
+        final ContentStore store;
+        final long stamp = System.currentTimeMillis();
+        // One projected provider query per URI, shared by everything in this call
+        final UriMeta[] meta;
+        final long[] expectedSizes;
+        // Per-file progress state, each slot only touched by the worker staging that file
+        final long[] reportedBytes;
+        final long[] lastEmitMs;
+        final JSObject[] results;
+        final AtomicInteger nextMeta = new AtomicInteger();
+        final AtomicInteger metaRemaining;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+        final AtomicInteger filesCompleted = new AtomicInteger();
+        final AtomicLong aggregateWritten = new AtomicLong();
+        final AtomicLong aggregateTotal = new AtomicLong();
 
-                    String originalName = getDisplayName(uri);
-                    if (originalName == null || originalName.trim().isEmpty()) {
-                        originalName = "upload_" + stamp + "_" + idx;
-                    }
+        StagingBatch(PluginCall call, List<Uri> uris, File destDir, ContentStore store) {
+            this.call = call;
+            this.uris = uris;
+            this.destDir = destDir;
+            this.store = store;
+            this.meta = new UriMeta[uris.size()];
+            this.metaRemaining = new AtomicInteger(uris.size());
+            this.expectedSizes = new long[uris.size()];
+            this.reportedBytes = new long[uris.size()];
+            this.lastEmitMs = new long[uris.size()];
+            this.results = new JSObject[uris.size()];
+            this.remaining = new AtomicInteger(uris.size());
+        }
+
+        /**
+         * Queries metadata for all URIs in parallel (slow providers such as Drive or MTP take
+         * hundreds of ms per query), then starts the copy workers. The last lookup to finish
+         * starts them, so no pool thread blocks waiting on others.
+         */
+        void start(int workers) {
+            int lookups = Math.min(METADATA_CONCURRENCY, uris.size());
+            for (int i = 0; i < lookups; i++) {
+                PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> queryAll(workers));
+            }
+        }
+
+        private void queryAll(int workers) {
+            int idx;
+            while ((idx = nextMeta.getAndIncrement()) < uris.size()) {
+                meta[idx] = queryMeta(uris.get(idx));
+                if (metaRemaining.decrementAndGet() == 0) {
+                    startCopies(workers);
+                }
+            }
+        }
 
-                    // Note: File extension validation is done in JavaScript to show proper error messages
-                    // All files are staged here, validation happens later in handleUpload
+        private void startCopies(int workers) {
+            for (int i = 0; i < uris.size(); i++) {
+                long size = meta[i].size;
+                expectedSizes[i] = size;
+                if (size > 0) aggregateTotal.addAndGet(size);
+            }
 
-                    String safeName = originalName.replaceAll("[^a-zA-Z0-9._-]", "_");
-                    String stampedName = stamp + "_" + idx + "_" + safeName;
+            // Each worker pulls the next file until the batch is drained; the last one
+            // to finish resolves the call
+            for (int w = 0; w < workers; w++) {
+                PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, this::drain);
+            }
+        }
 
-                    File partial = new File(destDir, stampedName + ".partial");
-                    File finalFile = new File(destDir, stampedName);
+        void drain() {
+            int idx;
+            while ((idx = next.getAndIncrement()) < uris.size()) {
+                JSObject one;
+                try {
+                    one = stageOne(this, idx);
+                } catch (Exception e) {
+                    one = new JSObject();
+                    one.put("status", "failed");
+                    one.put("error", e.getMessage());
+                    String name = meta[idx].displayName;
+                    one.put("originalName", name != null ? name : "upload_" + stamp + "_" + idx);
+                }
+                one.put("fileIndex", idx);
+                results[idx] = one;
+                filesCompleted.incrementAndGet();
+                notifyOnMain("fileStaged", one);
 
-                    long expectedSize = getSize(uri); // -1 if unknown
-                    long written = 0L;
-                    long lastEmitMs = 0L;
+                if (remaining.decrementAndGet() == 0) {
+                    finish();
+                }
+            }
+        }
 
-                    try (InputStream in = getContext().getContentResolver().openInputStream(uri);
-                         FileOutputStream out = new FileOutputStream(partial)) {
+        /**
+         * Reports bytes copied so far for one file, at most every 250ms per file
+         * unless {@code force} is set (used for the final update).
+         */
+        void progress(int idx, long fileWritten, String originalName, boolean force) {
+            long nowMs = SystemClock.uptimeMillis();
+            if (!force && nowMs - lastEmitMs[idx] < 250) return;
+            lastEmitMs[idx] = nowMs;
 
-                        if (in == null) throw new IllegalStateException("Unable to open input stream");
+            long aggregate = aggregateWritten.addAndGet(fileWritten - reportedBytes[idx]);
+            reportedBytes[idx] = fileWritten;
+            JSObject ev = new JSObject();
+            ev.put("fileIndex", idx);
+            ev.put("bytesWritten", fileWritten);
+            ev.put("totalBytes", expectedSizes[idx]);
+            ev.put("originalName", originalName);
+            ev.put("fileCount", uris.size());
+            ev.put("filesCompleted", filesCompleted.get());
+            ev.put("aggregateBytesWritten", aggregate);
+            ev.put("aggregateTotalBytes", aggregateTotal.get());
+            notifyOnMain("uploadProgress", ev);
+        }
 
-                        byte[] buf = new byte[1024 * 1024]; // 1MB chunks
-                        int read;
-                        while ((read = in.read(buf)) != -1) {
-                            out.write(buf, 0, read);
-                            written += read;
+        private void finish() {
+            JSArray staged = new JSArray();
+            JSArray failed = new JSArray();
+            for (JSObject one : results) {
+                if ("staged".equals(one.getString("status"))) staged.put(one);
+                else failed.put(one);
+            }
 
-                            long nowMs = SystemClock.uptimeMillis();
-                            if (nowMs - lastEmitMs >= 250) {
-                                lastEmitMs = nowMs;
-                                JSObject ev = new JSObject();
-                                ev.put("fileIndex", idx);
-                                ev.put("bytesWritten", written);
-                                ev.put("totalBytes", expectedSize);
-                                ev.put("originalName", originalName);
-                                notifyOnMain("uploadProgress", ev);
-                            }
-                        }
-                        out.flush();
-                    }
+            if (staged.length() == 0) {
+                JSObject first = results[0];
+                rejectOnMain(call, "Stage failed: " + first.getString("error"));
+                return;
+            }
 
-                    if (finalFile.exists()) {
-                        //noinspection ResultOfMethodCallIgnored
-                        finalFile.delete();
-                    }
-                    if (!partial.renameTo(finalFile)) {
-                        throw new IllegalStateException("Rename failed");
-                    }
+            JSObject ret = new JSObject();
+            ret.put("files", staged);
+            ret.put("failed", failed);
+            resolveOnMain(call, ret);
+        }
+    }
+
+    /**
+     * Progress callback for resumable copies: besides reporting, it fsyncs the partial and
+     * rewrites its checkpoint every {@link #CHECKPOINT_BYTES}. Copy loops call it only after
+     * the reported bytes are both hashed and written, so the digest snapshot matches the file.
+     */
+    private static class CheckpointingProgress implements FastCopy.Progress {
+        private final StagingBatch batch;
+        private final int idx;
+        private final String name;
+        private final FileOutputStream out;
+        private final MessageDigest sha;
+        private final StagingCheckpoint checkpoint;
+        private final File checkpointFile;
+        private long lastCheckpoint;
+
+        CheckpointingProgress(StagingBatch batch, int idx, String name, FileOutputStream out,
+                              MessageDigest sha, StagingCheckpoint checkpoint, File checkpointFile) {
+            this.batch = batch;
+            this.idx = idx;
+            this.name = name;
+            this.out = out;
+            this.sha = sha;
+            this.checkpoint = checkpoint;
+            this.checkpointFile = checkpointFile;
+            this.lastCheckpoint = checkpoint.bytesWritten;
+        }
 
-                    String mimeType = getContext().getContentResolver().getType(uri);
-                    if (mimeType == null) mimeType = "application/octet-stream";
+        @Override
+        public void onCopied(long totalCopied) {
+            batch.progress(idx, totalCopied, name, false);
+            if (totalCopied - lastCheckpoint < CHECKPOINT_BYTES) return;
+            try {
+                out.flush();
+                out.getFD().sync();
+                checkpoint.bytesWritten = totalCopied;
+                checkpoint.prefixSha256 = StagingCheckpoint.snapshot(sha);
+                checkpoint.save(checkpointFile);
+                lastCheckpoint = totalCopied;
+            } catch (IOException e) {
+                // Losing a checkpoint only costs a restart from the previous one
+                Log.w(TAG, "Could not checkpoint " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private JSObject stageOne(StagingBatch batch, int idx) throws Exception {
+        Uri uri = batch.uris.get(idx);
+        File destDir = batch.destDir;
+        ContentStore store = batch.store;
+        long stamp = batch.stamp;
+
+        UriMeta meta = batch.meta[idx];
+        String originalName = meta.displayName;
+        if (originalName == null || originalName.trim().isEmpty()) {
+            originalName = "upload_" + stamp + "_" + idx;
+        }
 
-                    JSObject one = new JSObject();
-                    one.put("absolutePath", finalFile.getAbsolutePath());
-                    one.put("logicalPath", "DOCUMENTS/HSC-SESSIONS/FILES/" + finalFile.getName());
-                    one.put("size", finalFile.length());
-                    one.put("mimeType", mimeType);
-                    one.put("status", "staged");
-                    one.put("originalName", originalName);
+        // Note: File extension validation is done in JavaScript to show proper error messages
+        // All files are staged here, validation happens later in handleUpload
 
-                    results.put(one);
+        String safeName = originalName.replaceAll("[^a-zA-Z0-9._-]", "_");
+
+        long expectedSize = batch.expectedSizes[idx]; // -1 if unknown
+        long lastModified = meta.lastModified; // -1 if unknown
+        // Only trust the source index when the provider reports a size and an mtime: without
+        // one, a file rewritten in place with the same size and head would pass as the old
+        // one, resolving to its blob or resuming onto its stale partial
+        String sourceKey = expectedSize >= 0 && lastModified >= 0
+            ? ContentStore.sourceKey(uri.toString(), expectedSize, lastModified)
+            : null;
+
+        // A known source gets a stable partial name, so a later pick of the same file finds
+        // the checkpoint left by an interrupted copy; other sources can't be resumed safely
+        String resumableName = sourceKey != null
+            ? "src_" + sha256Hex(sourceKey).substring(0, 16) + "_" + safeName + ".partial"
+            : null;
+        // The same file picked twice at once must not share a partial
+        if (resumableName != null && !activePartials.add(resumableName)) {
+            resumableName = null;
+            sourceKey = null;
+        }
+        File partial = new File(destDir, resumableName != null
+            ? resumableName
+            : stamp + "_" + idx + "_" + safeName + ".partial");
+        File checkpointFile = StagingCheckpoint.fileFor(partial);
+
+        long written;
+        long resumedFrom = 0L;
+        File stagedFile = null;
+        boolean deduplicated = false;
+        String digest;
+        final String name = originalName;
+
+        // File-backed providers hand out a real descriptor: copy through channels
+        ParcelFileDescriptor pfd = openRegularFile(uri);
+        try (InputStream in = pfd != null
+                ? new ParcelFileDescriptor.AutoCloseInputStream(pfd)
+                : getContext().getContentResolver().openInputStream(uri)) {
+
+            if (in == null) throw new IllegalStateException("Unable to open input stream");
+            FileChannel channel = pfd != null ? ((FileInputStream) in).getChannel() : null;
+
+            byte[] buf = new byte[FastCopy.BUFFER_SIZE];
+
+            // Hash the head first: a known source resolves to its blob without copying
+            int head = channel != null
+                ? FastCopy.readHead(channel, buf, ContentStore.HEAD_BYTES)
+                : readFully(in, buf, ContentStore.HEAD_BYTES);
+            MessageDigest headSha = MessageDigest.getInstance("SHA-256");
+            headSha.update(buf, 0, head);
+            String headHash = ContentStore.toHex(headSha.digest());
+
+            if (sourceKey != null) {
+                stagedFile = store.reuse(sourceKey, headHash);
+            }
+
+            if (stagedFile != null) {
+                deduplicated = true;
+                digest = stagedFile.getParentFile().getName();
+                written = stagedFile.length();
+            } else {
+                // Hash while copying, then move into the store under the digest
+                MessageDigest sha = MessageDigest.getInstance("SHA-256");
+                // The head bytes are still in buf; keep them for the stream path
+                byte[] headBytes = Arrays.copyOf(buf, head);
+
+                StagingCheckpoint checkpoint = sourceKey != null ? StagingCheckpoint.load(checkpointFile) : null;
+                if (checkpoint != null && checkpoint.matches(sourceKey, headHash)
+                        && checkpoint.bytesWritten > head
+                        && checkpoint.bytesWritten <= expectedSize
+                        && partial.length() >= checkpoint.bytesWritten) {
+                    String prefix = StagingCheckpoint.rehashPrefix(partial, checkpoint.bytesWritten, sha, buf);
+                    if (prefix.equals(checkpoint.prefixSha256)) {
+                        resumedFrom = checkpoint.bytesWritten;
+                    } else {
+                        Log.w(TAG, "Checkpoint of " + partial.getName() + " does not match its data, restarting");
+                        sha.reset();
+                    }
+                }
+                if (resumedFrom == 0L) {
+                    checkpoint = new StagingCheckpoint();
+                    checkpoint.sourceUri = uri.toString();
+                    checkpoint.sourceKey = sourceKey;
+                    checkpoint.headHash = headHash;
+                    checkpoint.expectedSize = expectedSize;
                 }
 
-                JSObject ret = new JSObject();
-                ret.put("files", results);
-                resolveOnMain(call, ret);
+                // Bytes past the last checkpoint were never confirmed durable: drop them
+                try (RandomAccessFile raf = new RandomAccessFile(partial, "rw")) {
+                    raf.setLength(resumedFrom);
+                }
 
-            } catch (Exception e) {
-                rejectOnMain(call, "Stage failed: " + e.getMessage());
+                try (FileOutputStream out = new FileOutputStream(partial, true)) {
+                    FastCopy.Progress progress = sourceKey != null
+                        ? new CheckpointingProgress(batch, idx, name, out, sha, checkpoint, checkpointFile)
+                        : copied -> batch.progress(idx, copied, name, false);
+
+                    written = -1L;
+                    if (channel != null) {
+                        try {
+                            written = FastCopy.channelCopy(channel, out.getChannel(), resumedFrom, sha, progress);
+                        } catch (IOException e) {
+                            // Some providers' descriptors refuse map/transferTo, which shows before
+                            // the first byte goes out. Once bytes were written it is a real I/O
+                            // error: rethrow and keep the checkpoint for the next attempt
+                            if (out.getChannel().size() != resumedFrom) throw e;
+                            Log.w(TAG, "Channel copy failed, falling back to streams: " + e.getMessage());
+                            // The failed chunk may already be in the digest: rebuild it from
+                            // the partial, which still matches the checkpoint
+                            sha.reset();
+                            if (resumedFrom > 0L) {
+                                StagingCheckpoint.rehashPrefix(partial, resumedFrom, sha, buf);
+                            }
+                            channel.position(resumedFrom);
+                            written = resumedFrom + FastCopy.streamCopy(in, out, buf, sha, resumedFrom, progress);
+                        }
+                    } else if (resumedFrom > 0L) {
+                        // The provider can only be read sequentially: skip what the partial holds
+                        skipFully(in, resumedFrom - head);
+                        written = resumedFrom + FastCopy.streamCopy(in, out, buf, sha, resumedFrom, progress);
+                    } else {
+                        sha.update(headBytes, 0, head);
+                        out.write(headBytes, 0, head);
+                        written = head + FastCopy.streamCopy(in, out, buf, sha, head, progress);
+                    }
+                    out.flush();
+                }
+
+                digest = ContentStore.toHex(sha.digest());
+                stagedFile = store.commit(partial, digest, safeName, sourceKey, headHash);
+                //noinspection ResultOfMethodCallIgnored
+                checkpointFile.delete();
             }
-        });
+        } catch (Exception e) {
+            // Keep a checkpointed partial for the next attempt; anything else is unusable
+            if (sourceKey == null || !checkpointFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+            }
+            throw e;
+        } finally {
+            if (resumableName != null) activePartials.remove(resumableName);
+        }
+
+        if (resumedFrom > 0L) {
+            Log.d(TAG, "Resumed " + originalName + " from byte " + resumedFrom);
+        }
+        batch.progress(idx, written, originalName, true);
+
+        String mimeType = getContext().getContentResolver().getType(uri);
+        if (mimeType == null) mimeType = "application/octet-stream";
+
+        JSObject one = new JSObject();
+        one.put("absolutePath", stagedFile.getAbsolutePath());
+        one.put("logicalPath", "DOCUMENTS/HSC-SESSIONS/" + ContentStore.BLOBS_DIR + "/" + digest + "/" + stagedFile.getName());
+        one.put("size", stagedFile.length());
+        one.put("mimeType", mimeType);
+        one.put("status", "staged");
+        one.put("originalName", originalName);
+        one.put("sha256", digest);
+        one.put("deduplicated", deduplicated);
+        one.put("resumedFromBytes", resumedFrom);
+        return one;
     }
 
     private void resolveOnMain(PluginCall call, JSObject ret) {
@@ -280,33 +954,113 @@ public class NativeUploaderPlugin extends Plugin {
         main.post(() -> notifyListeners(eventName, data));
     }
 
-    private String getDisplayName(Uri uri) {
-        Cursor cursor = null;
+    private File sessionsRoot() {
+        File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (docsRoot == null) docsRoot = getContext().getFilesDir();
+        return new File(docsRoot, "HSC-SESSIONS");
+    }
+
+    /** "DOCUMENTS/HSC-SESSIONS/FILES/x" to its file under sessionsRoot(); null if outside it */
+    private String resolveLogicalPath(String logicalPath) throws IOException {
+        String prefix = "DOCUMENTS/HSC-SESSIONS/";
+        if (!logicalPath.startsWith(prefix)) return null;
+        File root = sessionsRoot();
+        File file = new File(root, logicalPath.substring(prefix.length()));
+        if (!file.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator)) return null;
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Opens a read descriptor when the provider backs the URI with a regular file
+     * (stat size known); pipes and sockets report -1 and take the stream path.
+     */
+    private ParcelFileDescriptor openRegularFile(Uri uri) {
         try {
-            cursor = getContext().getContentResolver().query(uri, null, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                int idx = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                if (idx >= 0) return cursor.getString(idx);
+            ParcelFileDescriptor pfd = getContext().getContentResolver().openFileDescriptor(uri, "r");
+            if (pfd == null) return null;
+            if (pfd.getStatSize() < 0) {
+                pfd.close();
+                return null;
             }
-        } catch (Exception ignored) {
-        } finally {
-            if (cursor != null) cursor.close();
+            return pfd;
+        } catch (Exception e) {
+            return null;
         }
-        return null;
     }
 
-    private long getSize(Uri uri) {
+    private static int readFully(InputStream in, byte[] buf, int len) throws IOException {
+        int off = 0;
+        int read;
+        while (off < len && (read = in.read(buf, off, len - off)) != -1) {
+            off += read;
+        }
+        return off;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                // skip() may legally return 0 before EOF; a read tells them apart
+                if (in.read() == -1) throw new IOException("Source ended before resume offset");
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static String sha256Hex(String s) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return ContentStore.toHex(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * DISPLAY_NAME, SIZE and (for document URIs) last-modified of one picked URI, fetched
+     * with a single projected query. Unknown values are null / -1.
+     */
+    private static final class UriMeta {
+        final String displayName;
+        final long size;
+        final long lastModified;
+
+        UriMeta(String displayName, long size, long lastModified) {
+            this.displayName = displayName;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private UriMeta queryMeta(Uri uri) {
+        // Plain content providers may reject columns they don't know, so only ask
+        // documents for the last-modified column
+        String[] projection = DocumentsContract.isDocumentUri(getContext(), uri)
+            ? new String[] {
+                OpenableColumns.DISPLAY_NAME,
+                OpenableColumns.SIZE,
+                DocumentsContract.Document.COLUMN_LAST_MODIFIED
+            }
+            : new String[] { OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE };
+
         Cursor cursor = null;
         try {
-            cursor = getContext().getContentResolver().query(uri, null, null, null, null);
+            cursor = getContext().getContentResolver().query(uri, projection, null, null, null);
             if (cursor != null && cursor.moveToFirst()) {
-                int idx = cursor.getColumnIndex(OpenableColumns.SIZE);
-                if (idx >= 0) return cursor.getLong(idx);
+                String name = null;
+                long size = -1L;
+                long lastModified = -1L;
+                int col = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                if (col >= 0) name = cursor.getString(col);
+                col = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (col >= 0 && !cursor.isNull(col)) size = cursor.getLong(col);
+                col = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                if (col >= 0 && !cursor.isNull(col)) lastModified = cursor.getLong(col);
+                return new UriMeta(name, size, lastModified);
             }
-        } catch (Exception ignored) {
+        } catch (Exception e) {
+            Log.w(TAG, "Metadata query failed for " + uri + ": " + e.getMessage());
         } finally {
             if (cursor != null) cursor.close();
         }
-        return -1L;
+        return new UriMeta(null, -1L, -1L);
     }
 }
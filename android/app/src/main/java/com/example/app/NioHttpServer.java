@@ -0,0 +1,561 @@
+package com.example.app;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal non-blocking HTTP/1.1 server for localhost.
+ *
+ * One selector thread does all socket I/O; handlers run on {@link PluginExecutors#http()}.
+ * Connections are kept alive and may pipeline: requests are parsed from the connection
+ * buffer one at a time and answered in order, so a connection never has more than one
+ * request in a worker. File bodies go out with {@link FileChannel#transferTo} instead of
+ * being read into memory. Only GET, HEAD and OPTIONS without a request body are accepted.
+ */
+final class NioHttpServer {
+
+    private static final String TAG = "NioHttpServer";
+
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int MAX_CONNECTIONS = 64;
+    private static final long IDLE_TIMEOUT_MS = 30_000L;
+    private static final long SELECT_TIMEOUT_MS = 5_000L;
+
+    interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    static final class Request {
+        final String method;
+        /** Percent-decoded path without the query string */
+        final String path;
+        final String query;
+        /** Header names are lower case */
+        final Map<String, String> headers;
+
+        Request(String method, String path, String query, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    static final class Response {
+        final int status;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        // Read-only from here on; every write goes through a duplicate
+        final ByteBuffer body;
+        final File file;
+        final long fileOffset;
+        final long length;
+
+        private Response(int status, String contentType, ByteBuffer body, File file, long fileOffset, long length) {
+            this.status = status;
+            this.body = body;
+            this.file = file;
+            this.fileOffset = fileOffset;
+            this.length = length;
+            if (contentType != null) headers.put("Content-Type", contentType);
+        }
+
+        static Response bytes(int status, String contentType, byte[] body) {
+            return buffer(status, contentType, ByteBuffer.wrap(body));
+        }
+
+        /** Sends the remaining bytes of {@code body}, e.g. a slice of a memory-mapped file */
+        static Response buffer(int status, String contentType, ByteBuffer body) {
+            return new Response(status, contentType, body, null, 0L, body.remaining());
+        }
+
+        static Response text(int status, String message) {
+            return bytes(status, "text/plain; charset=utf-8", message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Response empty(int status) {
+            return new Response(status, null, ByteBuffer.allocate(0), null, 0L, 0L);
+        }
+
+        /** Sends {@code length} bytes of {@code file} starting at {@code offset} */
+        static Response file(int status, String contentType, File file, long offset, long length) {
+            return new Response(status, contentType, null, file, offset, length);
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final Handler handler;
+    // Responses finished by workers, waiting for the selector thread to pick them up
+    private final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+    private volatile Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Future<?> loop;
+    // Open connections of the current run. stop() swaps in a new counter: connections it
+    // closes never decrement, and a late close from the old loop must not touch the new one
+    private volatile AtomicInteger connectionCount = new AtomicInteger();
+
+    NioHttpServer(String host, int port, Handler handler) {
+        this.host = host;
+        this.port = port;
+        this.handler = handler;
+    }
+
+    synchronized void start() throws IOException {
+        if (selector != null) return;
+        Selector sel = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.socket().setReuseAddress(true);
+            server.bind(new InetSocketAddress(host, port), 128);
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            sel.close();
+            throw e;
+        }
+        serverChannel = server;
+        selector = sel;
+        loop = PluginExecutors.startLongRunning("http-" + port, this::run);
+    }
+
+    synchronized void stop() {
+        Selector sel = selector;
+        if (sel == null) return;
+        selector = null;
+        try {
+            for (SelectionKey key : sel.keys()) {
+                key.channel().close();
+                Object att = key.attachment();
+                if (att instanceof Connection) ((Connection) att).closeBody();
+            }
+            serverChannel.close();
+            sel.close();
+        } catch (IOException | ClosedSelectorException e) {
+            Log.w(TAG, "Stopping server failed: " + e.getMessage());
+        }
+        if (loop != null) loop.cancel(true);
+        connectionCount = new AtomicInteger();
+    }
+
+    private void run() {
+        Selector sel = selector;
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (selector == sel) {
+                sel.select(SELECT_TIMEOUT_MS);
+
+                Connection done;
+                while ((done = completed.poll()) != null) {
+                    done.startWriting();
+                }
+
+                Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(sel);
+                            continue;
+                        }
+                        Connection conn = (Connection) key.attachment();
+                        if (key.isReadable()) conn.onReadable();
+                        if (key.isValid() && key.isWritable()) conn.onWritable();
+                    } catch (IOException e) {
+                        Object att = key.attachment();
+                        if (att instanceof Connection) ((Connection) att).close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                    lastIdleCheck = now;
+                    for (SelectionKey key : sel.keys()) {
+                        Object att = key.attachment();
+                        if (att instanceof Connection && ((Connection) att).isIdle(now)) {
+                            ((Connection) att).close();
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // stop() closed the selector
+        } catch (Exception e) {
+            Log.e(TAG, "Server loop on port " + port + " died: " + e.getMessage(), e);
+        }
+    }
+
+    private void accept(Selector sel) throws IOException {
+        SocketChannel ch;
+        AtomicInteger count = connectionCount;
+        while ((ch = serverChannel.accept()) != null) {
+            if (count.get() >= MAX_CONNECTIONS) {
+                ch.close();
+                continue;
+            }
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Connection conn = new Connection(ch, count);
+            conn.key = ch.register(sel, SelectionKey.OP_READ, conn);
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * State of one client connection. Everything except {@link #handleOnWorker} runs on the
+     * selector thread.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        // The counter of the run that accepted this connection
+        final AtomicInteger count;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        long lastActivityMs = System.currentTimeMillis();
+        boolean closed;
+        boolean inputClosed;
+
+        // Request in a worker, or response being written
+        boolean busy;
+        boolean closeAfterWrite;
+        Request request;
+        Response response;
+        ByteBuffer head;
+        ByteBuffer bodyBuffer;
+        FileChannel bodyFile;
+        long bodyPosition;
+        long bodyRemaining;
+
+        Connection(SocketChannel channel, AtomicInteger count) {
+            this.channel = channel;
+            this.count = count;
+        }
+
+        boolean isIdle(long now) {
+            return !busy && now - lastActivityMs > IDLE_TIMEOUT_MS;
+        }
+
+        void onReadable() throws IOException {
+            if (!in.hasRemaining()) {
+                if (in.capacity() >= MAX_HEADER_BYTES) {
+                    // Headers too large; busy connections stop reading, so this is a real overflow
+                    respondAndClose(Response.text(431, "Request header fields too large"));
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(in.capacity() * 2, MAX_HEADER_BYTES));
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+            int n = channel.read(in);
+            if (n < 0) {
+                inputClosed = true;
+                if (!busy) close();
+                else key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                return;
+            }
+            lastActivityMs = System.currentTimeMillis();
+            nextRequest();
+        }
+
+        /**
+         * Parses the next complete request from the buffer, if any, and hands it to a worker.
+         * Reading pauses while a request is in flight, so pipelined requests wait in the
+         * buffer (or the socket) and are answered in order.
+         */
+        void nextRequest() {
+            if (busy || closed) return;
+            int end = headerEnd(in);
+            if (end < 0) {
+                if (inputClosed) close();
+                else key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            byte[] raw = new byte[end];
+            in.flip();
+            in.get(raw);
+            in.compact();
+
+            Request req;
+            try {
+                req = parse(new String(raw, StandardCharsets.ISO_8859_1));
+            } catch (IllegalArgumentException e) {
+                respondAndClose(Response.text(400, "Bad request: " + e.getMessage()));
+                return;
+            }
+            if (req == null) {
+                respondAndClose(Response.text(505, "HTTP version not supported"));
+                return;
+            }
+
+            String len = req.header("content-length");
+            if ((len != null && !len.trim().equals("0")) || req.header("transfer-encoding") != null) {
+                // Bodies are never expected; rather than skip one, drop the connection
+                respondAndClose(Response.text(413, "Request bodies are not supported"));
+                return;
+            }
+            if (!req.method.equals("GET") && !req.method.equals("HEAD") && !req.method.equals("OPTIONS")) {
+                respond(req, Response.text(405, "Method not allowed").header("Allow", "GET, HEAD, OPTIONS"));
+                return;
+            }
+
+            busy = true;
+            request = req;
+            key.interestOps(0);
+            PluginExecutors.http().execute(PluginExecutors.Priority.HIGH, () -> handleOnWorker(req));
+        }
+
+        private void handleOnWorker(Request req) {
+            Response res;
+            try {
+                res = handler.handle(req);
+            } catch (Exception e) {
+                Log.w(TAG, req.method + " " + req.path + " failed: " + e.getMessage());
+                res = Response.text(500, "Server error: " + e.getMessage())
+                    .header("Access-Control-Allow-Origin", "*");
+            }
+            response = res;
+            completed.add(this);
+            Selector sel = selector;
+            if (sel != null) sel.wakeup();
+        }
+
+        private void respond(Request req, Response res) {
+            busy = true;
+            request = req;
+            response = res;
+            startWriting();
+        }
+
+        private void respondAndClose(Response res) {
+            closeAfterWrite = true;
+            respond(null, res);
+        }
+
+        void startWriting() {
+            if (closed) {
+                busy = false;
+                return;
+            }
+            Request req = request;
+            Response res = response;
+            if (req != null && !keepAlive(req)) closeAfterWrite = true;
+            boolean head = req != null && req.method.equals("HEAD");
+
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("HTTP/1.1 ").append(res.status).append(' ').append(reason(res.status)).append("\r\n");
+            for (Map.Entry<String, String> h : res.headers.entrySet()) {
+                sb.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+            }
+            if (res.status != 204 && res.status != 304) {
+                sb.append("Content-Length: ").append(res.length).append("\r\n");
+            }
+            sb.append("Connection: ").append(closeAfterWrite ? "close" : "keep-alive").append("\r\n\r\n");
+            this.head = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+            bodyBuffer = null;
+            bodyFile = null;
+            bodyRemaining = 0L;
+            if (!head && res.status != 204 && res.status != 304 && res.length > 0) {
+                if (res.body != null) {
+                    bodyBuffer = res.body.duplicate();
+                } else {
+                    try {
+                        bodyFile = new RandomAccessFile(res.file, "r").getChannel();
+                        bodyPosition = res.fileOffset;
+                        bodyRemaining = res.length;
+                    } catch (IOException e) {
+                        // Headers promised a body we can't send; the client must not reuse this
+                        Log.w(TAG, "Cannot open " + res.file + ": " + e.getMessage());
+                        close();
+                        return;
+                    }
+                }
+            }
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        void onWritable() throws IOException {
+            lastActivityMs = System.currentTimeMillis();
+            if (head.hasRemaining()) {
+                channel.write(head);
+                if (head.hasRemaining()) return;
+            }
+            if (bodyBuffer != null && bodyBuffer.hasRemaining()) {
+                channel.write(bodyBuffer);
+                if (bodyBuffer.hasRemaining()) return;
+            }
+            if (bodyFile != null && bodyRemaining > 0) {
+                long sent = bodyFile.transferTo(bodyPosition, bodyRemaining, channel);
+                if (sent <= 0 && bodyPosition >= bodyFile.size()) {
+                    throw new IOException("File shrank while being sent");
+                }
+                bodyPosition += sent;
+                bodyRemaining -= sent;
+                if (bodyRemaining > 0) return;
+            }
+
+            closeBody();
+            busy = false;
+            request = null;
+            response = null;
+            if (closeAfterWrite || inputClosed && headerEnd(in) < 0) {
+                close();
+                return;
+            }
+            // Answer the next pipelined request straight from the buffer
+            nextRequest();
+        }
+
+        void closeBody() {
+            if (bodyFile != null) {
+                try {
+                    bodyFile.close();
+                } catch (IOException ignored) {
+                }
+                bodyFile = null;
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            count.decrementAndGet();
+            closeBody();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean keepAlive(Request req) {
+        String connection = req.header("connection");
+        if (connection != null) {
+            String c = connection.toLowerCase(Locale.US);
+            if (c.contains("close")) return false;
+            if (c.contains("keep-alive")) return true;
+        }
+        return !"HTTP/1.0".equals(req.header(":version"));
+    }
+
+    /** Index just past the blank line ending the request head, or -1 if not complete yet */
+    private static int headerEnd(ByteBuffer in) {
+        int limit = in.position();
+        for (int i = 3; i < limit; i++) {
+            if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a request head. Returns null for a protocol other than HTTP/1.x. The version
+     * is kept as the pseudo-header ":version".
+     */
+    private static Request parse(String head) {
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) throw new IllegalArgumentException("malformed request line");
+        String version = requestLine[2];
+        if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put(":version", version);
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) continue;
+            int colon = line.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("malformed header");
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+
+        String target = requestLine[1];
+        String query = null;
+        int q = target.indexOf('?');
+        if (q >= 0) {
+            query = target.substring(q + 1);
+            target = target.substring(0, q);
+        }
+        String path = target.indexOf('%') >= 0 ? percentDecode(target) : target;
+        return new Request(requestLine[0], path, query, headers);
+    }
+
+    /**
+     * Decodes %XX escapes of a path as UTF-8. Unlike URLDecoder, which decodes form data,
+     * a '+' stays a '+': font stacks and file names contain them.
+     */
+    static String percentDecode(String s) {
+        byte[] out = new byte[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                int hi = i + 2 < s.length() ? Character.digit(s.charAt(i + 1), 16) : -1;
+                int lo = hi >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+                if (lo < 0) throw new IllegalArgumentException("bad percent-encoding");
+                out[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                // The head was read as ISO-8859-1, so each char is one raw byte
+                out[n++] = (byte) c;
+            }
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 413: return "Payload Too Large";
+            case 416: return "Range Not Satisfiable";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            case 505: return "HTTP Version Not Supported";
+            default: return "Status";
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.app;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.activity.result.ActivityResult;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+
+/**
+ * Local HTTP server for offline vector tiles, style, glyphs and session files
+ * (see {@link TileServer} for the routes). The server always runs on localhost:8080;
+ * the web app only switches the folder it reads from.
+ */
+@CapacitorPlugin(name = "OfflineTileServer")
+public class OfflineTileServerPlugin extends Plugin {
+
+    private static final String TAG = "TileServer";
+    static final int PORT = 8080;
+    static final String BASE_URL = "http://localhost:" + PORT;
+
+    private static final String PACK_OPERATION = "tilePack";
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private TileServer tileServer;
+
+    @Override
+    public void load() {
+        // Always start with default path - React will update if needed
+        initializeServer();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (tileServer != null) {
+            tileServer.stop();
+            tileServer = null;
+        }
+    }
+
+    private File getDefaultTilesDir() {
+        // Default path: Internal storage/Documents/tiles (public)
+        File documentsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        File tilesDir = new File(documentsDir, "tiles");
+        if (!tilesDir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            tilesDir.mkdirs();
+        }
+        return tilesDir;
+    }
+
+    private void initializeServer() {
+        try {
+            // Check storage permission first (Android 11+)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && !Environment.isExternalStorageManager()) {
+                Log.w(TAG, "Storage permission not granted - server will start but may fail to read files");
+            }
+
+            // Always use default path on startup - React manages saved paths via Capacitor Preferences
+            File defaultDir = getDefaultTilesDir();
+            Uri defaultUri = Uri.parse("file://" + defaultDir.getAbsolutePath());
+
+            TileServer server = new TileServer(getContext(), defaultUri, PORT, false);
+            server.start();
+            tileServer = server;
+            Log.d(TAG, "Server initialized with default path: " + defaultDir.getAbsolutePath());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to initialize server: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void selectTileFolder(PluginCall call) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        startActivityForResult(call, intent, "onFolderSelected");
+    }
+
+    @ActivityCallback
+    private void onFolderSelected(PluginCall call, ActivityResult result) {
+        if (result.getResultCode() != Activity.RESULT_OK) {
+            call.reject("User cancelled folder selection");
+            return;
+        }
+
+        Uri treeUri = result.getData() != null ? result.getData().getData() : null;
+        if (treeUri == null) {
+            call.reject("No folder selected");
+            return;
+        }
+
+        try {
+            // Persist read permission; React stores the URI via Capacitor Preferences
+            getContext().getContentResolver()
+                .takePersistableUriPermission(treeUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            JSObject ret = new JSObject();
+            ret.put("uri", treeUri.toString());
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to select folder: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getSavedFolderUri(PluginCall call) {
+        // React manages storage via Capacitor Preferences; nothing is saved natively
+        JSObject ret = new JSObject();
+        ret.put("uri", null);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void updateFolderPath(PluginCall call) {
+        String uriString = call.getString("uri");
+        if (uriString == null || uriString.trim().isEmpty()) {
+            call.reject("URI is required");
+            return;
+        }
+
+        Uri uri = Uri.parse(uriString);
+        boolean useTms = Boolean.TRUE.equals(call.getBoolean("useTms", false));
+
+        try {
+            // Ensure server is running (initialize if needed)
+            if (tileServer == null) {
+                initializeServer();
+            }
+            // Update the folder path without restarting server
+            JSObject ret = serverUrl();
+            if (tileServer != null) {
+                tileServer.updateFolderPath(uri, useTms);
+                ret.put("source", tileServer.describeSource());
+            }
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to update folder path: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getServerUrl(PluginCall call) {
+        call.resolve(serverUrl());
+    }
+
+    /**
+     * Hit/miss/eviction counters and size of the in-memory tile cache.
+     */
+    @PluginMethod
+    public void getTileCacheStats(PluginCall call) {
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+        JSObject ret = tileServer.cache().metrics();
+        ret.put("files", tileServer.files().metrics());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void clearTileCache(PluginCall call) {
+        if (tileServer != null) {
+            tileServer.cache().clear();
+            tileServer.files().clear();
+        }
+        call.resolve();
+    }
+
+    /**
+     * Viewport hint for the prefetcher: west, south, east, north, zoom (map zoom), plus
+     * optional heading (degrees true) and speed (m/s) of own ship, lookaheadSeconds,
+     * maxZoom of the tile source, and maxTiles/maxBytes budgets. Cancels the previous
+     * hint's prefetch; resolves at once with the number of tiles queued.
+     */
+    @PluginMethod
+    public void prefetch(PluginCall call) {
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+        Double west = call.getDouble("west");
+        Double south = call.getDouble("south");
+        Double east = call.getDouble("east");
+        Double north = call.getDouble("north");
+        Double zoom = call.getDouble("zoom");
+        if (west == null || south == null || east == null || north == null || zoom == null) {
+            call.reject("west, south, east, north and zoom are required");
+            return;
+        }
+
+        TilePrefetcher.Hint hint = new TilePrefetcher.Hint();
+        hint.west = west;
+        hint.south = south;
+        hint.east = east;
+        hint.north = north;
+        hint.zoom = zoom;
+        hint.heading = call.getDouble("heading", 0.0);
+        double speed = call.getDouble("speed", 0.0);
+        // A bad sample must not send the look-ahead to the far side of the map
+        hint.speed = Double.isNaN(speed) ? 0.0 : Math.max(0.0, Math.min(TilePrefetcher.MAX_SPEED_MPS, speed));
+        hint.lookaheadSeconds = call.getInt("lookaheadSeconds", TilePrefetcher.DEFAULT_LOOKAHEAD_SECONDS);
+        hint.maxZoom = call.getInt("maxZoom", hint.maxZoom);
+        hint.maxTiles = call.getInt("maxTiles", TilePrefetcher.DEFAULT_MAX_TILES);
+        hint.maxBytes = call.getLong("maxBytes", TilePrefetcher.DEFAULT_MAX_BYTES);
+
+        JSObject ret = new JSObject();
+        ret.put("queued", tileServer.prefetcher().hint(hint));
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void cancelPrefetch(PluginCall call) {
+        if (tileServer != null) tileServer.prefetcher().cancel();
+        call.resolve();
+    }
+
+    /**
+     * Prefetch counters: tiles warmed, skipped as already cached, cancelled or over budget,
+     * and how many warmed tiles were then requested by the map (hitRate = used / warmed).
+     */
+    @PluginMethod
+    public void getPrefetchStats(PluginCall call) {
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+        call.resolve(tileServer.prefetcher().metrics());
+    }
+
+    /**
+     * Packs a {z}/{x}/{y}.pbf folder into a single memory-mapped .tilepack file.
+     * source: folder path or URI (default: the folder being served);
+     * output: pack path (default: {source}/tiles.tilepack); useTms: rows of source are TMS;
+     * compress: gzip tiles stored uncompressed (default true).
+     * Emits "packProgress" {tilesDone, tilesTotal}. The server picks the pack up on the
+     * next updateFolderPath.
+     */
+    @PluginMethod
+    public void convertTileFolder(PluginCall call) {
+        String source = call.getString("source");
+        String output = call.getString("output");
+        boolean useTms = Boolean.TRUE.equals(call.getBoolean("useTms", false));
+        boolean compress = Boolean.TRUE.equals(call.getBoolean("compress", true));
+        if ((source == null || source.trim().isEmpty()) && tileServer == null) {
+            call.reject("source is required when the tile server is not running");
+            return;
+        }
+        if (!PluginExecutors.tryAcquire(PACK_OPERATION, 1)) {
+            call.reject("A tile folder conversion is already running");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            try {
+                File srcDir = source == null || source.trim().isEmpty() ? tileServer.folderDir()
+                    : source.contains("://") ? TileServer.resolveDir(getContext(), Uri.parse(source))
+                    : new File(source);
+                if (!srcDir.isDirectory()) {
+                    rejectOnMain(call, "Not a directory: " + srcDir.getAbsolutePath());
+                    return;
+                }
+                File out = output != null && !output.trim().isEmpty() ? new File(output)
+                    : new File(srcDir, "tiles" + PackedTileArchive.EXTENSION);
+
+                long startMs = SystemClock.elapsedRealtime();
+                long[] lastEmitMs = {0L};
+                TilePackWriter.Stats stats = TilePackWriter.pack(srcDir, out, useTms, compress, (done, total) -> {
+                    long nowMs = SystemClock.elapsedRealtime();
+                    if (done < total && nowMs - lastEmitMs[0] < 250) return;
+                    lastEmitMs[0] = nowMs;
+                    JSObject ev = new JSObject();
+                    ev.put("tilesDone", done);
+                    ev.put("tilesTotal", total);
+                    main.post(() -> notifyListeners("packProgress", ev));
+                });
+                Log.d(TAG, "Packed " + stats.tiles + " tiles into " + out.getAbsolutePath());
+
+                JSObject ret = new JSObject();
+                ret.put("output", out.getAbsolutePath());
+                ret.put("tiles", stats.tiles);
+                ret.put("uniqueBlobs", stats.uniqueBlobs);
+                ret.put("bytes", stats.bytes);
+                ret.put("elapsedMs", SystemClock.elapsedRealtime() - startMs);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Failed to convert tile folder: " + e.getMessage());
+            } finally {
+                PluginExecutors.release(PACK_OPERATION);
+            }
+        });
+    }
+
+    /**
+     * Pack, unpack and lookup timings of the tile pack against plain tile files, on a
+     * synthetic tree in the app's cache directory. tileCounts: sizes to run (default 20000).
+     */
+    @PluginMethod
+    public void benchmarkTilePack(PluginCall call) {
+        int[] tileCounts = TilePackBenchmark.DEFAULT_TILE_COUNTS;
+        JSArray requested = call.getArray("tileCounts");
+        if (requested != null && requested.length() > 0) {
+            tileCounts = new int[requested.length()];
+            for (int i = 0; i < requested.length(); i++) {
+                tileCounts[i] = requested.optInt(i, 0);
+                if (tileCounts[i] <= 0) {
+                    call.reject("tileCounts must be positive");
+                    return;
+                }
+            }
+        }
+        int lookups = call.getInt("lookups", TilePackBenchmark.DEFAULT_LOOKUPS);
+
+        final int[] counts = tileCounts;
+        PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+            try {
+                File scratch = new File(getContext().getCacheDir(), "tilepack-bench");
+                resolveOnMain(call, TilePackBenchmark.run(scratch, counts, lookups));
+            } catch (Exception e) {
+                rejectOnMain(call, "Benchmark failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Overzoom: serve missing tiles (e.g. past the source's max zoom) cut from their nearest
+     * ancestor. enabled (default true), maxLevels: how far up to look (default 6).
+     */
+    @PluginMethod
+    public void setOverzoom(PluginCall call) {
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+        boolean enabled = Boolean.TRUE.equals(call.getBoolean("enabled", true));
+        int levels = call.getInt("maxLevels", TileServer.DEFAULT_OVERZOOM_LEVELS);
+        tileServer.setOverzoomLevels(enabled ? levels : 0);
+
+        JSObject ret = new JSObject();
+        ret.put("maxLevels", tileServer.overzoomLevels());
+        call.resolve(ret);
+    }
+
+    /**
+     * Serves a DEM file (.tif/.tiff/.dett GeoTIFF or .hgt) as tiles, read natively by block:
+     * {baseUrl}/dem/{layerId}/{z}/{x}/{y}.png (hillshade, ?style=grayscale) and .terrain
+     * (terrain-RGB, ?encoding=terrarium|mapbox). layerId, path: file path or file:// URI.
+     * Resolves with the layer's size, bounds, elevation range and the tile URL templates.
+     */
+    @PluginMethod
+    public void addDemLayer(PluginCall call) {
+        String layerId = call.getString("layerId");
+        String path = call.getString("path");
+        if (layerId == null || layerId.isEmpty() || layerId.contains("/") || path == null || path.isEmpty()) {
+            call.reject("layerId (without '/') and path are required");
+            return;
+        }
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            try {
+                File file = path.contains("://") ? TileServer.resolveDir(getContext(), Uri.parse(path)) : new File(path);
+                if (!file.isFile()) {
+                    rejectOnMain(call, "DEM file not found: " + file.getAbsolutePath());
+                    return;
+                }
+                long startMs = SystemClock.elapsedRealtime();
+                DemLayer layer = DemLayer.open(layerId, file);
+                tileServer.addDemLayer(layer);
+                Log.d(TAG, "DEM layer " + layerId + " opened in " + (SystemClock.elapsedRealtime() - startMs)
+                    + "ms: " + file.getName());
+
+                JSObject ret = layer.describe();
+                String base = BASE_URL + "/dem/" + Uri.encode(layerId) + "/{z}/{x}/{y}";
+                ret.put("hillshadeUrl", base + ".png");
+                ret.put("terrainUrl", base + ".terrain");
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Cannot open DEM natively: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void removeDemLayer(PluginCall call) {
+        String layerId = call.getString("layerId");
+        JSObject ret = new JSObject();
+        ret.put("removed", tileServer != null && layerId != null && tileServer.removeDemLayer(layerId));
+        call.resolve(ret);
+    }
+
+    /**
+     * Open DEM layers and the decoded-block cache counters.
+     */
+    @PluginMethod
+    public void getDemStats(PluginCall call) {
+        if (tileServer == null) {
+            call.reject("Tile server is not running");
+            return;
+        }
+        JSArray layers = new JSArray();
+        for (DemLayer layer : tileServer.demLayers()) layers.put(layer.describe());
+        JSObject ret = new JSObject();
+        ret.put("layers", layers);
+        ret.put("blockCache", DemBlockCache.shared().metrics());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void checkStoragePermission(PluginCall call) {
+        boolean hasPermission;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Android 11+ (API 30+) - Check MANAGE_EXTERNAL_STORAGE
+            hasPermission = Environment.isExternalStorageManager();
+        } else {
+            // Android 10 and below - Check READ_EXTERNAL_STORAGE
+            hasPermission = getContext().checkSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE)
+                == PackageManager.PERMISSION_GRANTED;
+        }
+        JSObject ret = new JSObject();
+        ret.put("hasPermission", hasPermission);
+        call.resolve(ret);
+    }
+
+    private void resolveOnMain(PluginCall call, JSObject ret) {
+        main.post(() -> call.resolve(ret));
+    }
+
+    private void rejectOnMain(PluginCall call, String msg) {
+        main.post(() -> call.reject(msg));
+    }
+
+    private JSObject serverUrl() {
+        JSObject ret = new JSObject();
+        ret.put("baseUrl", BASE_URL);
+        ret.put("port", PORT);
+        // Session files need this launch's token; unset while the server is down
+        if (tileServer != null) ret.put("filesUrl", BASE_URL + tileServer.filesPath());
+        return ret;
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.app;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader for PMTiles v3 archives (https://github.com/protomaps/PMTiles/blob/main/spec/v3/spec.md).
+ *
+ * The file is memory-mapped ({@link MappedFile}). The root directory is decoded once when the
+ * archive is opened and leaf directories are kept in a small LRU, so a lookup is a binary
+ * search or two over arrays already in memory plus one slice of the mapping.
+ */
+final class PMTilesArchive implements TileArchive {
+
+    private static final String TAG = "PMTilesArchive";
+
+    private static final int HEADER_BYTES = 127;
+    private static final int MAX_CACHED_LEAVES = 64;
+    private static final int MAX_DEPTH = 4;
+
+    // Compression values of the header
+    private static final int COMPRESSION_NONE = 1;
+    private static final int COMPRESSION_GZIP = 2;
+
+    /** A decoded directory: parallel arrays sorted by tile id */
+    private static final class Directory {
+        final long[] tileIds;
+        final int[] runLengths;
+        final int[] lengths;
+        final long[] offsets;
+
+        Directory(long[] tileIds, int[] runLengths, int[] lengths, long[] offsets) {
+            this.tileIds = tileIds;
+            this.runLengths = runLengths;
+            this.lengths = lengths;
+            this.offsets = offsets;
+        }
+    }
+
+    private final File file;
+    private final MappedFile mapped;
+
+    private final long metadataOffset;
+    private final long metadataLength;
+    private final long leafDirsOffset;
+    private final long tileDataOffset;
+    private final int internalCompression;
+    private final int tileCompression;
+    private final int tileType;
+    private final int minZoom;
+    private final int maxZoom;
+    private final double[] bounds;
+
+    private final Directory root;
+    private final LinkedHashMap<Long, Directory> leaves = new LinkedHashMap<Long, Directory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Directory> eldest) {
+            return size() > MAX_CACHED_LEAVES;
+        }
+    };
+
+    PMTilesArchive(File file) throws IOException {
+        this.file = file;
+        this.mapped = new MappedFile(file);
+        try {
+            if (mapped.size() < HEADER_BYTES) throw new IOException("Not a PMTiles file: " + file.getName());
+
+            ByteBuffer h = mapped.slice(0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[7];
+            h.get(magic);
+            if (!"PMTiles".equals(new String(magic, "US-ASCII")) || h.get(7) != 3) {
+                throw new IOException("Unsupported PMTiles version in " + file.getName());
+            }
+            long rootOffset = h.getLong(8);
+            long rootLength = h.getLong(16);
+            this.metadataOffset = h.getLong(24);
+            this.metadataLength = h.getLong(32);
+            this.leafDirsOffset = h.getLong(40);
+            this.tileDataOffset = h.getLong(56);
+            this.internalCompression = h.get(97) & 0xFF;
+            this.tileCompression = h.get(98) & 0xFF;
+            this.tileType = h.get(99) & 0xFF;
+            this.minZoom = h.get(100) & 0xFF;
+            this.maxZoom = h.get(101) & 0xFF;
+            this.bounds = new double[] {
+                h.getInt(102) / 1e7, h.getInt(106) / 1e7, h.getInt(110) / 1e7, h.getInt(114) / 1e7
+            };
+
+            this.root = readDirectory(rootOffset, rootLength);
+        } catch (IOException | RuntimeException e) {
+            mapped.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] getTile(int z, int x, int y) throws IOException {
+        if (z < minZoom || z > maxZoom || z > 31) return null;
+        long tileId = tileId(z, x, y);
+
+        Directory dir = root;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            int i = findEntry(dir.tileIds, tileId);
+            if (i < 0) return null;
+
+            if (dir.runLengths[i] == 0) {
+                // A leaf directory covering this id range
+                dir = leaf(dir.offsets[i], dir.lengths[i]);
+                continue;
+            }
+            if (tileId >= dir.tileIds[i] + dir.runLengths[i]) return null;
+
+            return mapped.read(tileDataOffset + dir.offsets[i], dir.lengths[i]);
+        }
+        Log.w(TAG, "Directory nesting too deep in " + file.getName());
+        return null;
+    }
+
+    @Override
+    public JSObject describe() {
+        JSObject ret = new JSObject();
+        ret.put("format", "pmtiles");
+        ret.put("file", file.getAbsolutePath());
+        ret.put("minZoom", minZoom);
+        ret.put("maxZoom", maxZoom);
+        ret.put("tileType", tileTypeName(tileType));
+        ret.put("tileCompression", tileCompression == COMPRESSION_GZIP ? "gzip"
+            : tileCompression == COMPRESSION_NONE ? "none" : "other");
+        ret.put("bounds", Arrays.toString(bounds));
+        ret.put("metadataBytes", metadataLength);
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        mapped.close();
+    }
+
+    /**
+     * Hilbert-curve tile id: all tiles of lower zooms come first, then the tile's position
+     * along the Hilbert curve of its own zoom.
+     */
+    static long tileId(int z, long x, long y) {
+        if (z == 0) return 0L;
+        long acc = ((1L << (2 * z)) - 1) / 3;
+        long d = 0;
+        for (long s = 1L << (z - 1); s > 0; s >>= 1) {
+            long rx = (x & s) > 0 ? 1 : 0;
+            long ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return acc + d;
+    }
+
+    /** Inverse of {@link #tileId}: {z, x, y} */
+    static long[] zxy(long tileId) {
+        int z = 0;
+        long acc = 0;
+        while (z < 31) {
+            long next = acc + (1L << (2 * z));
+            if (next > tileId) break;
+            acc = next;
+            z++;
+        }
+        long t = tileId - acc;
+        long x = 0;
+        long y = 0;
+        for (long s = 1; s < (1L << z); s <<= 1) {
+            long rx = 1 & (t >> 1);
+            long ry = 1 & (t ^ rx);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+            x += s * rx;
+            y += s * ry;
+            t >>= 2;
+        }
+        return new long[] {z, x, y};
+    }
+
+    /** Index of the last entry with tileIds[i] <= tileId, or -1 */
+    private static int findEntry(long[] tileIds, long tileId) {
+        int lo = 0;
+        int hi = tileIds.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tileIds[mid] <= tileId) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private Directory leaf(long offset, int length) throws IOException {
+        synchronized (leaves) {
+            Directory dir = leaves.get(offset);
+            if (dir != null) return dir;
+        }
+        Directory dir = readDirectory(leafDirsOffset + offset, length);
+        synchronized (leaves) {
+            leaves.put(offset, dir);
+        }
+        return dir;
+    }
+
+    private Directory readDirectory(long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) throw new IOException("Directory too large");
+        byte[] bytes = decompress(mapped.read(offset, (int) length), internalCompression);
+
+        VarintReader in = new VarintReader(bytes);
+        int n = (int) in.next();
+        long[] tileIds = new long[n];
+        int[] runLengths = new int[n];
+        int[] lengths = new int[n];
+        long[] offsets = new long[n];
+
+        long last = 0;
+        for (int i = 0; i < n; i++) {
+            last += in.next();
+            tileIds[i] = last;
+        }
+        for (int i = 0; i < n; i++) runLengths[i] = (int) in.next();
+        for (int i = 0; i < n; i++) lengths[i] = (int) in.next();
+        for (int i = 0; i < n; i++) {
+            long v = in.next();
+            // 0 means "right after the previous entry"
+            offsets[i] = v == 0 && i > 0 ? offsets[i - 1] + lengths[i - 1] : v - 1;
+        }
+        return new Directory(tileIds, runLengths, lengths, offsets);
+    }
+
+    private static byte[] decompress(byte[] data, int compression) throws IOException {
+        if (compression == COMPRESSION_NONE) return data;
+        if (compression != COMPRESSION_GZIP) {
+            throw new IOException("Unsupported PMTiles compression: " + compression);
+        }
+        return TileGzip.decompress(data);
+    }
+
+    private static String tileTypeName(int type) {
+        switch (type) {
+            case 1: return "mvt";
+            case 2: return "png";
+            case 3: return "jpeg";
+            case 4: return "webp";
+            case 5: return "avif";
+            default: return "unknown";
+        }
+    }
+
+    private static final class VarintReader {
+        private final byte[] data;
+        private int pos;
+
+        VarintReader(byte[] data) {
+            this.data = data;
+        }
+
+        long next() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= data.length) throw new IOException("Truncated PMTiles directory");
+                int b = data[pos++] & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint in PMTiles directory");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.app;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader for the app's own packed tile format (.tilepack, written by {@link TilePackWriter}).
+ *
+ * Layout, all integers big-endian:
+ *   0   header (64 bytes): magic "TILEPAK1", u32 version, u32 flags, u64 tile count,
+ *       u64 index offset, u64 data offset, u64 data length, u8 min zoom, u8 max zoom
+ *   ... tile blobs, appended in tile-id order; identical small tiles are stored once
+ *   ... index: one 20-byte entry per tile (u64 tile id, u64 offset into the data section,
+ *       u32 length), sorted by tile id
+ *
+ * Tile ids are the PMTiles Hilbert ids ({@link PMTilesArchive#tileId}), so tiles that are
+ * neighbours on the map are mostly neighbours in the file. The whole file is mapped; a
+ * lookup is a binary search over the mapped index and {@link #slice} hands back a view of
+ * the mapping that the server writes to the socket without copying.
+ */
+final class PackedTileArchive implements TileArchive {
+
+    static final String EXTENSION = ".tilepack";
+    static final byte[] MAGIC = "TILEPAK1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int INDEX_ENTRY_BYTES = 20;
+
+    private final File file;
+    private final long lastModified;
+    private final MappedFile mapped;
+    private final ByteBuffer index;
+    private final int tileCount;
+    private final long dataOffset;
+    private final long dataLength;
+    private final int minZoom;
+    private final int maxZoom;
+
+    PackedTileArchive(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.mapped = new MappedFile(file);
+        try {
+            if (mapped.size() < HEADER_BYTES) throw new IOException("Not a tile pack: " + file.getName());
+            ByteBuffer h = mapped.slice(0, HEADER_BYTES);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (h.get(i) != MAGIC[i]) throw new IOException("Not a tile pack: " + file.getName());
+            }
+            if (h.getInt(8) != VERSION) {
+                throw new IOException("Unsupported tile pack version " + h.getInt(8) + " in " + file.getName());
+            }
+            long count = h.getLong(16);
+            long indexOffset = h.getLong(24);
+            this.dataOffset = h.getLong(32);
+            this.dataLength = h.getLong(40);
+            this.minZoom = h.get(48) & 0xFF;
+            this.maxZoom = h.get(49) & 0xFF;
+
+            if (count < 0 || count * INDEX_ENTRY_BYTES > Integer.MAX_VALUE
+                    || indexOffset + count * INDEX_ENTRY_BYTES > mapped.size()
+                    || dataOffset + dataLength > mapped.size()) {
+                throw new IOException("Corrupt tile pack header in " + file.getName());
+            }
+            this.tileCount = (int) count;
+            this.index = mapped.slice(indexOffset, tileCount * INDEX_ENTRY_BYTES);
+        } catch (IOException | RuntimeException e) {
+            mapped.close();
+            throw e;
+        }
+    }
+
+    /** Index entry of the tile, or -1 if the pack doesn't hold it */
+    int find(int z, int x, int y) {
+        if (z < minZoom || z > maxZoom || x < 0 || y < 0 || x >= (1L << z) || y >= (1L << z)) return -1;
+        long tileId = PMTilesArchive.tileId(z, x, y);
+        int lo = 0;
+        int hi = tileCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long id = index.getLong(mid * INDEX_ENTRY_BYTES);
+            if (id < tileId) {
+                lo = mid + 1;
+            } else if (id > tileId) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Modification time when opened; a rewritten pack reuses offsets for other tiles */
+    long lastModified() {
+        return lastModified;
+    }
+
+    int tileCount() {
+        return tileCount;
+    }
+
+    long tileId(int entry) {
+        return index.getLong(entry * INDEX_ENTRY_BYTES);
+    }
+
+    /** Offset of the entry's blob in the data section; equal offsets mean equal bytes */
+    long offset(int entry) {
+        return index.getLong(entry * INDEX_ENTRY_BYTES + 8);
+    }
+
+    int length(int entry) {
+        return index.getInt(entry * INDEX_ENTRY_BYTES + 16);
+    }
+
+    /** Read-only view of the entry's bytes inside the mapping */
+    ByteBuffer slice(int entry) throws IOException {
+        long offset = offset(entry);
+        int length = length(entry);
+        if (offset < 0 || length < 0 || offset + length > dataLength) {
+            throw new IOException("Corrupt index entry " + entry + " in " + file.getName());
+        }
+        return mapped.slice(dataOffset + offset, length);
+    }
+
+    @Override
+    public byte[] getTile(int z, int x, int y) throws IOException {
+        int entry = find(z, x, y);
+        if (entry < 0) return null;
+        ByteBuffer b = slice(entry);
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    @Override
+    public JSObject describe() {
+        JSObject ret = new JSObject();
+        ret.put("format", "tilepack");
+        ret.put("file", file.getAbsolutePath());
+        ret.put("minZoom", minZoom);
+        ret.put("maxZoom", maxZoom);
+        ret.put("tileCount", tileCount);
+        ret.put("dataBytes", dataLength);
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        mapped.close();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.app;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared worker pools for all plugins.
+ *
+ * Plugins must not spawn their own threads: CPU-bound work (deflate/inflate, decoding)
+ * goes to {@link #cpu()}, blocking file/network work to {@link #io()}, requests of the
+ * local HTTP server to {@link #http()} (so tile fetches never queue behind staging copies),
+ * and loops that never return (socket listeners) to {@link #startLongRunning}. Queued tasks run in
+ * {@link Priority} order, and heavy operations can be capped with {@link #tryAcquire}.
+ */
+final class PluginExecutors {
+
+    private static final String TAG = "PluginExecutors";
+
+    enum Priority {
+        // User is waiting on the result (e.g. a staging copy in progress)
+        HIGH(Process.THREAD_PRIORITY_DEFAULT),
+        NORMAL(Process.THREAD_PRIORITY_BACKGROUND),
+        // Speculative or housekeeping work
+        LOW(Process.THREAD_PRIORITY_LOWEST);
+
+        final int threadPriority;
+
+        Priority(int threadPriority) {
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    private static final int CPU_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // Flash storage gains little from deeper queues, and every extra stream costs a 1MB buffer
+    private static final int IO_THREADS = 4;
+
+    private static final Pool CPU = new Pool("hsc-cpu", CPU_THREADS);
+    private static final Pool IO = new Pool("hsc-io", IO_THREADS);
+    // MapLibre fetches 6-12 tiles at once; each request is a short read
+    private static final int HTTP_THREADS = 4;
+    private static final Pool HTTP = new Pool("hsc-http", HTTP_THREADS);
+
+    private static final AtomicInteger longRunningSeq = new AtomicInteger();
+    private static final ExecutorService LONG_RUNNING = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "hsc-long-" + longRunningSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Map<String, Semaphore> operationLimits = new ConcurrentHashMap<>();
+
+    private PluginExecutors() {}
+
+    static Pool cpu() {
+        return CPU;
+    }
+
+    static Pool io() {
+        return IO;
+    }
+
+    static Pool http() {
+        return HTTP;
+    }
+
+    /**
+     * Run a task that blocks for the lifetime of a plugin (e.g. a UDP receive loop) on its own
+     * named thread, so it doesn't pin a worker of the bounded pools. Cancel the returned future
+     * (and close the underlying resource) to stop it.
+     */
+    static Future<?> startLongRunning(String name, Runnable task) {
+        return LONG_RUNNING.submit(() -> {
+            Thread current = Thread.currentThread();
+            String previousName = current.getName();
+            current.setName("hsc-" + name);
+            try {
+                task.run();
+            } finally {
+                current.setName(previousName);
+            }
+        });
+    }
+
+    /**
+     * Claim one of {@code limit} slots for an operation key. Returns false if all slots are
+     * taken; every successful call must be paired with {@link #release}.
+     */
+    static boolean tryAcquire(String operation, int limit) {
+        return operationLimits.computeIfAbsent(operation, k -> new Semaphore(limit)).tryAcquire();
+    }
+
+    static void release(String operation) {
+        Semaphore semaphore = operationLimits.get(operation);
+        if (semaphore != null) semaphore.release();
+    }
+
+    static JSObject metrics() {
+        JSObject ret = new JSObject();
+        ret.put("cpu", CPU.metrics());
+        ret.put("io", IO.metrics());
+        ret.put("http", HTTP.metrics());
+        JSObject ops = new JSObject();
+        for (Map.Entry<String, Semaphore> e : operationLimits.entrySet()) {
+            ops.put(e.getKey(), e.getValue().availablePermits());
+        }
+        ret.put("availablePermits", ops);
+        return ret;
+    }
+
+    static final class Pool {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong totalQueueWaitMs = new AtomicLong();
+
+        Pool(String name, int threads) {
+            this.name = name;
+            AtomicInteger threadSeq = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, name + "-" + threadSeq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), factory);
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        void execute(Priority priority, Runnable task) {
+            submit(priority, task);
+        }
+
+        Future<?> submit(Priority priority, Runnable task) {
+            return submit(priority, () -> {
+                task.run();
+                return null;
+            });
+        }
+
+        <T> Future<T> submit(Priority priority, Callable<T> task) {
+            PrioritizedTask<T> ft = new PrioritizedTask<>(task, priority, sequence.incrementAndGet());
+            submitted.incrementAndGet();
+            executor.execute(ft);
+            return ft;
+        }
+
+        JSObject metrics() {
+            long done = completed.get();
+            JSObject ret = new JSObject();
+            ret.put("threads", executor.getMaximumPoolSize());
+            ret.put("active", executor.getActiveCount());
+            ret.put("queued", executor.getQueue().size());
+            ret.put("submitted", submitted.get());
+            ret.put("completed", done);
+            ret.put("avgQueueWaitMs", done == 0 ? 0 : totalQueueWaitMs.get() / done);
+            return ret;
+        }
+
+        private final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+            private final Priority priority;
+            private final long seq;
+            private final long enqueuedMs = System.currentTimeMillis();
+
+            PrioritizedTask(Callable<T> callable, Priority priority, long seq) {
+                super(callable);
+                this.priority = priority;
+                this.seq = seq;
+            }
+
+            @Override
+            public void run() {
+                totalQueueWaitMs.addAndGet(System.currentTimeMillis() - enqueuedMs);
+                try {
+                    Process.setThreadPriority(priority.threadPriority);
+                } catch (Exception e) {
+                    Log.w(TAG, name + ": could not set thread priority: " + e.getMessage());
+                }
+                try {
+                    super.run();
+                } finally {
+                    completed.incrementAndGet();
+                }
+            }
+
+            @Override
+            public int compareTo(PrioritizedTask<?> other) {
+                // Higher priority first, FIFO within the same priority
+                int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+                return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.app;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal 8-bit PNG writer for rendered DEM tiles. Bitmap.compress would need a Bitmap per
+ * tile and always writes RGBA at a slow compression level; tiles here are gray+alpha or
+ * RGB, Sub-filtered and deflated at the fastest level, since they only travel over
+ * localhost.
+ */
+final class PngEncoder {
+
+    static final int GRAY_ALPHA = 2;
+    static final int RGB = 3;
+    static final int RGBA = 4;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private PngEncoder() {}
+
+    /** {@code pixels} holds {@code channels} bytes per pixel, row by row */
+    static byte[] encode(int width, int height, int channels, byte[] pixels) {
+        int colorType;
+        switch (channels) {
+            case GRAY_ALPHA: colorType = 4; break;
+            case RGB: colorType = 2; break;
+            case RGBA: colorType = 6; break;
+            default: throw new IllegalArgumentException("Unsupported channel count " + channels);
+        }
+
+        int stride = width * channels;
+        byte[] filtered = new byte[(stride + 1) * height];
+        for (int y = 0; y < height; y++) {
+            int in = y * stride;
+            int out = y * (stride + 1);
+            filtered[out] = 1; // Sub: difference to the same channel of the pixel on the left
+            for (int i = 0; i < stride; i++) {
+                int left = i >= channels ? pixels[in + i - channels] : 0;
+                filtered[out + 1 + i] = (byte) (pixels[in + i] - left);
+            }
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream(filtered.length / 4 + 64);
+        try {
+            deflater.setInput(filtered);
+            deflater.finish();
+            byte[] buf = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                idat.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8; // bit depth
+        ihdr[9] = (byte) colorType;
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(idat.size() + 64);
+        png.write(SIGNATURE, 0, SIGNATURE.length);
+        chunk(png, "IHDR", ihdr);
+        chunk(png, "IDAT", idat.toByteArray());
+        chunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void chunk(ByteArrayOutputStream out, String type, byte[] data) {
+        byte[] header = new byte[8];
+        putInt(header, 0, data.length);
+        for (int i = 0; i < 4; i++) header[4 + i] = (byte) type.charAt(i);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, data.length);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(header, 0, 8);
+        out.write(data, 0, data.length);
+        out.write(trailer, 0, 4);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+}
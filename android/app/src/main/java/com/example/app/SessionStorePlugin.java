@@ -0,0 +1,703 @@
+package com.example.app;
+
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Incremental autosave for layers.
+ *
+ * JS sends per-layer deltas (put / delete / order / nodeIconMappings), after seeding the store
+ * with one reset that replaces the whole session as a single record. They are applied to an
+ * in-memory copy of the session and appended to a write-ahead log; calls that arrive while an
+ * fsync is in flight are committed together with the next one. In the background the log is
+ * compacted into HSC-SESSIONS/AUTOSAVE/session.zip, the same layout saveLayers() produces
+ * (layers.json, node_icon_mappings.json, bitmaps/bitmap_{id}.png), and older logs are dropped.
+ *
+ * The log is an {@link AppendLog}; replay stops at the first torn or corrupt record.
+ * Bitmaps of layers that are no longer in the session are deleted once the delete or reset
+ * is durable, and swept again on compaction.
+ */
+@CapacitorPlugin(name = "SessionStore")
+public class SessionStorePlugin extends Plugin {
+
+    private static final String TAG = "SessionStore";
+
+    static final String AUTOSAVE_DIR = "AUTOSAVE";
+    private static final String SESSION_FILE = "session.zip";
+    private static final String BITMAPS_DIR = "bitmaps";
+
+    // Compact once the current log holds this much
+    private static final long COMPACT_WAL_BYTES = 8L * 1024 * 1024;
+    private static final int COMPACT_WAL_RECORDS = 1000;
+
+    // putBitmap runs before the put that adds its layer: younger bitmaps are never swept
+    private static final long BITMAP_GRACE_MS = 60_000L;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private volatile boolean available;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+
+    // Session state; guarded by stateLock. Values are layer JSON text, in layer order.
+    private final Object stateLock = new Object();
+    private final LinkedHashMap<String, String> layers = new LinkedHashMap<>();
+    private String nodeIconMappings = "{}";
+    private List<String> pendingRecords = new ArrayList<>();
+    private List<Pending> pendingCalls = new ArrayList<>();
+    private boolean flushScheduled;
+
+    // WAL file state; guarded by walLock, which is always taken before stateLock
+    private final Object walLock = new Object();
+    private File dir;
+    private long generation;
+    private AppendLog wal;
+    private long lastCompactionMs;
+
+    private static class Pending {
+        final PluginCall call;
+        final JSObject result;
+        final boolean compact;
+
+        Pending(PluginCall call, JSObject result, boolean compact) {
+            this.call = call;
+            this.result = result;
+            this.compact = compact;
+        }
+    }
+
+    @Override
+    public void load() {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                recover();
+            } catch (Exception e) {
+                Log.e(TAG, "Session recovery failed: " + e.getMessage(), e);
+            } finally {
+                loaded.countDown();
+            }
+        });
+    }
+
+    /**
+     * ops: [{type: "put", layerId, layer}, {type: "delete", layerId},
+     *       {type: "order", layerIds}, {type: "nodeIconMappings", value},
+     *       {type: "reset", layers, nodeIconMappings}]
+     * Resolves once the deltas are durable in the log.
+     */
+    @PluginMethod
+    public void applyDeltas(PluginCall call) {
+        JSArray ops = call.getArray("ops");
+        if (ops == null || ops.length() == 0) {
+            call.reject("ops is required");
+            return;
+        }
+
+        List<String> records = new ArrayList<>(ops.length());
+        try {
+            for (int i = 0; i < ops.length(); i++) {
+                records.add(toRecord(ops.getJSONObject(i)));
+            }
+        } catch (Exception e) {
+            call.reject("Invalid delta: " + e.getMessage());
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                awaitLoaded();
+                enqueue(records, new Pending(call, new JSObject(), false));
+            } catch (Exception e) {
+                rejectOnMain(call, "Apply failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stores a DEM bitmap (PNG, base64) for a layer; it is packed into the next compaction.
+     */
+    @PluginMethod
+    public void putBitmap(PluginCall call) {
+        String layerId = call.getString("layerId");
+        String base64Data = call.getString("base64Data");
+        if (layerId == null || layerId.isEmpty() || base64Data == null) {
+            call.reject("layerId and base64Data are required");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            try {
+                awaitLoaded();
+                File bitmapsDir = new File(dir, BITMAPS_DIR);
+                //noinspection ResultOfMethodCallIgnored
+                bitmapsDir.mkdirs();
+                File target = new File(bitmapsDir, bitmapFileName(layerId));
+                ChunkedWrite write = new ChunkedWrite(layerId, new File(bitmapsDir, target.getName() + ".partial"), target, "image/png");
+                try {
+                    write.append(base64Data);
+                    write.commit();
+                } catch (Exception e) {
+                    write.abort();
+                    throw e;
+                }
+                resolveOnMain(call, new JSObject());
+            } catch (Exception e) {
+                rejectOnMain(call, "Bitmap save failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits until everything applied so far is durable; with {compact: true} also rewrites
+     * session.zip before resolving, so it can be read back directly.
+     */
+    @PluginMethod
+    public void flush(PluginCall call) {
+        boolean compact = Boolean.TRUE.equals(call.getBoolean("compact", false));
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                awaitLoaded();
+                enqueue(new ArrayList<>(), new Pending(call, null, compact));
+            } catch (Exception e) {
+                rejectOnMain(call, "Flush failed: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getSessionInfo(PluginCall call) {
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
+            try {
+                awaitLoaded();
+                resolveOnMain(call, sessionInfo());
+            } catch (Exception e) {
+                rejectOnMain(call, "Info failed: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                awaitLoaded();
+                compactionLock.lock();
+                try {
+                    synchronized (walLock) {
+                        synchronized (stateLock) {
+                            layers.clear();
+                            nodeIconMappings = "{}";
+                            // Queued deltas predate the clear; their calls still resolve
+                            pendingRecords.clear();
+                        }
+                        closeWal();
+                        deleteTree(dir);
+                        //noinspection ResultOfMethodCallIgnored
+                        dir.mkdirs();
+                        generation++;
+                        openWal();
+                    }
+                } finally {
+                    compactionLock.unlock();
+                }
+                resolveOnMain(call, new JSObject());
+            } catch (Exception e) {
+                rejectOnMain(call, "Clear failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void awaitLoaded() throws InterruptedException {
+        loaded.await();
+        if (!available) throw new IllegalStateException("Session store unavailable");
+    }
+
+    /**
+     * Queues records with their call; one flush task at a time writes everything queued so
+     * far with a single fsync and applies it to memory once it is durable.
+     */
+    private void enqueue(List<String> records, Pending pending) {
+        synchronized (stateLock) {
+            pendingRecords.addAll(records);
+            pendingCalls.add(pending);
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, this::flushWal);
+    }
+
+    private void flushWal() {
+        List<String> records;
+        List<Pending> calls;
+        Exception failure = null;
+        boolean wantCompaction;
+
+        synchronized (walLock) {
+            synchronized (stateLock) {
+                records = pendingRecords;
+                calls = pendingCalls;
+                pendingRecords = new ArrayList<>();
+                pendingCalls = new ArrayList<>();
+                flushScheduled = false;
+            }
+            try {
+                if (wal == null) throw new IOException("WAL unavailable");
+                wal.append(records);
+                // Memory only ever holds what the log does, so a compaction (which snapshots
+                // under walLock) can't persist deltas whose calls were rejected
+                synchronized (stateLock) {
+                    for (String r : records) {
+                        applyRecord(r);
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+                // Later flushes go to a fresh log, never behind a tail replay would stop at
+                try {
+                    closeWal();
+                    generation++;
+                    openWal();
+                } catch (IOException rollFailure) {
+                    Log.e(TAG, "Cannot start a new WAL after a failed write: " + rollFailure.getMessage());
+                }
+            }
+            wantCompaction = wal != null && (wal.bytes() >= COMPACT_WAL_BYTES || wal.records() >= COMPACT_WAL_RECORDS);
+        }
+
+        // Deleted layers' bitmaps go once the delete is durable, before JS can put new ones
+        if (failure == null && dropsLayers(records)) {
+            sweepBitmaps(BITMAP_GRACE_MS);
+        }
+
+        for (Pending p : calls) {
+            if (failure != null) {
+                rejectOnMain(p.call, "WAL write failed: " + failure.getMessage());
+            } else if (p.compact) {
+                try {
+                    compact(true);
+                    resolveOnMain(p.call, sessionInfo());
+                } catch (Exception e) {
+                    rejectOnMain(p.call, "Compaction failed: " + e.getMessage());
+                }
+            } else if (p.result == null) {
+                resolveOnMain(p.call, sessionInfo());
+            } else {
+                p.result.put("records", records.size());
+                resolveOnMain(p.call, p.result);
+            }
+        }
+
+        if (failure == null && wantCompaction) {
+            PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+                try {
+                    compact(false);
+                } catch (Exception e) {
+                    Log.w(TAG, "Background compaction failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Rolls the log over to a new generation, writes the state as of the roll into
+     * session.zip, then deletes the logs it covers. Appends continue meanwhile.
+     * Background callers skip if a compaction is already running; {@code wait} callers
+     * queue behind it so session.zip is current when they return.
+     */
+    private void compact(boolean wait) throws Exception {
+        if (wait) {
+            compactionLock.lock();
+        } else if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            long snapshotGeneration;
+            List<Map.Entry<String, String>> snapshot;
+            String mappings;
+            synchronized (walLock) {
+                synchronized (stateLock) {
+                    snapshot = new ArrayList<>(new LinkedHashMap<>(layers).entrySet());
+                    mappings = nodeIconMappings;
+                }
+                // Queued records go to the new log and are applied once written there
+                closeWal();
+                generation++;
+                openWal();
+                snapshotGeneration = generation;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            writeSessionZip(snapshot, mappings, snapshotGeneration);
+            deleteLogsBefore(snapshotGeneration);
+            sweepBitmaps(BITMAP_GRACE_MS);
+            lastCompactionMs = SystemClock.elapsedRealtime() - start;
+            Log.d(TAG, "Compacted " + snapshot.size() + " layers in " + lastCompactionMs + "ms");
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void writeSessionZip(List<Map.Entry<String, String>> snapshot, String mappings, long walGeneration) throws IOException {
+        File target = new File(dir, SESSION_FILE);
+        File tmp = new File(dir, SESSION_FILE + ".tmp");
+        File bitmapsDir = new File(dir, BITMAPS_DIR);
+
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             ZipOutputStream zos = new ZipOutputStream(fos)) {
+            // Autosave runs often; favour speed over ratio
+            zos.setLevel(Deflater.BEST_SPEED);
+
+            zos.putNextEntry(new ZipEntry("layers.json"));
+            Writer w = new OutputStreamWriter(zos, StandardCharsets.UTF_8);
+            // Stream layer JSON as stored instead of building one big object
+            w.write("{\"version\":\"1.0\",\"timestamp\":");
+            w.write(JSONObject.quote(isoNow()));
+            w.write(",\"walGeneration\":" + walGeneration);
+            w.write(",\"nodeIconMappings\":");
+            w.write(mappings);
+            w.write(",\"layers\":[");
+            boolean first = true;
+            for (Map.Entry<String, String> e : snapshot) {
+                if (!first) w.write(',');
+                w.write(e.getValue());
+                first = false;
+            }
+            w.write("]}");
+            w.flush();
+            zos.closeEntry();
+
+            if (!"{}".equals(mappings)) {
+                zos.putNextEntry(new ZipEntry("node_icon_mappings.json"));
+                zos.write(mappings.getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+
+            byte[] buf = new byte[64 * 1024];
+            for (Map.Entry<String, String> e : snapshot) {
+                File bitmap = new File(bitmapsDir, bitmapFileName(e.getKey()));
+                if (!bitmap.isFile()) continue;
+                zos.putNextEntry(new ZipEntry(BITMAPS_DIR + "/" + bitmap.getName()));
+                try (InputStream in = new FileInputStream(bitmap)) {
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        zos.write(buf, 0, read);
+                    }
+                }
+                zos.closeEntry();
+            }
+
+            zos.finish();
+            fos.getFD().sync();
+        }
+
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Cannot replace " + target.getAbsolutePath());
+        }
+    }
+
+    private void recover() throws Exception {
+        File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (docsRoot == null) docsRoot = getContext().getFilesDir();
+        dir = new File(docsRoot, "HSC-SESSIONS/" + AUTOSAVE_DIR);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        long snapshotGeneration = 0L;
+        File session = new File(dir, SESSION_FILE);
+        if (session.isFile()) {
+            try (ZipFile zip = new ZipFile(session)) {
+                ZipEntry entry = zip.getEntry("layers.json");
+                if (entry != null) {
+                    JSONObject root = new JSONObject(readText(zip.getInputStream(entry)));
+                    snapshotGeneration = root.optLong("walGeneration", 0L);
+                    JSONObject mappings = root.optJSONObject("nodeIconMappings");
+                    if (mappings != null) nodeIconMappings = mappings.toString();
+                    JSONArray arr = root.optJSONArray("layers");
+                    for (int i = 0; arr != null && i < arr.length(); i++) {
+                        JSONObject layer = arr.optJSONObject(i);
+                        if (layer != null) layers.put(layer.optString("id"), layer.toString());
+                    }
+                }
+            }
+        }
+
+        long maxGeneration = snapshotGeneration;
+        int replayed = 0;
+        for (long gen : logGenerations()) {
+            maxGeneration = Math.max(maxGeneration, gen);
+            if (gen >= snapshotGeneration) {
+                replayed += AppendLog.replay(logFile(gen), this::applyRecord);
+            }
+        }
+
+        synchronized (walLock) {
+            // Never append after a possibly torn tail: continue in a fresh log
+            generation = maxGeneration + 1;
+            openWal();
+        }
+        available = true;
+        Log.d(TAG, "Recovered " + layers.size() + " layers, replayed " + replayed + " records");
+
+        if (replayed > 0) {
+            PluginExecutors.io().execute(PluginExecutors.Priority.LOW, () -> {
+                try {
+                    compact(false);
+                } catch (Exception e) {
+                    Log.w(TAG, "Compaction after recovery failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private static String toRecord(JSONObject op) throws Exception {
+        String type = op.optString("type", "");
+        switch (type) {
+            case "put": {
+                JSONObject layer = op.getJSONObject("layer");
+                // layers.json is keyed by the layer's own id when read back
+                String id = layer.optString("id", op.optString("layerId", ""));
+                if (id.isEmpty()) throw new IllegalArgumentException("put needs a layerId");
+                return "{\"t\":\"put\",\"id\":" + JSONObject.quote(id) + ",\"v\":" + layer.toString() + "}";
+            }
+            case "delete": {
+                String id = op.optString("layerId", "");
+                if (id.isEmpty()) throw new IllegalArgumentException("delete needs a layerId");
+                return "{\"t\":\"delete\",\"id\":" + JSONObject.quote(id) + "}";
+            }
+            case "order":
+                return "{\"t\":\"order\",\"ids\":" + op.getJSONArray("layerIds").toString() + "}";
+            case "nodeIconMappings":
+                return "{\"t\":\"icons\",\"v\":" + op.getJSONObject("value").toString() + "}";
+            case "reset": {
+                // One record, so a torn tail can't leave half a seed behind
+                JSONArray layers = op.getJSONArray("layers");
+                for (int i = 0; i < layers.length(); i++) {
+                    if (layers.getJSONObject(i).optString("id", "").isEmpty()) {
+                        throw new IllegalArgumentException("reset layers need an id");
+                    }
+                }
+                JSONObject icons = op.optJSONObject("nodeIconMappings");
+                return "{\"t\":\"reset\",\"v\":" + layers.toString()
+                    + ",\"icons\":" + (icons != null ? icons.toString() : "{}") + "}";
+            }
+            default:
+                throw new IllegalArgumentException("Unknown delta type: " + type);
+        }
+    }
+
+    // Caller holds stateLock (or runs before the store is published during recovery)
+    private void applyRecord(String record) {
+        try {
+            JSONObject r = new JSONObject(record);
+            switch (r.optString("t")) {
+                case "put":
+                    layers.put(r.optString("id"), r.getJSONObject("v").toString());
+                    break;
+                case "delete":
+                    layers.remove(r.optString("id"));
+                    break;
+                case "order": {
+                    JSONArray ids = r.getJSONArray("ids");
+                    LinkedHashMap<String, String> ordered = new LinkedHashMap<>();
+                    for (int i = 0; i < ids.length(); i++) {
+                        String id = ids.optString(i, null);
+                        String value = id != null ? layers.get(id) : null;
+                        if (value != null) ordered.put(id, value);
+                    }
+                    // Layers the order didn't mention keep their relative order at the end
+                    for (Map.Entry<String, String> e : layers.entrySet()) {
+                        if (!ordered.containsKey(e.getKey())) ordered.put(e.getKey(), e.getValue());
+                    }
+                    layers.clear();
+                    layers.putAll(ordered);
+                    break;
+                }
+                case "icons":
+                    nodeIconMappings = r.getJSONObject("v").toString();
+                    break;
+                case "reset": {
+                    JSONArray arr = r.getJSONArray("v");
+                    layers.clear();
+                    for (int i = 0; i < arr.length(); i++) {
+                        JSONObject layer = arr.getJSONObject(i);
+                        layers.put(layer.optString("id"), layer.toString());
+                    }
+                    JSONObject icons = r.optJSONObject("icons");
+                    nodeIconMappings = icons != null ? icons.toString() : "{}";
+                    break;
+                }
+                default:
+                    Log.w(TAG, "Skipping unknown record type " + r.optString("t"));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Skipping bad record: " + e.getMessage());
+        }
+    }
+
+    private static boolean dropsLayers(List<String> records) {
+        for (String r : records) {
+            if (r.startsWith("{\"t\":\"delete\"") || r.startsWith("{\"t\":\"reset\"")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Deletes bitmaps (and leftover partials) of layers that are not in the session, unless
+     * written within {@code graceMs}.
+     */
+    private void sweepBitmaps(long graceMs) {
+        File[] files = new File(dir, BITMAPS_DIR).listFiles();
+        if (files == null) return;
+        Set<String> keep = new HashSet<>();
+        synchronized (stateLock) {
+            for (String id : layers.keySet()) keep.add(bitmapFileName(id));
+        }
+        long cutoff = System.currentTimeMillis() - graceMs;
+        int removed = 0;
+        for (File f : files) {
+            String name = f.getName();
+            String base = name.endsWith(".partial") ? name.substring(0, name.length() - ".partial".length()) : name;
+            if (keep.contains(base) && base.equals(name)) continue;
+            if (f.lastModified() > cutoff) continue;
+            if (f.delete()) removed++;
+        }
+        if (removed > 0) Log.d(TAG, "Removed " + removed + " unreferenced bitmaps");
+    }
+
+    private JSObject sessionInfo() {
+        File session = new File(dir, SESSION_FILE);
+        JSObject ret = new JSObject();
+        ret.put("absolutePath", session.getAbsolutePath());
+        ret.put("logicalPath", "HSC-SESSIONS/" + AUTOSAVE_DIR + "/" + SESSION_FILE);
+        ret.put("exists", session.isFile());
+        synchronized (walLock) {
+            ret.put("generation", generation);
+            ret.put("walBytes", wal != null ? wal.bytes() : 0L);
+            ret.put("walRecords", wal != null ? wal.records() : 0);
+        }
+        synchronized (stateLock) {
+            ret.put("layerCount", layers.size());
+        }
+        ret.put("lastCompactionMs", lastCompactionMs);
+        return ret;
+    }
+
+    // Caller holds walLock
+    private void openWal() throws IOException {
+        wal = new AppendLog(logFile(generation));
+    }
+
+    // Caller holds walLock
+    private void closeWal() {
+        if (wal == null) return;
+        wal.close();
+        wal = null;
+    }
+
+    private File logFile(long gen) {
+        return new File(dir, "wal-" + gen + ".log");
+    }
+
+    private long[] logGenerations() {
+        File[] files = dir.listFiles();
+        if (files == null) return new long[0];
+        long[] gens = new long[files.length];
+        int n = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith("wal-") && name.endsWith(".log")) {
+                try {
+                    gens[n++] = Long.parseLong(name.substring(4, name.length() - 4));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        long[] result = Arrays.copyOf(gens, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void deleteLogsBefore(long gen) {
+        for (long g : logGenerations()) {
+            if (g < gen) {
+                //noinspection ResultOfMethodCallIgnored
+                logFile(g).delete();
+            }
+        }
+    }
+
+    private static String bitmapFileName(String layerId) {
+        return "bitmap_" + layerId.replaceAll("[^a-zA-Z0-9._-]", "_") + ".png";
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            byte[] buf = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static String isoNow() {
+        java.text.SimpleDateFormat fmt = new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", java.util.Locale.US);
+        fmt.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+        return fmt.format(new java.util.Date());
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                deleteTree(c);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    private void resolveOnMain(PluginCall call, JSObject ret) {
+        main.post(() -> call.resolve(ret));
+    }
+
+    private void rejectOnMain(PluginCall call, String msg) {
+        main.post(() -> call.reject(msg));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/**
+ * Compares the staging copy paths on the device's own storage: the 1MB stream loop
+ * against the FileChannel transferTo path, both hashing with SHA-256 as staging does.
+ * Run through NativeUploader.benchmarkStaging(); sizes that don't fit twice in the
+ * free space of the scratch directory are skipped. Each size gets a discarded warm-up
+ * copy, then both paths are timed in both orders; the reported times are the means.
+ */
+final class StagingBenchmark {
+
+    private static final String TAG = "StagingBenchmark";
+
+    static final long[] DEFAULT_SIZES_MB = {100, 500, 1024, 4096};
+
+    private StagingBenchmark() {}
+
+    static JSObject run(File scratchDir, long[] sizesMb) throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        scratchDir.mkdirs();
+        JSArray runs = new JSArray();
+
+        for (long sizeMb : sizesMb) {
+            long size = sizeMb * 1024L * 1024L;
+            JSObject run = new JSObject();
+            run.put("sizeMb", sizeMb);
+
+            if (scratchDir.getUsableSpace() < size * 2 + 64L * 1024 * 1024) {
+                run.put("skipped", "not enough free space");
+                runs.put(run);
+                continue;
+            }
+
+            File src = new File(scratchDir, "bench_src_" + sizeMb);
+            File dst = new File(scratchDir, "bench_dst_" + sizeMb);
+            try {
+                writeTestFile(src, size);
+
+                // Discarded warm-up, so neither timed pass is the one that pulls src into
+                // the page cache
+                timeStreamCopy(src, dst);
+                //noinspection ResultOfMethodCallIgnored
+                dst.delete();
+
+                // Both orders, so whichever path runs second doesn't always get the warmer cache
+                JSArray orders = new JSArray();
+                long streamTotal = 0;
+                long channelTotal = 0;
+                for (boolean streamFirst : new boolean[] {true, false}) {
+                    long streamMs;
+                    long channelMs;
+                    if (streamFirst) {
+                        streamMs = timeStreamCopy(src, dst);
+                        //noinspection ResultOfMethodCallIgnored
+                        dst.delete();
+                        channelMs = timeChannelCopy(src, dst);
+                    } else {
+                        channelMs = timeChannelCopy(src, dst);
+                        //noinspection ResultOfMethodCallIgnored
+                        dst.delete();
+                        streamMs = timeStreamCopy(src, dst);
+                    }
+                    //noinspection ResultOfMethodCallIgnored
+                    dst.delete();
+                    streamTotal += streamMs;
+                    channelTotal += channelMs;
+
+                    JSObject order = new JSObject();
+                    order.put("first", streamFirst ? "stream" : "channel");
+                    order.put("streamMs", streamMs);
+                    order.put("channelMs", channelMs);
+                    orders.put(order);
+                    Log.d(TAG, sizeMb + "MB, " + (streamFirst ? "stream" : "channel") + " first: stream "
+                        + streamMs + "ms, channel " + channelMs + "ms");
+                }
+
+                long streamMs = streamTotal / 2;
+                long channelMs = channelTotal / 2;
+                run.put("streamMs", streamMs);
+                run.put("channelMs", channelMs);
+                run.put("streamMBps", mbPerSecond(size, streamMs));
+                run.put("channelMBps", mbPerSecond(size, channelMs));
+                run.put("orders", orders);
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                src.delete();
+                //noinspection ResultOfMethodCallIgnored
+                dst.delete();
+            }
+            runs.put(run);
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("runs", runs);
+        return ret;
+    }
+
+    private static void writeTestFile(File file, long size) throws IOException {
+        // Random bytes, not zeros: sparse or compressible data would flatter both paths
+        byte[] buf = new byte[FastCopy.BUFFER_SIZE];
+        new Random(42).nextBytes(buf);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            long left = size;
+            while (left > 0) {
+                int n = (int) Math.min(buf.length, left);
+                out.write(buf, 0, n);
+                left -= n;
+            }
+            out.getFD().sync();
+        }
+    }
+
+    private static long timeStreamCopy(File src, File dst) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        try (FileInputStream in = new FileInputStream(src);
+             FileOutputStream out = new FileOutputStream(dst)) {
+            FastCopy.streamCopy(in, out, new byte[FastCopy.BUFFER_SIZE],
+                MessageDigest.getInstance("SHA-256"), 0L, null);
+            out.getFD().sync();
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private static long timeChannelCopy(File src, File dst) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        try (FileInputStream in = new FileInputStream(src);
+             FileOutputStream out = new FileOutputStream(dst)) {
+            FastCopy.channelCopy(in.getChannel(), out.getChannel(),
+                MessageDigest.getInstance("SHA-256"), null);
+            out.getFD().sync();
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private static long mbPerSecond(long bytes, long ms) {
+        return ms <= 0 ? 0 : (bytes / (1024L * 1024L)) * 1000L / ms;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.app;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Progress record kept next to a staging {@code .partial} file as {@code .partial.ckpt}.
+ *
+ * bytesWritten is only recorded after the partial has been fsynced up to that offset, and
+ * prefixSha256 is the SHA-256 of exactly those bytes, so a resumed copy can both verify the
+ * partial and rebuild its running digest by re-hashing the local prefix.
+ */
+final class StagingCheckpoint {
+
+    private static final String TAG = "StagingCheckpoint";
+
+    static final String SUFFIX = ".ckpt";
+    // Partials not touched for this long are swept even if they have a checkpoint
+    static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    String sourceUri;
+    String sourceKey;
+    String headHash;
+    long expectedSize;
+    long bytesWritten;
+    String prefixSha256;
+    long updatedAt;
+
+    static File fileFor(File partial) {
+        return new File(partial.getParentFile(), partial.getName() + SUFFIX);
+    }
+
+    boolean matches(String sourceKey, String headHash) {
+        return sourceKey != null && sourceKey.equals(this.sourceKey) && headHash.equals(this.headHash);
+    }
+
+    static StagingCheckpoint load(File file) {
+        if (!file.exists()) return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int off = 0;
+            int read;
+            while (off < bytes.length && (read = in.read(bytes, off, bytes.length - off)) != -1) {
+                off += read;
+            }
+            JSONObject json = new JSONObject(new String(bytes, 0, off, StandardCharsets.UTF_8));
+
+            StagingCheckpoint ck = new StagingCheckpoint();
+            ck.sourceUri = json.optString("sourceUri", null);
+            ck.sourceKey = json.optString("sourceKey", null);
+            ck.headHash = json.optString("headHash", "");
+            ck.expectedSize = json.optLong("expectedSize", -1L);
+            ck.bytesWritten = json.optLong("bytesWritten", 0L);
+            ck.prefixSha256 = json.optString("prefixSha256", "");
+            ck.updatedAt = json.optLong("updatedAt", 0L);
+            return ck;
+        } catch (Exception e) {
+            Log.w(TAG, "Unreadable checkpoint " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void save(File file) throws IOException {
+        updatedAt = System.currentTimeMillis();
+        String json;
+        try {
+            JSONObject o = new JSONObject();
+            o.put("sourceUri", sourceUri);
+            o.put("sourceKey", sourceKey);
+            o.put("headHash", headHash);
+            o.put("expectedSize", expectedSize);
+            o.put("bytesWritten", bytesWritten);
+            o.put("prefixSha256", prefixSha256);
+            o.put("updatedAt", updatedAt);
+            json = o.toString();
+        } catch (Exception e) {
+            throw new IOException("Cannot encode checkpoint: " + e.getMessage());
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace checkpoint " + file.getName());
+        }
+    }
+
+    /**
+     * Hex SHA-256 of what has been fed to the digest so far, without disturbing it.
+     */
+    static String snapshot(MessageDigest digest) throws IOException {
+        try {
+            return ContentStore.toHex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IOException("Digest cannot be checkpointed");
+        }
+    }
+
+    /**
+     * Feeds the first {@code length} bytes of the partial into {@code digest} and returns
+     * the resulting snapshot, for comparison with {@link #prefixSha256}.
+     */
+    static String rehashPrefix(File partial, long length, MessageDigest digest, byte[] buf) throws IOException {
+        try (FileInputStream in = new FileInputStream(partial)) {
+            long left = length;
+            while (left > 0) {
+                int read = in.read(buf, 0, (int) Math.min(buf.length, left));
+                if (read == -1) throw new IOException("Partial shorter than checkpoint");
+                digest.update(buf, 0, read);
+                left -= read;
+            }
+        }
+        return snapshot(digest);
+    }
+
+    /**
+     * Removes partials that can never be resumed (no or unreadable checkpoint, or stale)
+     * and checkpoints whose partial is gone. Returns the number of files deleted.
+     */
+    static int sweep(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+
+        int deleted = 0;
+        long now = System.currentTimeMillis();
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(".partial")) {
+                File ckptFile = fileFor(f);
+                StagingCheckpoint ck = load(ckptFile);
+                if (ck == null || now - ck.updatedAt > MAX_AGE_MS) {
+                    if (f.delete()) deleted++;
+                    if (ckptFile.exists() && ckptFile.delete()) deleted++;
+                }
+            } else if (name.endsWith(".partial" + SUFFIX) || name.endsWith(".partial" + SUFFIX + ".tmp")) {
+                File partial = new File(dir, name.substring(0, name.indexOf(".partial") + ".partial".length()));
+                if ((!partial.exists() || name.endsWith(".tmp")) && f.delete()) deleted++;
+            }
+        }
+        return deleted;
+    }
+}
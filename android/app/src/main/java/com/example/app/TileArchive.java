@@ -0,0 +1,36 @@
+package com.example.app;
+
+import com.getcapacitor.JSObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * A single-file tile pyramid the tile server can read instead of a {z}/{x}/{y}.pbf tree.
+ * Coordinates are always XYZ; implementations flip rows themselves where the format
+ * stores TMS. Implementations must be safe for concurrent reads.
+ */
+interface TileArchive extends Closeable {
+
+    /** Stored tile bytes (possibly compressed), or null if the archive has no such tile */
+    byte[] getTile(int z, int x, int y) throws IOException;
+
+    /** Format name plus whatever metadata the archive carries (zoom range, bounds, ...) */
+    JSObject describe();
+
+    @Override
+    void close();
+
+    /**
+     * Opens {@code file} if its extension names a supported archive, else returns null.
+     */
+    static TileArchive open(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.US);
+        if (name.endsWith(".pmtiles")) return new PMTilesArchive(file);
+        if (name.endsWith(".mbtiles")) return new MBTilesArchive(file);
+        if (name.endsWith(PackedTileArchive.EXTENSION)) return new PackedTileArchive(file);
+        return null;
+    }
+}
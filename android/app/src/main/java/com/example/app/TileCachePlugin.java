@@ -0,0 +1,153 @@
+package com.example.app;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.activity.result.ActivityResult;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+
+/**
+ * Tiles from a plain {z}/{x}/{y}.pbf directory through {@link TileCacheStore}.
+ *
+ * getTile does not return the bytes: it warms the cache and returns a URL on the local
+ * tile server that the WebView fetches as binary, so nothing goes through base64.
+ */
+@CapacitorPlugin(name = "TileCache")
+public class TileCachePlugin extends Plugin {
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    @PluginMethod
+    public void setTilesDirectory(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.trim().isEmpty()) {
+            call.reject("path is required");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                File dir = path.contains("://")
+                    ? TileServer.resolveDir(getContext(), Uri.parse(path))
+                    : new File(path);
+                if (!dir.isDirectory()) {
+                    rejectOnMain(call, "Not a directory: " + dir.getAbsolutePath());
+                    return;
+                }
+                TileCacheStore.shared().setDirectory(dir);
+
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Failed to set tiles directory: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Loads a tile into the RAM tier and resolves with the URL to fetch it from:
+     * {url, fromCache, size, storedSize}, where size is the decoded tile and storedSize the
+     * gzipped bytes held in RAM. Rejects with TILE_NOT_FOUND if the file doesn't exist.
+     * Runs on the io pool so it doesn't take a worker from the requests it prepares.
+     */
+    @PluginMethod
+    public void getTile(PluginCall call) {
+        int z;
+        int x;
+        int y;
+        try {
+            z = Integer.parseInt(call.getString("z"));
+            x = Integer.parseInt(call.getString("x"));
+            y = Integer.parseInt(call.getString("y"));
+        } catch (NumberFormatException e) {
+            call.reject("Invalid tile coordinates");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                TileCacheStore.Result result = TileCacheStore.shared().get(z, x, y);
+                if (result == null) {
+                    rejectOnMain(call, "Tiles directory not set");
+                    return;
+                }
+                if (result.entry.data == null) {
+                    rejectOnMain(call, "TILE_NOT_FOUND");
+                    return;
+                }
+
+                JSObject ret = new JSObject();
+                ret.put("url", OfflineTileServerPlugin.BASE_URL + "/cache/" + z + "/" + x + "/" + y + ".pbf");
+                ret.put("fromCache", result.fromCache);
+                ret.put("size", TileGzip.decodedLength(result.entry.data));
+                ret.put("storedSize", result.entry.data.length);
+                resolveOnMain(call, ret);
+            } catch (Exception e) {
+                rejectOnMain(call, "Failed to load tile: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clearCache(PluginCall call) {
+        TileCacheStore.shared().clear();
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        call.resolve(TileCacheStore.shared().metrics());
+    }
+
+    @PluginMethod
+    public void pickDirectory(PluginCall call) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        startActivityForResult(call, intent, "onDirectoryPicked");
+    }
+
+    @ActivityCallback
+    private void onDirectoryPicked(PluginCall call, ActivityResult result) {
+        Uri treeUri = result.getResultCode() == Activity.RESULT_OK && result.getData() != null
+            ? result.getData().getData()
+            : null;
+        if (treeUri == null) {
+            call.reject("No directory selected");
+            return;
+        }
+
+        try {
+            getContext().getContentResolver()
+                .takePersistableUriPermission(treeUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            File dir = TileServer.resolveDir(getContext(), treeUri);
+
+            JSObject ret = new JSObject();
+            ret.put("path", dir.getAbsolutePath());
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to pick directory: " + e.getMessage());
+        }
+    }
+
+    private void resolveOnMain(PluginCall call, JSObject ret) {
+        main.post(() -> call.resolve(ret));
+    }
+
+    private void rejectOnMain(PluginCall call, String msg) {
+        main.post(() -> call.reject(msg));
+    }
+}
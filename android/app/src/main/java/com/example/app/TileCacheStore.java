@@ -0,0 +1,130 @@
+package com.example.app;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier tile cache behind the TileCache plugin: a RAM LRU in front of the
+ * {z}/{x}/{y}.pbf files of the directory set with setTilesDirectory.
+ *
+ * Concurrent misses for the same tile are coalesced: the first caller reads the file and
+ * the others wait for its result, so a burst of identical requests costs one disk read.
+ * Tiles are handed to the WebView through the tile server's /cache route as raw bytes.
+ */
+final class TileCacheStore {
+
+    private static final TileCacheStore INSTANCE = new TileCacheStore();
+
+    static TileCacheStore shared() {
+        return INSTANCE;
+    }
+
+    private static final class Directory {
+        final File dir;
+        final int generation;
+        final String tag;
+
+        Directory(File dir, int generation) {
+            this.dir = dir;
+            this.generation = generation;
+            this.tag = "c" + Integer.toHexString(dir.getAbsolutePath().hashCode());
+        }
+    }
+
+    static final class Result {
+        final TileMemoryCache.Entry entry;
+        final boolean fromCache;
+
+        Result(TileMemoryCache.Entry entry, boolean fromCache) {
+            this.entry = entry;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private final TileMemoryCache memory =
+        new TileMemoryCache(Math.min(32L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16));
+    private final ConcurrentHashMap<Long, FutureTask<TileMemoryCache.Entry>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong diskReads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private volatile Directory directory;
+
+    private TileCacheStore() {}
+
+    synchronized void setDirectory(File dir) {
+        int generation = directory != null ? directory.generation + 1 : 0;
+        directory = new Directory(dir, generation);
+        memory.clear();
+    }
+
+    File directory() {
+        Directory current = directory;
+        return current != null ? current.dir : null;
+    }
+
+    /**
+     * Returns the tile (or a missing-tile entry), or null if no directory is set.
+     */
+    Result get(int z, int x, int y) throws Exception {
+        Directory current = directory;
+        if (current == null) return null;
+
+        long key = TileMemoryCache.key(z, x, y);
+        if (key < 0) {
+            return new Result(read(current, z, x, y), false);
+        }
+        TileMemoryCache.Entry cached = memory.get(key, current.generation);
+        if (cached != null) return new Result(cached, true);
+
+        FutureTask<TileMemoryCache.Entry> task = new FutureTask<>(() -> {
+            TileMemoryCache.Entry entry = read(current, z, x, y);
+            memory.put(key, entry);
+            return entry;
+        });
+        FutureTask<TileMemoryCache.Entry> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        } else {
+            coalesced.incrementAndGet();
+        }
+
+        TileMemoryCache.Entry entry;
+        try {
+            entry = running.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        // Joined a read that was started for the previous directory
+        if (entry.generation != current.generation) {
+            entry = read(current, z, x, y);
+        }
+        return new Result(entry, false);
+    }
+
+    void clear() {
+        memory.clear();
+    }
+
+    JSObject metrics() {
+        JSObject ret = memory.metrics();
+        ret.put("diskReads", diskReads.get());
+        ret.put("coalesced", coalesced.get());
+        return ret;
+    }
+
+    private TileMemoryCache.Entry read(Directory current, int z, int x, int y) {
+        diskReads.incrementAndGet();
+        byte[] bytes = TileServer.readFile(new File(current.dir, z + "/" + x + "/" + y + ".pbf"));
+        return TileMemoryCache.Entry.of(bytes, current.tag, current.generation);
+    }
+}
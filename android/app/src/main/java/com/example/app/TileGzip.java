@@ -0,0 +1,82 @@
+package com.example.app;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip helpers for tile bodies. Vector tiles compress 3-5x, and the WebView inflates a
+ * {@code Content-Encoding: gzip} response natively, so tiles are kept and sent compressed.
+ */
+final class TileGzip {
+
+    // Below this a tile is mostly protobuf framing; the gzip header would eat the gain
+    static final int MIN_COMPRESS_BYTES = 512;
+
+    private TileGzip() {}
+
+    /** Whether the bytes start with the gzip magic 1f 8b */
+    static boolean isGzip(byte[] data) {
+        return data != null && data.length >= 2 && (data[0] & 0xFF) == 0x1F && (data[1] & 0xFF) == 0x8B;
+    }
+
+    static boolean isGzip(ByteBuffer data) {
+        return data.remaining() >= 2
+            && (data.get(data.position()) & 0xFF) == 0x1F && (data.get(data.position() + 1) & 0xFF) == 0x8B;
+    }
+
+    /** Whether the request's Accept-Encoding allows gzip */
+    static boolean accepted(NioHttpServer.Request request) {
+        String accept = request.header("accept-encoding");
+        if (accept == null) return false;
+        for (String part : accept.split(",")) {
+            String coding = part.trim();
+            int semicolon = coding.indexOf(';');
+            String name = semicolon >= 0 ? coding.substring(0, semicolon).trim() : coding;
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+            // "gzip;q=0" is an explicit refusal
+            return semicolon < 0 || !coding.substring(semicolon + 1).replace(" ", "").matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+
+    /**
+     * gzip of {@code data}, or {@code data} itself if it is compressed already, too small
+     * to bother, or doesn't shrink.
+     */
+    static byte[] compressIfSmaller(byte[] data) {
+        if (data == null || data.length < MIN_COMPRESS_BYTES || isGzip(data)) return data;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 8192)) {
+            gz.write(data);
+        } catch (IOException e) {
+            return data;
+        }
+        return out.size() < data.length ? out.toByteArray() : data;
+    }
+
+    /**
+     * Decoded length of a tile body without inflating it: the ISIZE field of the gzip
+     * trailer (length mod 2^32 of the last member, exact for a tile), or the length itself.
+     */
+    static int decodedLength(byte[] data) {
+        if (!isGzip(data) || data.length < 18) return data.length;
+        int end = data.length;
+        return (data[end - 4] & 0xFF) | (data[end - 3] & 0xFF) << 8
+            | (data[end - 2] & 0xFF) << 16 | (data[end - 1] & 0xFF) << 24;
+    }
+
+    static byte[] decompress(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+}
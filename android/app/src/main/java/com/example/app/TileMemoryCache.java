@@ -0,0 +1,144 @@
+package com.example.app;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Byte-budgeted LRU of tile bytes for the tile server, keyed by z/x/y packed into a long.
+ *
+ * Entries carry the folder generation they were read under, so switching the tile folder
+ * invalidates everything at once (and a read racing the switch can't leak an old tile into
+ * the new folder). Known-missing tiles are cached too, as a small marker, because MapLibre
+ * keeps asking for them at the edges of the offline area. Tiles are held gzip-compressed
+ * (see {@link TileGzip}), which is also how they are sent.
+ */
+final class TileMemoryCache {
+
+    // Rough per-entry overhead of the map node, key and entry objects
+    private static final int ENTRY_OVERHEAD = 96;
+
+    static final class Entry {
+        final byte[] data; // null: the tile does not exist
+        final boolean gzip; // data is gzip-compressed
+        final String etag;
+        final int generation;
+
+        Entry(byte[] data, String etag, int generation) {
+            this.data = data;
+            this.gzip = TileGzip.isGzip(data);
+            this.etag = etag;
+            this.generation = generation;
+        }
+
+        /**
+         * Entry for tile bytes read from {@code folderTag}, or a missing-tile marker if
+         * {@code data} is null. Uncompressed tiles are gzipped here, once per load. The
+         * ETag is the folder tag plus the CRC32 of the stored content.
+         */
+        static Entry of(byte[] data, String folderTag, int generation) {
+            if (data == null) return new Entry(null, null, generation);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            return new Entry(TileGzip.compressIfSmaller(data),
+                "\"" + folderTag + "-" + Long.toHexString(crc.getValue()) + "\"", generation);
+        }
+
+        int weight() {
+            return ENTRY_OVERHEAD + (data != null ? data.length : 0);
+        }
+    }
+
+    private final LinkedHashMap<Long, Entry> map = new LinkedHashMap<>(256, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    TileMemoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Packs a tile address into one long: 5 bits of z, 29 bits each of x and y. Returns -1
+     * for zoom levels that don't fit (z > 29), which callers simply don't cache.
+     */
+    static long key(int z, int x, int y) {
+        if (z < 0 || z > 29 || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) return -1L;
+        return ((long) z << 58) | ((long) x << 29) | y;
+    }
+
+    /** Returns the entry for {@code key} if it was read under {@code generation}, else null */
+    synchronized Entry get(long key, int generation) {
+        Entry e = map.get(key);
+        if (e != null && e.generation == generation) {
+            hits++;
+            return e;
+        }
+        if (e != null) {
+            // Left over from a previous folder
+            map.remove(key);
+            bytes -= e.weight();
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Whether {@code key} is cached for {@code generation}. Unlike {@link #get} this is not
+     * counted in the hit rate, so the prefetcher's probes don't inflate it.
+     */
+    synchronized boolean contains(long key, int generation) {
+        return peek(key, generation) != null;
+    }
+
+    /** {@link #get} without counting towards the hit rate, for internal lookups */
+    synchronized Entry peek(long key, int generation) {
+        Entry e = map.get(key);
+        return e != null && e.generation == generation ? e : null;
+    }
+
+    synchronized void put(long key, Entry entry) {
+        if (key < 0 || entry.weight() > maxBytes / 8) return; // one tile must not flush the cache
+        Entry old = map.put(key, entry);
+        if (old != null) bytes -= old.weight();
+        bytes += entry.weight();
+        trim();
+    }
+
+    synchronized void clear() {
+        map.clear();
+        bytes = 0L;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    synchronized JSObject metrics() {
+        JSObject ret = new JSObject();
+        ret.put("entries", map.size());
+        ret.put("bytes", bytes);
+        ret.put("maxBytes", maxBytes);
+        ret.put("hits", hits);
+        ret.put("misses", misses);
+        ret.put("evictions", evictions);
+        long lookups = hits + misses;
+        ret.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        return ret;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, Entry>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().weight();
+            it.remove();
+            evictions++;
+        }
+    }
+}
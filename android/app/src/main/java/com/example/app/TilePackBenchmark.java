@@ -0,0 +1,184 @@
+package com.example.app;
+
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Times the tile pack against the plain {z}/{x}/{y}.pbf tree on the device's own storage:
+ * packing a synthetic tree, unpacking it again, and random tile lookups from both (the
+ * pack lookup is index search plus slice, the tree lookup is open plus read). Run through
+ * OfflineTileServer.benchmarkTilePack() or the "bench" command of {@link TilePackWriter}.
+ */
+final class TilePackBenchmark {
+
+    private static final String TAG = "TilePackBenchmark";
+
+    static final int[] DEFAULT_TILE_COUNTS = {20_000};
+    static final int DEFAULT_LOOKUPS = 20_000;
+
+    static final class Result {
+        final int tiles;
+        final long treeBytes;
+        final long packBytes;
+        final long packMs;
+        final long unpackMs;
+        final int lookups;
+        final long packLookupNs;
+        final long treeLookupNs;
+
+        Result(int tiles, long treeBytes, long packBytes, long packMs, long unpackMs,
+               int lookups, long packLookupNs, long treeLookupNs) {
+            this.tiles = tiles;
+            this.treeBytes = treeBytes;
+            this.packBytes = packBytes;
+            this.packMs = packMs;
+            this.unpackMs = unpackMs;
+            this.lookups = lookups;
+            this.packLookupNs = packLookupNs;
+            this.treeLookupNs = treeLookupNs;
+        }
+
+        JSObject toJSObject() {
+            JSObject run = new JSObject();
+            run.put("tiles", tiles);
+            run.put("treeBytes", treeBytes);
+            run.put("packBytes", packBytes);
+            run.put("packMs", packMs);
+            run.put("unpackMs", unpackMs);
+            run.put("lookups", lookups);
+            run.put("packLookupNs", packLookupNs);
+            run.put("treeLookupNs", treeLookupNs);
+            return run;
+        }
+
+        @Override
+        public String toString() {
+            return tiles + " tiles (" + treeBytes + " bytes, pack " + packBytes + "): pack " + packMs
+                + "ms, unpack " + unpackMs + "ms, lookup " + packLookupNs + "ns/tile from pack vs "
+                + treeLookupNs + "ns/tile from files";
+        }
+    }
+
+    private TilePackBenchmark() {}
+
+    static JSObject run(File scratchDir, int[] tileCounts, int lookups) throws IOException {
+        JSArray runs = new JSArray();
+        for (int tiles : tileCounts) {
+            Result result = measure(scratchDir, tiles, lookups);
+            Log.d(TAG, result.toString());
+            runs.put(result.toJSObject());
+        }
+        JSObject ret = new JSObject();
+        ret.put("runs", runs);
+        return ret;
+    }
+
+    static Result measure(File scratchDir, int tileCount, int lookups) throws IOException {
+        File tree = new File(scratchDir, "bench_tree");
+        File unpacked = new File(scratchDir, "bench_unpacked");
+        File pack = new File(scratchDir, "bench" + PackedTileArchive.EXTENSION);
+        deleteTree(scratchDir);
+        try {
+            long[] ids = new long[tileCount];
+            long treeBytes = writeTree(tree, ids);
+
+            long start = System.nanoTime();
+            TilePackWriter.pack(tree, pack, false, false, null);
+            long packMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            TilePackWriter.unpack(pack, unpacked, null);
+            long unpackMs = (System.nanoTime() - start) / 1_000_000;
+
+            // Same random tiles for both; the sum keeps the reads from being optimised away
+            Random random = new Random(7);
+            long[][] picks = new long[lookups][];
+            for (int i = 0; i < lookups; i++) picks[i] = PMTilesArchive.zxy(ids[random.nextInt(tileCount)]);
+
+            long sum = 0;
+            long packLookupNs;
+            try (PackedTileArchive archive = new PackedTileArchive(pack)) {
+                start = System.nanoTime();
+                for (long[] t : picks) {
+                    ByteBuffer b = archive.slice(archive.find((int) t[0], (int) t[1], (int) t[2]));
+                    sum += b.get(b.remaining() - 1);
+                }
+                packLookupNs = (System.nanoTime() - start) / Math.max(1, lookups);
+            }
+
+            start = System.nanoTime();
+            for (long[] t : picks) {
+                byte[] bytes = readFile(new File(tree, t[0] + "/" + t[1] + "/" + t[2] + ".pbf"));
+                sum -= bytes[bytes.length - 1];
+            }
+            long treeLookupNs = (System.nanoTime() - start) / Math.max(1, lookups);
+            if (sum != 0) throw new IOException("Pack and tree returned different tiles");
+
+            return new Result(tileCount, treeBytes, pack.length(), packMs, unpackMs,
+                lookups, packLookupNs, treeLookupNs);
+        } finally {
+            deleteTree(scratchDir);
+        }
+    }
+
+    /**
+     * Fills whole zoom levels from z0 up until {@code ids} is full, with tiles of vector-tile
+     * like sizes; about one in five is the same small "empty" tile. Returns the bytes written.
+     */
+    private static long writeTree(File tree, long[] ids) throws IOException {
+        Random random = new Random(42);
+        byte[] empty = new byte[64];
+        random.nextBytes(empty);
+        byte[] buf = new byte[48 * 1024];
+        long bytes = 0;
+        int n = 0;
+        for (int z = 0; n < ids.length; z++) {
+            int size = 1 << z;
+            for (int x = 0; x < size && n < ids.length; x++) {
+                File dir = new File(tree, z + "/" + x);
+                if (!dir.mkdirs()) throw new IOException("Cannot create " + dir.getAbsolutePath());
+                for (int y = 0; y < size && n < ids.length; y++) {
+                    byte[] data = empty;
+                    int length = empty.length;
+                    if (random.nextInt(5) != 0) {
+                        length = 200 + random.nextInt(buf.length - 200);
+                        random.nextBytes(buf);
+                        data = buf;
+                    }
+                    try (FileOutputStream out = new FileOutputStream(new File(dir, y + ".pbf"))) {
+                        out.write(data, 0, length);
+                    }
+                    ids[n++] = PMTilesArchive.tileId(z, x, y);
+                    bytes += length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteTree(child);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
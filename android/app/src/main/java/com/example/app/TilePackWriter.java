@@ -0,0 +1,286 @@
+package com.example.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Converts a {z}/{x}/{y}.pbf folder into a {@link PackedTileArchive} and back.
+ *
+ * Packing lists the tree once, sorts the tile ids and then copies the tiles in Hilbert
+ * order, so the blobs end up in the order the index lists them. With {@code compress},
+ * tiles not stored gzipped already are gzipped on the way in ({@link TileGzip}), so the
+ * server sends them compressed without doing any work per request. The pack is written to
+ * a .tmp file next to the output, synced and renamed, so a reader never sees half a pack.
+ *
+ * Also usable from a desktop JVM to prepare packs off-device:
+ *   java -cp app-classes com.example.app.TilePackWriter pack [--tms] [--gzip] tiles/ tiles.tilepack
+ *   java -cp app-classes com.example.app.TilePackWriter unpack tiles.tilepack tiles/
+ *   java -cp app-classes com.example.app.TilePackWriter bench [scratchDir] [tiles] [lookups]
+ */
+final class TilePackWriter {
+
+    // Only small tiles are checked for duplicates; in practice those are the empty
+    // ocean/land tiles that repeat thousands of times
+    private static final int DEDUP_MAX_BYTES = 2048;
+    private static final int DEDUP_MAX_ENTRIES = 4096;
+    private static final int PROGRESS_EVERY = 1024;
+
+    interface Progress {
+        void onProgress(long tilesDone, long tilesTotal);
+    }
+
+    static final class Stats {
+        final long tiles;
+        final long uniqueBlobs;
+        final long bytes;
+
+        Stats(long tiles, long uniqueBlobs, long bytes) {
+            this.tiles = tiles;
+            this.uniqueBlobs = uniqueBlobs;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Blob {
+        final long offset;
+        final int length;
+        // As read from the tree, for comparing; the pack may hold it compressed
+        final byte[] data;
+
+        Blob(long offset, int length, byte[] data) {
+            this.offset = offset;
+            this.length = length;
+            this.data = data;
+        }
+    }
+
+    private TilePackWriter() {}
+
+    /**
+     * Packs the tree under {@code srcDir} into {@code out}. With {@code useTms} the tree's
+     * rows are TMS and are flipped to XYZ in the pack.
+     */
+    static Stats pack(File srcDir, File out, boolean useTms, boolean compress, Progress progress)
+            throws IOException {
+        long[] ids = listTileIds(srcDir, useTms);
+        int n = ids.length;
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+
+        LinkedHashMap<Long, Blob> recent = new LinkedHashMap<Long, Blob>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Blob> eldest) {
+                return size() > DEDUP_MAX_ENTRIES;
+            }
+        };
+        CRC32 crc = new CRC32();
+        long dataLength = 0;
+        long unique = 0;
+        int minZoom = n > 0 ? (int) PMTilesArchive.zxy(ids[0])[0] : 0;
+        int maxZoom = n > 0 ? (int) PMTilesArchive.zxy(ids[n - 1])[0] : 0;
+
+        File tmp = new File(out.getPath() + ".tmp");
+        try {
+            try (DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                data.write(new byte[PackedTileArchive.HEADER_BYTES]);
+
+                for (int i = 0; i < n; i++) {
+                    long[] zxy = PMTilesArchive.zxy(ids[i]);
+                    long fileY = useTms ? (1L << zxy[0]) - 1 - zxy[2] : zxy[2];
+                    byte[] bytes = readTile(new File(srcDir, zxy[0] + "/" + zxy[1] + "/" + fileY + ".pbf"));
+
+                    Long key = null;
+                    Blob seen = null;
+                    if (bytes.length <= DEDUP_MAX_BYTES) {
+                        crc.reset();
+                        crc.update(bytes, 0, bytes.length);
+                        key = crc.getValue() << 32 | bytes.length;
+                        seen = recent.get(key);
+                    }
+
+                    if (seen != null && Arrays.equals(seen.data, bytes)) {
+                        offsets[i] = seen.offset;
+                        lengths[i] = seen.length;
+                    } else {
+                        byte[] stored = compress ? TileGzip.compressIfSmaller(bytes) : bytes;
+                        data.write(stored);
+                        offsets[i] = dataLength;
+                        lengths[i] = stored.length;
+                        if (key != null) recent.put(key, new Blob(dataLength, stored.length, bytes));
+                        dataLength += stored.length;
+                        unique++;
+                    }
+
+                    if (progress != null && (i + 1) % PROGRESS_EVERY == 0) progress.onProgress(i + 1, n);
+                }
+
+                for (int i = 0; i < n; i++) {
+                    data.writeLong(ids[i]);
+                    data.writeLong(offsets[i]);
+                    data.writeInt(lengths[i]);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(PackedTileArchive.HEADER_BYTES);
+            header.put(PackedTileArchive.MAGIC);
+            header.putInt(PackedTileArchive.VERSION);
+            header.putInt(0);
+            header.putLong(n);
+            header.putLong(PackedTileArchive.HEADER_BYTES + dataLength);
+            header.putLong(PackedTileArchive.HEADER_BYTES);
+            header.putLong(dataLength);
+            header.put((byte) minZoom);
+            header.put((byte) maxZoom);
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                raf.write(header.array());
+                raf.getFD().sync();
+            }
+
+            // The server may have the old pack mapped; its pages stay valid after the rename
+            if (out.exists() && !out.delete()) {
+                throw new IOException("Cannot replace " + out.getAbsolutePath());
+            }
+            if (!tmp.renameTo(out)) {
+                throw new IOException("Rename failed: " + out.getAbsolutePath());
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+        if (progress != null) progress.onProgress(n, n);
+        return new Stats(n, unique, out.length());
+    }
+
+    /**
+     * Writes every tile of {@code pack} back out as {outDir}/{z}/{x}/{y}.pbf (XYZ rows).
+     * Returns the number of tiles written.
+     */
+    static long unpack(File pack, File outDir, Progress progress) throws IOException {
+        try (PackedTileArchive archive = new PackedTileArchive(pack)) {
+            int n = archive.tileCount();
+            byte[] buf = new byte[64 * 1024];
+            File lastDir = null;
+            for (int i = 0; i < n; i++) {
+                long[] zxy = PMTilesArchive.zxy(archive.tileId(i));
+                File dir = new File(outDir, zxy[0] + "/" + zxy[1]);
+                // Consecutive tiles mostly share a column directory
+                if (!dir.equals(lastDir)) {
+                    if (!dir.isDirectory() && !dir.mkdirs()) {
+                        throw new IOException("Cannot create " + dir.getAbsolutePath());
+                    }
+                    lastDir = dir;
+                }
+                ByteBuffer tile = archive.slice(i);
+                if (buf.length < tile.remaining()) buf = new byte[tile.remaining()];
+                int length = tile.remaining();
+                tile.get(buf, 0, length);
+                try (FileOutputStream out = new FileOutputStream(new File(dir, zxy[2] + ".pbf"))) {
+                    out.write(buf, 0, length);
+                }
+                if (progress != null && (i + 1) % PROGRESS_EVERY == 0) progress.onProgress(i + 1, n);
+            }
+            if (progress != null) progress.onProgress(n, n);
+            return n;
+        }
+    }
+
+    /** Sorted, distinct tile ids of every {z}/{x}/{y}.pbf under {@code srcDir} */
+    static long[] listTileIds(File srcDir, boolean useTms) throws IOException {
+        File[] zDirs = srcDir.listFiles();
+        if (zDirs == null) throw new IOException("Cannot list " + srcDir.getAbsolutePath());
+
+        long[] ids = new long[1024];
+        int n = 0;
+        for (File zDir : zDirs) {
+            int z = parseIndex(zDir.getName(), 30);
+            if (z < 0 || !zDir.isDirectory()) continue;
+            long size = 1L << z;
+            File[] xDirs = zDir.listFiles();
+            if (xDirs == null) continue;
+            for (File xDir : xDirs) {
+                long x = parseIndex(xDir.getName(), size - 1);
+                if (x < 0) continue;
+                String[] names = xDir.list();
+                if (names == null) continue;
+                for (String name : names) {
+                    if (!name.endsWith(".pbf")) continue;
+                    long y = parseIndex(name.substring(0, name.length() - ".pbf".length()), size - 1);
+                    if (y < 0) continue;
+                    if (useTms) y = size - 1 - y;
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = PMTilesArchive.tileId(z, x, y);
+                }
+            }
+        }
+
+        Arrays.sort(ids, 0, n);
+        // "07.pbf" next to "7.pbf" would list the same tile twice
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || ids[i] != ids[distinct - 1]) ids[distinct++] = ids[i];
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /** Decimal value of {@code name} if it is one in [0, max], else -1 */
+    private static int parseIndex(String name, long max) {
+        if (name.isEmpty() || name.length() > 10) return -1;
+        long value = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value <= max ? (int) value : -1;
+    }
+
+    private static byte[] readTile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) throw new IOException("Tile too large: " + file.getAbsolutePath());
+            byte[] bytes = new byte[(int) length];
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean tms = false;
+        boolean gzip = false;
+        int first = 1;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            if (args[first].equals("--tms")) tms = true;
+            if (args[first].equals("--gzip")) gzip = true;
+        }
+        String command = args.length > 0 ? args[0] : "";
+        long startNs = System.nanoTime();
+        if (command.equals("pack") && args.length == first + 2) {
+            Stats stats = pack(new File(args[first]), new File(args[first + 1]), tms, gzip, null);
+            System.out.println("Packed " + stats.tiles + " tiles (" + stats.uniqueBlobs + " unique), "
+                + stats.bytes + " bytes in " + (System.nanoTime() - startNs) / 1_000_000 + "ms");
+        } else if (command.equals("unpack") && args.length == 3) {
+            long tiles = unpack(new File(args[1]), new File(args[2]), null);
+            System.out.println("Unpacked " + tiles + " tiles in " + (System.nanoTime() - startNs) / 1_000_000 + "ms");
+        } else if (command.equals("bench")) {
+            File scratch = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"), "tilepack-bench");
+            int tiles = args.length > 2 ? Integer.parseInt(args[2]) : TilePackBenchmark.DEFAULT_TILE_COUNTS[0];
+            int lookups = args.length > 3 ? Integer.parseInt(args[3]) : TilePackBenchmark.DEFAULT_LOOKUPS;
+            System.out.println(TilePackBenchmark.measure(scratch, tiles, lookups));
+        } else {
+            System.err.println("Usage: TilePackWriter pack [--tms] [--gzip] <tileDir> <out.tilepack>");
+            System.err.println("       TilePackWriter unpack <in.tilepack> <tileDir>");
+            System.err.println("       TilePackWriter bench [scratchDir] [tiles] [lookups]");
+            System.exit(2);
+        }
+    }
+}
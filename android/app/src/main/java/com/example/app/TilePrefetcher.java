@@ -0,0 +1,276 @@
+package com.example.app;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms the tile server's cache around the map viewport so a pan or zoom finds its tiles in
+ * RAM instead of paying a cold flash read per tile.
+ *
+ * Each hint (viewport bounds plus zoom, optionally own-ship heading and speed) becomes a
+ * list of tiles, most likely first: the band ahead along the track, the ring of tiles just
+ * outside the viewport, then the viewport at the next zoom level. The viewport itself is
+ * left to the map, which is requesting it already. The list is worked off by a couple of
+ * LOW-priority io tasks within a tile and byte budget; a new hint or a folder switch
+ * cancels whatever is left of the previous one.
+ */
+final class TilePrefetcher {
+
+    private static final String TAG = "TilePrefetcher";
+
+    static final int DEFAULT_MAX_TILES = 192;
+    static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    static final int DEFAULT_LOOKAHEAD_SECONDS = 60;
+    /** Fastest plausible own ship, in m/s; faster hints are clamped to it */
+    static final double MAX_SPEED_MPS = 350.0;
+
+    private static final int WORKERS = 2;
+    private static final int RING = 1;
+    // Beyond this many viewport tiles (zoomed far out) the next zoom level is not worth it
+    private static final int MAX_VIEWPORT_TILES = 256;
+    private static final int AHEAD_STEPS = 4;
+    private static final int MAX_TRACKED = 8192;
+    private static final double MAX_LAT = 85.05112878;
+    private static final double EARTH_CIRCUMFERENCE_M = 40075016.686;
+
+    /** Reads one tile into the cache */
+    interface Loader {
+        /** Bytes read from storage (0 for a missing tile), or -1 if it was cached already */
+        long warm(int z, int x, int y) throws Exception;
+    }
+
+    /** Where the map is and, optionally, where own ship is heading */
+    static final class Hint {
+        double west;
+        double south;
+        double east;
+        double north;
+        double zoom;
+        int maxZoom = 22;
+        // Degrees clockwise from north and metres per second; speed 0 means no track
+        double heading;
+        double speed;
+        int lookaheadSeconds = DEFAULT_LOOKAHEAD_SECONDS;
+        int maxTiles = DEFAULT_MAX_TILES;
+        long maxBytes = DEFAULT_MAX_BYTES;
+    }
+
+    private final Loader loader;
+    private final AtomicInteger epoch = new AtomicInteger();
+    // Tiles warmed but not yet requested, to tell how many prefetches paid off
+    private final Set<Long> pending = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final AtomicLong hints = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong warmed = new AtomicLong();
+    private final AtomicLong warmedBytes = new AtomicLong();
+    private final AtomicLong alreadyCached = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+
+    TilePrefetcher(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Replaces the current prefetch with one for {@code hint}. Returns the number of tiles
+     * queued.
+     */
+    int hint(Hint hint) {
+        int myEpoch = epoch.incrementAndGet();
+        hints.incrementAndGet();
+        long[] tiles = plan(hint);
+        if (tiles.length == 0) return 0;
+        queued.addAndGet(tiles.length);
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        for (int w = 0; w < WORKERS; w++) {
+            PluginExecutors.io().execute(PluginExecutors.Priority.LOW,
+                () -> drain(myEpoch, tiles, next, bytes, hint.maxBytes));
+        }
+        return tiles.length;
+    }
+
+    /** Drops whatever is left of the current prefetch */
+    void cancel() {
+        epoch.incrementAndGet();
+    }
+
+    /** Called for every tile request; counts the ones a prefetch had warmed */
+    void onServed(long key) {
+        if (key >= 0 && pending.remove(key)) used.incrementAndGet();
+    }
+
+    JSObject metrics() {
+        JSObject ret = new JSObject();
+        ret.put("hints", hints.get());
+        ret.put("queued", queued.get());
+        ret.put("warmed", warmed.get());
+        ret.put("warmedBytes", warmedBytes.get());
+        ret.put("alreadyCached", alreadyCached.get());
+        ret.put("cancelled", cancelled.get());
+        ret.put("overBudget", overBudget.get());
+        ret.put("used", used.get());
+        long w = warmed.get();
+        ret.put("hitRate", w == 0 ? 0.0 : (double) used.get() / w);
+        return ret;
+    }
+
+    private void drain(int myEpoch, long[] tiles, AtomicInteger next, AtomicLong bytes, long maxBytes) {
+        while (true) {
+            if (epoch.get() != myEpoch) {
+                int rest = next.getAndSet(tiles.length);
+                if (rest < tiles.length) cancelled.addAndGet(tiles.length - rest);
+                return;
+            }
+            if (bytes.get() >= maxBytes) {
+                int rest = next.getAndSet(tiles.length);
+                if (rest < tiles.length) overBudget.addAndGet(tiles.length - rest);
+                return;
+            }
+            int i = next.getAndIncrement();
+            if (i >= tiles.length) return;
+
+            long key = tiles[i];
+            int z = (int) (key >>> 58);
+            int x = (int) ((key >>> 29) & 0x1FFFFFFF);
+            int y = (int) (key & 0x1FFFFFFF);
+            try {
+                long read = loader.warm(z, x, y);
+                if (read < 0) {
+                    alreadyCached.incrementAndGet();
+                    continue;
+                }
+                warmed.incrementAndGet();
+                warmedBytes.addAndGet(read);
+                bytes.addAndGet(read);
+                if (pending.size() >= MAX_TRACKED) pending.clear();
+                pending.add(key);
+            } catch (Exception e) {
+                // Usually the archive being closed by a folder switch, which also cancels
+                Log.d(TAG, "Prefetch of " + z + "/" + x + "/" + y + " stopped: " + e.getMessage());
+                int rest = next.getAndSet(tiles.length);
+                if (rest < tiles.length) cancelled.addAndGet(tiles.length - rest);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tile keys ({@link TileMemoryCache#key}) to warm for {@code hint}, in priority order and
+     * cut to its tile budget.
+     */
+    static long[] plan(Hint hint) {
+        if (!(hint.north > hint.south) || Double.isNaN(hint.zoom)) return new long[0];
+        int z = (int) Math.max(0, Math.min(Math.floor(hint.zoom), Math.min(hint.maxZoom, 29)));
+        int n = 1 << z;
+
+        int x0 = lonToX(hint.west, n);
+        int x1 = lonToX(hint.east, n);
+        int y0 = latToY(hint.north, n);
+        int y1 = latToY(hint.south, n);
+        // Viewports crossing the antimeridian come with west > east; keep it simple and
+        // prefetch the wider side only
+        if (x1 < x0) x1 = n - 1;
+
+        double cx = (x0 + x1 + 1) / 2.0;
+        double cy = (y0 + y1 + 1) / 2.0;
+        int viewportTiles = (x1 - x0 + 1) * (y1 - y0 + 1);
+
+        LinkedHashSet<Long> out = new LinkedHashSet<>();
+
+        // 1. Along the track: the viewport shifted in steps towards where own ship will be
+        if (hint.speed > 0 && hint.lookaheadSeconds > 0) {
+            double centerLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * cy / n))));
+            double metresPerTile = EARTH_CIRCUMFERENCE_M * Math.cos(Math.toRadians(centerLat)) / n;
+            double distanceTiles = hint.speed * hint.lookaheadSeconds / Math.max(1.0, metresPerTile);
+            // No point looking further ahead than a couple of screens
+            distanceTiles = Math.min(distanceTiles, 2.0 * Math.max(x1 - x0 + 1, y1 - y0 + 1));
+            double rad = Math.toRadians(hint.heading);
+            double dx = Math.sin(rad) * distanceTiles;
+            double dy = -Math.cos(rad) * distanceTiles;
+            for (int step = 1; step <= AHEAD_STEPS; step++) {
+                int sx = (int) Math.round(dx * step / AHEAD_STEPS);
+                int sy = (int) Math.round(dy * step / AHEAD_STEPS);
+                List<long[]> band = new ArrayList<>();
+                for (int x = x0 + sx; x <= x1 + sx; x++) {
+                    for (int y = y0 + sy; y <= y1 + sy; y++) {
+                        if (x >= x0 && x <= x1 && y >= y0 && y <= y1) continue;
+                        band.add(new long[] {x, y});
+                    }
+                }
+                addByDistance(out, band, z, n, cx + dx * step / AHEAD_STEPS, cy + dy * step / AHEAD_STEPS);
+            }
+        }
+
+        // 2. The ring just outside the viewport
+        List<long[]> ring = new ArrayList<>();
+        for (int x = x0 - RING; x <= x1 + RING; x++) {
+            for (int y = y0 - RING; y <= y1 + RING; y++) {
+                if (x >= x0 && x <= x1 && y >= y0 && y <= y1) continue;
+                ring.add(new long[] {x, y});
+            }
+        }
+        addByDistance(out, ring, z, n, cx, cy);
+
+        // 3. The viewport one zoom level in, centre first
+        if (z + 1 <= Math.min(hint.maxZoom, 29) && viewportTiles <= MAX_VIEWPORT_TILES) {
+            List<long[]> children = new ArrayList<>();
+            for (int x = 2 * x0; x <= 2 * x1 + 1; x++) {
+                for (int y = 2 * y0; y <= 2 * y1 + 1; y++) {
+                    children.add(new long[] {x, y});
+                }
+            }
+            addByDistance(out, children, z + 1, 2 * n, 2 * cx, 2 * cy);
+        }
+
+        int count = Math.min(out.size(), Math.max(0, hint.maxTiles));
+        long[] tiles = new long[count];
+        int i = 0;
+        for (Long key : out) {
+            if (i == count) break;
+            tiles[i++] = key;
+        }
+        return tiles;
+    }
+
+    private static void addByDistance(Set<Long> out, List<long[]> tiles, int z, int n, double cx, double cy) {
+        Collections.sort(tiles, (a, b) -> Double.compare(distance(a, cx, cy), distance(b, cx, cy)));
+        for (long[] t : tiles) {
+            // Wrap around the antimeridian; rows past the poles don't exist
+            long x = ((t[0] % n) + n) % n;
+            if (t[1] < 0 || t[1] >= n) continue;
+            long key = TileMemoryCache.key(z, (int) x, (int) t[1]);
+            if (key >= 0) out.add(key);
+        }
+    }
+
+    private static double distance(long[] tile, double cx, double cy) {
+        double dx = tile[0] + 0.5 - cx;
+        double dy = tile[1] + 0.5 - cy;
+        return dx * dx + dy * dy;
+    }
+
+    private static int lonToX(double lon, int n) {
+        int x = (int) Math.floor((lon + 180.0) / 360.0 * n);
+        return Math.max(0, Math.min(n - 1, x));
+    }
+
+    private static int latToY(double lat, int n) {
+        double rad = Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)));
+        int y = (int) Math.floor((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * n);
+        return Math.max(0, Math.min(n - 1, y));
+    }
+}
@@ -0,0 +1,836 @@
+package com.example.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes of the local tile server, served from the selected tile folder:
+ *   /{z}/{x}/{y}.pbf                   vector tiles
+ *   /style.json                         the folder's style
+ *   /fonts/{fontstack}/{range}.pbf      glyphs
+ *   /files/{token}/HSC-SESSIONS/{path}  session files (see {@link #serveSessionFile})
+ *   /cache/{z}/{x}/{y}.pbf              tiles of the TileCache plugin ({@link TileCacheStore})
+ *   /dem/{layerId}/{z}/{x}/{y}.png      hillshade (?style=grayscale for plain elevation)
+ *   /dem/{layerId}/{z}/{x}/{y}.terrain  terrain-RGB PNG (?encoding=mapbox, default terrarium)
+ *
+ * Paths are matched by hand rather than with regular expressions; this runs for every
+ * tile of every pan. Tiles are kept in a {@link TileMemoryCache} and carry a content ETag,
+ * so repeated zooming over the same area is served from RAM or the WebView cache. Tiles
+ * of a {@link PackedTileArchive} skip the cache: they are written straight from the mapping.
+ * style.json and glyphs are kept in a {@link FolderFileCache} that watches the folder for
+ * changes, and are revalidated by ETag like tiles.
+ *
+ * Past the deepest zoom of the tile source (or wherever a tile is missing), tiles are
+ * overzoomed: cut out of the nearest ancestor by {@link MvtSlicer} and cached like any other.
+ *
+ * DEM layers ({@link DemLayer}) are registered by id, independent of the folder, and
+ * rendered per request from their decoded-block cache.
+ */
+final class TileServer implements NioHttpServer.Handler {
+
+    private static final String TAG = "TileServer";
+    private static final int PAGE_BYTES = 4096;
+
+    // Beyond this the parent's geometry is too coarse to be worth scaling up
+    static final int DEFAULT_OVERZOOM_LEVELS = 6;
+
+    // The app's own WebView: Capacitor's https (default) or http androidScheme, and iOS
+    private static final Set<String> WEBVIEW_ORIGINS = new HashSet<>(Arrays.asList(
+        "https://localhost", "http://localhost", "capacitor://localhost"));
+
+    /**
+     * The folder tiles are read from. Swapped as a whole so a request never mixes the
+     * directory of one folder with the cache generation of another.
+     */
+    private static final class Folder {
+        // Where style.json and fonts/ live
+        final File dir;
+        // Single-file tile source, or null to read the {z}/{x}/{y}.pbf tree under dir
+        final TileArchive archive;
+        final boolean useTms;
+        final int generation;
+        // Part of every tile ETag, so the same z/x/y from two folders never validates
+        final String tag;
+
+        Folder(File dir, TileArchive archive, boolean useTms, int generation) {
+            this.dir = dir;
+            this.archive = archive;
+            this.useTms = useTms;
+            this.generation = generation;
+            this.tag = Integer.toHexString(dir.getAbsolutePath().hashCode());
+        }
+    }
+
+    private final Context context;
+    private final NioHttpServer server;
+    private final TileMemoryCache cache = new TileMemoryCache(defaultCacheBytes());
+    private final FolderFileCache files = new FolderFileCache(8L * 1024 * 1024);
+    private final TilePrefetcher prefetcher = new TilePrefetcher(this::warmTile);
+    private final Map<String, DemLayer> demLayers = new ConcurrentHashMap<>();
+    // Random per launch and required in /files URLs, so other apps and web pages that can
+    // reach the port still can't read session files
+    private final String filesToken = newFilesToken();
+
+    // Can be switched without restarting the server
+    private volatile Folder folder;
+    private volatile int overzoomLevels = DEFAULT_OVERZOOM_LEVELS;
+
+    TileServer(Context context, Uri folderUri, int port, boolean useTms) {
+        this.context = context;
+        this.folder = openFolder(resolveDir(context, folderUri), useTms, 0);
+        this.server = new NioHttpServer("127.0.0.1", port, this);
+    }
+
+    private static long defaultCacheBytes() {
+        return Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    TileMemoryCache cache() {
+        return cache;
+    }
+
+    TilePrefetcher prefetcher() {
+        return prefetcher;
+    }
+
+    FolderFileCache files() {
+        return files;
+    }
+
+    /** Path prefix of session file URLs, "/files/{token}" */
+    String filesPath() {
+        return "/files/" + filesToken;
+    }
+
+    private static String newFilesToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        return ContentStore.toHex(bytes);
+    }
+
+    void start() throws IOException {
+        server.start();
+    }
+
+    void stop() {
+        prefetcher.cancel();
+        server.stop();
+        files.reset();
+        for (DemLayer layer : demLayers.values()) layer.close();
+        demLayers.clear();
+    }
+
+    /** Serves {@code layer} under /dem/{layer.id}/, replacing a layer of the same id */
+    void addDemLayer(DemLayer layer) {
+        DemLayer previous = demLayers.put(layer.id, layer);
+        if (previous != null && previous != layer) previous.close();
+    }
+
+    boolean removeDemLayer(String layerId) {
+        DemLayer layer = demLayers.remove(layerId);
+        if (layer == null) return false;
+        layer.close();
+        return true;
+    }
+
+    List<DemLayer> demLayers() {
+        return new ArrayList<>(demLayers.values());
+    }
+
+    /**
+     * Update the folder path without restarting the server
+     */
+    void updateFolderPath(Uri folderUri, boolean useTms) {
+        Folder previous = folder;
+        Folder next = openFolder(resolveDir(context, folderUri), useTms, previous.generation + 1);
+        folder = next;
+        prefetcher.cancel();
+        // Entries of older generations are ignored anyway; this just frees the memory
+        cache.clear();
+        files.reset();
+        if (previous.archive != null) previous.archive.close();
+        Log.d(TAG, "Folder path updated to: " + next.dir.getAbsolutePath()
+            + (next.archive != null ? " (" + next.archive.describe().getString("format") + ")" : ""));
+    }
+
+    /**
+     * How many levels up to look for an ancestor of a missing tile; 0 turns overzoom off.
+     */
+    void setOverzoomLevels(int levels) {
+        overzoomLevels = Math.max(0, Math.min(levels, 16));
+        // Cached 404s and overzoomed tiles depend on the setting
+        cache.clear();
+    }
+
+    int overzoomLevels() {
+        return overzoomLevels;
+    }
+
+    /** Describes the current tile source: format "directory", "tilepack", "mbtiles" or "pmtiles" */
+    JSObject describeSource() {
+        Folder current = folder;
+        if (current.archive != null) return current.archive.describe();
+        JSObject ret = new JSObject();
+        ret.put("format", "directory");
+        ret.put("file", current.dir.getAbsolutePath());
+        return ret;
+    }
+
+    /** The directory style.json and fonts/ are read from (the folder an archive sits in) */
+    File folderDir() {
+        return folder.dir;
+    }
+
+    /**
+     * The tile folder may be a {z}/{x}/{y}.pbf tree, a .tilepack/.mbtiles/.pmtiles file, or a
+     * folder holding tiles.tilepack, tiles.pmtiles or tiles.mbtiles next to style.json and
+     * fonts/. An archive that fails to open falls back to the plain tree.
+     */
+    private static Folder openFolder(File path, boolean useTms, int generation) {
+        File dir = path;
+        File archiveFile = null;
+        if (path.isFile()) {
+            archiveFile = path;
+            dir = path.getParentFile() != null ? path.getParentFile() : path;
+        } else {
+            for (String name : new String[] {"tiles" + PackedTileArchive.EXTENSION, "tiles.pmtiles", "tiles.mbtiles"}) {
+                File candidate = new File(path, name);
+                if (candidate.isFile()) {
+                    archiveFile = candidate;
+                    break;
+                }
+            }
+        }
+
+        TileArchive archive = null;
+        if (archiveFile != null) {
+            try {
+                archive = TileArchive.open(archiveFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot open tile archive " + archiveFile.getName() + ": " + e.getMessage());
+            }
+        }
+        return new Folder(dir, archive, useTms, generation);
+    }
+
+    /**
+     * Maps a file:// URI or a SAF tree URI to a directory path.
+     */
+    static File resolveDir(Context context, Uri uri) {
+        if ("file".equals(uri.getScheme())) {
+            if (uri.getPath() == null) throw new IllegalArgumentException("Invalid file URI path");
+            return new File(uri.getPath());
+        }
+        if (!"content".equals(uri.getScheme())) {
+            throw new IllegalArgumentException("Unsupported URI scheme: " + uri.getScheme());
+        }
+
+        // Map a SAF tree URI back to a file path
+        String docId = DocumentsContract.getTreeDocumentId(uri);
+        String[] split = docId.split(":");
+        if (split.length != 2) {
+            throw new IllegalArgumentException("Invalid document ID format: " + docId);
+        }
+        String type = split[0];
+        String relPath = split[1];
+        if (type.equals("primary")) {
+            return new File(Environment.getExternalStorageDirectory(), relPath);
+        }
+        StorageManager storageManager = context.getSystemService(StorageManager.class);
+        if (storageManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            for (StorageVolume volume : storageManager.getStorageVolumes()) {
+                if (type.equals(volume.getUuid()) && volume.getDirectory() != null) {
+                    return new File(volume.getDirectory(), relPath);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Cannot resolve storage volume: " + type);
+    }
+
+    @Override
+    public NioHttpServer.Response handle(NioHttpServer.Request request) throws Exception {
+        String path = request.path;
+
+        if (request.method.equals("OPTIONS")) {
+            return path.startsWith("/files/") ? webViewOnly(request, corsPreflight()) : corsPreflight();
+        }
+
+        // Tiles of the TileCache plugin's directory: /cache/{z}/{x}/{y}.pbf
+        if (path.startsWith("/cache/")) {
+            int[] zxy = parseTilePath(path.substring("/cache".length()));
+            if (zxy == null) {
+                return plainResponse(404, "Not Found - Expected: /cache/{z}/{x}/{y}.pbf");
+            }
+            TileCacheStore.Result result = TileCacheStore.shared().get(zxy[0], zxy[1], zxy[2]);
+            if (result == null) {
+                return plainResponse(404, "Tiles directory not set");
+            }
+            return tileResponse(request, result.entry, zxy[0], zxy[1], zxy[2]);
+        }
+
+        // DEM layers: /dem/{layerId}/{z}/{x}/{y}.png|.terrain
+        if (path.startsWith("/dem/")) {
+            return serveDemTile(request, path.substring("/dem/".length()));
+        }
+
+        // Session files: /files/{token}/HSC-SESSIONS/...
+        if (path.startsWith("/files/")) {
+            String rest = path.substring("/files/".length());
+            int slash = rest.indexOf('/');
+            boolean tokenOk = slash > 0 && MessageDigest.isEqual(
+                rest.substring(0, slash).getBytes(StandardCharsets.US_ASCII),
+                filesToken.getBytes(StandardCharsets.US_ASCII));
+            if (!tokenOk) {
+                return webViewOnly(request, plainResponse(403, "Forbidden"));
+            }
+            return webViewOnly(request, serveSessionFile(request, rest.substring(slash + 1)));
+        }
+
+        if (path.equals("/style.json") || path.equals("/style.json/")) {
+            return serveStyleJson(request);
+        }
+
+        // Font glyphs: /fonts/{fontstack}/{range}.pbf
+        if (path.startsWith("/fonts/")) {
+            String rest = path.substring("/fonts/".length());
+            int slash = rest.indexOf('/');
+            if (slash > 0 && rest.indexOf('/', slash + 1) < 0 && rest.endsWith(".pbf")
+                    && rest.length() > slash + 1 + ".pbf".length()) {
+                String fontstack = rest.substring(0, slash);
+                String range = rest.substring(slash + 1, rest.length() - ".pbf".length());
+                return serveFontGlyph(request, fontstack, range);
+            }
+        }
+
+        // Tiles: /{z}/{x}/{y}.pbf (no /tiles/ prefix)
+        int[] zxy = parseTilePath(path);
+        if (zxy == null) {
+            return plainResponse(404, "Not Found - Invalid pattern. Expected: /{z}/{x}/{y}.pbf");
+        }
+
+        int z = zxy[0];
+        int x = zxy[1];
+        int y = zxy[2];
+        Folder current = folder;
+        long key = TileMemoryCache.key(z, x, y);
+        if (current.archive instanceof PackedTileArchive) {
+            prefetcher.onServed(key);
+            NioHttpServer.Response packed = packedTileResponse(request, current, z, x, y);
+            // Not in the pack: overzoom through the RAM cache like the other sources
+            if (packed != null) return packed;
+        }
+
+        TileMemoryCache.Entry tile = key >= 0 ? cache.get(key, current.generation) : null;
+        if (tile == null) {
+            tile = loadOrOverzoom(current, z, x, y);
+            cache.put(key, tile);
+        } else {
+            prefetcher.onServed(key);
+        }
+
+        return tileResponse(request, tile, z, x, y);
+    }
+
+    // Sink for the bytes warmTile touches, so the reads can't be optimised away
+    private static volatile int pageTouchSink;
+
+    /**
+     * {@link TilePrefetcher.Loader}: reads a tile into the RAM cache. Pack tiles aren't cached
+     * on the heap; one read per page of their mapped range faults it into the page cache,
+     * without copying it anywhere.
+     */
+    private long warmTile(int z, int x, int y) throws IOException {
+        Folder current = folder;
+        if (current.archive instanceof PackedTileArchive) {
+            PackedTileArchive pack = (PackedTileArchive) current.archive;
+            int entry = pack.find(z, x, y);
+            if (entry < 0) return 0;
+            ByteBuffer mapped = pack.slice(entry);
+            int length = mapped.remaining();
+            int sum = 0;
+            for (int i = 0; i < length; i += PAGE_BYTES) sum += mapped.get(i);
+            if (length > 0) sum += mapped.get(length - 1);
+            pageTouchSink = sum;
+            return length;
+        }
+        long key = TileMemoryCache.key(z, x, y);
+        if (key < 0 || cache.contains(key, current.generation)) return -1;
+        TileMemoryCache.Entry tile = loadOrOverzoom(current, z, x, y);
+        cache.put(key, tile);
+        return tile.data != null ? tile.data.length : 0;
+    }
+
+    /**
+     * The tile, or if it doesn't exist, the part of its nearest ancestor that covers it.
+     * Ancestors found on the way are cached (siblings need them next); missing ones are
+     * not, since a cached 404 would stop that tile from being overzoomed itself.
+     */
+    private TileMemoryCache.Entry loadOrOverzoom(Folder current, int z, int x, int y) throws IOException {
+        TileMemoryCache.Entry tile = loadTile(current, z, x, y);
+        int levels = overzoomLevels;
+        if (tile.data != null || levels == 0) return tile;
+
+        for (int dz = 1; dz <= levels && dz <= z; dz++) {
+            int pz = z - dz;
+            int px = x >> dz;
+            int py = y >> dz;
+            long parentKey = TileMemoryCache.key(pz, px, py);
+            TileMemoryCache.Entry parent = parentKey >= 0 ? cache.peek(parentKey, current.generation) : null;
+            if (parent == null) {
+                parent = loadTile(current, pz, px, py);
+                if (parent.data != null) cache.put(parentKey, parent);
+            }
+            if (parent.data == null) continue;
+
+            try {
+                byte[] raw = parent.gzip ? TileGzip.decompress(parent.data) : parent.data;
+                byte[] child = MvtSlicer.slice(raw, dz, x - (px << dz), y - (py << dz));
+                return TileMemoryCache.Entry.of(child, current.tag, current.generation);
+            } catch (IOException e) {
+                // Not a vector tile (or a broken one): nothing to cut from
+                Log.w(TAG, "Cannot overzoom " + z + "/" + x + "/" + y + " from z" + pz + ": " + e.getMessage());
+                return tile;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Archive read errors propagate (and become a 500) rather than being cached as a
+     * missing tile; the usual cause is a folder switch closing the archive mid-request.
+     */
+    private static TileMemoryCache.Entry loadTile(Folder folder, int z, int x, int y) throws IOException {
+        if (folder.archive != null) {
+            return TileMemoryCache.Entry.of(folder.archive.getTile(z, x, y), folder.tag, folder.generation);
+        }
+        // TMS flip if required
+        int fileY = folder.useTms ? (1 << z) - 1 - y : y;
+        byte[] bytes = readFile(new File(folder.dir, z + "/" + x + "/" + fileY + ".pbf"));
+        return TileMemoryCache.Entry.of(bytes, folder.tag, folder.generation);
+    }
+
+    /**
+     * Serves a tile as a slice of the pack's mapping: nothing is copied into the heap and
+     * the page cache is the tile cache. Deduplicated tiles share an offset, and so an ETag.
+     * Returns null if the pack doesn't hold the tile.
+     */
+    private static NioHttpServer.Response packedTileResponse(NioHttpServer.Request request, Folder folder,
+                                                             int z, int x, int y) throws IOException {
+        PackedTileArchive pack = (PackedTileArchive) folder.archive;
+        int entry = pack.find(z, x, y);
+        if (entry < 0) return null;
+        ByteBuffer body = pack.slice(entry);
+        boolean gzip = TileGzip.isGzip(body);
+        boolean sendGzip = gzip && TileGzip.accepted(request);
+        String etag = "\"" + folder.tag + "-" + Long.toHexString(pack.lastModified())
+            + "-" + Long.toHexString(pack.offset(entry)) + (gzip && !sendGzip ? "-i" : "") + "\"";
+        if (etag.equals(request.header("if-none-match"))) {
+            return tileHeaders(NioHttpServer.Response.empty(304), etag, sendGzip);
+        }
+        NioHttpServer.Response res;
+        if (gzip && !sendGzip) {
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            res = NioHttpServer.Response.bytes(200, "application/x-protobuf", TileGzip.decompress(bytes));
+        } else {
+            res = NioHttpServer.Response.buffer(200, "application/x-protobuf", body);
+        }
+        return tileHeaders(res, etag, sendGzip);
+    }
+
+    /**
+     * Gzip tiles go out as stored with Content-Encoding: gzip; only a client that doesn't
+     * accept gzip (the WebView always does) gets them inflated, under their own ETag.
+     */
+    static NioHttpServer.Response tileResponse(NioHttpServer.Request request, TileMemoryCache.Entry tile,
+                                               int z, int x, int y) throws IOException {
+        // No fallback - if tile doesn't exist, return 404
+        if (tile.data == null) {
+            return plainResponse(404, "Tile not found: z=" + z + ", x=" + x + ", y=" + y);
+        }
+        return cachedBodyResponse(request, tile.data, tile.gzip, tile.etag, "application/x-protobuf");
+    }
+
+    /** Response for bytes held in RAM, possibly gzipped, under {@code etag} */
+    private static NioHttpServer.Response cachedBodyResponse(NioHttpServer.Request request, byte[] data,
+                                                             boolean gzip, String etag, String type) throws IOException {
+        boolean sendGzip = gzip && TileGzip.accepted(request);
+        if (gzip && !sendGzip) etag = etag.substring(0, etag.length() - 1) + "-i\"";
+        if (etag.equals(request.header("if-none-match"))) {
+            return tileHeaders(NioHttpServer.Response.empty(304), etag, sendGzip);
+        }
+        byte[] body = gzip && !sendGzip ? TileGzip.decompress(data) : data;
+        return tileHeaders(NioHttpServer.Response.bytes(200, type, body), etag, sendGzip);
+    }
+
+    /**
+     * Renders a DEM tile. The ETag covers the file version and the rendering options, so a
+     * revalidation is answered without decoding anything.
+     */
+    private NioHttpServer.Response serveDemTile(NioHttpServer.Request request, String rest) throws IOException {
+        int slash = rest.indexOf('/');
+        DemLayer layer = slash > 0 ? demLayers.get(rest.substring(0, slash)) : null;
+        if (layer == null) {
+            return plainResponse(404, "DEM layer not found");
+        }
+        String tilePath = rest.substring(slash);
+        boolean terrain = tilePath.endsWith(".terrain");
+        int[] zxy = parseTilePath(tilePath, terrain ? ".terrain" : ".png");
+        if (zxy == null) {
+            return plainResponse(404, "Not Found - Expected: /dem/{layerId}/{z}/{x}/{y}.png or .terrain");
+        }
+        int z = zxy[0];
+        int x = zxy[1];
+        int y = zxy[2];
+        if (x >= (1 << z) || y >= (1 << z)) {
+            return plainResponse(404, "Tile out of range");
+        }
+
+        String variant;
+        boolean mapbox = false;
+        boolean grayscale = false;
+        double azimuth = 315;
+        double altitude = 45;
+        double exaggeration = 1;
+        if (terrain) {
+            mapbox = "mapbox".equals(queryParam(request.query, "encoding"));
+            variant = mapbox ? "mapbox" : "terrarium";
+        } else {
+            grayscale = "grayscale".equals(queryParam(request.query, "style"));
+            azimuth = parseDouble(queryParam(request.query, "azimuth"), azimuth);
+            altitude = parseDouble(queryParam(request.query, "altitude"), altitude);
+            exaggeration = parseDouble(queryParam(request.query, "exaggeration"), exaggeration);
+            variant = grayscale ? "gray" : "hs-" + azimuth + "-" + altitude + "-" + exaggeration;
+        }
+        String etag = "\"dem-" + layer.tag + "-" + variant + "\"";
+        if (etag.equals(request.header("if-none-match"))) {
+            return tileHeaders(NioHttpServer.Response.empty(304), etag, false);
+        }
+
+        byte[] png = terrain ? layer.renderTerrain(z, x, y, mapbox)
+            : grayscale ? layer.renderGrayscale(z, x, y)
+            : layer.renderHillshade(z, x, y, azimuth, altitude, exaggeration);
+        if (png == null) {
+            return plainResponse(404, "Tile outside DEM: z=" + z + ", x=" + x + ", y=" + y);
+        }
+        return tileHeaders(NioHttpServer.Response.bytes(200, "image/png", png), etag, false);
+    }
+
+    /** Value of {@code name} in a query string, or null; values are used as they come */
+    static String queryParam(String query, String name) {
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) return eq >= 0 ? pair.substring(eq + 1) : "";
+        }
+        return null;
+    }
+
+    private static double parseDouble(String value, double fallback) {
+        if (value == null) return fallback;
+        try {
+            double v = Double.parseDouble(value);
+            return Double.isNaN(v) || Double.isInfinite(v) ? fallback : v;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses "/{z}/{x}/{y}.pbf" into {z, x, y}, or null if the path doesn't match.
+     */
+    static int[] parseTilePath(String path) {
+        return parseTilePath(path, ".pbf");
+    }
+
+    /** {@link #parseTilePath(String)} for another extension */
+    static int[] parseTilePath(String path, String extension) {
+        if (!path.endsWith(extension) || path.isEmpty() || path.charAt(0) != '/') return null;
+        int end = path.length() - extension.length();
+        int[] out = new int[3];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 1; i < end; i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // Tile coordinates fit easily; reject absurd lengths instead of overflowing
+                if (++digits > 9) return null;
+                value = value * 10 + (c - '0');
+            } else if (c == '/' && digits > 0 && part < 2) {
+                out[part++] = value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        if (part != 2 || digits == 0) return null;
+        out[2] = value;
+        if (out[0] > 30) return null;
+        return out;
+    }
+
+    /**
+     * Reads a whole small file (tile, glyph, style) with one sized read. Returns null if it
+     * doesn't exist or can't be read.
+     */
+    static byte[] readFile(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) return null;
+            byte[] bytes = new byte[(int) length];
+            raf.readFully(bytes);
+            return bytes;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Serve style.json from root folder.
+     * Returns 404 if style.json is not found - NEVER serves default style.
+     */
+    private NioHttpServer.Response serveStyleJson(NioHttpServer.Request request) throws IOException {
+        Folder current = folder;
+        files.watch(current.dir);
+        File styleFile = new File(current.dir, "style.json");
+        FolderFileCache.Entry style = files.get(styleFile, current.tag);
+        if (style != null) {
+            return cachedBodyResponse(request, style.data, style.gzip, style.etag, "application/json");
+        }
+
+        if (styleFile.isFile() && !styleFile.canRead()) {
+            Log.w(TAG, "Permission denied reading style.json - storage permission may be required");
+            NioHttpServer.Response res = NioHttpServer.Response.bytes(403, "application/json",
+                "{\"error\": \"Permission denied. Please grant storage permission in app settings.\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+            return res.header("Access-Control-Allow-Origin", "*");
+        }
+
+        Log.w(TAG, "style.json not accessible: exists=" + styleFile.exists());
+        return plainResponse(404, "style.json not found in tile directory");
+    }
+
+    /**
+     * Serve font glyph file from:
+     * <selectedFolder>/fonts/{fontstack}/{range}.pbf
+     * For a stack of several fonts ("Open Sans Regular,Arial Unicode MS Regular") without a
+     * folder of its own, the first font of the stack that has the range is used.
+     */
+    private NioHttpServer.Response serveFontGlyph(NioHttpServer.Request request, String fontstack, String range)
+            throws IOException {
+        Folder current = folder;
+        File fonts = new File(current.dir, "fonts");
+        // The request path is already percent-decoded ("Open Sans Regular")
+        String fileName = range + ".pbf";
+        File file = new File(fonts, fontstack + "/" + fileName);
+        if (fontstack.indexOf(',') >= 0 && !file.isFile()) {
+            for (String font : fontstack.split(",")) {
+                File candidate = new File(fonts, font.trim() + "/" + fileName);
+                if (candidate.isFile()) {
+                    file = candidate;
+                    break;
+                }
+            }
+        }
+
+        FolderFileCache.Entry glyphs = files.get(file, current.tag);
+        if (glyphs == null) {
+            return plainResponse(404, "Font glyph not found: " + fontstack + "/" + fileName);
+        }
+        files.watch(file.getParentFile());
+        return cachedBodyResponse(request, glyphs.data, glyphs.gzip, glyphs.etag, "application/x-protobuf");
+    }
+
+    /**
+     * Serve a file from a session directory, so the WebView can fetch() staged files and
+     * autosaves as binary instead of base64 through Filesystem.readFile:
+     * /files/{token}/HSC-SESSIONS/{path} (also HSC_SESSIONS/{path}). Only the WebView's
+     * origin may read the responses cross-origin (see {@link #webViewOnly}).
+     *
+     * Looked up in the app's external Documents (native staging) first, then in the public
+     * Documents directory (Capacitor Directory.Documents). Supports single byte ranges.
+     */
+    private NioHttpServer.Response serveSessionFile(NioHttpServer.Request request, String relPath) {
+        int slash = relPath.indexOf('/');
+        String topDir = slash >= 0 ? relPath.substring(0, slash) : relPath;
+        if (!topDir.equals("HSC-SESSIONS") && !topDir.equals("HSC_SESSIONS")) {
+            return plainResponse(403, "Only session files are served");
+        }
+
+        List<File> roots = new ArrayList<>();
+        File appDocs = context.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        roots.add(appDocs != null ? appDocs : context.getFilesDir());
+        File publicDocs = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        if (publicDocs != null) roots.add(publicDocs);
+
+        File file = null;
+        for (File root : roots) {
+            try {
+                // Canonical paths resolve ".." and symlinks; anything outside the root is refused
+                File canonicalRoot = root.getCanonicalFile();
+                File candidate = new File(root, relPath).getCanonicalFile();
+                if (candidate.getPath().startsWith(canonicalRoot.getPath() + File.separator) && candidate.isFile()) {
+                    file = candidate;
+                    break;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        if (file == null) {
+            return plainResponse(404, "File not found: " + relPath);
+        }
+
+        long length = file.length();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(file.lastModified()) + "\"";
+        String mimeType = sessionFileMimeType(file.getName());
+
+        if (etag.equals(request.header("if-none-match"))) {
+            return addFileHeaders(NioHttpServer.Response.empty(304), etag);
+        }
+
+        String rangeHeader = request.header("range");
+        long[] range = rangeHeader != null ? parseByteRange(rangeHeader, length) : null;
+        if (range != null && range[0] > range[1]) {
+            return plainResponse(416, "Range not satisfiable")
+                .header("Content-Range", "bytes */" + length);
+        }
+
+        NioHttpServer.Response res;
+        if (range != null) {
+            res = NioHttpServer.Response.file(206, mimeType, file, range[0], range[1] - range[0] + 1)
+                .header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        } else {
+            res = NioHttpServer.Response.file(200, mimeType, file, 0L, length);
+        }
+        return addFileHeaders(res, etag);
+    }
+
+    /**
+     * Parses a single "bytes=a-b", "bytes=a-" or "bytes=-n" range, clamped to the file, into
+     * {first, last}. Returns null (serve the whole file) for anything else, e.g. multipart
+     * ranges; first > last means the range can't be satisfied.
+     */
+    static long[] parseByteRange(String header, long length) {
+        String spec = header.trim();
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') >= 0) return null;
+        String value = spec.substring("bytes=".length());
+        int dash = value.indexOf('-');
+        if (dash < 0) return null;
+        String startStr = value.substring(0, dash).trim();
+        String endStr = value.substring(dash + 1).trim();
+        long[] empty = {1L, 0L};
+        try {
+            if (startStr.isEmpty()) {
+                long suffix = Long.parseLong(endStr);
+                if (suffix <= 0 || length == 0L) return empty;
+                return new long[] {Math.max(0L, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(startStr);
+            long end = endStr.isEmpty() ? length - 1 : Math.min(Long.parseLong(endStr), length - 1);
+            if (start >= length || end < start) return empty;
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String sessionFileMimeType(String name) {
+        int dot = name.lastIndexOf('.');
+        String ext = dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.US) : "";
+        switch (ext) {
+            case "zip": return "application/zip";
+            case "json": return "application/json";
+            case "geojson": return "application/geo+json";
+            case "kml": return "application/vnd.google-earth.kml+xml";
+            case "kmz": return "application/vnd.google-earth.kmz";
+            case "csv": return "text/csv";
+            case "txt":
+            case "prj": return "text/plain";
+            case "xml": return "application/xml";
+            case "tif":
+            case "tiff": return "image/tiff";
+            case "png": return "image/png";
+            case "jpg":
+            case "jpeg": return "image/jpeg";
+            case "pbf": return "application/x-protobuf";
+            default: return "application/octet-stream";
+        }
+    }
+
+    private static NioHttpServer.Response addFileHeaders(NioHttpServer.Response res, String etag) {
+        return res.header("Accept-Ranges", "bytes")
+            .header("ETag", etag)
+            // Session files change in place; always revalidate (cheap with the ETag)
+            .header("Cache-Control", "no-cache")
+            .header("Access-Control-Expose-Headers", "Accept-Ranges, Content-Length, Content-Range, ETag");
+    }
+
+    /**
+     * Allows cross-origin reads of {@code res} by the app's WebView only, instead of the
+     * wildcard the map routes send: any page in a browser could otherwise fetch from the port.
+     */
+    private static NioHttpServer.Response webViewOnly(NioHttpServer.Request request, NioHttpServer.Response res) {
+        res.headers.remove("Access-Control-Allow-Origin");
+        String origin = request.header("origin");
+        if (origin != null && WEBVIEW_ORIGINS.contains(origin)) {
+            res.header("Access-Control-Allow-Origin", origin);
+        }
+        return res.header("Vary", "Origin");
+    }
+
+    /**
+     * Tiles (and style and glyphs) may be stored by the WebView but are revalidated on use:
+     * the URL stays the same when the folder changes, and a 304 from RAM costs next to nothing.
+     */
+    static NioHttpServer.Response tileHeaders(NioHttpServer.Response res, String etag, boolean gzip) {
+        if (gzip) res.header("Content-Encoding", "gzip");
+        return res.header("ETag", etag)
+            .header("Vary", "Accept-Encoding")
+            .header("Cache-Control", "no-cache")
+            .header("Access-Control-Allow-Origin", "*")
+            .header("Access-Control-Expose-Headers", "ETag");
+    }
+
+    private static NioHttpServer.Response corsPreflight() {
+        return NioHttpServer.Response.empty(204)
+            .header("Access-Control-Allow-Origin", "*")
+            .header("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS")
+            .header("Access-Control-Allow-Headers", "Range, If-None-Match")
+            .header("Access-Control-Max-Age", "86400");
+    }
+
+    static NioHttpServer.Response plainResponse(int status, String message) {
+        return NioHttpServer.Response.text(status, message).header("Access-Control-Allow-Origin", "*");
+    }
+}
@@ -12,6 +12,7 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.concurrent.Future;
 
 @CapacitorPlugin(name = "Udp")
 public class UdpPlugin extends Plugin {
@@ -19,7 +20,8 @@ public class UdpPlugin extends Plugin {
     private DatagramSocket socket;
     private InetAddress serverAddress;
     private int serverPort;
-    private boolean listening = false;
+    private volatile boolean listening = false;
+    private Future<?> listener;
 
     // Optional: test event from MainActivity
     public void sendTestEvent(String msg) {
@@ -108,7 +110,7 @@ public class UdpPlugin extends Plugin {
 
         listening = true;
 
-        new Thread(() -> {
+        listener = PluginExecutors.startLongRunning("udp-listener", () -> {
             try {
                 byte[] buffer = new byte[4096];
 
@@ -134,18 +136,25 @@ public class UdpPlugin extends Plugin {
                 }
 
             } catch (Exception e) {
-                Log.e("UdpPlugin", "Error in UDP listen loop: " + e.getMessage());
+                if (listening) {
+                    Log.e("UdpPlugin", "Error in UDP listen loop: " + e.getMessage());
+                }
             }
-        }).start();
+        });
     }
 
     @PluginMethod
     public void close(PluginCall call) {
         listening = false;
 
+        // Closing the socket unblocks receive(); the listener then exits
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
+        if (listener != null) {
+            listener.cancel(true);
+            listener = null;
+        }
 
         JSObject ret = new JSObject();
         ret.put("ok", true);
@@ -4,6 +4,7 @@ import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -17,28 +18,209 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 @CapacitorPlugin(name = "ZipFolder")
 public class ZipFolderPlugin extends Plugin {
 
+    private static final Set<String> ALLOWED_EXTENSIONS = new HashSet<>(Arrays.asList(
+        // Raster/DEM formats
+        "tif",
+        "tiff",
+        "hgt",
+        "dett",
+        // Vector formats
+        "geojson",
+        "json",
+        "csv",
+        "gpx",
+        "kml",
+        "kmz",
+        "wkt",
+        // Shapefile components (will be grouped into ZIP)
+        "shp",
+        "shx",
+        "dbf",
+        "prj",
+        // Archive format (for containing the above formats)
+        "zip"
+    ));
+
     private final Handler main = new Handler(Looper.getMainLooper());
 
+    // Full-archive exports share one slot: a second tap must not start another full-disk zip
+    private static final String EXPORT_OPERATION = "zip-export";
+    private static final int MAX_CONCURRENT_EXPORTS = 1;
+    private static final String EXTRACT_OPERATION = "zip-extract";
+    private static final int MAX_CONCURRENT_EXTRACTS = 2;
+
+    // Zip bomb limits. The ratio is only enforced past a floor, since small text files
+    // (csv/geojson of repeated values) legitimately compress very well
+    private static final long MAX_EXTRACTED_BYTES = 16L * 1024 * 1024 * 1024;
+    private static final long MAX_COMPRESSION_RATIO = 200;
+    private static final long RATIO_CHECK_MIN_BYTES = 16L * 1024 * 1024;
+    // Entries listed across all nesting levels of one call; a central directory of
+    // millions of empty entries costs memory before a single byte is inflated
+    private static final int MAX_ENTRIES = 100_000;
+
+    // Running jobs by id, so cancel() can reach them
+    private final Map<String, ZipJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Progress/cancellation state for one zip or extract call.
+     * Progress is emitted as throttled "zipProgress" events; cancel() flips the flag and the
+     * worker loops throw CancellationException at their next buffer boundary.
+     */
+    private class ZipJob {
+        final String id;
+        final String operation;
+        final long startMs = SystemClock.uptimeMillis();
+        final AtomicLong bytesProcessed = new AtomicLong();
+        // Bytes on disk counted against MAX_EXTRACTED_BYTES; a nested zip's temp file is
+        // taken off again once it is expanded, so its contents aren't counted twice
+        final AtomicLong extractedBytes = new AtomicLong();
+        final AtomicLong totalBytes = new AtomicLong();
+        final AtomicInteger entriesProcessed = new AtomicInteger();
+        final AtomicInteger totalEntries = new AtomicInteger();
+        // Every entry seen in the archive and its nested ones, counted against MAX_ENTRIES
+        final AtomicInteger entriesListed = new AtomicInteger();
+        // Files written by this job, removed again if it is cancelled
+        final List<File> outputs = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean cancelled = false;
+        private volatile long lastEmitMs = 0L;
+
+        ZipJob(String id, String operation) {
+            this.id = id;
+            this.operation = operation;
+        }
+
+        void checkCancelled() {
+            if (cancelled) throw new CancellationException("CANCELLED");
+        }
+
+        void addBytes(long count) {
+            bytesProcessed.addAndGet(count);
+            checkCancelled();
+            emit(false);
+        }
+
+        void entryDone() {
+            entriesProcessed.incrementAndGet();
+            emit(false);
+        }
+
+        void emit(boolean force) {
+            long nowMs = SystemClock.uptimeMillis();
+            if (!force && nowMs - lastEmitMs < 250) return;
+            lastEmitMs = nowMs;
+
+            long elapsedMs = Math.max(1L, nowMs - startMs);
+            long bytes = bytesProcessed.get();
+
+            JSObject ev = new JSObject();
+            ev.put("jobId", id);
+            ev.put("operation", operation);
+            ev.put("bytesProcessed", bytes);
+            ev.put("totalBytes", totalBytes.get());
+            ev.put("entriesProcessed", entriesProcessed.get());
+            ev.put("totalEntries", totalEntries.get());
+            ev.put("bytesPerSecond", bytes * 1000L / elapsedMs);
+            ev.put("elapsedMs", elapsedMs);
+            main.post(() -> notifyListeners("zipProgress", ev));
+        }
+
+        void deleteOutputs() {
+            synchronized (outputs) {
+                for (File f : outputs) {
+                    if (f.exists() && !f.delete()) {
+                        f.deleteOnExit();
+                    }
+                }
+                outputs.clear();
+            }
+        }
+    }
+
+    private ZipJob startJob(PluginCall call, String operation) {
+        String jobId = call.getString("jobId");
+        if (jobId == null || jobId.isEmpty()) {
+            jobId = UUID.randomUUID().toString();
+        }
+        ZipJob job = new ZipJob(jobId, operation);
+        jobs.put(jobId, job);
+        job.emit(true);
+        return job;
+    }
+
+    private void finishJob(ZipJob job) {
+        job.emit(true);
+        jobs.remove(job.id);
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String jobId = call.getString("jobId");
+        if (jobId == null || jobId.isEmpty()) {
+            call.reject("jobId is required");
+            return;
+        }
+
+        ZipJob job = jobs.get(jobId);
+        if (job != null) {
+            job.cancelled = true;
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("jobId", jobId);
+        ret.put("cancelled", job != null);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getExecutorStats(PluginCall call) {
+        call.resolve(PluginExecutors.metrics());
+    }
+
     @PluginMethod
     public void zipHscSessionsFolder(PluginCall call) {
-        new Thread(() -> {
+        if (!PluginExecutors.tryAcquire(EXPORT_OPERATION, MAX_CONCURRENT_EXPORTS)) {
+            call.reject("EXPORT_IN_PROGRESS");
+            return;
+        }
+
+        ZipJob job = startJob(call, "zipHscSessionsFolder");
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
             try {
                 // Source folder: /Android/data/com.example.app/files/documents/HSC-SESSIONS
                 File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
@@ -134,31 +316,40 @@ public class ZipFolderPlugin extends Plugin {
                 }
                 
                 // Compute total bytes for progress
-                long totalBytes = folderSize(sourceDir);
+                job.totalBytes.set(folderSize(sourceDir, job.totalEntries));
                 
                 // Create ZIP
-                long[] written = new long[]{0L};
+                job.outputs.add(outZip);
                 try (FileOutputStream fos = new FileOutputStream(outZip);
                      ZipOutputStream zos = new ZipOutputStream(fos)) {
                     
-                    zipDirRecursive(sourceDir, sourceDir, zos, totalBytes, written);
+                    zipDirRecursive(sourceDir, sourceDir, zos, job);
                 }
                 
                 JSObject ret = new JSObject();
+                ret.put("jobId", job.id);
                 ret.put("absolutePath", outZip.getAbsolutePath());
                 ret.put("fileName", zipFileName);
                 ret.put("size", outZip.length());
                 
                 main.post(() -> call.resolve(ret));
                 
+            } catch (CancellationException e) {
+                job.deleteOutputs();
+                main.post(() -> call.reject("CANCELLED"));
             } catch (Exception e) {
+                // A half-written archive is useless, don't leave it in Documents
+                job.deleteOutputs();
                 main.post(() -> call.reject("zipHscSessionsFolder failed: " + e.getMessage()));
+            } finally {
+                finishJob(job);
+                PluginExecutors.release(EXPORT_OPERATION);
             }
-        }).start();
+        });
     }
     
     private void zipDirRecursive(File rootDir, File current, ZipOutputStream zos,
-                                 long totalBytes, long[] written) throws Exception {
+                                 ZipJob job) throws Exception {
         
         File[] files = current.listFiles();
         if (files == null) return;
@@ -166,7 +357,7 @@ public class ZipFolderPlugin extends Plugin {
         byte[] buffer = new byte[1024 * 1024]; // 1MB
         for (File f : files) {
             if (f.isDirectory()) {
-                zipDirRecursive(rootDir, f, zos, totalBytes, written);
+                zipDirRecursive(rootDir, f, zos, job);
             } else {
                 String relativePath = rootDir.toURI().relativize(f.toURI()).getPath();
                 ZipEntry entry = new ZipEntry(relativePath);
@@ -176,22 +367,26 @@ public class ZipFolderPlugin extends Plugin {
                     int count;
                     while ((count = bis.read(buffer)) != -1) {
                         zos.write(buffer, 0, count);
-                        written[0] += count;
+                        job.addBytes(count);
                     }
                 }
                 
                 zos.closeEntry();
+                job.entryDone();
             }
         }
     }
     
-    private long folderSize(File dir) {
+    private long folderSize(File dir, AtomicInteger fileCount) {
         long size = 0L;
         File[] files = dir.listFiles();
         if (files == null) return 0L;
         for (File f : files) {
-            if (f.isDirectory()) size += folderSize(f);
-            else size += f.length();
+            if (f.isDirectory()) size += folderSize(f, fileCount);
+            else {
+                size += f.length();
+                fileCount.incrementAndGet();
+            }
         }
         return size;
     }
@@ -202,11 +397,27 @@ public class ZipFolderPlugin extends Plugin {
         String name;
         String type; // "vector", "tiff", "shapefile"
         long size;
+        String sha256; // of the extracted content
+    }
+
+    // Central-directory listing entry used by inspect()
+    private static class InspectedEntry {
+        String path; // entry path, nested archives joined with "!/"
+        String name;
+        String type;
+        long size; // -1 if unknown
+        long compressedSize;
     }
 
     @PluginMethod
     public void zipManifestFiles(PluginCall call) {
-        new Thread(() -> {
+        if (!PluginExecutors.tryAcquire(EXPORT_OPERATION, MAX_CONCURRENT_EXPORTS)) {
+            call.reject("EXPORT_IN_PROGRESS");
+            return;
+        }
+
+        ZipJob job = startJob(call, "zipManifestFiles");
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
             try {
                 JSArray filesArray = call.getArray("files");
                 
@@ -252,11 +463,19 @@ public class ZipFolderPlugin extends Plugin {
                     outZip.delete();
                 }
                 
+                // Stat pass for progress totals (no data is read)
+                job.totalEntries.set(filesArray.length());
+                for (int i = 0; i < filesArray.length(); i++) {
+                    String path = manifestAbsolutePath(filesArray.get(i));
+                    if (path != null) job.totalBytes.addAndGet(new File(path).length());
+                }
+                
                 byte[] buffer = new byte[1024 * 1024]; // 1MB buffer
                 
                 int filesAdded = 0;
                 int filesSkipped = 0;
                 
+                job.outputs.add(outZip);
                 try (FileOutputStream fos = new FileOutputStream(outZip);
                      ZipOutputStream zos = new ZipOutputStream(fos)) {
                     
@@ -291,6 +510,7 @@ public class ZipFolderPlugin extends Plugin {
                             } else {
                                 android.util.Log.w("ZipFolderPlugin", "File " + i + " is not a recognized object type: " + (obj != null ? obj.getClass().getName() : "null") + ", obj: " + obj);
                                 filesSkipped++;
+                                job.entryDone();
                                 continue;
                             }
                             
@@ -299,6 +519,7 @@ public class ZipFolderPlugin extends Plugin {
                             if (absolutePath == null || originalName == null) {
                                 android.util.Log.w("ZipFolderPlugin", "File " + i + " missing absolutePath or originalName, skipping");
                                 filesSkipped++;
+                                job.entryDone();
                                 continue;
                             }
                             
@@ -306,11 +527,13 @@ public class ZipFolderPlugin extends Plugin {
                             if (!sourceFile.exists()) {
                                 android.util.Log.w("ZipFolderPlugin", "File does not exist: " + absolutePath);
                                 filesSkipped++;
+                                job.entryDone();
                                 continue;
                             }
                             if (!sourceFile.isFile()) {
                                 android.util.Log.w("ZipFolderPlugin", "Path is not a file: " + absolutePath);
                                 filesSkipped++;
+                                job.entryDone();
                                 continue;
                             }
                             
@@ -324,12 +547,14 @@ public class ZipFolderPlugin extends Plugin {
                                 while ((count = bis.read(buffer)) != -1) {
                                     zos.write(buffer, 0, count);
                                     fileSize += count;
+                                    job.addBytes(count);
                                 }
                                 android.util.Log.d("ZipFolderPlugin", "Added file to ZIP: " + originalName + " (" + fileSize + " bytes)");
                                 filesAdded++;
                             }
                             
                             zos.closeEntry();
+                            job.entryDone();
                         }
                     } else {
                         android.util.Log.d("ZipFolderPlugin", "No files array or empty files array");
@@ -355,16 +580,34 @@ public class ZipFolderPlugin extends Plugin {
                 }
                 
                 JSObject ret = new JSObject();
+                ret.put("jobId", job.id);
                 ret.put("absolutePath", outZip.getAbsolutePath());
                 ret.put("fileName", zipFileName);
                 ret.put("size", zipSize);
                 
                 main.post(() -> call.resolve(ret));
                 
+            } catch (CancellationException e) {
+                job.deleteOutputs();
+                main.post(() -> call.reject("CANCELLED"));
             } catch (Exception e) {
+                job.deleteOutputs();
                 main.post(() -> call.reject("zipManifestFiles failed: " + e.getMessage()));
+            } finally {
+                finishJob(job);
+                PluginExecutors.release(EXPORT_OPERATION);
             }
-        }).start();
+        });
+    }
+
+    private static String manifestAbsolutePath(Object obj) {
+        if (obj instanceof org.json.JSONObject) {
+            return ((org.json.JSONObject) obj).optString("absolutePath", null);
+        } else if (obj instanceof java.util.Map) {
+            Object absPathObj = ((java.util.Map<?, ?>) obj).get("absolutePath");
+            return absPathObj != null ? absPathObj.toString() : null;
+        }
+        return null;
     }
 
     @PluginMethod
@@ -382,7 +625,13 @@ public class ZipFolderPlugin extends Plugin {
             ? "HSC-SESSIONS/FILES" 
             : outputDirParam;
 
-        new Thread(() -> {
+        if (!PluginExecutors.tryAcquire(EXTRACT_OPERATION, MAX_CONCURRENT_EXTRACTS)) {
+            call.reject("EXTRACT_IN_PROGRESS");
+            return;
+        }
+
+        ZipJob job = startJob(call, "extractZipRecursive");
+        PluginExecutors.io().execute(PluginExecutors.Priority.NORMAL, () -> {
             try {
                 // Get destination directory
                 File docsRoot = getContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
@@ -391,6 +640,10 @@ public class ZipFolderPlugin extends Plugin {
                 }
                 
                 File destDir = new File(docsRoot, outputDir);
+                if (!isInside(docsRoot, destDir)) {
+                    main.post(() -> call.reject("outputDir must stay inside the documents folder: " + outputDir));
+                    return;
+                }
                 if (!destDir.exists()) {
                     boolean created = destDir.mkdirs();
                     if (!created && !destDir.exists()) {
@@ -406,9 +659,10 @@ public class ZipFolderPlugin extends Plugin {
                     return;
                 }
 
-                List<ExtractedFileInfo> extractedFiles = extractRecursive(zipFile, destDir, 0, 10);
+                List<ExtractedFileInfo> extractedFiles = extractRecursive(zipFile, destDir, 0, 10, job);
 
                 // Group shapefiles and re-zip them
+                job.checkCancelled();
                 List<ExtractedFileInfo> finalFiles = processShapefiles(extractedFiles, destDir);
 
                 // Build result array
@@ -419,161 +673,517 @@ public class ZipFolderPlugin extends Plugin {
                     fileObj.put("name", file.name);
                     fileObj.put("type", file.type);
                     fileObj.put("size", file.size);
+                    fileObj.put("sha256", file.sha256);
                     filesArray.put(fileObj);
                 }
 
                 JSObject result = new JSObject();
+                result.put("jobId", job.id);
                 result.put("files", filesArray);
 
                 main.post(() -> call.resolve(result));
 
+            } catch (CancellationException e) {
+                job.deleteOutputs();
+                main.post(() -> call.reject("CANCELLED"));
             } catch (Exception e) {
+                // Corrupt or hostile archive: don't leave half of it behind for JS to trip over
+                job.deleteOutputs();
                 main.post(() -> call.reject("Extraction failed: " + e.getMessage()));
+            } finally {
+                finishJob(job);
+                PluginExecutors.release(EXTRACT_OPERATION);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void inspect(PluginCall call) {
+        String zipPath = call.getString("zipPath");
+
+        if (zipPath == null || zipPath.isEmpty()) {
+            call.reject("zipPath is required");
+            return;
+        }
+
+        PluginExecutors.io().execute(PluginExecutors.Priority.HIGH, () -> {
+            try {
+                File zipFile = new File(zipPath);
+                if (!zipFile.exists()) {
+                    main.post(() -> call.reject("ZIP file does not exist: " + zipPath));
+                    return;
+                }
+
+                List<InspectedEntry> entries = new ArrayList<>();
+                int[] skipped = new int[]{0};
+                try (ZipFile zip = new ZipFile(zipFile)) {
+                    inspectCentralDirectory(zip, "", entries, skipped, new InspectBudget(), 0, 10);
+                }
+
+                JSObject result = new JSObject();
+                result.put("layers", buildInspectedLayers(entries));
+                result.put("totalEntries", entries.size() + skipped[0]);
+                result.put("skippedEntries", skipped[0]);
+
+                main.post(() -> call.resolve(result));
+
+            } catch (Exception e) {
+                main.post(() -> call.reject("Inspection failed: " + e.getMessage()));
+            }
+        });
+    }
+
+    private void inspectCentralDirectory(ZipFile zip, String prefix, List<InspectedEntry> out,
+                                         int[] skipped, InspectBudget budget,
+                                         int depth, int maxDepth) throws Exception {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            budget.addEntry();
+            if (entry.isDirectory()) continue;
+
+            if (entry.getName().toLowerCase().endsWith(".zip")) {
+                if (depth < maxDepth) {
+                    // Nested archives have no central directory we can seek to, so walk
+                    // their local headers instead of extracting them to disk
+                    BudgetedInputStream raw = new BudgetedInputStream(zip.getInputStream(entry), entry, budget, null);
+                    try (ZipInputStream nested = new ZipInputStream(new BufferedInputStream(raw))) {
+                        inspectLocalHeaders(nested, raw, prefix + entry.getName() + "!/", out, skipped, budget,
+                                depth + 1, maxDepth);
+                    }
+                }
+                continue;
+            }
+            addInspectedEntry(prefix + entry.getName(), entry.getSize(), entry.getCompressedSize(), out, skipped);
+        }
+    }
+
+    private void inspectLocalHeaders(ZipInputStream zis, BudgetedInputStream source, String prefix,
+                                     List<InspectedEntry> out, int[] skipped, InspectBudget budget,
+                                     int depth, int maxDepth) throws Exception {
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            budget.addEntry();
+            if (entry.isDirectory()) continue;
+
+            // Walking past an entry inflates it, so read it through the budget rather
+            // than letting closeEntry() skip an unbounded amount of data
+            BudgetedInputStream data = new BudgetedInputStream(zis, entry, budget, source);
+            if (entry.getName().toLowerCase().endsWith(".zip")) {
+                if (depth < maxDepth) {
+                    // Don't close: closing the nested stream would close the parent
+                    ZipInputStream nested = new ZipInputStream(data);
+                    inspectLocalHeaders(nested, data, prefix + entry.getName() + "!/", out, skipped, budget,
+                            depth + 1, maxDepth);
+                }
+                drain(data);
+                zis.closeEntry();
+                continue;
+            }
+            drain(data);
+            zis.closeEntry();
+            // Sizes in local headers are -1 when a data descriptor follows; the
+            // descriptor has been consumed by closeEntry() so they are known now
+            addInspectedEntry(prefix + entry.getName(), entry.getSize(), entry.getCompressedSize(), out, skipped);
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        //noinspection StatementWithEmptyBody
+        while (in.read(buffer) > 0) {
+        }
+    }
+
+    // Entry and inflated-byte limits shared by every nesting level of one inspect() call
+    private static class InspectBudget {
+        int entries;
+        long inflatedBytes;
+
+        void addEntry() throws ZipException {
+            if (++entries > MAX_ENTRIES) {
+                throw new ZipException("Archive has more than " + MAX_ENTRIES + " entries");
+            }
+        }
+    }
+
+    /**
+     * Entry data read during inspection, held to the same size and ratio limits that
+     * inflateEntry() applies when extracting.
+     */
+    private static class BudgetedInputStream extends FilterInputStream {
+        private final ZipEntry entry;
+        private final InspectBudget budget;
+        // Stream the enclosing ZipInputStream reads from, and its position when this entry
+        // began: local headers followed by a data descriptor carry no compressed size
+        private final BudgetedInputStream source;
+        private final long sourceStart;
+        private long read = 0L;
+
+        BudgetedInputStream(InputStream in, ZipEntry entry, InspectBudget budget,
+                            BudgetedInputStream source) {
+            super(in);
+            this.entry = entry;
+            this.budget = budget;
+            this.source = source;
+            this.sourceStart = source != null ? source.read : 0L;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) charge(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) charge(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are inflated all the same; read them so they are counted
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int r = n > 0 ? read(buffer, 0, buffer.length) : 0;
+            return Math.max(r, 0);
+        }
+
+        private void charge(int n) throws ZipException {
+            read += n;
+            long compressedSize = entry.getCompressedSize();
+            if (compressedSize <= 0 && source != null) {
+                // Read-ahead makes this a slight overestimate, which only loosens the check
+                compressedSize = source.read - sourceStart;
+            }
+            if (compressedSize > 0 && read > RATIO_CHECK_MIN_BYTES
+                    && read / compressedSize > MAX_COMPRESSION_RATIO) {
+                throw new ZipException("Compression ratio too high, refusing to inspect: " + entry.getName());
+            }
+            budget.inflatedBytes += n;
+            if (budget.inflatedBytes > MAX_EXTRACTED_BYTES) {
+                throw new ZipException("Archive expands beyond " + MAX_EXTRACTED_BYTES + " bytes");
+            }
+        }
+    }
+
+    private static void addInspectedEntry(String path, long size, long compressedSize,
+                                          List<InspectedEntry> out, int[] skipped) {
+        String fileName = new File(path).getName();
+        if (!isAllowedExtension(fileName)) {
+            skipped[0]++;
+            return;
+        }
+
+        InspectedEntry info = new InspectedEntry();
+        info.path = path;
+        info.name = fileName;
+        info.type = fileTypeFor(fileName);
+        info.size = size;
+        info.compressedSize = compressedSize;
+        out.add(info);
+    }
+
+    private static JSArray buildInspectedLayers(List<InspectedEntry> entries) {
+        // Group shapefile components by base name, same as processShapefiles()
+        Map<String, List<InspectedEntry>> shapefileGroups = new LinkedHashMap<>();
+        JSArray layers = new JSArray();
+
+        for (InspectedEntry entry : entries) {
+            if (entry.type.equals("shapefile_component")) {
+                String baseName = entry.name.toLowerCase().replaceAll("\\.(shp|shx|dbf|prj)$", "");
+                shapefileGroups.computeIfAbsent(baseName, k -> new ArrayList<>()).add(entry);
+                continue;
+            }
+
+            JSObject layer = new JSObject();
+            layer.put("name", entry.name);
+            layer.put("path", entry.path);
+            layer.put("type", entry.type);
+            layer.put("size", entry.size);
+            layer.put("compressedSize", entry.compressedSize);
+            layers.put(layer);
+        }
+
+        for (Map.Entry<String, List<InspectedEntry>> group : shapefileGroups.entrySet()) {
+            Set<String> present = new HashSet<>();
+            JSArray components = new JSArray();
+            long size = 0L;
+            long compressedSize = 0L;
+            for (InspectedEntry comp : group.getValue()) {
+                String lower = comp.name.toLowerCase();
+                present.add(lower.substring(lower.lastIndexOf('.') + 1));
+                components.put(comp.path);
+                size += Math.max(0L, comp.size);
+                compressedSize += Math.max(0L, comp.compressedSize);
+            }
+
+            JSArray missing = new JSArray();
+            for (String required : new String[]{"shp", "shx", "dbf"}) {
+                if (!present.contains(required)) missing.put(required);
             }
-        }).start();
+
+            JSObject layer = new JSObject();
+            layer.put("name", group.getKey() + ".zip");
+            layer.put("path", group.getValue().get(0).path);
+            // Incomplete groups are imported as individual vector files by extractZipRecursive
+            layer.put("type", missing.length() == 0 ? "shapefile" : "vector");
+            layer.put("size", size);
+            layer.put("compressedSize", compressedSize);
+            layer.put("complete", missing.length() == 0);
+            layer.put("components", components);
+            layer.put("missing", missing);
+            layers.put(layer);
+        }
+
+        return layers;
     }
 
-    private List<ExtractedFileInfo> extractRecursive(File zipFile, File destDir, int depth, int maxDepth) throws Exception {
+    private List<ExtractedFileInfo> extractRecursive(File zipFile, File destDir, int depth, int maxDepth,
+                                                     ZipJob job) throws Exception {
         List<ExtractedFileInfo> extractedFiles = new ArrayList<>();
         
         if (depth > maxDepth) {
             return extractedFiles; // Skip if too deep
         }
 
-        byte[] buffer = new byte[8192];
-        
-        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile)))) {
-            ZipEntry entry;
-            
-            while ((entry = zis.getNextEntry()) != null) {
+        // Read the central directory instead of streaming the archive: entries are
+        // selected by name/extension up front, so skipped entries cost zero bytes read,
+        // and the selected ones can be inflated independently on the worker pool.
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<ZipEntry> selectedEntries = new ArrayList<>();
+            List<File> outputFiles = new ArrayList<>();
+            List<File> nestedZips = new ArrayList<>();
+
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
                 String entryName = entry.getName();
+                if (job.entriesListed.incrementAndGet() > MAX_ENTRIES) {
+                    throw new ZipException("Archive has more than " + MAX_ENTRIES + " entries");
+                }
                 
                 // Skip directory entries
                 if (entry.isDirectory()) {
                     continue;
                 }
 
-                // Handle nested ZIPs
-                if (entryName.toLowerCase().endsWith(".zip")) {
-                    String zipFileName = new File(entryName).getName(); // Get just the filename
-                    
-                    // For ZIPs, extract recursively
-                    File tempZip = new File(destDir, "temp_" + System.currentTimeMillis() + "_" + zipFileName);
-                    
-                    try (FileOutputStream fos = new FileOutputStream(tempZip);
-                         BufferedOutputStream bos = new BufferedOutputStream(fos)) {
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            bos.write(buffer, 0, len);
-                        }
+                String fileName = new File(entryName).getName(); // Get just the filename
+                if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")) {
+                    throw new ZipException("Invalid entry name: " + entryName);
+                }
+
+                // Handle nested ZIPs: inflate to a temp file, extracted recursively below
+                if (fileName.toLowerCase().endsWith(".zip")) {
+                    File tempZip = reserveOutputFile(destDir, "temp_" + System.currentTimeMillis() + "_" + fileName);
+                    job.outputs.add(tempZip);
+                    nestedZips.add(tempZip);
+                    selectedEntries.add(entry);
+                    outputFiles.add(tempZip);
+                    continue;
+                }
+
+                // Check if file extension is allowed
+                if (!isAllowedExtension(fileName)) {
+                    continue;
+                }
+
+                // Claim the output name now, on disk, so neither parallel writers of this job
+                // nor another extract into the same directory can pick it too
+                File outputFile = reserveOutputFile(destDir, fileName);
+                job.outputs.add(outputFile);
+                selectedEntries.add(entry);
+                outputFiles.add(outputFile);
+            }
+
+            job.totalEntries.addAndGet(selectedEntries.size());
+            for (ZipEntry entry : selectedEntries) {
+                if (entry.getSize() > 0) job.totalBytes.addAndGet(entry.getSize());
+            }
+
+            List<Future<String>> futures = new ArrayList<>();
+            // Set when one entry fails; the others stop at their next buffer
+            AtomicBoolean abort = new AtomicBoolean();
+            for (int i = 0; i < selectedEntries.size(); i++) {
+                ZipEntry entry = selectedEntries.get(i);
+                File outputFile = outputFiles.get(i);
+                if (!isInside(destDir, outputFile)) {
+                    throw new ZipException("Entry escapes output directory: " + entry.getName());
+                }
+                futures.add(PluginExecutors.cpu().submit(PluginExecutors.Priority.NORMAL, () -> {
+                    String sha256 = inflateEntry(zip, entry, outputFile, job, abort);
+                    job.entryDone();
+                    return sha256;
+                }));
+            }
+
+            List<String> hashes = new ArrayList<>();
+            try {
+                for (Future<String> future : futures) {
+                    hashes.add(future.get());
+                }
+            } catch (ExecutionException e) {
+                // Running inflaters ignore interrupts: stop them and wait, so none writes
+                // after the caller deletes the outputs or reads from the closed ZipFile
+                abort.set(true);
+                for (Future<String> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException | CancellationException ignored) {
+                        // The first failure is the one reported
                     }
-                    
+                }
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+
+            for (int i = 0; i < selectedEntries.size(); i++) {
+                File outputFile = outputFiles.get(i);
+
+                if (nestedZips.contains(outputFile)) {
                     // Recursively extract nested ZIP
-                    List<ExtractedFileInfo> nestedFiles = extractRecursive(tempZip, destDir, depth + 1, maxDepth);
+                    List<ExtractedFileInfo> nestedFiles = extractRecursive(outputFile, destDir, depth + 1, maxDepth, job);
                     extractedFiles.addAll(nestedFiles);
+                    job.extractedBytes.addAndGet(-outputFile.length());
                     
                     // Delete temp ZIP file (and ensure it's deleted)
-                    if (tempZip.exists()) {
-                        boolean deleted = tempZip.delete();
+                    if (outputFile.exists()) {
+                        boolean deleted = outputFile.delete();
                         if (!deleted) {
                             // If delete fails, try to delete on exit (best effort cleanup)
-                            tempZip.deleteOnExit();
-                        }
-                    }
-                } else {
-                    // Extract regular file
-                    String fileName = new File(entryName).getName();
-                    
-                    // Check if file extension is allowed
-                    String lowerName = fileName.toLowerCase();
-                    int lastDot = lowerName.lastIndexOf('.');
-                    if (lastDot > 0 && lastDot < lowerName.length() - 1) {
-                        String extension = lowerName.substring(lastDot + 1);
-                        Set<String> allowedExtensions = new HashSet<>(Arrays.asList(
-                            // Raster/DEM formats
-                            "tif",
-                            "tiff",
-                            "hgt",
-                            "dett",
-                            // Vector formats
-                            "geojson",
-                            "json",
-                            "csv",
-                            "gpx",
-                            "kml",
-                            "kmz",
-                            "wkt",
-                            // Shapefile components (will be grouped into ZIP)
-                            "shp",
-                            "shx",
-                            "dbf",
-                            "prj",
-                            // Archive format (for containing the above formats)
-                            "zip"
-                        ));
-                        
-                        if (!allowedExtensions.contains(extension)) {
-                            // Skip this file - don't extract it
-                            zis.closeEntry();
-                            continue;
-                        }
-                    }
-                    
-                    File outputFile = new File(destDir, fileName);
-                    
-                    // Handle duplicate names
-                    int counter = 1;
-                    String baseName = fileName;
-                    String extension = "";
-                    int dotIndex = fileName.lastIndexOf('.');
-                    if (dotIndex > 0) {
-                        baseName = fileName.substring(0, dotIndex);
-                        extension = fileName.substring(dotIndex);
-                    }
-                    
-                    while (outputFile.exists()) {
-                        outputFile = new File(destDir, baseName + "_" + counter + extension);
-                        counter++;
-                    }
-                    
-                    outputFile.getParentFile().mkdirs();
-                    
-                    try (FileOutputStream fos = new FileOutputStream(outputFile);
-                         BufferedOutputStream bos = new BufferedOutputStream(fos)) {
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            bos.write(buffer, 0, len);
+                            outputFile.deleteOnExit();
                         }
                     }
-                    
-                    // Determine file type
-                    lowerName = outputFile.getName().toLowerCase();
-                    String fileType = "vector"; // default
-                    
-                    if (lowerName.endsWith(".tif") || lowerName.endsWith(".tiff") || 
-                        lowerName.endsWith(".hgt") || lowerName.endsWith(".dett")) {
-                        fileType = "tiff";
-                    } else if (lowerName.endsWith(".shp") || lowerName.endsWith(".shx") || 
-                               lowerName.endsWith(".dbf") || lowerName.endsWith(".prj")) {
-                        fileType = "shapefile_component";
-                    }
-                    
-                    ExtractedFileInfo fileInfo = new ExtractedFileInfo();
-                    fileInfo.absolutePath = outputFile.getAbsolutePath();
-                    fileInfo.name = outputFile.getName();
-                    fileInfo.type = fileType;
-                    fileInfo.size = outputFile.length();
-                    
-                    extractedFiles.add(fileInfo);
+                    continue;
                 }
+
+                ExtractedFileInfo fileInfo = new ExtractedFileInfo();
+                fileInfo.absolutePath = outputFile.getAbsolutePath();
+                fileInfo.name = outputFile.getName();
+                fileInfo.type = fileTypeFor(outputFile.getName());
+                fileInfo.size = outputFile.length();
+                fileInfo.sha256 = hashes.get(i);
                 
-                zis.closeEntry();
+                extractedFiles.add(fileInfo);
             }
         }
         
         return extractedFiles;
     }
 
+    /**
+     * Inflates one entry, verifying CRC-32 and the declared size in the same pass
+     * (ZipFile, unlike ZipInputStream, doesn't check them) and enforcing the bomb limits.
+     * Returns the SHA-256 of the inflated content as hex.
+     */
+    private String inflateEntry(ZipFile zip, ZipEntry entry, File outputFile, ZipJob job,
+                                AtomicBoolean abort) throws Exception {
+        File parent = outputFile.getParentFile();
+        if (parent != null) {
+            //noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+        }
+
+        long declaredSize = entry.getSize();
+        long compressedSize = entry.getCompressedSize();
+        CRC32 crc = new CRC32();
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        long written = 0L;
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = zip.getInputStream(entry);
+             FileOutputStream fos = new FileOutputStream(outputFile);
+             BufferedOutputStream bos = new BufferedOutputStream(fos)) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                if (abort.get()) throw new CancellationException("ABORTED");
+                written += len;
+                if (declaredSize >= 0 && written > declaredSize) {
+                    throw new ZipException("Entry larger than declared size: " + entry.getName());
+                }
+                if (compressedSize > 0 && written > RATIO_CHECK_MIN_BYTES
+                        && written / compressedSize > MAX_COMPRESSION_RATIO) {
+                    throw new ZipException("Compression ratio too high, refusing to extract: " + entry.getName());
+                }
+
+                crc.update(buffer, 0, len);
+                sha256.update(buffer, 0, len);
+                bos.write(buffer, 0, len);
+                job.addBytes(len);
+
+                if (job.extractedBytes.addAndGet(len) > MAX_EXTRACTED_BYTES) {
+                    throw new ZipException("Archive expands beyond " + MAX_EXTRACTED_BYTES + " bytes");
+                }
+            }
+        }
+
+        if (declaredSize >= 0 && written != declaredSize) {
+            throw new ZipException("Truncated entry " + entry.getName() + ": " + written + " of " + declaredSize + " bytes");
+        }
+        if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+            throw new ZipException("CRC mismatch in " + entry.getName());
+        }
+        return ContentStore.toHex(sha256.digest());
+    }
+
+    private static boolean isInside(File dir, File child) {
+        try {
+            String dirPath = dir.getCanonicalPath() + File.separator;
+            return child.getCanonicalPath().startsWith(dirPath);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean isAllowedExtension(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        int lastDot = lowerName.lastIndexOf('.');
+        if (lastDot > 0 && lastDot < lowerName.length() - 1) {
+            return ALLOWED_EXTENSIONS.contains(lowerName.substring(lastDot + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Creates an empty file for {@code fileName} in {@code destDir}, adding _1, _2... when the
+     * name is taken. createNewFile is atomic, so concurrent extracts never get the same file.
+     */
+    private static File reserveOutputFile(File destDir, String fileName) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        destDir.mkdirs();
+        File outputFile = new File(destDir, fileName);
+        
+        // Handle duplicate names
+        int counter = 1;
+        String baseName = fileName;
+        String extension = "";
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex > 0) {
+            baseName = fileName.substring(0, dotIndex);
+            extension = fileName.substring(dotIndex);
+        }
+        
+        while (!outputFile.createNewFile()) {
+            outputFile = new File(destDir, baseName + "_" + counter + extension);
+            counter++;
+        }
+        return outputFile;
+    }
+
+    private static String fileTypeFor(String name) {
+        String lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".tif") || lowerName.endsWith(".tiff") || 
+            lowerName.endsWith(".hgt") || lowerName.endsWith(".dett")) {
+            return "tiff";
+        } else if (lowerName.endsWith(".shp") || lowerName.endsWith(".shx") || 
+                   lowerName.endsWith(".dbf") || lowerName.endsWith(".prj")) {
+            return "shapefile_component";
+        }
+        return "vector"; // default
+    }
+
     private List<ExtractedFileInfo> processShapefiles(List<ExtractedFileInfo> files, File destDir) throws Exception {
         // Group shapefile components by base name
         Map<String, List<ExtractedFileInfo>> shapefileGroups = new HashMap<>();
@@ -617,7 +1227,9 @@ public class ZipFolderPlugin extends Plugin {
                     counter++;
                 }
                 
-                try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                try (ZipOutputStream zos = new ZipOutputStream(
+                        new DigestOutputStream(new FileOutputStream(zipFile), sha256))) {
                     byte[] buffer = new byte[8192];
                     
                     for (ExtractedFileInfo component : components) {
@@ -653,6 +1265,7 @@ public class ZipFolderPlugin extends Plugin {
                 zipInfo.name = zipFile.getName();
                 zipInfo.type = "shapefile";
                 zipInfo.size = zipFile.length();
+                zipInfo.sha256 = ContentStore.toHex(sha256.digest());
                 result.add(zipInfo);
                 
             } else {
@@ -6,6 +6,7 @@ import { AppSidebar } from "./components/app-sidebar";
 import LayersBox from "./components/map/layers-box";
 import { toast } from "./lib/toast";
 import { NativeUploader } from "./plugins/native-uploader";
+import { startIncrementalAutosave } from "./store/layers-store";
 
 const App = () => {
   const [isLayersPanelVisible, setIsLayersPanelVisible] = useState(false);
@@ -25,22 +26,22 @@ const App = () => {
           console.log(
             `[AppStartup] Found ${untrackedFiles.length} untracked file(s) to cleanup`
           );
-          // Delete each file using plugin
-          for (const file of untrackedFiles) {
-            try {
-              await NativeUploader.deleteFile({
-                absolutePath: file.absolutePath,
-              });
-              console.log(
-                `[AppStartup] Deleted untracked file: ${file.absolutePath}`
-              );
-            } catch (error) {
+          // One native call for the whole batch; failures are reported, not thrown
+          try {
+            const result = await NativeUploader.deleteMany({
+              paths: untrackedFiles.map((file) => file.absolutePath),
+            });
+            console.log(
+              `[AppStartup] Deleted ${result.deleted + result.released} untracked file(s), ${result.missing} already gone`
+            );
+            for (const f of result.failed) {
               console.warn(
-                `[AppStartup] Failed to delete untracked file: ${file.absolutePath}`,
-                error
+                `[AppStartup] Failed to delete untracked file: ${f.path}`,
+                f.error
               );
-              // Continue with other files even if one fails
             }
+          } catch (error) {
+            console.warn(`[AppStartup] Failed to delete untracked files`, error);
           }
 
           // Clear untracked.json after cleanup
@@ -58,6 +59,9 @@ const App = () => {
     cleanupUntrackedFiles();
   }, []);
 
+  // Autosave layer edits as deltas to the native SessionStore while the app runs
+  useEffect(() => startIncrementalAutosave(), []);
+
   // Don't auto-load session on app start - user must press restore button
   // Session will only be restored when user explicitly clicks the restore button
 
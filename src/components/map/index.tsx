@@ -11,6 +11,7 @@ import {
   ScatterplotLayer,
   TextLayer,
 } from "@deck.gl/layers";
+import { TileLayer } from "@deck.gl/geo-layers";
 import unkinkPolygon from "@turf/unkink-polygon";
 import { useCallback, useEffect, useMemo, useRef, useState } from "react";
 import "mapbox-gl/dist/mapbox-gl.css";
@@ -23,6 +24,7 @@ import { useUdpLayers } from "./udp-layers";
 import UdpConfigDialog from "./udp-config-dialog";
 import OfflineLocationTracker from "./offline-location-tracker";
 import { initializeTileServer } from "./tile-folder-dialog";
+import { sendPrefetchHint } from "./tile-prefetch";
 import {
   useRubberBandRectangle,
   useRubberBandOverlay,
@@ -82,6 +84,7 @@ import {
 import {
   parseDemFile,
   createDemLayer,
+  openNativeDemLayer,
   parseVectorFile,
   createVectorLayer,
 } from "@/utils/parser";
@@ -561,9 +564,10 @@ const MapComponent = ({
         progressListener = await NativeUploader.addListener(
           "uploadProgress",
           (event) => {
-            if (event.totalBytes > 0) {
+            // Files are staged in parallel, so report the whole batch
+            if (event.aggregateTotalBytes > 0) {
               currentUploadProgress = Math.round(
-                (event.bytesWritten / event.totalBytes) * 100
+                (event.aggregateBytesWritten / event.aggregateTotalBytes) * 100
               );
         
               toast.update(
@@ -623,6 +627,44 @@ const MapComponent = ({
           // Step 2: Wait a bit for file to be fully written to disk
           await new Promise((resolve) => setTimeout(resolve, 500));
 
+          // DEMs are served natively as tiles when the native reader takes them: no size
+          // limit and nothing is read into JS. Others fall through to the JS parser
+          if (/\.(tiff?|hgt|dett)$/i.test(stagedFile.originalName)) {
+            const layerId = generateLayerId();
+            const layerName = stagedFile.originalName.split(".")[0];
+            const nativeLayer = await openNativeDemLayer(stagedFile.absolutePath, {
+              layerId,
+              layerName,
+            });
+            if (nativeLayer) {
+              try {
+                await upsertManifestEntry({
+                  layerId,
+                  layerName,
+                  path: stagedFile.logicalPath,
+                  absolutePath: stagedFile.absolutePath,
+                  originalName: stagedFile.originalName,
+                  mimeType: stagedFile.mimeType,
+                  size: stagedFile.size,
+                  status: "staged",
+                  createdAt: Date.now(),
+                });
+              } catch (manifestError) {
+                console.error(
+                  `[FileUpload] Error adding to manifest:`,
+                  manifestError
+                );
+              }
+              addLayer(nativeLayer);
+              const { updateManifestColor } = await import(
+                "@/sessions/manifestStore"
+              );
+              await updateManifestColor(layerId, nativeLayer.color);
+              hasValidFiles = true;
+              continue;
+            }
+          }
+
           // Step 3: Check file size before reading (prevent memory issues)
           const fileSizeMB = stagedFile.size / (1024 * 1024);
           if (fileSizeMB > 500) {
@@ -757,33 +799,39 @@ const MapComponent = ({
                   );
 
                   // Convert absolute path to File object for parsing
-                  const file = await stagedPathToFile({
-                    absolutePath: extractedFile.absolutePath,
-                    originalName: extractedFile.name,
-                    mimeType:
-                      extractedFile.type === "tiff"
-                        ? "image/tiff"
-                        : "application/octet-stream",
-                  });
-
-                  if (extractedFile.type === "tiff") {
-                    // Process DEM file
-                    const demResult = await parseDemFile(file, {
-                      layerId: layerId,
-                      layerName: layerName,
-                      onProgress: (percent) => {
-                        toast.update(
-                          progressToastId,
-                          `Processing ${zipFileNum}/${extractResult.files.length}: ${extractedFile.name} (${percent}%)`,
-                          "loading"
-                        );
-                      },
+                  const readFile = () =>
+                    stagedPathToFile({
+                      absolutePath: extractedFile.absolutePath,
+                      originalName: extractedFile.name,
+                      mimeType:
+                        extractedFile.type === "tiff"
+                          ? "image/tiff"
+                          : "application/octet-stream",
                     });
 
-                    const newLayer = createDemLayer(demResult, {
-                      layerId: layerId,
-                      layerName: layerName,
-                    });
+                  if (extractedFile.type === "tiff") {
+                    // Process DEM file: served natively as tiles if possible, else parsed in JS
+                    let newLayer = await openNativeDemLayer(
+                      extractedFile.absolutePath,
+                      { layerId: layerId, layerName: layerName }
+                    );
+                    if (!newLayer) {
+                      const demResult = await parseDemFile(await readFile(), {
+                        layerId: layerId,
+                        layerName: layerName,
+                        onProgress: (percent) => {
+                          toast.update(
+                            progressToastId,
+                            `Processing ${zipFileNum}/${extractResult.files.length}: ${extractedFile.name} (${percent}%)`,
+                            "loading"
+                          );
+                        },
+                      });
+                      newLayer = createDemLayer(demResult, {
+                        layerId: layerId,
+                        layerName: layerName,
+                      });
+                    }
                     addLayer(newLayer);
                     // Update manifest with layer color
                     const { updateManifestColor } = await import(
@@ -802,7 +850,7 @@ const MapComponent = ({
                     extractedFile.type === "shapefile"
                   ) {
                     // Process vector file
-                    const vectorResult = await parseVectorFile(file, {
+                    const vectorResult = await parseVectorFile(await readFile(), {
                       layerId: layerId,
                       layerName: layerName,
                       generateRandomColor,
@@ -1310,6 +1358,30 @@ const MapComponent = ({
             continue;
           }
 
+          // DEMs are served natively as tiles when possible, without reading the file into JS
+          if (
+            entry.type === "tiff" ||
+            /\.(tiff?|hgt|dett)$/i.test(entry.originalName)
+          ) {
+            const nativeLayer = await openNativeDemLayer(entry.absolutePath, {
+              layerId: entry.layerId,
+              layerName: entry.layerName,
+            });
+            if (nativeLayer) {
+              if (entry.createdAt) {
+                (nativeLayer as any).uploadedAt = entry.createdAt;
+              }
+              if (entry.color) {
+                nativeLayer.color = entry.color;
+              }
+              addLayer(nativeLayer);
+              existingLayerIds.add(entry.layerId);
+              restoredFileCount++;
+              toast.dismiss(progressToastId);
+              continue;
+            }
+          }
+
           // Convert absolute path to File object
           let file: File;
           try {
@@ -1475,28 +1547,12 @@ const MapComponent = ({
 
       try {
         const { HSC_FILES_DIR } = await import("@/sessions/constants");
-        const { Filesystem, Directory, Encoding } = await import(
-          "@capacitor/filesystem"
-        );
+        const { readSessionZip } = await import("@/lib/capacitor-utils");
         const sketchLayersPath = `${HSC_FILES_DIR}/sketch_layers.zip`;
 
         try {
-          const result = await Filesystem.readFile({
-            path: sketchLayersPath,
-            directory: Directory.Documents,
-            encoding: Encoding.UTF8,
-          });
-
-          const content = result.data;
-          if (content && typeof content === "string" && content.trim() !== "") {
-            // Convert base64 to blob
-            const binaryString = atob(content);
-            const bytes = new Uint8Array(binaryString.length);
-            for (let i = 0; i < binaryString.length; i++) {
-              bytes[i] = binaryString.charCodeAt(i);
-            }
-            const blob = new Blob([bytes], { type: "application/zip" });
-
+          const blob = await readSessionZip(sketchLayersPath);
+          if (blob) {
             // Load ZIP using JSZip
             const JSZip = (await import("jszip")).default;
             const zip = await JSZip.loadAsync(blob);
@@ -2895,6 +2951,35 @@ const MapComponent = ({
       const [minLng, minLat] = layer.bounds[0];
       const [maxLng, maxLat] = layer.bounds[1];
 
+      // Served natively: hillshade tiles rendered from the file block by block
+      if (layer.demTiles) {
+        deckLayers.push(
+          new TileLayer({
+            // Same suffix as the bitmap so hover finds the layer
+            id: `${layer.id}-bitmap`,
+            data: layer.demTiles.url,
+            extent: [minLng, minLat, maxLng, maxLat],
+            maxZoom: layer.demTiles.maxZoom,
+            tileSize: 256,
+            pickable: true,
+            visible: layer.visible !== false && getZoomVisibility(layer),
+            onHover: handleLayerHover,
+            renderSubLayers: (props: any) => {
+              const [[west, south], [east, north]] = props.tile.boundingBox;
+              return new BitmapLayer(props, {
+                data: undefined,
+                image: props.data,
+                bounds: [west, south, east, north],
+              });
+            },
+            updateTriggers: {
+              visible: [roundedZoom, layer.visible],
+            },
+          })
+        );
+        return;
+      }
+
       // Ensure we hand BitmapLayer a canvas (avoid createImageBitmap on blobs)
       const image =
         ensureCanvasImage(layer.bitmap) ||
@@ -4201,6 +4286,9 @@ const MapComponent = ({
         dragPan={!isRubberBandDrawing}
         touchZoomRotate={!isRubberBandDrawing}
         onMoveEnd={(e: any) => {
+          if (e?.target) {
+            sendPrefetchHint(e.target);
+          }
           if (e && e.viewState) {
             // Throttle updates to reduce re-renders during map operations
             if (zoomUpdateTimeoutRef.current) {
@@ -0,0 +1,62 @@
+import { Capacitor } from "@capacitor/core";
+import { OfflineTileServer } from "@/plugins/offline-tile-server";
+import { useUdpDataStore } from "@/store/udp-data-store";
+
+type MapBounds = {
+  getWest: () => number;
+  getSouth: () => number;
+  getEast: () => number;
+  getNorth: () => number;
+};
+
+type MapView = {
+  getBounds: () => MapBounds | null;
+  getZoom: () => number;
+};
+
+/**
+ * m/s per LSB of the INT16 veIn/veIe fields of opcode 101, which udp-layers.tsx stores
+ * unscaled. The feed sends velocity as fixed point; keep this in step with its ICD.
+ */
+const VELOCITY_LSB_MPS = 0.1;
+
+/** Faster than any own ship; a larger speed is a bad sample and only skews the look-ahead */
+const MAX_TRACK_SPEED_MPS = 350;
+
+/**
+ * Heading (degrees) and ground speed (m/s, from the north/east velocity components) of
+ * own ship, i.e. the network member flagged as mother aircraft, if the UDP feed has one.
+ */
+const ownShipTrack = (): { heading: number; speed: number } | null => {
+  const { networkMembers } = useUdpDataStore.getState().udpData;
+  const own = networkMembers.find((member: any) => member?.isMotherAc);
+  if (!own || typeof own.trueHeading !== "number") return null;
+  const speed =
+    Math.hypot(own.veIn ?? 0, own.veIe ?? 0) * VELOCITY_LSB_MPS;
+  if (!Number.isFinite(speed)) return null;
+  return {
+    heading: own.trueHeading,
+    speed: Math.min(speed, MAX_TRACK_SPEED_MPS),
+  };
+};
+
+/**
+ * Tell the tile server where the map is so it can warm the tiles around it (and ahead of
+ * own ship). Each hint cancels the previous one natively, so calling this on every
+ * moveend is fine.
+ */
+export const sendPrefetchHint = (map: MapView) => {
+  if (!Capacitor.isNativePlatform()) return;
+  const bounds = map.getBounds();
+  if (!bounds) return;
+  OfflineTileServer.prefetch({
+    west: bounds.getWest(),
+    south: bounds.getSouth(),
+    east: bounds.getEast(),
+    north: bounds.getNorth(),
+    zoom: map.getZoom(),
+    ...(ownShipTrack() ?? {}),
+  }).catch(() => {
+    // Server not running yet: nothing to warm
+  });
+};
@@ -1,6 +1,8 @@
 import type { LayerProps } from "@/lib/definitions";
-import { listFilesInDirectory } from "./capacitor-utils";
+import { listFilesInDirectory, readSessionZip } from "./capacitor-utils";
 import { Filesystem, Directory, Encoding } from "@capacitor/filesystem";
+import type { SessionDelta } from "@/plugins/session-store";
+import { openNativeDemLayer } from "@/utils/parser/dem-parser";
 
 const AUTOSAVE_SESSION_PATH = "HSC_SESSIONS/autosave_session.zip";
 
@@ -86,10 +88,11 @@ export const serializeLayers = async (
   return { serialized, bitmaps };
 };
 
-// Save layers as ZIP to HSC_SESSIONS folder (file storage, no size limit)
+// Save layers as one ZIP (file storage, no size limit), e.g. the sketch layers of a
+// saved session. Autosave doesn't rewrite a ZIP: it goes through saveLayerDeltas
 export const saveLayers = async (
   layers: LayerProps[],
-  targetPath: string = AUTOSAVE_SESSION_PATH,
+  targetPath: string,
   targetDirectory: Directory = Directory.Documents
 ): Promise<void> => {
   try {
@@ -176,8 +179,102 @@ export const saveLayers = async (
       encoding: Encoding.UTF8,
     });
   } catch (error) {
-    console.error("Error autosaving layers:", error);
+    console.error("Error saving layers ZIP:", error);
+    // Don't throw - save failures shouldn't break the app
+  }
+};
+
+const blobToBase64 = (blob: Blob): Promise<string> =>
+  new Promise((resolve, reject) => {
+    const reader = new FileReader();
+    reader.onload = () => resolve((reader.result as string).split(",")[1]);
+    reader.onerror = () => reject(new Error("Failed to read blob"));
+    reader.readAsDataURL(blob);
+  });
+
+// Incremental autosave through the native SessionStore: only layers whose object
+// changed since `previous` are serialized and sent, so the cost follows the edit
+// instead of the whole session. The store compacts into its own session.zip.
+// With `previous` null the store is seeded instead: one reset replaces whatever it
+// held with every current layer, the order and the node icon mappings.
+// Resolves false if anything failed, so the caller keeps its baseline and retries.
+export const saveLayerDeltas = async (
+  previous: LayerProps[] | null,
+  current: LayerProps[],
+  nodeIconMappings?: Record<string, string>
+): Promise<boolean> => {
+  try {
+    const { SessionStore } = await import("@/plugins/session-store");
+    const ops: SessionDelta[] = [];
+    let bitmaps: Map<string, Blob>;
+
+    if (previous === null) {
+      const result = await serializeLayers(current);
+      bitmaps = result.bitmaps;
+      ops.push({
+        type: "reset",
+        layers: result.serialized as unknown as Record<string, unknown>[],
+        nodeIconMappings: nodeIconMappings ?? {},
+      });
+    } else {
+      const before = new Map(previous.map((layer) => [layer.id, layer]));
+      const currentIds = new Set(current.map((layer) => layer.id));
+      const changed = current.filter((layer) => before.get(layer.id) !== layer);
+
+      const result = await serializeLayers(changed);
+      bitmaps = result.bitmaps;
+      for (const layer of result.serialized) {
+        ops.push({
+          type: "put",
+          layerId: layer.id,
+          layer: layer as unknown as Record<string, unknown>,
+        });
+      }
+      for (const layer of previous) {
+        if (!currentIds.has(layer.id)) {
+          ops.push({ type: "delete", layerId: layer.id });
+        }
+      }
+      const orderChanged =
+        previous.length !== current.length ||
+        current.some((layer, i) => previous[i]?.id !== layer.id);
+      if (orderChanged) {
+        ops.push({ type: "order", layerIds: current.map((layer) => layer.id) });
+      }
+      if (nodeIconMappings) {
+        ops.push({ type: "nodeIconMappings", value: nodeIconMappings });
+      }
+    }
+
+    // Bitmaps first, so a compaction triggered by these deltas can pack them
+    for (const [layerId, blob] of bitmaps.entries()) {
+      await SessionStore.putBitmap({
+        layerId,
+        base64Data: await blobToBase64(blob),
+      });
+    }
+    if (ops.length > 0) {
+      await SessionStore.applyDeltas({ ops });
+    }
+    return true;
+  } catch (error) {
+    console.error("Error saving layer deltas:", error);
     // Don't throw - autosave failures shouldn't break the app
+    return false;
+  }
+};
+
+// The native incremental session, compacted so it reflects every applied delta;
+// null off-device or when nothing was saved through saveLayerDeltas. The store is
+// seeded with the full session before its first delta, so it is complete on its own
+const readNativeSession = async (): Promise<Blob | null> => {
+  try {
+    const { SessionStore } = await import("@/plugins/session-store");
+    const info = await SessionStore.flush({ compact: true });
+    if (!info.exists || info.layerCount === 0) return null;
+    return await readSessionZip(info.logicalPath);
+  } catch {
+    return null;
   }
 };
 
@@ -282,6 +379,19 @@ export const deserializeLayers = async (
           }
         }
 
+        // Native DEM: register the file with the tile server again for fresh tile URLs
+        if (layer.demTiles) {
+          const reopened = await openNativeDemLayer(layer.demTiles.path, {
+            layerId: layer.id,
+            layerName: layer.name,
+          });
+          if (!reopened) {
+            console.warn(`DEM file of layer ${layer.id} can't be opened, skipping`);
+            continue;
+          }
+          deserialized.demTiles = reopened.demTiles;
+        }
+
         // Reconstruct Float32Array from regular array
         if (
           (layer as any).elevationData &&
@@ -321,27 +431,14 @@ export const deserializeLayers = async (
 // Load layers from ZIP file in HSC_SESSIONS folder (file storage)
 export const loadLayers = async (): Promise<LayerProps[]> => {
   try {
-    // Try to load from autosave session file
-    // Read as base64 for binary ZIP file
-    const result = await Filesystem.readFile({
-      path: AUTOSAVE_SESSION_PATH,
-      directory: Directory.Documents,
-      encoding: Encoding.UTF8,
-    });
-
-    const content = result.data;
-    if (!content || typeof content !== "string" || content.trim() === "") {
+    // Prefer the native incremental session, then the autosave ZIP of older builds
+    const blob =
+      (await readNativeSession()) ??
+      (await readSessionZip(AUTOSAVE_SESSION_PATH));
+    if (!blob) {
       return [];
     }
 
-    // Convert base64 to blob
-    const binaryString = atob(content);
-    const bytes = new Uint8Array(binaryString.length);
-    for (let i = 0; i < binaryString.length; i++) {
-      bytes[i] = binaryString.charCodeAt(i);
-    }
-    const blob = new Blob([bytes], { type: "application/zip" });
-
     // Load ZIP using JSZip
     const JSZip = (await import("jszip")).default;
     const zip = await JSZip.loadAsync(blob);
@@ -441,6 +538,13 @@ export const loadNodeIconMappings = async (): Promise<
 // Clear autosave data from file storage
 export const clearAutosave = async (): Promise<void> => {
   try {
+    try {
+      const { SessionStore } = await import("@/plugins/session-store");
+      await SessionStore.clear();
+    } catch (error) {
+      // Not available off-device, ignore
+    }
+
     // Delete session ZIP file
     try {
       await Filesystem.deleteFile({
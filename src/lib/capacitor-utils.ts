@@ -466,3 +466,57 @@ export const showMessage = (message: string, isError: boolean = false) => {
   // Show alert for now (you can replace with toast library later)
   alert(message);
 };
+
+// URL of a session file (HSC-SESSIONS/... or HSC_SESSIONS/...) on the native file
+// route of the local tile server, or null off-device
+export const getSessionFileUrl = async (path: string): Promise<string | null> => {
+  try {
+    const { OfflineTileServer } = await import("@/plugins/offline-tile-server");
+    const { filesUrl } = await OfflineTileServer.getServerUrl();
+    if (!filesUrl) return null;
+    const encoded = path.split("/").map(encodeURIComponent).join("/");
+    return `${filesUrl}/${encoded}`;
+  } catch {
+    return null;
+  }
+};
+
+// Read a session ZIP as a Blob. Fetched straight from disk through the native file
+// route when available, so the archive never crosses the bridge as base64. ZIPs saved
+// by older builds hold base64 text and are decoded here; returns null if missing.
+export const readSessionZip = async (path: string): Promise<Blob | null> => {
+  let text: string | null = null;
+
+  const url = await getSessionFileUrl(path);
+  if (url) {
+    try {
+      const res = await fetch(url);
+      if (res.status === 404) return null;
+      if (res.ok) {
+        const buf = await res.arrayBuffer();
+        const head = new Uint8Array(buf, 0, Math.min(2, buf.byteLength));
+        // "PK": already a binary ZIP
+        if (head[0] === 0x50 && head[1] === 0x4b) {
+          return new Blob([buf], { type: "application/zip" });
+        }
+        text = new TextDecoder().decode(buf);
+      }
+    } catch (error) {
+      console.warn("Native file route unavailable, using Filesystem:", error);
+    }
+  }
+
+  if (text === null) {
+    const result = await Filesystem.readFile({
+      path,
+      directory: Directory.Documents,
+      encoding: Encoding.UTF8,
+    });
+    text = typeof result.data === "string" ? result.data : null;
+  }
+
+  if (!text || text.trim() === "") return null;
+  // Let the browser decode the base64 natively instead of an atob/charCodeAt loop
+  const decoded = await fetch(`data:application/zip;base64,${text.trim()}`);
+  return decoded.blob();
+};
@@ -45,6 +45,16 @@ export interface LayerProps {
     min: number;
     max: number;
   };
+  /** DEM served as hillshade tiles by the native tile server instead of a bitmap */
+  demTiles?: {
+    /** {z}/{x}/{y} template */
+    url: string;
+    /** File the server reads; opened again when the layer is restored */
+    path: string;
+    maxZoom: number;
+    min: number;
+    max: number;
+  };
   geojson?: GeoJSON.FeatureCollection;
   nodes?: Node[];
   annotations?: Array<{
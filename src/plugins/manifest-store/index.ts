@@ -0,0 +1,53 @@
+import { registerPlugin } from "@capacitor/core";
+import type { ManifestEntry } from "@/sessions/manifestStore";
+
+export type ManifestOp =
+  | { op: "upsert"; entry: ManifestEntry }
+  | {
+      op: "setColor";
+      layerId: string;
+      color: [number, number, number] | [number, number, number, number];
+    }
+  | { op: "markStagedDelete"; layerId: string }
+  | { op: "remove"; layerId: string };
+
+export interface ManifestStorePlugin {
+  /**
+   * Apply a batch of temp-manifest mutations (one journal fsync per call).
+   * entries holds the resulting temp entry of each touched layer (null if gone);
+   * deletePaths are staged files dropped by the batch, to delete now.
+   */
+  apply(options: { ops: ManifestOp[] }): Promise<{
+    entries: Record<string, ManifestEntry | null>;
+    deletePaths: string[];
+  }>;
+
+  getTemp(): Promise<{ entries: ManifestEntry[] }>;
+
+  /** The saved manifest, served from memory */
+  getStored(): Promise<{ entries: ManifestEntry[] }>;
+
+  /** Indexed lookup by layerId or by logical/absolute path */
+  getEntry(options: { layerId?: string; path?: string }): Promise<{
+    temp: ManifestEntry | null;
+    stored: ManifestEntry | null;
+  }>;
+
+  /**
+   * Atomically replace manifest.json with the temp manifest (see finalizeSaveManifest).
+   * deletePaths holds one path per file reference to release, for a single deleteMany
+   */
+  finalizeSave(): Promise<{ entries: ManifestEntry[]; deletePaths: string[] }>;
+
+  /** Reset the temp manifest to the saved entries */
+  restore(): Promise<{ entries: ManifestEntry[] }>;
+
+  getUntracked(): Promise<{
+    files: Array<{ absolutePath: string; layerId: string }>;
+  }>;
+
+  clearUntracked(): Promise<void>;
+}
+
+export const ManifestStore =
+  registerPlugin<ManifestStorePlugin>("ManifestStore");
@@ -7,10 +7,25 @@ export type StagedNativeFile = {
   mimeType: string;
   status: "staged";
   originalName: string;
+  /** Hex SHA-256 of the content; the file lives in HSC-SESSIONS/BLOBS/<sha256>/ */
+  sha256: string;
+  /** True when the same source was staged before and no bytes were copied */
+  deduplicated: boolean;
+  /** Bytes taken over from an interrupted earlier copy of the same source (0 if none) */
+  resumedFromBytes: number;
+};
+
+export type FailedNativeFile = {
+  fileIndex: number;
+  status: "failed";
+  error: string;
+  originalName: string;
 };
 
 export type PickAndStageManyResult = {
   files: StagedNativeFile[];
+  /** Files that could not be staged; the call only rejects if every file failed */
+  failed: FailedNativeFile[];
 };
 
 export type SaveExtractedFileResult = {
@@ -20,12 +35,57 @@ export type SaveExtractedFileResult = {
   mimeType: string;
 };
 
+export type DeleteManyResult = {
+  /** Plain files deleted */
+  deleted: number;
+  /** Blob references dropped */
+  released: number;
+  /** Blobs removed from disk because their last reference went away */
+  blobsDeleted: number;
+  missing: number;
+  failed: Array<{ path: string; error: string }>;
+  bytesFreed: number;
+};
+
+export type GcResult = {
+  filesRemoved: number;
+  blobsRemoved: number;
+  /** Unreferenced files left alone because they are partial or too recent */
+  skipped: number;
+  bytesFreed: number;
+  dryRun: boolean;
+};
+
 export interface NativeUploaderPlugin {
   pickAndStageMany(options?: {
-    maxFiles?: 1 | 2;
+    maxFiles?: number;
+    /** Files copied in parallel (default 3, max 4) */
+    concurrency?: number;
   }): Promise<PickAndStageManyResult>;
 
-  deleteFile(options: { absolutePath: string }): Promise<void>;
+  /**
+   * Staged blobs are shared between imports; deleting one only drops a reference.
+   * Takes absolutePath, or logicalPath ("DOCUMENTS/HSC-SESSIONS/...") resolved natively.
+   */
+  deleteFile(
+    options: { absolutePath: string } | { logicalPath: string }
+  ): Promise<void>;
+
+  /**
+   * Deletes many files in one native call; never rejects for individual files
+   */
+  deleteMany(options: { paths: string[] }): Promise<DeleteManyResult>;
+
+  /**
+   * Removes every file under HSC-SESSIONS/FILES and BLOBS that is not in keepPaths.
+   * Partials and files younger than minAgeMs (default 60000) are left alone.
+   */
+  gc(options: {
+    keepPaths: string[];
+    minAgeMs?: number;
+    /** Only count what would be removed */
+    dryRun?: boolean;
+  }): Promise<GcResult>;
 
   saveExtractedFile(options: {
     base64Data: string;
@@ -33,6 +93,46 @@ export interface NativeUploaderPlugin {
     mimeType?: string;
   }): Promise<SaveExtractedFileResult>;
 
+  /**
+   * Chunked save for large files: openWrite, appendChunk with consecutive base64
+   * slices (any length), then commit. abort discards the partial file.
+   */
+  openWrite(options: {
+    fileName: string;
+    mimeType?: string;
+  }): Promise<{ writeId: string }>;
+
+  appendChunk(options: {
+    writeId: string;
+    base64Data: string;
+    /** Byte offset this chunk starts at; rejects with OUT_OF_ORDER on mismatch */
+    offset?: number;
+  }): Promise<{ bytesWritten: number }>;
+
+  commit(options: { writeId: string }): Promise<SaveExtractedFileResult>;
+
+  abort(options: { writeId: string }): Promise<void>;
+
+  /**
+   * Diagnostic: times the stream and FileChannel staging copy paths on this device
+   */
+  benchmarkStaging(options?: { sizesMb?: number[] }): Promise<{
+    runs: Array<{
+      sizeMb: number;
+      skipped?: string;
+      /** Means over both orders, after a discarded warm-up copy */
+      streamMs?: number;
+      channelMs?: number;
+      streamMBps?: number;
+      channelMBps?: number;
+      orders?: Array<{
+        first: "stream" | "channel";
+        streamMs: number;
+        channelMs: number;
+      }>;
+    }>;
+  }>;
+
   addListener(
     eventName: "uploadProgress",
     listenerFunc: (event: {
@@ -40,8 +140,22 @@ export interface NativeUploaderPlugin {
       bytesWritten: number;
       totalBytes: number; // -1 if unknown
       originalName: string;
+      fileCount: number;
+      filesCompleted: number;
+      aggregateBytesWritten: number;
+      aggregateTotalBytes: number; // sum of known sizes
     }) => void
   ): Promise<{ remove: () => void }>;
+
+  /**
+   * Fired for each file of pickAndStageMany as soon as it is staged (or fails)
+   */
+  addListener(
+    eventName: "fileStaged",
+    listenerFunc: (
+      event: (StagedNativeFile & { fileIndex: number }) | FailedNativeFile
+    ) => void
+  ): Promise<{ remove: () => void }>;
 }
 
 export const NativeUploader =
@@ -1,5 +1,102 @@
 import { registerPlugin } from "@capacitor/core";
 
+export type TileCacheStats = {
+  entries: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+  hitRate: number;
+  /** style.json and glyphs held in RAM, dropped when their files change */
+  files?: {
+    entries: number;
+    bytes: number;
+    maxBytes: number;
+    hits: number;
+    misses: number;
+    invalidations: number;
+    watchedDirs: number;
+  };
+};
+
+export type TileSourceInfo = {
+  format: "directory" | "tilepack" | "mbtiles" | "pmtiles";
+  file: string;
+  minZoom?: number;
+  maxZoom?: number;
+  /** MBTiles metadata table (without the "json" entry) */
+  metadata?: Record<string, string>;
+  [key: string]: unknown;
+};
+
+export type TilePackResult = {
+  output: string;
+  tiles: number;
+  /** Tiles stored once; identical small tiles share their bytes */
+  uniqueBlobs: number;
+  bytes: number;
+  elapsedMs: number;
+};
+
+export type TilePackProgress = {
+  tilesDone: number;
+  tilesTotal: number;
+};
+
+export type TilePackBenchmarkRun = {
+  tiles: number;
+  treeBytes: number;
+  packBytes: number;
+  packMs: number;
+  unpackMs: number;
+  lookups: number;
+  packLookupNs: number;
+  treeLookupNs: number;
+};
+
+export type PrefetchStats = {
+  hints: number;
+  queued: number;
+  /** Tiles read from storage by the prefetcher */
+  warmed: number;
+  warmedBytes: number;
+  alreadyCached: number;
+  /** Dropped because a newer hint or a folder switch came first */
+  cancelled: number;
+  overBudget: number;
+  /** Warmed tiles the map then requested */
+  used: number;
+  /** used / warmed */
+  hitRate: number;
+};
+
+export type DemLayerInfo = {
+  layerId: string;
+  file: string;
+  format: "geotiff" | "hgt";
+  width: number;
+  height: number;
+  /** Reduced-resolution images in the file, used for low zooms */
+  overviews: number;
+  /** [west, south, east, north] */
+  bounds: [number, number, number, number];
+  min: number;
+  max: number;
+  /** Zoom at which a tile pixel is about one DEM pixel */
+  maxZoom: number;
+};
+
+export type DemBlockCacheStats = {
+  blocks: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+  hitRate: number;
+};
+
 export interface OfflineTileServerPlugin {
   /**
    * Open folder picker to select tile directory
@@ -9,22 +106,32 @@ export interface OfflineTileServerPlugin {
 
   /**
    * Update the folder path the server reads from (server is always running)
+   * The folder may hold a {z}/{x}/{y}.pbf tree or a tiles.tilepack / tiles.pmtiles /
+   * tiles.mbtiles archive next to style.json and fonts/; the uri may also point at the
+   * archive itself.
    * @param options.uri - The SAF URI of the tile folder
-   * @param options.useTms - If true, tiles are in TMS format (Y coordinate flipped). Default: false (XYZ format)
-   * @returns Base URL and port of the server
+   * @param options.useTms - If true, tiles are in TMS format (Y coordinate flipped). Default: false (XYZ format). Ignored for archives
+   * @returns Base URL and port of the server, and the tile source in use
    */
   updateFolderPath(options: { uri: string; useTms?: boolean }): Promise<{
     baseUrl: string;
     port: number;
+    filesUrl?: string;
+    source?: TileSourceInfo;
   }>;
 
   /**
    * Get the server URL (server is always running)
-   * @returns Base URL and port of the server
+   * Besides tiles, the server streams session files with Range support at
+   * `${filesUrl}/HSC-SESSIONS/...` (see getSessionFileUrl), readable only by the app's
+   * WebView origin
+   * @returns Base URL and port of the server, and the session file URL prefix
    */
   getServerUrl(): Promise<{
     baseUrl: string;
     port: number;
+    /** `${baseUrl}/files/<token>`; the token is random per launch. Unset while the server is down */
+    filesUrl?: string;
   }>;
 
   /**
@@ -33,6 +140,104 @@ export interface OfflineTileServerPlugin {
    */
   getSavedFolderUri(): Promise<{ uri: string | null }>;
 
+  /**
+   * Counters of the server's in-memory tile cache
+   */
+  getTileCacheStats(): Promise<TileCacheStats>;
+
+  /**
+   * Drop all tiles, style and glyphs from the in-memory caches (switching folders does
+   * this already)
+   */
+  clearTileCache(): Promise<void>;
+
+  /**
+   * Warm the tile cache around the viewport: the ring just outside it, the next zoom level
+   * and, given own ship's heading and speed, the area ahead along the track. Replaces the
+   * previous hint's prefetch.
+   * @param options.heading - Degrees true
+   * @param options.speed - Metres per second
+   * @param options.lookaheadSeconds - How far ahead to look along the track. Default: 60
+   * @param options.maxZoom - Max zoom of the tile source. Default: 22
+   * @param options.maxTiles - Tile budget of this hint. Default: 192
+   * @param options.maxBytes - Byte budget of this hint. Default: 8 MB
+   */
+  prefetch(options: {
+    west: number;
+    south: number;
+    east: number;
+    north: number;
+    zoom: number;
+    heading?: number;
+    speed?: number;
+    lookaheadSeconds?: number;
+    maxZoom?: number;
+    maxTiles?: number;
+    maxBytes?: number;
+  }): Promise<{ queued: number }>;
+
+  cancelPrefetch(): Promise<void>;
+
+  getPrefetchStats(): Promise<PrefetchStats>;
+
+  /**
+   * Overzoom (on by default): a missing tile, e.g. past the max zoom of the offline pack,
+   * is cut natively from its nearest ancestor instead of returning 404
+   * @param options.enabled - Default: true
+   * @param options.maxLevels - How many zoom levels up to look for an ancestor. Default: 6
+   */
+  setOverzoom(options: {
+    enabled?: boolean;
+    maxLevels?: number;
+  }): Promise<{ maxLevels: number }>;
+
+  /**
+   * Pack a {z}/{x}/{y}.pbf folder into one memory-mapped tiles.tilepack file
+   * @param options.source - Folder path or URI. Default: the folder being served
+   * @param options.output - Pack path. Default: {source}/tiles.tilepack
+   * @param options.useTms - Rows of the source folder are TMS
+   * @param options.compress - gzip tiles that are stored uncompressed. Default: true
+   * The server serves the pack after the next updateFolderPath
+   */
+  convertTileFolder(options?: {
+    source?: string;
+    output?: string;
+    useTms?: boolean;
+    compress?: boolean;
+  }): Promise<TilePackResult>;
+
+  /**
+   * Pack/unpack and lookup timings of tilepack vs. plain tile files on this device
+   */
+  benchmarkTilePack(options?: {
+    tileCounts?: number[];
+    lookups?: number;
+  }): Promise<{ runs: TilePackBenchmarkRun[] }>;
+
+  /**
+   * Serve a DEM file as tiles, read natively block by block (only visible tiles are decoded):
+   * hillshadeUrl renders hillshade (append ?style=grayscale for plain elevation; azimuth,
+   * altitude and exaggeration are tunable), terrainUrl renders terrain-RGB for a raster-dem
+   * source (?encoding=mapbox, default terrarium). Rejects for files it can't read natively
+   * (e.g. projections other than geographic or Web Mercator); parse those in JS instead.
+   * @param options.path - File path or file:// URI of a .tif/.tiff/.dett or .hgt file
+   */
+  addDemLayer(options: { layerId: string; path: string }): Promise<
+    DemLayerInfo & { hillshadeUrl: string; terrainUrl: string }
+  >;
+
+  removeDemLayer(options: { layerId: string }): Promise<{ removed: boolean }>;
+
+  getDemStats(): Promise<{
+    layers: DemLayerInfo[];
+    blockCache: DemBlockCacheStats;
+  }>;
+
+  addListener(
+    eventName: "packProgress",
+    listenerFunc: (event: TilePackProgress) => void
+  ): Promise<{ remove: () => void }>;
+
   /**
    * Check if storage permissions are granted
    * @returns true if permissions are granted, false otherwise
@@ -0,0 +1,48 @@
+import { registerPlugin } from "@capacitor/core";
+
+export type SessionDelta =
+  | { type: "put"; layerId: string; layer: Record<string, unknown> }
+  | { type: "delete"; layerId: string }
+  | { type: "order"; layerIds: string[] }
+  | { type: "nodeIconMappings"; value: Record<string, string> }
+  /** Replaces the whole session, as one log record */
+  | {
+      type: "reset";
+      layers: Record<string, unknown>[];
+      nodeIconMappings: Record<string, string>;
+    };
+
+export type SessionInfo = {
+  absolutePath: string;
+  /** Path under Directory.Documents-style roots, for readSessionZip */
+  logicalPath: string;
+  exists: boolean;
+  generation: number;
+  walBytes: number;
+  walRecords: number;
+  layerCount: number;
+  lastCompactionMs: number;
+};
+
+export interface SessionStorePlugin {
+  /**
+   * Append per-layer changes to the write-ahead log; resolves once they are durable.
+   * The log is compacted into HSC-SESSIONS/AUTOSAVE/session.zip in the background.
+   */
+  applyDeltas(options: { ops: SessionDelta[] }): Promise<{ records: number }>;
+
+  /**
+   * Store a DEM layer bitmap (base64 PNG); packed into session.zip on compaction.
+   * Removed again once its layer is deleted or left out of a reset
+   */
+  putBitmap(options: { layerId: string; base64Data: string }): Promise<void>;
+
+  /** Wait for pending deltas; with compact, session.zip is rewritten before resolving */
+  flush(options?: { compact?: boolean }): Promise<SessionInfo>;
+
+  getSessionInfo(): Promise<SessionInfo>;
+
+  clear(): Promise<void>;
+}
+
+export const SessionStore = registerPlugin<SessionStorePlugin>("SessionStore");
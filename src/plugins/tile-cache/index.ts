@@ -1,16 +1,35 @@
 import { registerPlugin } from "@capacitor/core";
 
 export interface TileCachePlugin {
+  /** Directory path (or file:// / content:// tree URI) holding {z}/{x}/{y}.pbf */
   setTilesDirectory(options: { path: string }): Promise<{ success: boolean }>;
 
+  /**
+   * Loads the tile into the native RAM cache and returns a local server URL to fetch()
+   * it from as binary. Rejects with TILE_NOT_FOUND if the tile doesn't exist.
+   * `size` is the decoded tile; `storedSize` is what the cache holds (gzipped).
+   */
   getTile(options: {
     z: string;
     x: string;
     y: string;
-  }): Promise<{ data: string; fromCache: boolean }>;
+  }): Promise<{ url: string; fromCache: boolean; size: number; storedSize: number }>;
 
   clearCache(): Promise<{ success: boolean }>;
 
+  getStats(): Promise<{
+    entries: number;
+    bytes: number;
+    maxBytes: number;
+    hits: number;
+    misses: number;
+    evictions: number;
+    hitRate: number;
+    diskReads: number;
+    /** Requests that joined a read already in progress for the same tile */
+    coalesced: number;
+  }>;
+
   pickDirectory(): Promise<{ path: string }>;
 }
 
@@ -8,14 +8,49 @@ export interface ManifestFileEntry {
   size?: number;
 }
 
+export interface InspectedLayer {
+  name: string;
+  /** Entry path inside the archive; nested archives are joined with "!/" */
+  path: string;
+  type: "vector" | "tiff" | "shapefile";
+  size: number; // -1 if unknown
+  compressedSize: number;
+  /** Shapefile groups only */
+  complete?: boolean;
+  components?: string[];
+  missing?: string[];
+}
+
+export interface ZipProgressEvent {
+  jobId: string;
+  operation: "zipHscSessionsFolder" | "zipManifestFiles" | "extractZipRecursive";
+  bytesProcessed: number;
+  totalBytes: number;
+  entriesProcessed: number;
+  totalEntries: number;
+  bytesPerSecond: number;
+  elapsedMs: number;
+}
+
 export interface ZipFolderPlugin {
-  zipHscSessionsFolder(): Promise<{
+  /**
+   * Long-running calls accept an optional jobId (generated natively if omitted)
+   * so they can be cancelled and matched with "zipProgress" events.
+   * A cancelled call rejects with "CANCELLED" after removing its partial output.
+   * Only one export runs at a time; a second one rejects with "EXPORT_IN_PROGRESS".
+   */
+  zipHscSessionsFolder(options?: { jobId?: string }): Promise<{
+    jobId: string;
     absolutePath: string;
     fileName: string;
     size: number;
   }>;
 
-  zipManifestFiles(options: { files: ManifestFileEntry[] }): Promise<{
+  zipManifestFiles(options: {
+    files: ManifestFileEntry[];
+    jobId?: string;
+  }): Promise<{
+    jobId: string;
     absolutePath: string;
     fileName: string;
     size: number;
@@ -24,14 +59,42 @@ export interface ZipFolderPlugin {
   extractZipRecursive(options: {
     zipPath: string;
     outputDir?: string;
+    jobId?: string;
   }): Promise<{
+    jobId: string;
     files: Array<{
       absolutePath: string;
       name: string;
       type: "vector" | "tiff" | "shapefile";
       size: number;
+      /** Hex SHA-256 of the extracted file, computed while inflating */
+      sha256: string;
     }>;
   }>;
+
+  /**
+   * List importable layers from the archive's central directory without extracting it
+   */
+  inspect(options: { zipPath: string }): Promise<{
+    layers: InspectedLayer[];
+    totalEntries: number;
+    skippedEntries: number;
+  }>;
+
+  /**
+   * Snapshot of the shared native worker pools (queue depth, active threads, waits)
+   */
+  getExecutorStats(): Promise<Record<string, unknown>>;
+
+  cancel(options: { jobId: string }): Promise<{
+    jobId: string;
+    cancelled: boolean;
+  }>;
+
+  addListener(
+    eventName: "zipProgress",
+    listenerFunc: (event: ZipProgressEvent) => void
+  ): Promise<{ remove: () => void }>;
 }
 
 const ZipFolder = registerPlugin<ZipFolderPlugin>("ZipFolder");
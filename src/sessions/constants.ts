@@ -8,4 +8,4 @@ export const HSC_UNTRACKED_PATH = `${HSC_BASE_DIR}/untracked.json`;
 export const HSC_DIRECTORY = Directory.Documents;
 
 // Suggested limits used by helpers (Cursor can adjust later)
-export const MAX_UPLOAD_FILES = 2;
+export const MAX_UPLOAD_FILES = 20;
@@ -1,4 +1,6 @@
+import { Capacitor } from "@capacitor/core";
 import { Filesystem, Encoding } from "@capacitor/filesystem";
+import { ManifestStore } from "@/plugins/manifest-store";
 import {
   HSC_DIRECTORY,
   HSC_MANIFEST_PATH,
@@ -35,6 +37,38 @@ export type ManifestEntry = {
 // In-memory temp manifest (starts empty each session)
 let tempManifest: ManifestEntry[] = [];
 
+// The native ManifestStore keeps the manifest indexed in memory and journals changes,
+// so mutations don't re-read and rewrite JSON files. The functions below use it when
+// present and keep tempManifest as a synchronous mirror of its temp manifest.
+function hasNativeStore(): boolean {
+  return Capacitor.isPluginAvailable("ManifestStore");
+}
+
+function mirrorNativeEntries(
+  entries: Record<string, ManifestEntry | null>
+): void {
+  for (const [layerId, entry] of Object.entries(entries)) {
+    const idx = tempManifest.findIndex((x) => x.layerId === layerId);
+    if (!entry) {
+      if (idx >= 0) tempManifest.splice(idx, 1);
+    } else if (idx >= 0) {
+      tempManifest[idx] = entry;
+    } else {
+      tempManifest.push(entry);
+    }
+  }
+}
+
+async function deletePaths(paths: string[]): Promise<void> {
+  if (paths.length === 0) return;
+  const { deleteFilesByAbsolutePath } = await import("./nativeFile");
+  try {
+    await deleteFilesByAbsolutePath(paths);
+  } catch (error) {
+    console.error(`[Manifest] Error deleting ${paths.length} file(s):`, error);
+  }
+}
+
 function safeJsonParse<T>(s: string, fallback: T): T {
   try {
     return JSON.parse(s) as T;
@@ -54,6 +88,13 @@ export function getTempManifest(): ManifestEntry[] {
  * Load stored manifest from disk
  */
 export async function loadStoredManifest(): Promise<ManifestEntry[]> {
+  if (hasNativeStore()) {
+    try {
+      return (await ManifestStore.getStored()).entries;
+    } catch {
+      return [];
+    }
+  }
   try {
     const r = await Filesystem.readFile({
       path: HSC_MANIFEST_PATH,
@@ -213,6 +254,13 @@ async function removeFromUntracked(layerId: string): Promise<void> {
  * Load untracked files from disk
  */
 export async function loadUntrackedFiles(): Promise<UntrackedFile[]> {
+  if (hasNativeStore()) {
+    try {
+      return (await ManifestStore.getUntracked()).files;
+    } catch {
+      return [];
+    }
+  }
   try {
     const result = await Filesystem.readFile({
       path: HSC_UNTRACKED_PATH,
@@ -232,6 +280,10 @@ export async function loadUntrackedFiles(): Promise<UntrackedFile[]> {
  * Clear untracked.json (after cleanup or save)
  */
 export async function clearUntracked(): Promise<void> {
+  if (hasNativeStore()) {
+    await ManifestStore.clearUntracked();
+    return;
+  }
   try {
     await Filesystem.deleteFile({
       path: HSC_UNTRACKED_PATH,
@@ -249,6 +301,13 @@ export async function clearUntracked(): Promise<void> {
 export async function upsertTempManifestEntry(
   entry: ManifestEntry
 ): Promise<void> {
+  if (hasNativeStore()) {
+    // Untracked bookkeeping happens natively as part of the upsert
+    const res = await ManifestStore.apply({ ops: [{ op: "upsert", entry }] });
+    mirrorNativeEntries(res.entries);
+    return;
+  }
+
   const idx = tempManifest.findIndex((x) => x.layerId === entry.layerId);
   const wasStaged = idx >= 0 && tempManifest[idx].status === "staged";
   const isNowStaged = entry.status === "staged";
@@ -285,6 +344,14 @@ export async function updateManifestColor(
   layerId: string,
   color: [number, number, number] | [number, number, number, number]
 ): Promise<void> {
+  if (hasNativeStore()) {
+    const res = await ManifestStore.apply({
+      ops: [{ op: "setColor", layerId, color }],
+    });
+    mirrorNativeEntries(res.entries);
+    return;
+  }
+
   const entry = tempManifest.find((x) => x.layerId === layerId);
   if (entry) {
     entry.color = color;
@@ -307,6 +374,11 @@ export async function updateManifestColor(
  */
 export function removeFromTempManifest(layerId: string): void {
   tempManifest = tempManifest.filter((x) => x.layerId !== layerId);
+  if (hasNativeStore()) {
+    ManifestStore.apply({ ops: [{ op: "remove", layerId }] }).catch((error) =>
+      console.error("[Manifest] Error removing temp entry:", error)
+    );
+  }
 }
 
 /**
@@ -316,6 +388,16 @@ export function removeFromTempManifest(layerId: string): void {
  * - If status is "staged_delete", delete immediately
  */
 export async function markLayerStagedDelete(layerId: string): Promise<void> {
+  if (hasNativeStore()) {
+    // Indexed lookups natively; staged files dropped outright come back in deletePaths
+    const res = await ManifestStore.apply({
+      ops: [{ op: "markStagedDelete", layerId }],
+    });
+    mirrorNativeEntries(res.entries);
+    await deletePaths(res.deletePaths);
+    return;
+  }
+
   // First, check if this layer is "saved" in stored manifest
   // If it's saved, we should NEVER delete it immediately, only mark as staged_delete
   const stored = await loadStoredManifest();
@@ -396,24 +478,12 @@ export async function removeLayerFromManifest(layerId: string): Promise<void> {
  * - Write to disk (replaces previous manifest, even if empty)
  */
 export async function finalizeSaveManifest(): Promise<ManifestEntry[]> {
-  const { deleteFileByAbsolutePath } = await import("./nativeFile");
-
-  // Delete files with staged_delete status
-  const stagedDeleteEntries = tempManifest.filter(
-    (e) => e.status === "staged_delete"
-  );
-  for (const entry of stagedDeleteEntries) {
-    try {
-      await deleteFileByAbsolutePath(entry.absolutePath);
-      console.log(
-        `[Manifest] Deleted staged_delete file: ${entry.originalName}`
-      );
-    } catch (error) {
-      console.error(
-        `[Manifest] Error deleting staged_delete file ${entry.originalName}:`,
-        error
-      );
-    }
+  if (hasNativeStore()) {
+    // manifest.json is replaced atomically before any file is deleted; a crash in
+    // between only leaves unreferenced files behind
+    const res = await ManifestStore.finalizeSave();
+    await deletePaths(res.deletePaths);
+    return res.entries;
   }
 
   // Filter out staged_delete entries and upgrade "staged" to "saved"
@@ -423,38 +493,28 @@ export async function finalizeSaveManifest(): Promise<ManifestEntry[]> {
       e.status === "staged" ? { ...e, status: "saved" as ManifestStatus } : e
     );
 
-  // Load stored manifest to find files that need to be deleted
+  // One path per reference to release, as the native finalizeSave does: the
+  // staged_delete files, then saved files whose layer left the session or got a
+  // new file. A stored entry with the same file as its temp entry is that entry.
+  const stagedDeleteEntries = tempManifest.filter(
+    (e) => e.status === "staged_delete"
+  );
+  const tempById = new Map(tempManifest.map((e) => [e.layerId, e]));
   const storedManifest = await loadStoredManifest();
-
-  // Create a set of layerIds that will be in the new manifest
-  const newManifestLayerIds = new Set(m.map((e) => e.layerId));
-
-  // Find files in stored manifest that are not in the new manifest
   const filesToDelete = storedManifest.filter(
     (entry) =>
-      entry.status === "saved" && !newManifestLayerIds.has(entry.layerId)
+      entry.status === "saved" &&
+      tempById.get(entry.layerId)?.absolutePath !== entry.absolutePath
   );
-
-  // Delete files that are in stored manifest but not in new manifest
   if (filesToDelete.length > 0) {
     console.log(
       `[Manifest] Deleting ${filesToDelete.length} file(s) that are no longer in current session`
     );
-
-    for (const entry of filesToDelete) {
-      try {
-        await deleteFileByAbsolutePath(entry.absolutePath);
-        console.log(
-          `[Manifest] Deleted file no longer in session: ${entry.originalName}`
-        );
-      } catch (error) {
-        console.error(
-          `[Manifest] Error deleting file ${entry.originalName}:`,
-          error
-        );
-      }
-    }
   }
+  await deletePaths([
+    ...stagedDeleteEntries.map((e) => e.absolutePath),
+    ...filesToDelete.map((e) => e.absolutePath),
+  ]);
 
   // Sort by size (increasing order)
   m.sort((a, b) => a.size - b.size);
@@ -476,6 +536,12 @@ export async function finalizeSaveManifest(): Promise<ManifestEntry[]> {
  * - Return restored entries
  */
 export async function restoreManifest(): Promise<ManifestEntry[]> {
+  if (hasNativeStore()) {
+    const res = await ManifestStore.restore();
+    tempManifest = res.entries;
+    return res.entries;
+  }
+
   // Load stored manifest from disk (what was saved)
   const stored = await loadStoredManifest();
 
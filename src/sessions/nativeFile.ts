@@ -1,11 +1,14 @@
 import { Filesystem, Directory } from "@capacitor/filesystem";
 import { Capacitor } from "@capacitor/core";
 import { HSC_FILES_DIR } from "./constants";
-import { NativeUploader } from "@/plugins/native-uploader";
+import {
+  NativeUploader,
+  type DeleteManyResult,
+} from "@/plugins/native-uploader";
 
 export type StagedNativeFile = {
   absolutePath: string;
-  logicalPath: string; // "DOCUMENTS/HSC-SESSIONS/FILES/..."
+  logicalPath: string; // "DOCUMENTS/HSC-SESSIONS/BLOBS/<sha256>/..." when staged, ".../FILES/..." when saved
   size: number;
   mimeType: string;
   status: "staged";
@@ -76,32 +79,38 @@ export async function deleteFileByAbsolutePath(
 }
 
 /**
- * Delete a staged/saved file by logical path (for backward compatibility):
- * "DOCUMENTS/HSC-SESSIONS/FILES/<name>"
+ * Delete many files by absolute path in a single native call. Files that are missing
+ * or can't be deleted are logged, not thrown.
+ */
+export async function deleteFilesByAbsolutePath(
+  absolutePaths: string[]
+): Promise<DeleteManyResult | null> {
+  if (absolutePaths.length === 0) return null;
+
+  const result = await NativeUploader.deleteMany({ paths: absolutePaths });
+  console.log(
+    `[DeleteFile] Deleted ${result.deleted}, released ${result.released}, missing ${result.missing}, freed ${result.bytesFreed} bytes`
+  );
+  for (const f of result.failed) {
+    console.error(`[DeleteFile] FAILED to delete: ${f.path}`, f.error);
+  }
+  return result;
+}
+
+/**
+ * Delete a staged/saved file by logical path (for backward compatibility), e.g.
+ * "DOCUMENTS/HSC-SESSIONS/FILES/<name>" or "DOCUMENTS/HSC-SESSIONS/BLOBS/<sha256>/<name>".
+ * Resolved natively, so a staged blob only drops a reference like deleteFileByAbsolutePath.
  */
 export async function deleteFileByLogicalPath(
   logicalPath: string
 ): Promise<void> {
-  // Convert logical path to expected format and use absolute path approach
-  // This is a fallback - prefer using absolutePath directly
-  const prefix = "DOCUMENTS/";
-  const rel = logicalPath.startsWith(prefix)
-    ? logicalPath.slice(prefix.length)
-    : logicalPath;
-  const fullPath = `documents/${rel}`;
-
-  try {
-    await Filesystem.deleteFile({
-      path: fullPath,
-      directory: Directory.Data,
-    });
-  } catch (error) {
-    throw error;
-  }
+  await NativeUploader.deleteFile({ logicalPath });
 }
 
 /**
- * Optional: list files under HSC-SESSIONS/FILES (debug helper)
+ * Optional: list files under HSC-SESSIONS/FILES (debug helper). Only saved files live
+ * there; staged uploads are in the blob store, HSC-SESSIONS/BLOBS/<sha256>/
  */
 export async function listSessionFiles(): Promise<string[]> {
   try {
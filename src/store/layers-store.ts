@@ -1,11 +1,13 @@
 import type { LayerProps, Node, DrawingMode } from "@/lib/definitions";
 import { create } from "zustand";
+import { Capacitor } from "@capacitor/core";
 import type { PickingInfo } from "@deck.gl/core";
 import { computeLayerBounds, calculateLayerZoomRange } from "@/lib/layers";
 import {
   markLayerStagedDelete,
   updateManifestColor,
 } from "@/sessions/manifestStore";
+import { OfflineTileServer } from "@/plugins/offline-tile-server";
 
 interface LayerState {
   layers: LayerProps[];
@@ -121,6 +123,13 @@ const useLayerStore = create<LayerState>()((set, get) => ({
       // Continue with deletion even if manifest update fails
     });
 
+    // A DEM served natively keeps its file mapped until the tile server drops it
+    if (get().layers.some((l) => l.id === layerId && l.demTiles)) {
+      OfflineTileServer.removeDemLayer({ layerId }).catch((error) => {
+        console.warn(`[LayerDelete] Error removing native DEM layer:`, error);
+      });
+    }
+
     set((state) => {
       // Check if the deleted layer is the one being hovered
       let shouldClearHoverInfo = false;
@@ -483,9 +492,76 @@ export const loadAutosavedLayers = async () => {
     useLayerStore.getState().setNodeIconMappings(nodeIconMappings);
   }
 
+  startIncrementalAutosave();
+
   return { layers, nodeIconMappings };
 };
 
+// Persist layer edits as per-layer deltas (native SessionStore), debounced so a burst
+// of edits becomes one write. Store updates replace changed layer objects, so reference
+// inequality is enough to find what changed. Started once at app init; the first save
+// seeds the store with the whole session, since it may still hold an older one.
+let stopIncrementalAutosave: (() => void) | null = null;
+
+export const startIncrementalAutosave = (debounceMs = 1000, retryMs = 10000) => {
+  if (stopIncrementalAutosave) return stopIncrementalAutosave;
+  if (!Capacitor.isNativePlatform()) return () => {};
+
+  let seeded = false;
+  let savedLayers = useLayerStore.getState().layers;
+  let savedMappings = useLayerStore.getState().nodeIconMappings;
+  let timer: ReturnType<typeof setTimeout> | null = null;
+  let saving: Promise<void> = Promise.resolve();
+  let stopped = false;
+
+  const save = async () => {
+    const { saveLayerDeltas } = await import("@/lib/autosave");
+    const { layers, nodeIconMappings } = useLayerStore.getState();
+    const ok = await saveLayerDeltas(
+      seeded ? savedLayers : null,
+      layers,
+      !seeded || nodeIconMappings !== savedMappings
+        ? nodeIconMappings
+        : undefined
+    );
+    if (!ok) {
+      // Keep the old baseline, so the failed edits are sent again
+      schedule(retryMs);
+      return;
+    }
+    seeded = true;
+    savedLayers = layers;
+    savedMappings = nodeIconMappings;
+  };
+
+  const schedule = (delayMs: number) => {
+    if (stopped) return;
+    if (timer) clearTimeout(timer);
+    timer = setTimeout(() => {
+      timer = null;
+      saving = saving.then(save);
+    }, delayMs);
+  };
+
+  const unsubscribe = useLayerStore.subscribe((state) => {
+    if (
+      state.layers === savedLayers &&
+      state.nodeIconMappings === savedMappings
+    ) {
+      return;
+    }
+    schedule(debounceMs);
+  });
+
+  stopIncrementalAutosave = () => {
+    stopped = true;
+    if (timer) clearTimeout(timer);
+    unsubscribe();
+    stopIncrementalAutosave = null;
+  };
+  return stopIncrementalAutosave;
+};
+
 export const useIgrsPreference = () => useLayerStore((state) => state.useIgrs);
 export const useSetIgrsPreference = () =>
   useLayerStore((state) => state.setUseIgrs);
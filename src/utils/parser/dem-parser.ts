@@ -1,5 +1,7 @@
+import { Capacitor } from "@capacitor/core";
 import { fileToDEMRaster } from "@/lib/utils";
 import type { LayerProps } from "@/lib/definitions";
+import { OfflineTileServer } from "@/plugins/offline-tile-server";
 
 export interface DemParseResult {
   bounds: [number, number, number, number];
@@ -156,3 +158,46 @@ export function createDemLayer(
     uploadedAt: Date.now(),
   } as LayerProps & { uploadedAt: number };
 }
+
+/**
+ * Open a DEM in the native tile server, which reads it block by block and renders
+ * hillshade tiles: the grid never enters JS, so file size doesn't matter. Resolves null
+ * on the web or when the native reader rejects the file (e.g. an unsupported projection);
+ * parse it with parseDemFile then.
+ */
+export async function openNativeDemLayer(
+  absolutePath: string,
+  options: DemParseOptions
+): Promise<LayerProps | null> {
+  if (!Capacitor.isNativePlatform()) return null;
+  const { layerId, layerName } = options;
+
+  try {
+    const dem = await OfflineTileServer.addDemLayer({
+      layerId,
+      path: absolutePath,
+    });
+    return {
+      type: "dem",
+      id: layerId,
+      name: layerName,
+      color: [255, 255, 255],
+      visible: true,
+      bounds: [
+        [dem.bounds[0], dem.bounds[1]],
+        [dem.bounds[2], dem.bounds[3]],
+      ],
+      demTiles: {
+        url: dem.hillshadeUrl,
+        path: absolutePath,
+        maxZoom: dem.maxZoom,
+        min: dem.min,
+        max: dem.max,
+      },
+      uploadedAt: Date.now(),
+    } as LayerProps & { uploadedAt: number };
+  } catch (error) {
+    console.warn(`[DEM] Not readable natively, parsing in JS: ${absolutePath}`, error);
+    return null;
+  }
+}
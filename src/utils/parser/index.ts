@@ -9,6 +9,7 @@
 export {
   parseDemFile,
   createDemLayer,
+  openNativeDemLayer,
   type DemParseResult,
   type DemParseOptions,
 } from "./dem-parser";
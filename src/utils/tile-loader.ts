@@ -24,15 +24,12 @@ export async function loadTileFromCache(
     try {
       const result = await TileCache.getTile({ z, x, y });
 
-      // Decode base64 to ArrayBuffer
-      const base64Data = result.data;
-      const binaryString = atob(base64Data);
-      const bytes = new Uint8Array(binaryString.length);
-      for (let i = 0; i < binaryString.length; i++) {
-        bytes[i] = binaryString.charCodeAt(i);
+      // The tile is already in native RAM; fetch it as binary from the local server
+      const response = await fetch(result.url);
+      if (!response.ok) {
+        throw new Error(`Tile fetch failed: ${response.status}`);
       }
-
-      return bytes.buffer;
+      return await response.arrayBuffer();
     } catch (error) {
       console.error(`Error loading tile ${cacheKey}:`, error);
       throw error;